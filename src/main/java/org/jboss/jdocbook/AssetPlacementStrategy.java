@@ -0,0 +1,48 @@
+/*
+ * jDocBook, processing of DocBook sources
+ *
+ * Copyright (c) 2010, Red Hat Inc. or third-party contributors as
+ * indicated by the @author tags or express copyright attribution
+ * statements applied by the authors.  All third-party contributions are
+ * distributed under license by Red Hat Inc.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.jboss.jdocbook;
+
+/**
+ * Defines how staged assets (images, css) are placed into the output directories of the formats which need them.
+ * Strategies other than {@link #COPY} fall back to copying when the platform or file system does not support them.
+ */
+public enum AssetPlacementStrategy {
+	/**
+	 * Copy the staged files.
+	 */
+	COPY,
+	/**
+	 * Hard link the staged files; requires the staging and output directories to be on the same file system.
+	 */
+	HARD_LINK,
+	/**
+	 * Symbolically link to the staged files; the output then is only complete as long as the staging directory
+	 * exists.
+	 */
+	SYMBOLIC_LINK,
+	/**
+	 * Copy-on-write clone (reflink) the staged files, on file systems supporting it (btrfs, XFS, ...).
+	 */
+	REFLINK
+}
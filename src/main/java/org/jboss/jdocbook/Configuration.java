@@ -68,6 +68,13 @@ public interface Configuration {
 	 */
 	public boolean isUseFopFontCacheEnabled();
 
+	/**
+	 * Retrieve the optional performance features to apply.
+	 *
+	 * @return The performance options; null indicates the {@link PerformanceOptions#PerformanceOptions() defaults}.
+	 */
+	public PerformanceOptions getPerformanceOptions();
+
 	/**
 	 * Retrieve any DTD entity values to be injected into XML documents.
 	 *
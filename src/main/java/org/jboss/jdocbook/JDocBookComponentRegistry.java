@@ -24,6 +24,7 @@
 package org.jboss.jdocbook;
 
 import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.jboss.jdocbook.profile.Profiler;
 import org.jboss.jdocbook.profile.ProfilerImpl;
@@ -31,13 +32,18 @@ import org.jboss.jdocbook.render.Renderer;
 import org.jboss.jdocbook.render.RendererImpl;
 import org.jboss.jdocbook.render.XslFoGenerator;
 import org.jboss.jdocbook.render.XslFoGeneratorImpl;
+import org.jboss.jdocbook.render.fop.FopFactoryProvider;
 import org.jboss.jdocbook.translate.PoSynchronizer;
 import org.jboss.jdocbook.translate.PoSynchronizerImpl;
 import org.jboss.jdocbook.translate.PotSynchronizer;
 import org.jboss.jdocbook.translate.PotSynchronizerImpl;
 import org.jboss.jdocbook.translate.Translator;
 import org.jboss.jdocbook.translate.TranslatorImpl;
+import org.jboss.jdocbook.util.DtdGrammarPool;
 import org.jboss.jdocbook.util.TranslationUtils;
+import org.jboss.jdocbook.util.WorkerPool;
+import org.jboss.jdocbook.xslt.EntityResolverChain;
+import org.jboss.jdocbook.xslt.LocalDocBookSchemaResolver;
 import org.jboss.jdocbook.xslt.TransformerBuilder;
 import org.jboss.jdocbook.xslt.TransformerBuilderImpl;
 
@@ -49,8 +55,12 @@ import org.jboss.jdocbook.xslt.TransformerBuilderImpl;
 public class JDocBookComponentRegistry {
 	private final Environment environment;
 	private final Configuration configuration;
+	private final PerformanceOptions performanceOptions;
 
 	private final TransformerBuilderImpl transformerBuilder;
+	private final FopFactoryProvider fopFactoryProvider;
+	private final DtdGrammarPool dtdGrammarPool;
+	private final AtomicBoolean dtdGrammarPoolPreloaded = new AtomicBoolean();
 
 	private final TranslatorImpl translator;
 	private final ProfilerImpl profiler;
@@ -62,8 +72,13 @@ public class JDocBookComponentRegistry {
 	public JDocBookComponentRegistry(Environment environment, Configuration configuration) {
 		this.environment = environment;
 		this.configuration = configuration;
+		this.performanceOptions = configuration.getPerformanceOptions() == null
+				? new PerformanceOptions()
+				: configuration.getPerformanceOptions();
 
 		this.transformerBuilder = new TransformerBuilderImpl( this );
+		this.fopFactoryProvider = new FopFactoryProvider( this );
+		this.dtdGrammarPool = performanceOptions.isDtdGrammarCachingEnabled() ? buildDtdGrammarPool() : null;
 
 		this.translator = new TranslatorImpl( this );
 		this.profiler = new ProfilerImpl( this );
@@ -91,6 +106,16 @@ public class JDocBookComponentRegistry {
 		return configuration;
 	}
 
+	/**
+	 * Retrieve the performance options in effect.
+	 *
+	 * @return The {@link Configuration#getPerformanceOptions() configured} performance options, or the defaults if
+	 * none were configured.
+	 */
+	public PerformanceOptions getPerformanceOptions() {
+		return performanceOptions;
+	}
+
 	/**
 	 * Retrieve the builder for <tt>XSLT</tt> {@link javax.xml.transform.Transformer} instances.
 	 *
@@ -100,6 +125,38 @@ public class JDocBookComponentRegistry {
 		return transformerBuilder;
 	}
 
+	/**
+	 * Retrieve the provider of the {@link org.apache.fop.apps.FopFactory} shared by PDF renderings.
+	 *
+	 * @return The FopFactory provider
+	 */
+	public FopFactoryProvider getFopFactoryProvider() {
+		return fopFactoryProvider;
+	}
+
+	/**
+	 * Retrieve the cache of DTD grammars shared by all parses, if DTD grammar caching is
+	 * {@link PerformanceOptions#isDtdGrammarCachingEnabled() enabled}.  On first retrieval the cache is preloaded with the
+	 * DTDs of the master language documents.
+	 *
+	 * @return The DTD grammar cache, or null if not enabled.
+	 */
+	public DtdGrammarPool getDtdGrammarPool() {
+		if ( dtdGrammarPool != null && dtdGrammarPoolPreloaded.compareAndSet( false, true ) ) {
+			final MasterLanguageDescriptor masterLanguageDescriptor = environment.getMasterLanguageDescriptor();
+			if ( masterLanguageDescriptor != null && masterLanguageDescriptor.getDocumentFiles() != null ) {
+				dtdGrammarPool.preload( masterLanguageDescriptor.getDocumentFiles() );
+			}
+		}
+		return dtdGrammarPool;
+	}
+
+	private DtdGrammarPool buildDtdGrammarPool() {
+		final EntityResolverChain entityResolver = new EntityResolverChain( transformerBuilder.getCatalogResolver() );
+		entityResolver.addEntityResolver( new LocalDocBookSchemaResolver( environment.getDocBookSchemaResolutionStrategy() ) );
+		return new DtdGrammarPool( entityResolver );
+	}
+
 	/**
 	 * Retrieve the reference to the translator service.
 	 *
@@ -145,6 +202,18 @@ public class JDocBookComponentRegistry {
 		return poSynchronizer;
 	}
 
+	/**
+	 * Build a worker pool sized according to the {@linkplain PerformanceOptions#getMaxWorkerThreads() configured} maximum
+	 * number of worker threads.
+	 *
+	 * @param name The pool name, used in naming the worker threads.
+	 *
+	 * @return The worker pool
+	 */
+	public WorkerPool buildWorkerPool(String name) {
+		return new WorkerPool( name, performanceOptions.getMaxWorkerThreads() );
+	}
+
 	public String toLanguageString(Locale language) {
 		return TranslationUtils.render( language, configuration.getLocaleSeparator() );
 	}
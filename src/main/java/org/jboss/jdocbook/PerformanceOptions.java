@@ -0,0 +1,193 @@
+/*
+ * jDocBook, processing of DocBook sources
+ *
+ * Copyright (c) 2010, Red Hat Inc. or third-party contributors as
+ * indicated by the @author tags or express copyright attribution
+ * statements applied by the authors.  All third-party contributions are
+ * distributed under license by Red Hat Inc.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.jboss.jdocbook;
+
+import java.io.Serializable;
+
+/**
+ * Descriptor of the optional performance features (caching, incremental rendering, concurrency, ...) to be applied.
+ * All of the switches are disabled by default, in which case processing behaves as it always did; work which can
+ * be performed concurrently uses one worker thread per available processor unless told otherwise.
+ */
+@SuppressWarnings({ "UnusedDeclaration" })
+public class PerformanceOptions implements Serializable {
+	private boolean persistentStylesheetCacheEnabled;
+	private boolean incrementalRenderingEnabled;
+	private boolean xslFoReuseEnabled;
+	private boolean resolvedDocumentCacheEnabled;
+	private boolean dtdGrammarCachingEnabled;
+	private boolean stylesheetResourceCachingEnabled;
+	private AssetPlacementStrategy assetPlacementStrategy = AssetPlacementStrategy.COPY;
+	private boolean pipelinedPdfRenderingEnabled;
+	private int maxWorkerThreads;
+	private boolean inProcessTranslationEnabled;
+
+	public PerformanceOptions() {
+	}
+
+	/**
+	 * Should resolved <tt>XSLT</tt> stylesheets (the content of the stylesheet and all of its imports/includes) be
+	 * stored in the work directory and compiled from there by later runs (as long as none of the stylesheet resources
+	 * changed)?
+	 *
+	 * @return True to enable the persistent stylesheet cache; false otherwise.
+	 */
+	public boolean isPersistentStylesheetCacheEnabled() {
+		return persistentStylesheetCacheEnabled;
+	}
+
+	public void setPersistentStylesheetCacheEnabled(boolean persistentStylesheetCacheEnabled) {
+		this.persistentStylesheetCacheEnabled = persistentStylesheetCacheEnabled;
+	}
+
+	/**
+	 * Should rendering of a (language, format) output be skipped when none of its inputs changed since it was last
+	 * rendered?
+	 *
+	 * @return True to enable incremental rendering; false to always render.
+	 */
+	public boolean isIncrementalRenderingEnabled() {
+		return incrementalRenderingEnabled;
+	}
+
+	public void setIncrementalRenderingEnabled(boolean incrementalRenderingEnabled) {
+		this.incrementalRenderingEnabled = incrementalRenderingEnabled;
+	}
+
+	/**
+	 * Should the <tt>XSL-FO</tt> generated when rendering PDF be kept and, as long as none of its inputs (document,
+	 * stylesheet, settings) changed, be fed straight to FOP by later renderings rather than being generated again?
+	 * Useful when only the FOP configuration (fonts, etc) changes between renderings.
+	 *
+	 * @return True to enable reuse of generated <tt>XSL-FO</tt>; false otherwise.
+	 */
+	public boolean isXslFoReuseEnabled() {
+		return xslFoReuseEnabled;
+	}
+
+	public void setXslFoReuseEnabled(boolean xslFoReuseEnabled) {
+		this.xslFoReuseEnabled = xslFoReuseEnabled;
+	}
+
+	/**
+	 * Should a (resolved) source document be parsed only once and then reused for rendering each of the formats,
+	 * rather than being parsed again for each format?  This trades memory for speed.
+	 *
+	 * @return True to enable caching of resolved documents; false otherwise.
+	 */
+	public boolean isResolvedDocumentCacheEnabled() {
+		return resolvedDocumentCacheEnabled;
+	}
+
+	public void setResolvedDocumentCacheEnabled(boolean resolvedDocumentCacheEnabled) {
+		this.resolvedDocumentCacheEnabled = resolvedDocumentCacheEnabled;
+	}
+
+	/**
+	 * Should parsed DTD grammars (the DocBook DTD in particular) be cached and shared by all parses, rather than the
+	 * DTD being parsed again for each document?
+	 *
+	 * @return True to enable caching of DTD grammars; false otherwise.
+	 */
+	public boolean isDtdGrammarCachingEnabled() {
+		return dtdGrammarCachingEnabled;
+	}
+
+	public void setDtdGrammarCachingEnabled(boolean dtdGrammarCachingEnabled) {
+		this.dtdGrammarCachingEnabled = dtdGrammarCachingEnabled;
+	}
+
+	/**
+	 * Should the content of the stylesheet modules resolved from the classpath be kept in memory and shared by all
+	 * stylesheet compilations, rather than being read again for each format?
+	 *
+	 * @return True to enable caching of stylesheet resource content; false otherwise.
+	 */
+	public boolean isStylesheetResourceCachingEnabled() {
+		return stylesheetResourceCachingEnabled;
+	}
+
+	public void setStylesheetResourceCachingEnabled(boolean stylesheetResourceCachingEnabled) {
+		this.stylesheetResourceCachingEnabled = stylesheetResourceCachingEnabled;
+	}
+
+	/**
+	 * Retrieve the manner in which staged images and css are placed into the output directories of the formats
+	 * which need them.
+	 *
+	 * @return The asset placement strategy; never null.
+	 */
+	public AssetPlacementStrategy getAssetPlacementStrategy() {
+		return assetPlacementStrategy;
+	}
+
+	public void setAssetPlacementStrategy(AssetPlacementStrategy assetPlacementStrategy) {
+		this.assetPlacementStrategy = assetPlacementStrategy == null
+				? AssetPlacementStrategy.COPY
+				: assetPlacementStrategy;
+	}
+
+	/**
+	 * Should PDF rendering run FOP layout on a thread of its own, fed by the XSL-FO transformation as it goes, so
+	 * that the two overlap rather than run one after the other on a single thread?
+	 *
+	 * @return True to pipeline the XSL-FO transformation and FOP layout; false otherwise.
+	 */
+	public boolean isPipelinedPdfRenderingEnabled() {
+		return pipelinedPdfRenderingEnabled;
+	}
+
+	public void setPipelinedPdfRenderingEnabled(boolean pipelinedPdfRenderingEnabled) {
+		this.pipelinedPdfRenderingEnabled = pipelinedPdfRenderingEnabled;
+	}
+
+	/**
+	 * Retrieve the maximum number of worker threads to use for processing which can be performed concurrently
+	 * (running the gettext tools, rendering, etc).  Defaults to 0, meaning one worker thread per available processor.
+	 *
+	 * @return The maximum number of worker threads; values less than 1 indicate to use the number of available
+	 * processors.
+	 */
+	public int getMaxWorkerThreads() {
+		return maxWorkerThreads;
+	}
+
+	public void setMaxWorkerThreads(int maxWorkerThreads) {
+		this.maxWorkerThreads = maxWorkerThreads;
+	}
+
+	/**
+	 * Should the POT/PO synchronization and translation steps be performed in-process, rather than by running the
+	 * external gettext and xml2po tools (<tt>xml2pot</tt>, <tt>msginit</tt>, <tt>msgmerge</tt> and <tt>po2xml</tt>)?
+	 *
+	 * @return True to perform translation processing in-process; false to use the external tools.
+	 */
+	public boolean isInProcessTranslationEnabled() {
+		return inProcessTranslationEnabled;
+	}
+
+	public void setInProcessTranslationEnabled(boolean inProcessTranslationEnabled) {
+		this.inProcessTranslationEnabled = inProcessTranslationEnabled;
+	}
+}
@@ -35,6 +35,7 @@ public class Profiling implements Serializable{
 	private boolean enabled;
 	private String attributeName;
 	private String attributeValue;
+	private boolean pipelined;
 
 	public Profiling() {
 	}
@@ -84,6 +85,25 @@ public class Profiling implements Serializable{
 		this.attributeValue = attributeValue;
 	}
 
+	/**
+	 * Should profiling be applied as part of rendering, rather than as a separate step?  When pipelined, the profiled
+	 * document is never written out; instead the profiling transformation is chained in front of the rendering
+	 * transformation.
+	 * <p/>
+	 * Profiling still has to be requested (by the profiling step) before rendering; in place of the profiled document
+	 * a small <tt>.pipelined</tt> file recording the deferral is written next to where the profiled document would
+	 * be, so that rendering performed by a later invocation finds it as well.
+	 *
+	 * @return True if profiling should be pipelined into rendering; false otherwise.
+	 */
+	public boolean isPipelined() {
+		return pipelined;
+	}
+
+	public void setPipelined(boolean pipelined) {
+		this.pipelined = pipelined;
+	}
+
 	@Override
 	public boolean equals(Object o) {
 		if ( this == o ) {
@@ -105,7 +125,8 @@ public class Profiling implements Serializable{
 			return true;
 		}
 
-		return !( attributeName != null ? !attributeName.equals( profiling.attributeName ) : profiling.attributeName != null )
+		return pipelined == profiling.pipelined
+				&& !( attributeName != null ? !attributeName.equals( profiling.attributeName ) : profiling.attributeName != null )
 				&& !( attributeValue != null ? !attributeValue.equals( profiling.attributeValue ) : profiling.attributeValue != null );
 
 	}
@@ -115,6 +136,7 @@ public class Profiling implements Serializable{
 		int result = ( enabled ? 1 : 0 );
 		result = 31 * result + ( attributeName != null ? attributeName.hashCode() : 0 );
 		result = 31 * result + ( attributeValue != null ? attributeValue.hashCode() : 0 );
+		result = 31 * result + ( pipelined ? 1 : 0 );
 		return result;
 	}
 }
@@ -23,6 +23,9 @@
  */
 package org.jboss.jdocbook.profile;
 
+import java.io.File;
+import javax.xml.transform.sax.SAXSource;
+
 /**
  * Contract for applying DocBook <a href="http://www.sagehill.net/docbookxsl/Profiling.html">profiling</a>
  *
@@ -31,9 +34,32 @@ package org.jboss.jdocbook.profile;
 public interface Profiler {
 	/**
 	 * Apply profiling to the given source.
+	 * <p/>
+	 * If profiling is {@link org.jboss.jdocbook.Profiling#isPipelined() pipelined} the profiled document is not
+	 * written; the source is instead remembered so that profiling can be applied while rendering.
 	 *
 	 * @param profilingSource The source to be profiled
 	 */
 	@SuppressWarnings({ "UnusedDeclaration" })
 	public void profile(ProfilingSource profilingSource);
+
+	/**
+	 * Locate the source whose profiling was deferred to rendering (see
+	 * {@link org.jboss.jdocbook.Profiling#isPipelined()}), by the profiled document file which would otherwise have
+	 * been written.
+	 *
+	 * @param profiledDocumentFile The profiled document file
+	 *
+	 * @return The deferred profiling source, or null if profiling for that file was not deferred.
+	 */
+	public ProfilingSource locatePipelinedProfiling(File profiledDocumentFile);
+
+	/**
+	 * Build a SAX source which applies profiling to the source document as it is being read.
+	 *
+	 * @param profilingSource The source to be profiled
+	 *
+	 * @return The profiling SAX source
+	 */
+	public SAXSource buildProfilingSource(ProfilingSource profilingSource);
 }
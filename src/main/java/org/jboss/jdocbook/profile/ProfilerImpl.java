@@ -24,11 +24,16 @@
 package org.jboss.jdocbook.profile;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import javax.xml.transform.Result;
-import javax.xml.transform.Source;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
+import javax.xml.transform.sax.SAXSource;
+import javax.xml.transform.sax.TransformerHandler;
 import javax.xml.transform.stream.StreamResult;
 
 import org.jboss.jdocbook.Configuration;
@@ -40,6 +45,7 @@ import org.jboss.jdocbook.util.TranslationUtils;
 import org.jboss.jdocbook.xslt.EntityResolverChain;
 import org.jboss.jdocbook.xslt.LocalDocBookSchemaResolver;
 import org.jboss.jdocbook.xslt.TransformerBuilder;
+import org.jboss.jdocbook.xslt.TransformerHandlerFilter;
 import org.jboss.jdocbook.xslt.XIncludeEntityResolver;
 import org.jboss.jdocbook.xslt.XSLTException;
 import org.slf4j.Logger;
@@ -53,8 +59,18 @@ import org.slf4j.LoggerFactory;
 public class ProfilerImpl implements Profiler {
 	private static final Logger log = LoggerFactory.getLogger( ProfilerImpl.class );
 
+	/**
+	 * Suffix of the file recording, in place of the profiled document, a profiling deferred to rendering.  This
+	 * allows rendering to find the deferred profiling even when run by a later invocation than the profiling.
+	 */
+	public static final String DEFERRAL_FILE_SUFFIX = ".pipelined";
+
+	private static final String DOCUMENT_KEY = "document";
+	private static final String LANGUAGE_KEY = "language";
+
 	private final JDocBookComponentRegistry componentRegistry;
 	private final EntityResolverChain entityResolver;
+	private final ConcurrentMap<File, ProfilingSource> pipelinedSources = new ConcurrentHashMap<File, ProfilingSource>();
 
 	public ProfilerImpl(JDocBookComponentRegistry componentRegistry) {
 		this.componentRegistry = componentRegistry;
@@ -77,8 +93,20 @@ public class ProfilerImpl implements Profiler {
 
 	@Override
 	public void profile(ProfilingSource profilingSource) {
+		final File targetFile = profilingSource.resolveProfiledDocumentFile();
+		if ( configuration().getProfiling().isPipelined() ) {
+			log.info( "deferring DocBook profiling [" + targetFile.getAbsolutePath() + "] to rendering" );
+			pipelinedSources.put( targetFile.getAbsoluteFile(), profilingSource );
+			recordDeferral( profilingSource, targetFile );
+			return;
+		}
+
+		final File deferralFile = deferralFile( targetFile );
+		if ( deferralFile.exists() && !deferralFile.delete() ) {
+			log.info( "Unable to delete stale profiling deferral " + deferralFile.getAbsolutePath() );
+		}
+
 		try {
-			final File targetFile = profilingSource.resolveProfiledDocumentFile();
 			log.info( "applying DocBook profiling [" + targetFile.getAbsolutePath() + "]" );
 
 			if ( ! targetFile.getParentFile().exists() ) {
@@ -88,21 +116,8 @@ public class ProfilerImpl implements Profiler {
 				}
 			}
 
-			final String languageString = render( profilingSource.getLanguage() );
-
 			Transformer xslt = transformerBuilder().buildStandardTransformer( Constants.MAIN_PROFILE_XSL_RESOURCE );
-			xslt.setParameter( "l10n.gentext.language", languageString );
-
-			// figure out the attribute upon which to profile
-			final String profilingAttributeName = configuration().getProfiling().getAttributeName();
-			if ( profilingAttributeName == null || "lang".equals( profilingAttributeName ) ) {
-				xslt.setParameter( "profile.attribute", "lang" );
-				xslt.setParameter( "profile.lang", languageString );
-			}
-			else {
-				xslt.setParameter( "profile.attribute", profilingAttributeName );
-				xslt.setParameter( "profile.value", configuration().getProfiling().getAttributeValue() );
-			}
+			applyProfilingParameters( xslt, profilingSource.getLanguage() );
 
 			xslt.transform( buildSource( profilingSource.resolveDocumentFile() ), buildResult( targetFile ) );
 		}
@@ -111,8 +126,130 @@ public class ProfilerImpl implements Profiler {
 		}
 	}
 
-	private Source buildSource(File sourceFile) throws XSLTException {
-		return FileUtils.createSAXSource( sourceFile, entityResolver, configuration().getValueInjections() );
+	@Override
+	public ProfilingSource locatePipelinedProfiling(File profiledDocumentFile) {
+		final File key = profiledDocumentFile.getAbsoluteFile();
+		final ProfilingSource profilingSource = pipelinedSources.get( key );
+		if ( profilingSource != null ) {
+			return profilingSource;
+		}
+		if ( configuration().getProfiling() == null || !configuration().getProfiling().isPipelined() ) {
+			return null;
+		}
+
+		// profiling may have been requested by an earlier invocation (using another profiler)
+		final ProfilingSource recordedSource = readDeferral( key );
+		if ( recordedSource == null ) {
+			return null;
+		}
+		final ProfilingSource existing = pipelinedSources.putIfAbsent( key, recordedSource );
+		return existing == null ? recordedSource : existing;
+	}
+
+	private static File deferralFile(File profiledDocumentFile) {
+		return new File( profiledDocumentFile.getAbsolutePath() + DEFERRAL_FILE_SUFFIX );
+	}
+
+	private void recordDeferral(ProfilingSource profilingSource, File targetFile) {
+		final File deferralFile = deferralFile( targetFile );
+		if ( ! deferralFile.getParentFile().exists() ) {
+			boolean created = deferralFile.getParentFile().mkdirs();
+			if ( !created && ! deferralFile.getParentFile().exists() ) {
+				log.info( "Unable to create parent directory " + deferralFile.getAbsolutePath() );
+				return;
+			}
+		}
+		final Properties deferral = new Properties();
+		deferral.setProperty( DOCUMENT_KEY, profilingSource.resolveDocumentFile().getAbsolutePath() );
+		deferral.setProperty( LANGUAGE_KEY, render( profilingSource.getLanguage() ) );
+		try {
+			FileUtils.storeProperties( deferral, deferralFile, "jDocBook profiling deferred to rendering" );
+		}
+		catch ( IOException e ) {
+			log.info( "Unable to record profiling deferral [" + deferralFile.getAbsolutePath() + "]", e );
+		}
+	}
+
+	private ProfilingSource readDeferral(final File profiledDocumentFile) {
+		final File deferralFile = deferralFile( profiledDocumentFile );
+		if ( !deferralFile.exists() ) {
+			return null;
+		}
+		final Properties deferral;
+		try {
+			deferral = FileUtils.loadProperties( deferralFile );
+		}
+		catch ( IOException e ) {
+			log.info( "Unable to read profiling deferral [" + deferralFile.getAbsolutePath() + "]", e );
+			return null;
+		}
+		final String document = deferral.getProperty( DOCUMENT_KEY );
+		final String language = deferral.getProperty( LANGUAGE_KEY );
+		if ( document == null || language == null ) {
+			return null;
+		}
+
+		final File documentFile = new File( document );
+		final Locale locale = TranslationUtils.parse( language, configuration().getLocaleSeparator() );
+		return new ProfilingSource() {
+			@Override
+			public Locale getLanguage() {
+				return locale;
+			}
+
+			@Override
+			public File resolveDocumentFile() {
+				return documentFile;
+			}
+
+			@Override
+			public File resolveProfiledDocumentFile() {
+				return profiledDocumentFile;
+			}
+		};
+	}
+
+	@Override
+	public SAXSource buildProfilingSource(ProfilingSource profilingSource) {
+		final File documentFile = profilingSource.resolveDocumentFile();
+		log.trace( "applying pipelined DocBook profiling to {}", documentFile );
+
+		final TransformerHandler profilingHandler = transformerBuilder().buildStandardTransformerHandler(
+				Constants.MAIN_PROFILE_XSL_RESOURCE
+		);
+		applyProfilingParameters( profilingHandler.getTransformer(), profilingSource.getLanguage() );
+
+		final SAXSource documentSource = buildSource( documentFile );
+		profilingHandler.setSystemId( documentSource.getSystemId() );
+		return new SAXSource(
+				new TransformerHandlerFilter( documentSource.getXMLReader(), profilingHandler ),
+				documentSource.getInputSource()
+		);
+	}
+
+	private void applyProfilingParameters(Transformer xslt, Locale language) {
+		final String languageString = render( language );
+		xslt.setParameter( "l10n.gentext.language", languageString );
+
+		// figure out the attribute upon which to profile
+		final String profilingAttributeName = configuration().getProfiling().getAttributeName();
+		if ( profilingAttributeName == null || "lang".equals( profilingAttributeName ) ) {
+			xslt.setParameter( "profile.attribute", "lang" );
+			xslt.setParameter( "profile.lang", languageString );
+		}
+		else {
+			xslt.setParameter( "profile.attribute", profilingAttributeName );
+			xslt.setParameter( "profile.value", configuration().getProfiling().getAttributeValue() );
+		}
+	}
+
+	private SAXSource buildSource(File sourceFile) throws XSLTException {
+		return FileUtils.createSAXSource(
+				sourceFile,
+				entityResolver,
+				configuration().getValueInjections(),
+				componentRegistry.getDtdGrammarPool()
+		);
 	}
 
 	protected Result buildResult(File targetFile) throws XSLTException {
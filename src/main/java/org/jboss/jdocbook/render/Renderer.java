@@ -23,6 +23,9 @@
  */
 package org.jboss.jdocbook.render;
 
+import java.util.Collection;
+import java.util.Map;
+
 /**
  * Contract for applying a DocBook format, rendering a specific type of output.
  *
@@ -36,4 +39,25 @@ public interface Renderer {
 	 * @param formatOptions The formatting options.
 	 */
 	public void render(RenderingSource source, FormatOptions formatOptions);
+
+	/**
+	 * Perform the rendering of each of the sources into each of the formats.  The individual (source, format)
+	 * renderings are independent of each other and are performed concurrently.
+	 *
+	 * @param sources The sources to be rendered.
+	 * @param formatOptions The formatting options for each format to be rendered.
+	 */
+	public void renderAll(Collection<? extends RenderingSource> sources, Collection<? extends FormatOptions> formatOptions);
+
+	/**
+	 * Render each of the sources (typically the translations of a single book) into the given format, concurrently.
+	 * For FOP-based formats all renderings share the same FOP state (font cache, image cache).
+	 *
+	 * @param sources The sources to be rendered.
+	 * @param formatOptions The formatting options.
+	 *
+	 * @return The time (in milliseconds) taken to render each source, keyed by the source and ordered
+	 * as the sources were given.
+	 */
+	public Map<RenderingSource, Long> renderBatch(Collection<? extends RenderingSource> sources, FormatOptions formatOptions);
 }
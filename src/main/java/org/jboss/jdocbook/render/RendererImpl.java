@@ -23,24 +23,49 @@
  */
 package org.jboss.jdocbook.render;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
 
 import javax.xml.transform.Result;
 import javax.xml.transform.Source;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
+import javax.xml.transform.sax.SAXSource;
 import javax.xml.transform.stream.StreamResult;
 
 import org.jboss.jdocbook.JDocBookComponentRegistry;
+import org.jboss.jdocbook.JDocBookProcessException;
+import org.jboss.jdocbook.Profiling;
+import org.jboss.jdocbook.ValueInjection;
+import org.jboss.jdocbook.profile.ProfilingSource;
+import org.jboss.jdocbook.render.fop.FopConfigHelper;
 import org.jboss.jdocbook.render.fop.ResultImpl;
 import org.jboss.jdocbook.util.ConsoleRedirectionHandler;
+import org.jboss.jdocbook.util.DirectorySynchronizer;
+import org.jboss.jdocbook.util.DocumentDependencyScanner;
 import org.jboss.jdocbook.util.FileUtils;
+import org.jboss.jdocbook.util.Fingerprints;
 import org.jboss.jdocbook.util.StandardDocBookFormatMetadata;
 import org.jboss.jdocbook.util.TranslationUtils;
+import org.jboss.jdocbook.util.WorkerPool;
+import org.jboss.jdocbook.util.XMLReaderPool;
 import org.jboss.jdocbook.xslt.EntityResolverChain;
 import org.jboss.jdocbook.xslt.FormatPlan;
 import org.jboss.jdocbook.xslt.LocalDocBookSchemaResolver;
@@ -48,6 +73,9 @@ import org.jboss.jdocbook.xslt.XIncludeEntityResolver;
 import org.jboss.jdocbook.xslt.XSLTException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
 
 /**
  * Implementation of the {@link Renderer} contract
@@ -57,14 +85,28 @@ import org.slf4j.LoggerFactory;
 public class RendererImpl implements Renderer {
 	private static final Logger log = LoggerFactory.getLogger( RendererImpl.class );
 
+	/**
+	 * Suffix distinguishing the manifest of reusable <tt>XSL-FO</tt> from that of the PDF rendered from it.
+	 */
+	private static final String XSL_FO_MANIFEST_SUFFIX = "-fo";
+
 	private final JDocBookComponentRegistry componentRegistry;
 	private final EntityResolverChain entityResolver;
+	private final ResolvedDocumentCache resolvedDocumentCache;
+	private final DirectorySynchronizer stagingSynchronizer;
 
 	public RendererImpl(JDocBookComponentRegistry componentRegistry) {
 		this.componentRegistry = componentRegistry;
 		entityResolver = new EntityResolverChain( componentRegistry.getTransformerBuilder().getCatalogResolver() );
 		entityResolver.addEntityResolver( new LocalDocBookSchemaResolver( componentRegistry.getEnvironment().getDocBookSchemaResolutionStrategy() ) );
 		entityResolver.addEntityResolver( new XIncludeEntityResolver( componentRegistry ) );
+		resolvedDocumentCache = componentRegistry.getPerformanceOptions().isResolvedDocumentCacheEnabled()
+				? new ResolvedDocumentCache( componentRegistry )
+				: null;
+		stagingSynchronizer = new DirectorySynchronizer(
+				componentRegistry.buildWorkerPool( "staging" ),
+				componentRegistry.getPerformanceOptions().getAssetPlacementStrategy()
+		);
 	}
 
 	@Override
@@ -74,15 +116,20 @@ public class RendererImpl implements Renderer {
 		log.info( "Starting rendering {}/{}", languageStr, formatPlan.getName() );
 
 		File sourceFile = source.resolveSourceDocument();
-		if ( !sourceFile.exists() ) {
-			log.warn( "Source document {} did not exist; skipping", sourceFile.getAbsolutePath() );
+
+		// with pipelined profiling the (profiled) source document is never written; instead we profile the
+		// original document as part of the rendering transformation
+		final ProfilingSource pipelinedProfiling = componentRegistry.getProfiler().locatePipelinedProfiling( sourceFile );
+		final File documentFile = pipelinedProfiling == null ? sourceFile : pipelinedProfiling.resolveDocumentFile();
+		if ( !documentFile.exists() ) {
+			log.warn( "Source document {} did not exist; skipping", documentFile.getAbsolutePath() );
 			return;
 		}
 
 		final File publishingDirectory = source.resolvePublishingBaseDirectory();
 		if ( ! publishingDirectory.exists() ) {
 			boolean created = publishingDirectory.mkdirs();
-			if ( !created ) {
+			if ( !created && !publishingDirectory.exists() ) {
 				log.warn( "Unable to create publishing directory {}", publishingDirectory.getAbsolutePath() );
 			}
 		}
@@ -93,12 +140,38 @@ public class RendererImpl implements Renderer {
 		}
 
 		final File stagingDirectory = componentRegistry.getEnvironment().getStagingDirectory();
+		final File targetFile = new File( targetDirectory, deduceTargetFileName( sourceFile, formatPlan ) );
+		final URL stylesheet = resolveStylesheet( formatPlan );
+
+		final boolean reuseXslFo = isPdf( formatPlan ) && componentRegistry.getPerformanceOptions().isXslFoReuseEnabled();
+
+		RenderingManifest manifest = null;
+		String settingsFingerprint = null;
+		String imagesFingerprint = null;
+		if ( reuseXslFo || componentRegistry.getPerformanceOptions().isIncrementalRenderingEnabled() ) {
+			settingsFingerprint = fingerprintSettings( languageStr, formatPlan, stylesheet, targetFile, pipelinedProfiling != null );
+			// the XSL-FO depends on the staged images as well, as stylesheets may read their intrinsic sizes
+			imagesFingerprint = fingerprintStagedImages( stagingDirectory );
+		}
+		if ( componentRegistry.getPerformanceOptions().isIncrementalRenderingEnabled() ) {
+			manifest = new RenderingManifest(
+					componentRegistry.getEnvironment().getWorkDirectory(),
+					languageStr,
+					formatPlan.getName()
+			);
+			if ( manifest.isUpToDate( targetFile, settingsFingerprint, imagesFingerprint ) ) {
+				log.info( "Rendering {}/{} is up-to-date; skipping", languageStr, formatPlan.getName() );
+				return;
+			}
+			manifest.invalidate();
+		}
+
 		if ( formatPlan.requiresImageCopying() ) {
 			if ( stagingDirectory.exists() ) {
 				File imageBase = new File( stagingDirectory, "images" );
 				if ( imageBase.exists() ) {
 					try {
-						FileUtils.copyDirectoryStructure( imageBase, targetDirectory );
+						stagingSynchronizer.synchronize( imageBase, targetDirectory );
 					}
 					catch ( IOException e ) {
 						throw new RenderingException( "unable to copy images", e );
@@ -107,7 +180,7 @@ public class RendererImpl implements Renderer {
 				File cssBase = new File( stagingDirectory, "css" );
 				if ( cssBase.exists() ) {
 					try {
-						FileUtils.copyDirectoryStructure( cssBase, targetDirectory );
+						stagingSynchronizer.synchronize( cssBase, targetDirectory );
 					}
 					catch ( IOException e ) {
 						throw new RenderingException( "unable to copy css", e );
@@ -116,7 +189,6 @@ public class RendererImpl implements Renderer {
 			}
 		}
 
-		final File targetFile = new File( targetDirectory, deduceTargetFileName( sourceFile, formatPlan ) );
 		if ( targetFile.exists() ) {
 			boolean deleted = targetFile.delete();
 			if ( !deleted ) {
@@ -135,28 +207,325 @@ public class RendererImpl implements Renderer {
 			}
 		}
 
-		Transformer transformer = buildTransformer( targetFile, formatPlan, stagingDirectory );
-		transformer.setParameter( "l10n.gentext.language", languageStr );
+		File xslFoFile = null;
+		RenderingManifest xslFoManifest = null;
+		boolean generateXslFo = true;
+		if ( reuseXslFo ) {
+			xslFoFile = new File(
+					source.getXslFoDirectory(),
+					FileUtils.basename( sourceFile.getAbsolutePath() ) + "fo"
+			);
+			xslFoManifest = new RenderingManifest(
+					componentRegistry.getEnvironment().getWorkDirectory(),
+					languageStr,
+					formatPlan.getName() + XSL_FO_MANIFEST_SUFFIX
+			);
+			if ( xslFoManifest.isUpToDate( xslFoFile, settingsFingerprint, imagesFingerprint ) ) {
+				log.info( "XSL-FO for {}/{} is up-to-date; reusing it", languageStr, formatPlan.getName() );
+				generateXslFo = false;
+			}
+			else {
+				xslFoManifest.invalidate();
+			}
+		}
+
+		// determine the document versions before rendering, so that changes made while rendering are noticed next time
+		Map<File, String> documentVersions = null;
+		if ( manifest != null || ( xslFoManifest != null && generateXslFo ) ) {
+			final Set<File> documentFiles = resolveDocumentFiles( documentFile );
+			documentVersions = documentFiles == null ? null : RenderingManifest.versions( documentFiles );
+		}
 
 		ConsoleRedirectionHandler console = new ConsoleRedirectionHandler( determineConsoleRedirectFile( source, formatPlan ) );
-		console.start();
 
-		try {
-			Source transformationSource = buildSource( sourceFile );
-			Result transformationResult = buildResult( targetFile, formatPlan );
+		if ( xslFoFile == null ) {
+			Transformer transformer = buildTransformer( targetFile, formatPlan, stagingDirectory );
+			transformer.setParameter( "l10n.gentext.language", languageStr );
 
+			console.start();
 			try {
-				transformer.transform( transformationSource, transformationResult );
+				Source transformationSource = buildTransformationSource( sourceFile, documentFile, pipelinedProfiling );
+				Result transformationResult = buildResult( targetFile, formatPlan );
+
+				try {
+					transform( transformer, transformationSource, transformationResult, sourceFile );
+				}
+				finally {
+					releaseResult( transformationResult, formatPlan );
+				}
 			}
-			catch ( TransformerException e ) {
-				throw new XSLTException( "error rendering [" + e.getMessageAndLocation() + "] on " + sourceFile.getName(), e );
+			finally {
+				console.stop();
+			}
+		}
+		else {
+			console.start();
+			try {
+				if ( generateXslFo ) {
+					Transformer transformer = buildTransformer( targetFile, formatPlan, stagingDirectory );
+					transformer.setParameter( "l10n.gentext.language", languageStr );
+					generateXslFo(
+							transformer,
+							buildTransformationSource( sourceFile, documentFile, pipelinedProfiling ),
+							sourceFile,
+							xslFoFile
+					);
+				}
+				renderXslFo( xslFoFile, targetFile );
 			}
 			finally {
-				releaseResult( transformationResult, formatPlan );
+				console.stop();
+			}
+		}
+
+		if ( manifest != null || ( xslFoManifest != null && generateXslFo ) ) {
+			// no stylesheet was compiled when reusing the XSL-FO; its closure was recorded when generating the XSL-FO
+			final Collection<String> stylesheetResources = generateXslFo
+					? componentRegistry.getTransformerBuilder().getStylesheetClosure( stylesheet )
+					: xslFoManifest.getStylesheetResources();
+			if ( manifest != null ) {
+				recordManifest( manifest, settingsFingerprint, imagesFingerprint, documentVersions, stylesheetResources );
+			}
+			if ( xslFoManifest != null && generateXslFo ) {
+				// the generated XSL-FO is itself recorded, so that it is not reused once overwritten by other means
+				Map<File, String> xslFoInputVersions = null;
+				if ( documentVersions != null ) {
+					xslFoInputVersions = new TreeMap<File, String>( documentVersions );
+					xslFoInputVersions.putAll( RenderingManifest.versions( Collections.singleton( xslFoFile ) ) );
+				}
+				recordManifest( xslFoManifest, settingsFingerprint, imagesFingerprint, xslFoInputVersions, stylesheetResources );
+			}
+		}
+	}
+
+	private void transform(Transformer transformer, Source source, Result result, File sourceFile) throws XSLTException {
+		try {
+			transformer.transform( source, result );
+		}
+		catch ( TransformerException e ) {
+			throw new XSLTException( "error rendering [" + e.getMessageAndLocation() + "] on " + sourceFile.getName(), e );
+		}
+	}
+
+	/**
+	 * Apply the (PDF) transformation, writing the resulting <tt>XSL-FO</tt> to the given file rather than handing it
+	 * to FOP.
+	 */
+	private void generateXslFo(Transformer transformer, Source source, File sourceFile, File xslFoFile) {
+		final File directory = xslFoFile.getParentFile();
+		if ( !directory.exists() ) {
+			boolean created = directory.mkdirs();
+			if ( !created && !directory.exists() ) {
+				throw new RenderingException( "Unable to create XSL-FO directory [" + directory.getAbsolutePath() + "]" );
+			}
+		}
+
+		final OutputStream out;
+		try {
+			out = new BufferedOutputStream( new FileOutputStream( xslFoFile ) );
+		}
+		catch ( FileNotFoundException e ) {
+			throw new RenderingException( "Unable to open XSL-FO file [" + xslFoFile.getAbsolutePath() + "]", e );
+		}
+		try {
+			transform( transformer, source, new StreamResult( out ), sourceFile );
+		}
+		finally {
+			try {
+				out.close();
+			}
+			catch ( IOException e ) {
+				log.info( "Unable to close XSL-FO file {}", xslFoFile );
 			}
 		}
+	}
+
+	/**
+	 * Run FOP over previously generated <tt>XSL-FO</tt>, streaming it from the file.
+	 */
+	private void renderXslFo(File xslFoFile, File targetFile) {
+		final ResultImpl result = new ResultImpl( targetFile, componentRegistry );
+		try {
+			final XMLReader reader = XMLReaderPool.newReader( true, false );
+			reader.setContentHandler( result.getHandler() );
+			reader.parse( new InputSource( xslFoFile.toURI().toString() ) );
+		}
+		catch ( SAXException e ) {
+			throw new RenderingException( "error rendering XSL-FO [" + xslFoFile.getAbsolutePath() + "]", e );
+		}
+		catch ( IOException e ) {
+			throw new RenderingException( "error reading XSL-FO [" + xslFoFile.getAbsolutePath() + "]", e );
+		}
 		finally {
-			console.stop();
+			result.release();
+		}
+	}
+
+	@Override
+	public void renderAll(
+			Collection<? extends RenderingSource> sources,
+			Collection<? extends FormatOptions> formatOptions) {
+		final List<RenderingJob> jobs = new ArrayList<RenderingJob>();
+		for ( RenderingSource source : sources ) {
+			for ( FormatOptions formatOption : formatOptions ) {
+				jobs.add( new RenderingJob( source, formatOption ) );
+			}
+		}
+
+		final WorkerPool workerPool = componentRegistry.buildWorkerPool( "render" );
+		log.info( "Rendering {} source/format combination(s) using up to {} thread(s)", jobs.size(), workerPool.getMaxThreads() );
+		workerPool.execute( jobs );
+	}
+
+	@Override
+	public Map<RenderingSource, Long> renderBatch(Collection<? extends RenderingSource> sources, FormatOptions formatOptions) {
+		final FormatPlan formatPlan = FormatPlanBuilder.buildFormatPlan( formatOptions );
+		final List<RenderingJob> jobs = new ArrayList<RenderingJob>();
+		for ( RenderingSource source : sources ) {
+			jobs.add( new RenderingJob( source, formatOptions ) );
+		}
+
+		final WorkerPool workerPool = componentRegistry.buildWorkerPool( "render" );
+		log.info( "Rendering {} source(s) to {} using up to {} thread(s)", new Object[] { jobs.size(), formatPlan.getName(), workerPool.getMaxThreads() } );
+		workerPool.execute( jobs );
+
+		final Map<RenderingSource, Long> timings = new LinkedHashMap<RenderingSource, Long>();
+		for ( RenderingJob job : jobs ) {
+			log.info( "Rendered {} in {} ms", job.getDescription(), job.elapsedTime );
+			timings.put( job.source, job.elapsedTime );
+		}
+		return timings;
+	}
+
+	/**
+	 * A single (source, format) rendering.  Each job builds its own transformer, console redirection and
+	 * transformation result, so jobs can safely run concurrently.
+	 */
+	private class RenderingJob implements WorkerPool.Job {
+		private final RenderingSource source;
+		private final FormatOptions formatOptions;
+		private volatile long elapsedTime;
+
+		private RenderingJob(RenderingSource source, FormatOptions formatOptions) {
+			this.source = source;
+			this.formatOptions = formatOptions;
+		}
+
+		@Override
+		public String getDescription() {
+			return stringify( source.getLanguage() ) + "/" + formatOptions.getName();
+		}
+
+		@Override
+		public void perform() {
+			final long start = System.currentTimeMillis();
+			render( source, formatOptions );
+			elapsedTime = System.currentTimeMillis() - start;
+		}
+	}
+
+	/**
+	 * Determine the source document plus all files it (transitively) includes.
+	 *
+	 * @return The document files, or null if the inclusions could not be determined.
+	 */
+	private Set<File> resolveDocumentFiles(File sourceFile) {
+		final Set<File> documentFiles = new TreeSet<File>();
+		documentFiles.add( sourceFile );
+		try {
+			final DocumentDependencyScanner dependencyScanner = new DocumentDependencyScanner(
+					componentRegistry.getEnvironment().getDocBookSchemaResolutionStrategy(),
+					componentRegistry.getConfiguration().getValueInjections(),
+					componentRegistry.buildWorkerPool( "dependency-scan" )
+			);
+			documentFiles.addAll( dependencyScanner.findDependencies( sourceFile ) );
+		}
+		catch ( JDocBookProcessException e ) {
+			log.info( "Unable to determine inclusions of {}; it will be re-rendered next time", sourceFile.getName() );
+			return null;
+		}
+		return documentFiles;
+	}
+
+	private void recordManifest(
+			RenderingManifest manifest,
+			String settingsFingerprint,
+			String imagesFingerprint,
+			Map<File, String> documentVersions,
+			Collection<String> stylesheetResources) {
+		if ( documentVersions == null || stylesheetResources == null ) {
+			return;
+		}
+		manifest.record( settingsFingerprint, imagesFingerprint, documentVersions, stylesheetResources );
+	}
+
+	/**
+	 * Fingerprint the settings (other than the document and stylesheet themselves) which influence the rendered
+	 * output.
+	 */
+	private String fingerprintSettings(
+			String languageStr,
+			FormatPlan formatPlan,
+			URL stylesheet,
+			File targetFile,
+			boolean pipelinedProfiling) {
+		final StringBuilder buffer = new StringBuilder();
+		buffer.append( "language=" ).append( languageStr )
+				.append( ";format=" ).append( formatPlan.getName() )
+				.append( ";stylesheet=" ).append( stylesheet.toExternalForm() )
+				.append( ";target=" ).append( targetFile.getAbsolutePath() )
+				.append( ";relativeImageUris=" ).append( componentRegistry.getConfiguration().isUseRelativeImageUris() );
+
+		final Map<String, String> transformerParameters = componentRegistry.getConfiguration().getTransformerParameters();
+		if ( transformerParameters != null ) {
+			buffer.append( ";parameters=" ).append( new TreeMap<String, String>( transformerParameters ) );
+		}
+
+		if ( pipelinedProfiling ) {
+			final Profiling profiling = componentRegistry.getConfiguration().getProfiling();
+			buffer.append( ";profiling=" ).append( profiling.getAttributeName() )
+					.append( '=' ).append( profiling.getAttributeValue() );
+		}
+
+		final Set<ValueInjection> valueInjections = componentRegistry.getConfiguration().getValueInjections();
+		if ( valueInjections != null ) {
+			buffer.append( ";injections=" ).append( FileUtils.buildInjectedEntitySubset( valueInjections ) );
+		}
+
+		if ( isPdf( formatPlan ) ) {
+			buffer.append( ";fontDirectories=" ).append( componentRegistry.getEnvironment().getFontDirectories() )
+					.append( ";autoDetectFonts=" ).append( componentRegistry.getConfiguration().isAutoDetectFontsEnabled() )
+					.append( ";fontCache=" ).append( componentRegistry.getConfiguration().isUseFopFontCacheEnabled() )
+					.append( ";fopConfig=" ).append(
+							FopConfigHelper.toXml( FopConfigHelper.getFopConfiguration( componentRegistry ) )
+					);
+		}
+
+		return Fingerprints.digest( buffer.toString() );
+	}
+
+	/**
+	 * Fingerprint the staged images and css.
+	 */
+	private String fingerprintStagedImages(File stagingDirectory) {
+		final Map<String, String> versions = new TreeMap<String, String>();
+		collectVersions( new File( stagingDirectory, "images" ), "images/", versions );
+		collectVersions( new File( stagingDirectory, "css" ), "css/", versions );
+		return Fingerprints.digest( versions.toString() );
+	}
+
+	private static void collectVersions(File directory, String path, Map<String, String> versions) {
+		final File[] files = directory.listFiles();
+		if ( files == null ) {
+			return;
+		}
+		for ( File file : files ) {
+			if ( file.isDirectory() ) {
+				collectVersions( file, path + file.getName() + '/', versions );
+			}
+			else {
+				versions.put( path + file.getName(), Fingerprints.version( file ) );
+			}
 		}
 	}
 
@@ -168,9 +537,7 @@ public class RendererImpl implements Renderer {
 			File targetFile,
 			FormatPlan formatPlan,
 			File stagingDirectory) throws RenderingException, XSLTException {
-		final URL transformationStylesheet =  componentRegistry.getEnvironment()
-				.getResourceDelegate()
-				.requireResource( formatPlan.getStylesheetResource() );
+		final URL transformationStylesheet = resolveStylesheet( formatPlan );
 		Transformer transformer = componentRegistry.getTransformerBuilder().buildTransformer( formatPlan, transformationStylesheet );
 		if ( formatPlan.requiresSettingImagePath() ) {
 			try {
@@ -198,6 +565,12 @@ public class RendererImpl implements Renderer {
 		return transformer;
 	}
 
+	private URL resolveStylesheet(FormatPlan formatPlan) {
+		return componentRegistry.getEnvironment()
+				.getResourceDelegate()
+				.requireResource( formatPlan.getStylesheetResource() );
+	}
+
 	private File determineConsoleRedirectFile(RenderingSource source, FormatPlan formatPlan) {
 		String fileName = "console-"
 				+ stringify( source.getLanguage() ) + "-"
@@ -210,16 +583,46 @@ public class RendererImpl implements Renderer {
 		return formatPlan.getTargetNamingStrategy().determineTargetFileName( source );
 	}
 
-	protected Source buildSource(File sourceFile) throws RenderingException {
+	private Source buildTransformationSource(
+			final File sourceFile,
+			File documentFile,
+			final ProfilingSource pipelinedProfiling) {
+		if ( resolvedDocumentCache == null ) {
+			return buildParsingSource( sourceFile, pipelinedProfiling );
+		}
+		return resolvedDocumentCache.getSource(
+				sourceFile,
+				documentFile,
+				new Callable<SAXSource>() {
+					@Override
+					public SAXSource call() {
+						return buildParsingSource( sourceFile, pipelinedProfiling );
+					}
+				}
+		);
+	}
+
+	private SAXSource buildParsingSource(File sourceFile, ProfilingSource pipelinedProfiling) {
+		return pipelinedProfiling == null
+				? buildSource( sourceFile )
+				: componentRegistry.getProfiler().buildProfilingSource( pipelinedProfiling );
+	}
+
+	protected SAXSource buildSource(File sourceFile) throws RenderingException {
 		return FileUtils.createSAXSource(
 			sourceFile,
 			entityResolver,
-			componentRegistry.getConfiguration().getValueInjections()
+			componentRegistry.getConfiguration().getValueInjections(),
+			componentRegistry.getDtdGrammarPool()
 		);
 	}
 
+	private static boolean isPdf(FormatPlan formatPlan) {
+		return StandardDocBookFormatMetadata.PDF.getName().equals( formatPlan.getName() );
+	}
+
 	protected Result buildResult(File targetFile, FormatPlan formatPlan) throws RenderingException, XSLTException {
-		if ( StandardDocBookFormatMetadata.PDF.getName().equals( formatPlan.getName() ) ) {
+		if ( isPdf( formatPlan ) ) {
 			return new ResultImpl( targetFile, componentRegistry );
 		}
 		else {
@@ -228,7 +631,7 @@ public class RendererImpl implements Renderer {
 	}
 
 	protected void releaseResult(Result transformationResult, FormatPlan formatPlan) {
-		if ( StandardDocBookFormatMetadata.PDF.getName().equals( formatPlan.getName() ) ) {
+		if ( isPdf( formatPlan ) ) {
 			( (ResultImpl) transformationResult ).release();
 		}
 		// otherwise, nothing to do...
@@ -0,0 +1,229 @@
+/*
+ * jDocBook, processing of DocBook sources
+ *
+ * Copyright (c) 2010, Red Hat Inc. or third-party contributors as
+ * indicated by the @author tags or express copyright attribution
+ * statements applied by the authors.  All third-party contributions are
+ * distributed under license by Red Hat Inc.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.jboss.jdocbook.render;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.jboss.jdocbook.JDocBookProcessException;
+import org.jboss.jdocbook.util.FileUtils;
+import org.jboss.jdocbook.util.Fingerprints;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Records the state of the inputs which went into rendering a single (language, format) output, so that later
+ * renderings can be skipped when none of those inputs changed.
+ * <p/>
+ * The manifest records<ul>
+ * <li>a fingerprint of the rendering settings (value injections, transformer parameters, etc)</li>
+ * <li>a fingerprint of the staged images (and css)</li>
+ * <li>a version indicator for the source document and each file it (transitively) includes</li>
+ * <li>a version indicator for the stylesheet and each resource it (transitively) imports or includes</li>
+ * </ul>
+ */
+public class RenderingManifest {
+	private static final Logger log = LoggerFactory.getLogger( RenderingManifest.class );
+
+	/**
+	 * Rendering manifest directory path, relative to jDocBook work directory.
+	 */
+	public static final String MANIFEST_DIRECTORY = "render-state";
+
+	private static final String SETTINGS_KEY = "#settings";
+	private static final String IMAGES_KEY = "#images";
+	private static final String DOCUMENT_PREFIX = "document:";
+	private static final String STYLESHEET_PREFIX = "stylesheet:";
+
+	private final File file;
+
+	public RenderingManifest(File workDirectory, String language, String formatName) {
+		this.file = new File( new File( workDirectory, MANIFEST_DIRECTORY ), language + '-' + formatName + ".properties" );
+	}
+
+	/**
+	 * Is the given target up-to-date with respect to the inputs recorded in this manifest?
+	 *
+	 * @param targetFile The rendering target file
+	 * @param settingsFingerprint The fingerprint of the current rendering settings
+	 * @param imagesFingerprint The fingerprint of the currently staged images
+	 *
+	 * @return True if the target exists and none of its inputs changed; false otherwise.
+	 */
+	public boolean isUpToDate(File targetFile, String settingsFingerprint, String imagesFingerprint) {
+		if ( !targetFile.exists() || !file.exists() ) {
+			return false;
+		}
+
+		final Properties state;
+		try {
+			state = FileUtils.loadProperties( file );
+		}
+		catch ( IOException e ) {
+			log.debug( "Unable to read rendering manifest {}", file );
+			return false;
+		}
+
+		if ( !settingsFingerprint.equals( state.getProperty( SETTINGS_KEY ) ) ) {
+			log.debug( "Rendering settings changed since {} was rendered", targetFile );
+			return false;
+		}
+		if ( !imagesFingerprint.equals( state.getProperty( IMAGES_KEY ) ) ) {
+			log.debug( "Staged images changed since {} was rendered", targetFile );
+			return false;
+		}
+
+		for ( Map.Entry<Object, Object> entry : state.entrySet() ) {
+			final String key = (String) entry.getKey();
+			final String currentVersion;
+			if ( key.startsWith( DOCUMENT_PREFIX ) ) {
+				currentVersion = Fingerprints.version( new File( key.substring( DOCUMENT_PREFIX.length() ) ) );
+			}
+			else if ( key.startsWith( STYLESHEET_PREFIX ) ) {
+				currentVersion = stylesheetVersion( key.substring( STYLESHEET_PREFIX.length() ) );
+			}
+			else {
+				continue;
+			}
+			if ( !entry.getValue().equals( currentVersion ) ) {
+				log.debug( "{} changed since {} was rendered", key, targetFile );
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static String stylesheetVersion(String resource) {
+		try {
+			return Fingerprints.version( new URL( resource ) );
+		}
+		catch ( MalformedURLException e ) {
+			return "unknown";
+		}
+		catch ( JDocBookProcessException e ) {
+			return "unreadable";
+		}
+	}
+
+	/**
+	 * Retrieve the stylesheet resources recorded by the last {@link #record}.
+	 *
+	 * @return The URLs of the stylesheet plus all resources it (transitively) imports or includes, or null if nothing
+	 * was recorded.
+	 */
+	public Set<String> getStylesheetResources() {
+		if ( !file.exists() ) {
+			return null;
+		}
+		final Properties state;
+		try {
+			state = FileUtils.loadProperties( file );
+		}
+		catch ( IOException e ) {
+			log.debug( "Unable to read rendering manifest {}", file );
+			return null;
+		}
+		final Set<String> stylesheetResources = new TreeSet<String>();
+		for ( Object key : state.keySet() ) {
+			if ( ( (String) key ).startsWith( STYLESHEET_PREFIX ) ) {
+				stylesheetResources.add( ( (String) key ).substring( STYLESHEET_PREFIX.length() ) );
+			}
+		}
+		return stylesheetResources.isEmpty() ? null : stylesheetResources;
+	}
+
+	/**
+	 * Discard the recorded state; to be called before re-rendering so that a failed rendering never leaves behind
+	 * a manifest claiming the (partial) target to be up-to-date.
+	 */
+	public void invalidate() {
+		if ( file.exists() && !file.delete() ) {
+			log.info( "Unable to delete rendering manifest {}", file );
+		}
+	}
+
+	/**
+	 * Determine the current versions of the given files.  To be called before rendering, so that changes made while
+	 * rendering are noticed by the next rendering.
+	 *
+	 * @param files The files
+	 *
+	 * @return The version of each file
+	 */
+	public static Map<File, String> versions(Collection<File> files) {
+		final Map<File, String> versions = new TreeMap<File, String>();
+		for ( File file : files ) {
+			versions.put( file, Fingerprints.version( file ) );
+		}
+		return versions;
+	}
+
+	/**
+	 * Record the state of the inputs of a just completed rendering.
+	 *
+	 * @param settingsFingerprint The fingerprint of the rendering settings
+	 * @param imagesFingerprint The fingerprint of the staged images
+	 * @param documentVersions The versions of the source document plus all files it (transitively) includes, as
+	 * determined (see {@link #versions}) before rendering
+	 * @param stylesheetResources The URLs of the stylesheet plus all resources it (transitively) imports or includes
+	 */
+	public void record(
+			String settingsFingerprint,
+			String imagesFingerprint,
+			Map<File, String> documentVersions,
+			Collection<String> stylesheetResources) {
+		final Properties state = new Properties();
+		state.setProperty( SETTINGS_KEY, settingsFingerprint );
+		state.setProperty( IMAGES_KEY, imagesFingerprint );
+		for ( Map.Entry<File, String> documentVersion : documentVersions.entrySet() ) {
+			state.setProperty( DOCUMENT_PREFIX + documentVersion.getKey().getAbsolutePath(), documentVersion.getValue() );
+		}
+		for ( String stylesheetResource : stylesheetResources ) {
+			state.setProperty( STYLESHEET_PREFIX + stylesheetResource, stylesheetVersion( stylesheetResource ) );
+		}
+
+		final File directory = file.getParentFile();
+		if ( !directory.exists() ) {
+			boolean created = directory.mkdirs();
+			if ( !created && !directory.exists() ) {
+				log.info( "Unable to create rendering manifest directory {}", directory );
+				return;
+			}
+		}
+		try {
+			FileUtils.storeProperties( state, file, "jDocBook rendering manifest" );
+		}
+		catch ( IOException e ) {
+			log.info( "Unable to write rendering manifest [" + file + "]", e );
+		}
+	}
+}
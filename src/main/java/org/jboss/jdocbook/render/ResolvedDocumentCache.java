@@ -0,0 +1,218 @@
+/*
+ * jDocBook, processing of DocBook sources
+ *
+ * Copyright (c) 2010, Red Hat Inc. or third-party contributors as
+ * indicated by the @author tags or express copyright attribution
+ * statements applied by the authors.  All third-party contributions are
+ * distributed under license by Red Hat Inc.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.jboss.jdocbook.render;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import javax.xml.transform.sax.SAXSource;
+
+import org.jboss.jdocbook.JDocBookComponentRegistry;
+import org.jboss.jdocbook.JDocBookProcessException;
+import org.jboss.jdocbook.util.DocumentDependencyScanner;
+import org.jboss.jdocbook.util.SAXEventBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.SAXException;
+
+/**
+ * A thread-safe, size bounded cache of resolved (parsed, XInclude-expanded, entity-expanded) documents, allowing a
+ * document to be parsed only once when it is rendered to multiple formats.  The documents are kept as
+ * {@link SAXEventBuffer recorded SAX events} rather than as a built tree, since the tree built for a transformation
+ * depends on the stylesheet (<tt>xsl:strip-space</tt>, etc).
+ * <p/>
+ * A cached document is discarded as soon as the modification time of the document or of any of the files it
+ * includes changes.
+ */
+public class ResolvedDocumentCache {
+	private static final Logger log = LoggerFactory.getLogger( ResolvedDocumentCache.class );
+
+	public static final int DEFAULT_MAX_SIZE = 4;
+
+	private final JDocBookComponentRegistry componentRegistry;
+	private final int maxSize;
+	private final LinkedHashMap<File, FutureTask<ResolvedDocument>> entries;
+
+	public ResolvedDocumentCache(JDocBookComponentRegistry componentRegistry) {
+		this( componentRegistry, DEFAULT_MAX_SIZE );
+	}
+
+	public ResolvedDocumentCache(JDocBookComponentRegistry componentRegistry, int maxSize) {
+		this.componentRegistry = componentRegistry;
+		this.maxSize = maxSize;
+		this.entries = new LinkedHashMap<File, FutureTask<ResolvedDocument>>( 16, 0.75f, true ) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<File, FutureTask<ResolvedDocument>> eldest) {
+				if ( size() > ResolvedDocumentCache.this.maxSize ) {
+					log.debug( "Evicting resolved document {} from cache", eldest.getKey() );
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Retrieve a source for the given document, parsing (and caching) it if it is not cached or if the cached copy is
+	 * out of date.
+	 *
+	 * @param key The file identifying the rendered document
+	 * @param documentFile The actual document file to be parsed, used to determine the files it includes
+	 * @param parsingSource Callback used to build the source which parses the document on a cache miss
+	 *
+	 * @return The source
+	 *
+	 * @throws RenderingException Indicates a problem parsing the document
+	 */
+	public SAXSource getSource(final File key, final File documentFile, final Callable<SAXSource> parsingSource) {
+		FutureTask<ResolvedDocument> entry;
+		boolean load = false;
+		synchronized ( entries ) {
+			entry = entries.get( key );
+			if ( entry != null && entry.isDone() && !isCurrent( entry ) ) {
+				log.debug( "Resolved document {} is out of date", key );
+				entry = null;
+			}
+			if ( entry == null ) {
+				entry = new FutureTask<ResolvedDocument>(
+						new Callable<ResolvedDocument>() {
+							@Override
+							public ResolvedDocument call() throws Exception {
+								return resolve( documentFile, parsingSource.call() );
+							}
+						}
+				);
+				entries.put( key, entry );
+				load = true;
+			}
+		}
+
+		if ( load ) {
+			entry.run();
+		}
+
+		try {
+			return entry.get().events.toSource();
+		}
+		catch ( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+			throw new RenderingException( "Interrupted waiting on resolution of document [" + documentFile + "]", e );
+		}
+		catch ( ExecutionException e ) {
+			// do not keep failures around; the next request should get to try again
+			synchronized ( entries ) {
+				if ( entries.get( key ) == entry ) {
+					entries.remove( key );
+				}
+			}
+			final Throwable cause = e.getCause();
+			if ( cause instanceof RuntimeException ) {
+				throw (RuntimeException) cause;
+			}
+			if ( cause instanceof Error ) {
+				throw (Error) cause;
+			}
+			throw new RenderingException( "unable to resolve document [" + documentFile + "]", cause );
+		}
+	}
+
+	/**
+	 * Remove all cached documents.
+	 */
+	public void clear() {
+		synchronized ( entries ) {
+			entries.clear();
+		}
+	}
+
+	private static boolean isCurrent(FutureTask<ResolvedDocument> entry) {
+		try {
+			return entry.get().isCurrent();
+		}
+		catch ( Exception e ) {
+			return false;
+		}
+	}
+
+	private ResolvedDocument resolve(File documentFile, SAXSource parsingSource) {
+		// determine the versions before parsing, so that changes made while parsing are noticed next time
+		final Map<File, Long> versions = new HashMap<File, Long>();
+		versions.put( documentFile, documentFile.lastModified() );
+		try {
+			final DocumentDependencyScanner dependencyScanner = new DocumentDependencyScanner(
+					componentRegistry.getEnvironment().getDocBookSchemaResolutionStrategy(),
+					componentRegistry.getConfiguration().getValueInjections(),
+					componentRegistry.buildWorkerPool( "dependency-scan" )
+			);
+			for ( File dependency : dependencyScanner.findDependencies( documentFile ) ) {
+				versions.put( dependency, dependency.lastModified() );
+			}
+		}
+		catch ( JDocBookProcessException e ) {
+			log.info( "Unable to determine inclusions of {}; it will not be cached", documentFile.getName() );
+			versions.put( documentFile, -1L );
+		}
+
+		final long start = System.currentTimeMillis();
+		final SAXEventBuffer events;
+		try {
+			events = SAXEventBuffer.record( parsingSource );
+		}
+		catch ( SAXException e ) {
+			throw new RenderingException( "unable to parse document [" + documentFile + "] : " + e.getMessage(), e );
+		}
+		catch ( IOException e ) {
+			throw new RenderingException( "unable to read document [" + documentFile + "]", e );
+		}
+		log.debug(
+				"Resolved document {} ({} events) in {} ms",
+				new Object[] { documentFile.getName(), events.getEventCount(), System.currentTimeMillis() - start }
+		);
+		return new ResolvedDocument( events, versions );
+	}
+
+	private static class ResolvedDocument {
+		private final SAXEventBuffer events;
+		private final Map<File, Long> versions;
+
+		private ResolvedDocument(SAXEventBuffer events, Map<File, Long> versions) {
+			this.events = events;
+			this.versions = versions;
+		}
+
+		private boolean isCurrent() {
+			for ( Map.Entry<File, Long> version : versions.entrySet() ) {
+				if ( version.getKey().lastModified() != version.getValue() ) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+}
@@ -42,4 +42,15 @@ public interface XslFoGenerator {
 	 */
 	@SuppressWarnings({ "UnusedDeclaration" })
 	public void generateXslFo(RenderingSource source, FormatOptions formatOptions);
+
+	/**
+	 * Generate the <tt>XSL-FO</tt> file, optionally <tt>gzip</tt> compressed (into a <tt>.fo.gz</tt> file).  For
+	 * large books the <tt>XSL-FO</tt> can easily run into hundreds of megabytes.
+	 *
+	 * @param source The source document.
+	 * @param formatOptions The format options for FOP-based formatting plan (mainly needed for stylesheet references).
+	 * @param compress Whether to compress the generated file.
+	 */
+	@SuppressWarnings({ "UnusedDeclaration" })
+	public void generateXslFo(RenderingSource source, FormatOptions formatOptions, boolean compress);
 }
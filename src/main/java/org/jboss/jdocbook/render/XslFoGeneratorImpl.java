@@ -23,24 +23,27 @@
  */
 package org.jboss.jdocbook.render;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.URL;
+import java.util.zip.GZIPOutputStream;
 import javax.xml.transform.Result;
 import javax.xml.transform.Source;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.stream.StreamResult;
-import javax.xml.transform.stream.StreamSource;
 
 import org.jboss.jdocbook.JDocBookComponentRegistry;
 import org.jboss.jdocbook.util.FileUtils;
 import org.jboss.jdocbook.util.StandardDocBookFormatMetadata;
 import org.jboss.jdocbook.util.TranslationUtils;
+import org.jboss.jdocbook.xslt.EntityResolverChain;
 import org.jboss.jdocbook.xslt.FormatPlan;
+import org.jboss.jdocbook.xslt.LocalDocBookSchemaResolver;
+import org.jboss.jdocbook.xslt.XIncludeEntityResolver;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -52,73 +55,91 @@ import org.slf4j.LoggerFactory;
 public class XslFoGeneratorImpl implements XslFoGenerator {
 	private static final Logger log = LoggerFactory.getLogger( XslFoGeneratorImpl.class );
 
+	/**
+	 * Size of the buffer for writing the <tt>XSL-FO</tt> file.
+	 */
+	private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+
 	private final JDocBookComponentRegistry componentRegistry;
+	private final EntityResolverChain entityResolver;
 
 	public XslFoGeneratorImpl(JDocBookComponentRegistry componentRegistry) {
 		this.componentRegistry = componentRegistry;
+		entityResolver = new EntityResolverChain( componentRegistry.getTransformerBuilder().getCatalogResolver() );
+		entityResolver.addEntityResolver( new LocalDocBookSchemaResolver( componentRegistry.getEnvironment().getDocBookSchemaResolutionStrategy() ) );
+		entityResolver.addEntityResolver( new XIncludeEntityResolver( componentRegistry ) );
 	}
 
 	@Override
 	public void generateXslFo(RenderingSource source, FormatOptions formatOptions) {
+		generateXslFo( source, formatOptions, false );
+	}
+
+	@Override
+	public void generateXslFo(RenderingSource source, FormatOptions formatOptions, boolean compress) {
 		final FormatPlan formatPlan = FormatPlanBuilder.buildFormatPlan( formatOptions );
 		final Transformer transformer = buildXslFoTransformer( formatPlan );
 
-		final String sourceFileBaseName = FileUtils.basename( source.resolveSourceDocument().getAbsolutePath() );
-		final File fo = new File( source.getXslFoDirectory(), sourceFileBaseName + "fo" );
+		final File sourceFile = source.resolveSourceDocument();
+		final String sourceFileBaseName = FileUtils.basename( sourceFile.getAbsolutePath() );
+		final File fo = new File( source.getXslFoDirectory(), sourceFileBaseName + ( compress ? "fo.gz" : "fo" ) );
 
 		String lang = TranslationUtils.render( source.getLanguage(), componentRegistry.getConfiguration().getLocaleSeparator() );
 		transformer.setParameter( "l10n.gentext.language", lang );
 
-		boolean createFile;
 		if ( ! fo.getParentFile().exists() ) {
 			boolean created = fo.getParentFile().mkdirs();
-			if ( ! created ) {
+			if ( ! created && ! fo.getParentFile().exists() ) {
 				throw new RenderingException( "Unable to create FO file directory" );
 			}
-			createFile = true;
 		}
-		else {
-			createFile = ! fo.exists();
+
+		final OutputStream out;
+		try {
+			out = openOutputStream( fo, compress );
 		}
-		if ( createFile ) {
-			try {
-				boolean created = fo.createNewFile();
-				if ( ! created ) {
-					log.info( "File system indicated problem creating FO file {}", fo );
-				}
-			}
-			catch ( IOException e ) {
-				throw new RenderingException( "Unable to create FO file " + fo.toString() );
-			}
+		catch ( IOException e ) {
+			throw new RenderingException( "Unable to open output stream to FO file", e );
 		}
 
 		try {
-			final OutputStream out = new FileOutputStream( fo );
+			Source saxSource = FileUtils.createSAXSource(
+					sourceFile,
+					entityResolver,
+					componentRegistry.getConfiguration().getValueInjections(),
+					componentRegistry.getDtdGrammarPool()
+			);
+			Result resultStream = new StreamResult( out );
+
 			try {
-				File sourceFile = source.resolveSourceDocument();
-				Source sourceStream = new StreamSource( sourceFile );
-				Result resultStream = new StreamResult( out );
-
-				try {
-					transformer.transform( sourceStream, resultStream );
-				}
-				catch ( TransformerException e ) {
-					throw new RenderingException( "Unable to apply FO transformation", e );
-				}
+				transformer.transform( saxSource, resultStream );
 			}
-			finally {
-				try {
-					out.close();
-				}
-				catch ( IOException e ) {
-					log.info( "Unable to close output stream {}", fo );
-				}
+			catch ( TransformerException e ) {
+				throw new RenderingException( "Unable to apply FO transformation", e );
 			}
 		}
-		catch ( FileNotFoundException e ) {
-			throw new RenderingException( "Unable to open output stream to FO file", e );
+		finally {
+			try {
+				out.close();
+			}
+			catch ( IOException e ) {
+				log.info( "Unable to close output stream {}", fo );
+			}
 		}
+	}
 
+	private static OutputStream openOutputStream(File fo, boolean compress) throws IOException {
+		final OutputStream fileStream = new FileOutputStream( fo );
+		if ( ! compress ) {
+			return new BufferedOutputStream( fileStream, OUTPUT_BUFFER_SIZE );
+		}
+		try {
+			return new GZIPOutputStream( new BufferedOutputStream( fileStream, OUTPUT_BUFFER_SIZE ), OUTPUT_BUFFER_SIZE );
+		}
+		catch ( IOException e ) {
+			fileStream.close();
+			throw e;
+		}
 	}
 
 	private Transformer buildXslFoTransformer(FormatPlan formatPlan) {
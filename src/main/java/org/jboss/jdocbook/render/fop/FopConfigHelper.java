@@ -31,10 +31,16 @@ import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.avalon.framework.configuration.ConfigurationUtil;
 import org.apache.avalon.framework.configuration.DefaultConfiguration;
+import org.apache.fop.apps.FOPException;
 import org.apache.fop.fonts.EmbedFontInfo;
 import org.apache.fop.fonts.FontCache;
 import org.apache.fop.fonts.FontEventListener;
@@ -44,6 +50,8 @@ import org.apache.fop.fonts.FontTriplet;
 import org.apache.fop.fonts.autodetect.FontInfoFinder;
 import org.jboss.jdocbook.JDocBookComponentRegistry;
 import org.jboss.jdocbook.JDocBookProcessException;
+import org.jboss.jdocbook.util.FileUtils;
+import org.jboss.jdocbook.util.WorkerPool;
 import org.jdom.input.DOMBuilder;
 import org.jdom.output.Format;
 import org.jdom.output.XMLOutputter;
@@ -64,22 +72,68 @@ public class FopConfigHelper {
 	 */
 	public static final String FONT_CACHE_FILE = "fop/fop-fonts.cache";
 
-	private static FopConfigHelper INSTANCE;
+	/**
+	 * Locks serializing access to the font cache files, keyed by cache file (one per work directory ever used, which
+	 * is small enough not to need eviction).
+	 */
+	private static final ConcurrentMap<File, Object> FONT_CACHE_LOCKS = new ConcurrentHashMap<File, Object>();
+
+	/**
+	 * The maximum number of generated user-configs kept in {@link #INSTANCES}.
+	 */
+	private static final int MAX_INSTANCES = 4;
+
+	/**
+	 * The most recently used generated user-configs, keyed by the settings which go into generating them.  This
+	 * allows registries with the same font settings to share the (expensive to build) user-config, while registries
+	 * with different font settings each get their own.  The number of entries is bounded, so that long running
+	 * processes (IDEs, Maven daemons) do not keep the user-config of every build they ever ran.
+	 */
+	private static final Map<FontSettings, FopConfigHelper> INSTANCES = new LinkedHashMap<FontSettings, FopConfigHelper>( 16, 0.75f, true ) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<FontSettings, FopConfigHelper> eldest) {
+			return size() > MAX_INSTANCES;
+		}
+	};
 
 	public static DefaultConfiguration getFopConfiguration(JDocBookComponentRegistry componentRegistry) {
-		if ( INSTANCE == null ) {
-			log.info( "creating FOP user-config DOM" );
-			INSTANCE = new FopConfigHelper( componentRegistry );
+		final FontSettings fontSettings = new FontSettings( componentRegistry );
+		FopConfigHelper helper;
+		synchronized ( INSTANCES ) {
+			helper = INSTANCES.get( fontSettings );
+			if ( helper == null ) {
+				helper = new FopConfigHelper( fontSettings, componentRegistry.buildWorkerPool( "font-scan" ) );
+				INSTANCES.put( fontSettings, helper );
+			}
 		}
-		return INSTANCE.fopConfiguration;
+		// built outside of the INSTANCES lock, so that helpers for different settings can build concurrently
+		return helper.getFopConfiguration();
 	}
 
-	private JDocBookComponentRegistry componentRegistry;
+	private final FontSettings fontSettings;
+	private final WorkerPool fontScanPool;
 	private DefaultConfiguration fopConfiguration;
 
 	public FopConfigHelper(JDocBookComponentRegistry componentRegistry) {
-		this.componentRegistry = componentRegistry;
-		this.fopConfiguration = buildFopConfiguration();
+		this( new FontSettings( componentRegistry ), componentRegistry.buildWorkerPool( "font-scan" ) );
+	}
+
+	private FopConfigHelper(FontSettings fontSettings, WorkerPool fontScanPool) {
+		this.fontSettings = fontSettings;
+		this.fontScanPool = fontScanPool;
+	}
+
+	/**
+	 * Retrieve the FOP user-config, generating it on first access.
+	 *
+	 * @return The FOP user-config
+	 */
+	public synchronized DefaultConfiguration getFopConfiguration() {
+		if ( fopConfiguration == null ) {
+			log.info( "creating FOP user-config DOM" );
+			fopConfiguration = buildFopConfiguration();
+		}
+		return fopConfiguration;
 	}
 
 	private DefaultConfiguration buildFopConfiguration() {
@@ -109,8 +163,8 @@ public class FopConfigHelper {
 		DefaultConfiguration fontsConfig = new DefaultConfiguration( "fonts" );
 
 		/* did not work for me :(
-		if ( componentRegistry.getEnvironment().getFontDirectories() != null ) {
-			for ( File fontDirectory : componentRegistry.getEnvironment().getFontDirectories() ) {
+		if ( fontSettings.fontDirectories != null ) {
+			for ( File fontDirectory : fontSettings.fontDirectories ) {
 				DefaultConfiguration fontDirectoryElement = new DefaultConfiguration( "directory" );
 				fontDirectoryElement.setValue( fontDirectory.getAbsolutePath() );
 				fontsConfig.addChild( fontDirectoryElement );
@@ -162,7 +216,7 @@ public class FopConfigHelper {
 			);
 		}
 
-		if ( componentRegistry.getConfiguration().isAutoDetectFontsEnabled() ) {
+		if ( fontSettings.autoDetectFonts ) {
 			DefaultConfiguration autoDetect = new DefaultConfiguration( "auto-detect" );
 			fontsConfig.addChild( autoDetect );
 		}
@@ -171,70 +225,229 @@ public class FopConfigHelper {
 	}
 
 	private List<EmbedFontInfo> locateEmbedFontInfos() {
-		List<EmbedFontInfo> infoList = new ArrayList<EmbedFontInfo>();
-		if ( componentRegistry.getEnvironment().getFontDirectories() != null ) {
-			FontCache fontCache = componentRegistry.getConfiguration().isUseFopFontCacheEnabled()
-					? FontCache.loadFrom( new File( getFopWorkDirectory(), FONT_CACHE_FILE ) )
-					: new FontCache();
-			FontResolver fontResolver = FontSetup.createMinimalFontResolver();
-			FontInfoFinder fontInfoFinder = new FontInfoFinder();
-			fontInfoFinder.setEventListener(
-					new FontEventListener() {
-						public void fontSubstituted(Object source, FontTriplet requested, FontTriplet effective) {
-							log.info(
-									"FOP font substitution : " + requested + " -> " + effective + "; source=" + source
-							);
-						}
-
-						public void fontLoadingErrorAtAutoDetection(Object source, String fontURL, Exception e) {
-							log.info(
-									"FOP autodetect font loading error : " + fontURL + "; source=" + source,
-									e
-							);
-						}
-
-						public void glyphNotAvailable(Object source, char ch, String fontName) {
-							log.trace(
-									"Glyph not available for character [" + ch + "] in font " + fontName +
-											"; source=" + source
-							);
-						}
-					}
-			);
-			for ( File fontDirectory : componentRegistry.getEnvironment().getFontDirectories() ) {
-				if ( !fontDirectory.exists() ) {
-					log.warn( "Defined font directory {} does not exist", fontDirectory );
-					continue;
-				}
+		final List<File> fontFiles = collectFontFiles();
+		if ( fontFiles.isEmpty() ) {
+			return Collections.emptyList();
+		}
 
-				if ( !fontDirectory.isDirectory() ) {
-					log.warn( "Defined font directory {} is not a directory", fontDirectory );
+		if ( !fontSettings.useFontCache ) {
+			return locateEmbedFontInfos( fontFiles, new FontCache() );
+		}
+
+		// the cache file is shared by all helpers using the same work directory; serializing on it also keeps
+		// them from parsing the same fonts at the same time
+		final File fontCacheFile = new File( fontSettings.workDirectory, FONT_CACHE_FILE );
+		synchronized ( fontCacheLock( fontCacheFile ) ) {
+			FontCache fontCache = FontCache.loadFrom( fontCacheFile );
+			if ( fontCache == null ) {
+				fontCache = new FontCache();
+			}
+			final List<EmbedFontInfo> infoList = locateEmbedFontInfos( fontFiles, fontCache );
+			saveFontCache( fontCache, fontCacheFile );
+			return infoList;
+		}
+	}
+
+	/**
+	 * Did the given (unchanged) file fail to load as a font before?  {@link FontCache#isFailedFont} reports a file
+	 * which changed since it failed as failed as well (dropping its failure entry though), hence the second check.
+	 */
+	private static boolean isKnownFailedFont(FontCache fontCache, String embedUrl, long lastModified) {
+		return fontCache.isFailedFont( embedUrl, lastModified ) && fontCache.isFailedFont( embedUrl, lastModified );
+	}
+
+	private static Object fontCacheLock(File fontCacheFile) {
+		final Object lock = new Object();
+		final Object existing = FONT_CACHE_LOCKS.putIfAbsent( fontCacheFile, lock );
+		return existing == null ? lock : existing;
+	}
+
+	/**
+	 * Write the font cache back, if anything was added to (or dropped from) it.  The cache is written to a temporary
+	 * file first which then replaces the cache file, so that concurrent builds never read a partially written cache.
+	 */
+	private static void saveFontCache(FontCache fontCache, File fontCacheFile) {
+		if ( !fontCache.hasChanged() ) {
+			log.debug( "Font cache {} is up-to-date", fontCacheFile );
+			return;
+		}
+
+		final File directory = fontCacheFile.getParentFile();
+		if ( !directory.exists() ) {
+			boolean created = directory.mkdirs();
+			if ( !created && !directory.exists() ) {
+				log.info( "Unable to create font cache directory {}", directory );
+				return;
+			}
+		}
+
+		try {
+			final File tempFile = File.createTempFile( fontCacheFile.getName(), ".tmp", directory );
+			try {
+				fontCache.saveTo( tempFile );
+			}
+			catch ( FOPException e ) {
+				//noinspection ResultOfMethodCallIgnored
+				tempFile.delete();
+				log.info( "Unable to write font cache [" + fontCacheFile + "]", e );
+				return;
+			}
+			FileUtils.replace( tempFile, fontCacheFile );
+			log.debug( "Saved font cache {}", fontCacheFile );
+		}
+		catch ( IOException e ) {
+			log.info( "Unable to write font cache [" + fontCacheFile + "]", e );
+		}
+	}
+
+	private List<EmbedFontInfo> locateEmbedFontInfos(List<File> fontFiles, FontCache fontCache) {
+		// Fonts already known to the cache (and unchanged since) are cheap to look up, so handle those here.  The
+		// others need to be parsed, which we do concurrently.  FontCache is not thread-safe, so the parsing is done
+		// without the cache and the results are added to the cache afterwards.
+		final FontEventListener fontEventListener = new FontEventListenerImpl();
+		final EmbedFontInfo[][] fontInfosByFile = new EmbedFontInfo[ fontFiles.size() ][];
+		final List<FontParsingJob> parsingJobs = new ArrayList<FontParsingJob>();
+		for ( int i = 0; i < fontFiles.size(); i++ ) {
+			final URL fontUrl = toURL( fontFiles.get( i ) );
+			if ( fontUrl == null ) {
+				continue;
+			}
+			final String embedUrl = fontUrl.toExternalForm();
+			final long lastModified = FontCache.getLastModified( fontUrl );
+			if ( fontCache.containsFont( embedUrl ) ) {
+				// drops the cached entry if the font file changed since it was cached
+				fontInfosByFile[i] = fontCache.getFontInfos( embedUrl, lastModified );
+				if ( fontInfosByFile[i] != null ) {
 					continue;
 				}
+				log.debug( "Font file {} changed since it was cached", embedUrl );
+			}
+			else if ( isKnownFailedFont( fontCache, embedUrl, lastModified ) ) {
+				log.trace( "Skipping font file {}; it failed to load before", embedUrl );
+				continue;
+			}
+			parsingJobs.add( new FontParsingJob( i, fontUrl, fontEventListener, fontInfosByFile ) );
+		}
 
-				final File[] fontDirFiles = fontDirectory.listFiles();
-				if ( fontDirFiles == null ) {
-					log.warn( "File system returned null for listFiles() on defined font directory {}", fontDirectory );
+		if ( !parsingJobs.isEmpty() ) {
+			log.info( "Parsing {} font file(s)", parsingJobs.size() );
+			fontScanPool.execute( parsingJobs );
+			for ( FontParsingJob parsingJob : parsingJobs ) {
+				final EmbedFontInfo[] infos = fontInfosByFile[ parsingJob.index ];
+				if ( infos == null || infos.length == 0 ) {
+					fontCache.registerFailedFont(
+							parsingJob.fontUrl.toExternalForm(),
+							FontCache.getLastModified( parsingJob.fontUrl )
+					);
 					continue;
 				}
-
-				for ( File fontFile : fontDirFiles ) {
-					EmbedFontInfo[] infos = fontInfoFinder.find( toURL( fontFile ), fontResolver, fontCache );
-					if ( infos == null || infos.length == 0 ) {
-						continue;
-					}
-					for ( EmbedFontInfo info : infos ) {
-						if ( info.getEmbedFile() != null ) {
-							infoList.add( info );
-						}
-					}
+				for ( EmbedFontInfo info : infos ) {
+					fontCache.addFont( info );
 				}
 			}
 		}
 
+		final List<EmbedFontInfo> infoList = new ArrayList<EmbedFontInfo>();
+		for ( EmbedFontInfo[] infos : fontInfosByFile ) {
+			if ( infos == null ) {
+				continue;
+			}
+			for ( EmbedFontInfo info : infos ) {
+				if ( info.getEmbedFile() != null ) {
+					infoList.add( info );
+				}
+			}
+		}
 		return infoList;
 	}
 
+	private List<File> collectFontFiles() {
+		final List<File> fontFiles = new ArrayList<File>();
+		if ( fontSettings.fontDirectories == null ) {
+			return fontFiles;
+		}
+
+		for ( File fontDirectory : fontSettings.fontDirectories ) {
+			if ( !fontDirectory.exists() ) {
+				log.warn( "Defined font directory {} does not exist", fontDirectory );
+				continue;
+			}
+
+			if ( !fontDirectory.isDirectory() ) {
+				log.warn( "Defined font directory {} is not a directory", fontDirectory );
+				continue;
+			}
+
+			final File[] fontDirFiles = fontDirectory.listFiles();
+			if ( fontDirFiles == null ) {
+				log.warn( "File system returned null for listFiles() on defined font directory {}", fontDirectory );
+				continue;
+			}
+
+			Collections.addAll( fontFiles, fontDirFiles );
+		}
+		return fontFiles;
+	}
+
+	private static FontInfoFinder buildFontInfoFinder(FontEventListener fontEventListener) {
+		final FontInfoFinder fontInfoFinder = new FontInfoFinder();
+		fontInfoFinder.setEventListener( fontEventListener );
+		return fontInfoFinder;
+	}
+
+	/**
+	 * Parses a single font file.  Each job uses its own {@link FontInfoFinder} and {@link FontResolver}.
+	 */
+	private static class FontParsingJob implements WorkerPool.Job {
+		private final int index;
+		private final URL fontUrl;
+		private final FontEventListener fontEventListener;
+		private final EmbedFontInfo[][] results;
+
+		private FontParsingJob(int index, URL fontUrl, FontEventListener fontEventListener, EmbedFontInfo[][] results) {
+			this.index = index;
+			this.fontUrl = fontUrl;
+			this.fontEventListener = fontEventListener;
+			this.results = results;
+		}
+
+		@Override
+		public String getDescription() {
+			return "font " + fontUrl.toExternalForm();
+		}
+
+		@Override
+		public void perform() {
+			results[index] = buildFontInfoFinder( fontEventListener ).find(
+					fontUrl,
+					FontSetup.createMinimalFontResolver(),
+					null
+			);
+		}
+	}
+
+	private static class FontEventListenerImpl implements FontEventListener {
+		public void fontSubstituted(Object source, FontTriplet requested, FontTriplet effective) {
+			log.info(
+					"FOP font substitution : " + requested + " -> " + effective + "; source=" + source
+			);
+		}
+
+		public void fontLoadingErrorAtAutoDetection(Object source, String fontURL, Exception e) {
+			log.info(
+					"FOP autodetect font loading error : " + fontURL + "; source=" + source,
+					e
+			);
+		}
+
+		public void glyphNotAvailable(Object source, char ch, String fontName) {
+			log.trace(
+					"Glyph not available for character [" + ch + "] in font " + fontName +
+							"; source=" + source
+			);
+		}
+	}
+
 	private URL toURL(File file) {
 		try {
 			return file.toURI().toURL();
@@ -265,7 +478,7 @@ public class FopConfigHelper {
 
 	private File getFopWorkDirectory() {
 		if ( fopWorkDirectory == null ) {
-			final File dir = new File( componentRegistry.getEnvironment().getWorkDirectory(), "fop" );
+			final File dir = new File( fontSettings.workDirectory, "fop" );
 			if ( dir.exists() ) {
 				fopWorkDirectory = dir;
 			}
@@ -282,6 +495,19 @@ public class FopConfigHelper {
 		return fopWorkDirectory;
 	}
 
+	/**
+	 * Render the given FOP user-config as XML.
+	 *
+	 * @param fopUserConfiguration The FOP user-config
+	 *
+	 * @return The XML form of the user-config
+	 */
+	public static String toXml(DefaultConfiguration fopUserConfiguration) {
+		return new XMLOutputter( Format.getCompactFormat() ).outputString(
+				new DOMBuilder().build( ConfigurationUtil.toElement( fopUserConfiguration ) )
+		);
+	}
+
 	private void dumpUserConfigToFile(DefaultConfiguration fopUserConfiguration) {
 		File dumpFile = new File( getFopWorkDirectory(), "generated-user-config.xml" );
 
@@ -300,11 +526,16 @@ public class FopConfigHelper {
 					new FileOutputStream( dumpFile )
 			);
 
-			XMLOutputter outputter = new XMLOutputter( Format.getCompactFormat().setIndent( "  " ) );
-			outputter.output(
-					new DOMBuilder().build( ConfigurationUtil.toElement( fopUserConfiguration ) ),
-					outputStream
-			);
+			try {
+				XMLOutputter outputter = new XMLOutputter( Format.getCompactFormat().setIndent( "  " ) );
+				outputter.output(
+						new DOMBuilder().build( ConfigurationUtil.toElement( fopUserConfiguration ) ),
+						outputStream
+				);
+			}
+			finally {
+				outputStream.close();
+			}
 		}
 		catch (FileNotFoundException e) {
 			// should never ever happen, see checks above..
@@ -315,4 +546,56 @@ public class FopConfigHelper {
 		}
 
 	}
+
+	/**
+	 * The settings which influence the generated user-config.
+	 */
+	private static class FontSettings {
+		private final List<File> fontDirectories;
+		private final boolean autoDetectFonts;
+		private final boolean useFontCache;
+		private final File workDirectory;
+
+		private FontSettings(JDocBookComponentRegistry componentRegistry) {
+			final List<File> configuredFontDirectories = componentRegistry.getEnvironment().getFontDirectories();
+			if ( configuredFontDirectories == null ) {
+				this.fontDirectories = null;
+			}
+			else {
+				final List<File> absoluteFontDirectories = new ArrayList<File>();
+				for ( File fontDirectory : configuredFontDirectories ) {
+					absoluteFontDirectories.add( fontDirectory.getAbsoluteFile() );
+				}
+				this.fontDirectories = Collections.unmodifiableList( absoluteFontDirectories );
+			}
+			this.autoDetectFonts = componentRegistry.getConfiguration().isAutoDetectFontsEnabled();
+			this.useFontCache = componentRegistry.getConfiguration().isUseFopFontCacheEnabled();
+			this.workDirectory = componentRegistry.getEnvironment().getWorkDirectory().getAbsoluteFile();
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if ( this == o ) {
+				return true;
+			}
+			if ( o == null || getClass() != o.getClass() ) {
+				return false;
+			}
+
+			FontSettings that = (FontSettings) o;
+			return autoDetectFonts == that.autoDetectFonts
+					&& useFontCache == that.useFontCache
+					&& workDirectory.equals( that.workDirectory )
+					&& !( fontDirectories != null ? !fontDirectories.equals( that.fontDirectories ) : that.fontDirectories != null );
+		}
+
+		@Override
+		public int hashCode() {
+			int result = fontDirectories != null ? fontDirectories.hashCode() : 0;
+			result = 31 * result + ( autoDetectFonts ? 1 : 0 );
+			result = 31 * result + ( useFontCache ? 1 : 0 );
+			result = 31 * result + workDirectory.hashCode();
+			return result;
+		}
+	}
 }
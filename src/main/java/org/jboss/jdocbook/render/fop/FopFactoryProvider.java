@@ -0,0 +1,93 @@
+/*
+ * jDocBook, processing of DocBook sources
+ *
+ * Copyright (c) 2010, Red Hat Inc. or third-party contributors as
+ * indicated by the @author tags or express copyright attribution
+ * statements applied by the authors.  All third-party contributions are
+ * distributed under license by Red Hat Inc.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.jboss.jdocbook.render.fop;
+
+import org.apache.avalon.framework.configuration.DefaultConfiguration;
+import org.apache.fop.apps.FOPException;
+import org.apache.fop.apps.FOUserAgent;
+import org.apache.fop.apps.FopFactory;
+import org.jboss.jdocbook.JDocBookComponentRegistry;
+import org.jboss.jdocbook.render.RenderingException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Provides the {@link FopFactory} shared by all PDF renderings of a {@link JDocBookComponentRegistry}.  Building a
+ * FopFactory (font metrics, hyphenation patterns, image cache) is expensive, whereas the factory itself is safe to
+ * share between concurrent renderings; per-rendering state lives in the {@link FOUserAgent} built for each job.
+ * <p/>
+ * The factory is rebuilt whenever the FOP user-config generated by {@link FopConfigHelper} changes.
+ */
+public class FopFactoryProvider {
+	private static final Logger log = LoggerFactory.getLogger( FopFactoryProvider.class );
+
+	private final JDocBookComponentRegistry componentRegistry;
+
+	private DefaultConfiguration userConfiguration;
+	private FopFactory fopFactory;
+
+	public FopFactoryProvider(JDocBookComponentRegistry componentRegistry) {
+		this.componentRegistry = componentRegistry;
+	}
+
+	/**
+	 * Retrieve the shared FopFactory, building it if needed.
+	 *
+	 * @return The shared FopFactory
+	 *
+	 * @throws RenderingException Indicates a problem building the FopFactory
+	 */
+	public synchronized FopFactory getFopFactory() throws RenderingException {
+		final DefaultConfiguration currentUserConfiguration = FopConfigHelper.getFopConfiguration( componentRegistry );
+		if ( fopFactory == null || currentUserConfiguration != userConfiguration ) {
+			if ( fopFactory != null ) {
+				log.info( "FOP user-config changed; rebuilding FopFactory" );
+			}
+			final FopFactory newFopFactory = FopFactory.newInstance();
+			try {
+				newFopFactory.setUserConfig( currentUserConfiguration );
+			}
+			catch ( FOPException e ) {
+				throw new RenderingException( "Unable to apply FOP user-config", e );
+			}
+			fopFactory = newFopFactory;
+			userConfiguration = currentUserConfiguration;
+		}
+		return fopFactory;
+	}
+
+	/**
+	 * Build a new {@link FOUserAgent} (from the shared factory) for a single rendering.
+	 *
+	 * @return The user agent
+	 *
+	 * @throws RenderingException Indicates a problem building the FopFactory
+	 */
+	public FOUserAgent buildUserAgent() throws RenderingException {
+		final FOUserAgent fopUserAgent = getFopFactory().newFOUserAgent();
+		fopUserAgent.setProducer( "jDocBook - Java-based DocBook processor" );
+		fopUserAgent.getEventBroadcaster().addEventListener( new EventListenerBridge() );
+		return fopUserAgent;
+	}
+}
@@ -32,32 +32,36 @@ import javax.xml.transform.sax.SAXResult;
 
 import org.apache.fop.apps.FOUserAgent;
 import org.apache.fop.apps.Fop;
-import org.apache.fop.apps.FopFactory;
 import org.apache.fop.apps.MimeConstants;
 import org.jboss.jdocbook.JDocBookComponentRegistry;
 import org.jboss.jdocbook.render.RenderingException;
+import org.jboss.jdocbook.util.SAXEventPipe;
 
 /**
  * {@link javax.xml.transform.sax.SAXResult} object used to pipe PDF XSLT events through to FOP for PDF generation.
+ * When {@linkplain org.jboss.jdocbook.PerformanceOptions#isPipelinedPdfRenderingEnabled() pipelining} is enabled, FOP
+ * runs on a thread of its own (see {@link SAXEventPipe}).
  *
  * @author Steve Ebersole
  */
 public class ResultImpl extends SAXResult {
 	private OutputStream outputStream;
+	private SAXEventPipe pipe;
 
 	public ResultImpl(File targetFile, JDocBookComponentRegistry componentRegistry) throws RenderingException {
 		try {
 			outputStream = new BufferedOutputStream( new FileOutputStream( targetFile ) );
 
-			FopFactory fopFactory = FopFactory.newInstance();
-			fopFactory.setUserConfig( FopConfigHelper.getFopConfiguration( componentRegistry ) );
-
-			FOUserAgent fopUserAgent = fopFactory.newFOUserAgent();
-			fopUserAgent.setProducer( "jDocBook - Java-based DocBook processor" );
-			fopUserAgent.getEventBroadcaster().addEventListener( new EventListenerBridge() );
-
-			Fop fop = fopFactory.newFop( MimeConstants.MIME_PDF, fopUserAgent, outputStream );
-			this.setHandler( fop.getDefaultHandler() );
+			FopFactoryProvider fopFactoryProvider = componentRegistry.getFopFactoryProvider();
+			FOUserAgent fopUserAgent = fopFactoryProvider.buildUserAgent();
+			Fop fop = fopUserAgent.getFactory().newFop( MimeConstants.MIME_PDF, fopUserAgent, outputStream );
+			if ( componentRegistry.getPerformanceOptions().isPipelinedPdfRenderingEnabled() ) {
+				pipe = new SAXEventPipe( fop.getDefaultHandler(), "jdocbook-fop-" + targetFile.getName() );
+				this.setHandler( pipe );
+			}
+			else {
+				this.setHandler( fop.getDefaultHandler() );
+			}
 		}
 		catch ( Throwable t ) {
 			throw new RenderingException( "error building transformation result [" + targetFile.getAbsolutePath() + "]", t );
@@ -65,6 +69,10 @@ public class ResultImpl extends SAXResult {
 	}
 
 	public void release() {
+		if ( pipe != null ) {
+			// make sure FOP is no longer writing if the transformation failed part way through
+			pipe.abort();
+		}
 		if ( outputStream == null ) {
 			return;
 		}
@@ -0,0 +1,189 @@
+/*
+ * jDocBook, processing of DocBook sources
+ *
+ * Copyright (c) 2010, Red Hat Inc. or third-party contributors as
+ * indicated by the @author tags or express copyright attribution
+ * statements applied by the authors.  All third-party contributions are
+ * distributed under license by Red Hat Inc.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.jboss.jdocbook.translate;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+import org.apache.commons.exec.CommandLine;
+import org.apache.commons.exec.DefaultExecutor;
+import org.apache.commons.exec.PumpStreamHandler;
+import org.jboss.jdocbook.FailurePolicy;
+import org.jboss.jdocbook.JDocBookProcessException;
+import org.jboss.jdocbook.util.FileUtils;
+import org.jboss.jdocbook.util.WorkerPool;
+import org.slf4j.Logger;
+
+/**
+ * A {@link WorkerPool.Job} running one of the external (gettext/xml2po) tools.  Any output the process writes
+ * (other than the output explicitly directed to a file) is captured rather than written to the console, so that
+ * the output of concurrently running processes does not get interleaved; see {@link #executeAll}.
+ */
+class ExternalCommandJob implements WorkerPool.Job {
+	private final CommandLine commandLine;
+	private final File outputFile;
+	private final String failureMessage;
+	private final ByteArrayOutputStream capturedOutput = new ByteArrayOutputStream();
+
+	/**
+	 * Creates a job.
+	 *
+	 * @param commandLine The command to run
+	 * @param outputFile The file to which to write the standard output of the process; may be null, in which case
+	 * the standard output is captured along with the error output
+	 * @param failureMessage The message to use should the process fail
+	 */
+	ExternalCommandJob(CommandLine commandLine, File outputFile, String failureMessage) {
+		this.commandLine = commandLine;
+		this.outputFile = outputFile;
+		this.failureMessage = failureMessage;
+	}
+
+	@Override
+	public String getDescription() {
+		return commandLine.toString();
+	}
+
+	@Override
+	public void perform() {
+		if ( outputFile == null ) {
+			execute( capturedOutput );
+			return;
+		}
+
+		// the output is written to a temporary file which only replaces the output file once the process completed
+		// successfully, so that a failed (or interrupted) process never leaves behind a partial output file which
+		// looks up-to-date
+		final File tempFile;
+		final OutputStream outputStream;
+		try {
+			tempFile = File.createTempFile( outputFile.getName(), ".tmp", outputFile.getAbsoluteFile().getParentFile() );
+			outputStream = new BufferedOutputStream( new FileOutputStream( tempFile ) );
+		}
+		catch ( IOException e ) {
+			throw new JDocBookProcessException( "unable to open output stream for [" + outputFile + "]", e );
+		}
+
+		boolean completed = false;
+		try {
+			try {
+				execute( outputStream );
+			}
+			finally {
+				try {
+					outputStream.flush();
+					outputStream.close();
+				}
+				catch ( IOException ignore ) {
+					// intentionally empty...
+				}
+			}
+			if ( Thread.currentThread().isInterrupted() ) {
+				throw new JDocBookProcessException( failureMessage + " : interrupted" );
+			}
+			try {
+				FileUtils.replace( tempFile, outputFile );
+			}
+			catch ( IOException e ) {
+				throw new JDocBookProcessException( "unable to write [" + outputFile + "]", e );
+			}
+			completed = true;
+		}
+		finally {
+			if ( !completed ) {
+				//noinspection ResultOfMethodCallIgnored
+				tempFile.delete();
+			}
+		}
+	}
+
+	private void execute(OutputStream outputStream) {
+		final DefaultExecutor executor = new DefaultExecutor();
+		executor.setStreamHandler( new PumpStreamHandler( outputStream, capturedOutput ) );
+		try {
+			executor.execute( commandLine );
+		}
+		catch ( IOException e ) {
+			throw new JDocBookProcessException( failureMessage + " : " + e.getMessage(), e );
+		}
+	}
+
+	/**
+	 * Retrieve the captured process output.
+	 *
+	 * @return The captured output; empty if the process wrote none (or did not run yet)
+	 */
+	public String getCapturedOutput() {
+		return capturedOutput.toString().trim();
+	}
+
+	/**
+	 * Execute the given jobs and then log their captured output, in job order.
+	 *
+	 * @param jobs The jobs to execute
+	 * @param workerPool The pool on which to execute them
+	 * @param log The logger to which to write the captured output
+	 */
+	static void executeAll(List<? extends WorkerPool.Job> jobs, WorkerPool workerPool, Logger log) {
+		executeAll( jobs, workerPool, FailurePolicy.COLLECT_ALL, log );
+	}
+
+	/**
+	 * Execute the given jobs and then log their captured output, in job order.
+	 *
+	 * @param jobs The jobs to execute
+	 * @param workerPool The pool on which to execute them
+	 * @param failurePolicy How to handle job failures
+	 * @param log The logger to which to write the captured output
+	 */
+	static void executeAll(
+			List<? extends WorkerPool.Job> jobs,
+			WorkerPool workerPool,
+			FailurePolicy failurePolicy,
+			Logger log) {
+		try {
+			workerPool.execute( jobs, failurePolicy );
+		}
+		finally {
+			logOutput( jobs, log );
+		}
+	}
+
+	private static void logOutput(List<? extends WorkerPool.Job> jobs, Logger log) {
+		for ( WorkerPool.Job job : jobs ) {
+			if ( !( job instanceof ExternalCommandJob ) ) {
+				continue;
+			}
+			final String output = ( (ExternalCommandJob) job ).getCapturedOutput();
+			if ( output.length() > 0 ) {
+				log.info( "[" + job.getDescription() + "] " + output );
+			}
+		}
+	}
+}
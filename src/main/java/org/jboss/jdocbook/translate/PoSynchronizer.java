@@ -23,6 +23,8 @@
  */
 package org.jboss.jdocbook.translate;
 
+import java.util.Collection;
+
 import org.jboss.jdocbook.JDocBookProcessException;
 
 /**
@@ -41,4 +43,15 @@ public interface PoSynchronizer {
 	 */
 	@SuppressWarnings({ "UnusedDeclaration" })
 	public void synchronizePo(TranslationSource source);
+
+	/**
+	 * Synchronize the PO files for all the given translations.  The individual PO files are synchronized
+	 * concurrently.
+	 *
+	 * @param sources The descriptors for the translations whose PO files are to be synchronized
+	 *
+	 * @throws JDocBookProcessException unable to synchronize POT files
+	 */
+	@SuppressWarnings({ "UnusedDeclaration" })
+	public void synchronizePo(Collection<? extends TranslationSource> sources);
 }
@@ -24,16 +24,20 @@
 package org.jboss.jdocbook.translate;
 
 import java.io.File;
-import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Locale;
 
 import org.apache.commons.exec.CommandLine;
-import org.apache.commons.exec.DefaultExecutor;
 import org.jboss.jdocbook.JDocBookComponentRegistry;
 import org.jboss.jdocbook.JDocBookProcessException;
+import org.jboss.jdocbook.translate.po.PoTools;
 import org.jboss.jdocbook.util.FileUtils;
 import org.jboss.jdocbook.util.TranslationUtils;
 import org.jboss.jdocbook.util.VCSDirectoryExclusionFilter;
+import org.jboss.jdocbook.util.WorkerPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -53,15 +57,28 @@ public class PoSynchronizerImpl implements PoSynchronizer {
 
 	@Override
 	public void synchronizePo(TranslationSource source) {
-		synchronizePo(
-				componentRegistry.getEnvironment().getMasterLanguageDescriptor().getPotDirectory(),
-				source.resolvePoDirectory(),
-				source.getLanguage()
-		);
+		synchronizePo( Collections.singleton( source ) );
+	}
+
+	@Override
+	public void synchronizePo(Collection<? extends TranslationSource> sources) {
+		final List<WorkerPool.Job> jobs = new ArrayList<WorkerPool.Job>();
+		for ( TranslationSource source : sources ) {
+			collectJobs(
+					componentRegistry.getEnvironment().getMasterLanguageDescriptor().getPotDirectory(),
+					source.resolvePoDirectory(),
+					source.getLanguage(),
+					jobs
+			);
+		}
+		ExternalCommandJob.executeAll( jobs, componentRegistry.buildWorkerPool( "po-synch" ), log );
 	}
 
-	private void synchronizePo(File potDirectory, File poDirectory, Locale translationLocale)
-			throws JDocBookProcessException {
+	private void collectJobs(
+			File potDirectory,
+			File poDirectory,
+			Locale translationLocale,
+			List<WorkerPool.Job> jobs) throws JDocBookProcessException {
 		if ( !potDirectory.exists() ) {
 			log.info( "skipping PO updates; POT directory did not exist : {0}", potDirectory );
 			return;
@@ -72,35 +89,46 @@ public class PoSynchronizerImpl implements PoSynchronizer {
 			for ( File file : files ) {
 				if ( file.isDirectory() ) {
 					// recurse into the directory by calling back into ourselves with the sub-dir
-					synchronizePo(
+					collectJobs(
 							new File( potDirectory, file.getName() ),
 							new File( poDirectory, file.getName() ),
-							translationLocale
+							translationLocale,
+							jobs
 					);
 				}
 				else {
 					if ( TranslationUtils.isPotFile( file ) ) {
 						File translation = new File( poDirectory, TranslationUtils.determinePoFileName( file ) );
-						updateTranslation( file, translation, translationLocale );
+						final WorkerPool.Job job = prepareTranslationUpdate( file, translation, translationLocale );
+						if ( job != null ) {
+							jobs.add( job );
+						}
 					}
 				}
 			}
 		}
 	}
 
-	private void updateTranslation(File template, File translation, Locale translationLocale) {
+	private WorkerPool.Job prepareTranslationUpdate(
+			final File template,
+			final File translation,
+			Locale translationLocale) {
 		if ( !template.exists() ) {
 			log.trace( "skipping PO updates; POT file did not exist : {0}", template );
-			return;
+			return null;
 		}
 
 		if ( translation.lastModified() >= template.lastModified() ) {
 			log.trace( "skipping PO updates; up-to-date : {0}", translation );
-			return;
+			return null;
 		}
 
 		final String translationLocaleString = componentRegistry.toLanguageString( translationLocale );
 
+		if ( componentRegistry.getPerformanceOptions().isInProcessTranslationEnabled() ) {
+			return prepareInProcessTranslationUpdate( template, translation, translationLocaleString );
+		}
+
 		CommandLine commandLine;
 		if ( translation.exists() ) {
 			commandLine = CommandLine.parse( "msgmerge" );
@@ -113,7 +141,7 @@ public class PoSynchronizerImpl implements PoSynchronizer {
 		else {
 			if ( ! translation.getParentFile().exists() ) {
 				boolean created = translation.getParentFile().mkdirs();
-				if ( ! created ) {
+				if ( ! created && ! translation.getParentFile().exists() ) {
 					log.info( "Unable to create PO directory {}", translation.getParentFile().getAbsolutePath() );
 				}
 			}
@@ -128,12 +156,50 @@ public class PoSynchronizerImpl implements PoSynchronizer {
 
 		log.info( "po-synch -> " + commandLine.toString() );
 
-		DefaultExecutor executor = new DefaultExecutor();
-		try {
-			executor.execute( commandLine );
-		}
-		catch ( IOException e ) {
-			throw new JDocBookProcessException( "Error synchronizing PO file [" + template.getName() + "] for " + translationLocaleString, e );
+		return new ExternalCommandJob(
+				commandLine,
+				null,
+				"Error synchronizing PO file [" + template.getName() + "] for " + translationLocaleString
+		);
+	}
+
+	private WorkerPool.Job prepareInProcessTranslationUpdate(
+			final File template,
+			final File translation,
+			final String translationLocaleString) {
+		final boolean merge = translation.exists();
+		if ( !merge && !translation.getParentFile().exists() ) {
+			boolean created = translation.getParentFile().mkdirs();
+			if ( ! created && ! translation.getParentFile().exists() ) {
+				log.info( "Unable to create PO directory {}", translation.getParentFile().getAbsolutePath() );
+			}
 		}
+
+		log.info( "po-synch -> {} {}", ( merge ? "msgmerge" : "msginit" ), translation );
+
+		return new WorkerPool.Job() {
+			@Override
+			public String getDescription() {
+				return ( merge ? "msgmerge " : "msginit " ) + translation;
+			}
+
+			@Override
+			public void perform() {
+				try {
+					if ( merge ) {
+						PoTools.mergeTranslation( translation, template );
+					}
+					else {
+						PoTools.initializeTranslation( template, translation, translationLocaleString );
+					}
+				}
+				catch ( JDocBookProcessException e ) {
+					throw new JDocBookProcessException(
+							"Error synchronizing PO file [" + template.getName() + "] for " + translationLocaleString,
+							e
+					);
+				}
+			}
+		};
 	}
 }
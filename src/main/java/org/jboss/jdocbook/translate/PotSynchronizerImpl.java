@@ -24,16 +24,16 @@
 package org.jboss.jdocbook.translate;
 
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.commons.exec.CommandLine;
-import org.apache.commons.exec.DefaultExecutor;
-import org.apache.commons.exec.PumpStreamHandler;
 import org.jboss.jdocbook.JDocBookComponentRegistry;
 import org.jboss.jdocbook.JDocBookProcessException;
+import org.jboss.jdocbook.translate.po.PoTools;
 import org.jboss.jdocbook.util.FileUtils;
 import org.jboss.jdocbook.util.TranslationUtils;
+import org.jboss.jdocbook.util.WorkerPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -55,6 +55,7 @@ public class PotSynchronizerImpl implements PotSynchronizer {
 	public void synchronizePot() throws JDocBookProcessException {
 		final File basedir = componentRegistry.getEnvironment().getMasterLanguageDescriptor().getBaseSourceDirectory();
 		final File potDirectory = componentRegistry.getEnvironment().getMasterLanguageDescriptor().getPotDirectory();
+		final List<WorkerPool.Job> jobs = new ArrayList<WorkerPool.Job>();
 		for ( File sourceFile : componentRegistry.getEnvironment().getMasterLanguageDescriptor().getDocumentFiles() ) {
 			String relativity = FileUtils.determineRelativity( sourceFile, basedir );
 			File relativeTranslationDir = (relativity == null)
@@ -64,20 +65,25 @@ public class PotSynchronizerImpl implements PotSynchronizer {
 			if ( FileUtils.isXMLFile( sourceFile ) ) {
 				String poFileName = TranslationUtils.determinePotFileName( sourceFile );
 				File potFile = new File( relativeTranslationDir, poFileName );
-				updatePortableObjectTemplate( sourceFile, potFile );
+				final WorkerPool.Job job = prepareXml2pot( sourceFile, potFile );
+				if ( job != null ) {
+					jobs.add( job );
+				}
 			}
 		}
+
+		ExternalCommandJob.executeAll( jobs, componentRegistry.buildWorkerPool( "pot-synch" ), log );
 	}
 
-	private void updatePortableObjectTemplate(File masterFile, File potFile) {
+	private WorkerPool.Job prepareXml2pot(final File masterFile, final File potFile) {
 		if ( !masterFile.exists() ) {
 			log.trace( "skipping POT update; source file did not exist : {0}", masterFile );
-			return;
+			return null;
 		}
 
 		if ( potFile.exists() && potFile.lastModified() >= masterFile.lastModified() ) {
 			log.trace( "skipping POT update; up-to-date : {0}", potFile );
-			return;
+			return null;
 		}
 
 		if ( !potFile.getParentFile().exists() ) {
@@ -86,38 +92,25 @@ public class PotSynchronizerImpl implements PotSynchronizer {
 				log.info( "Unable to generate POT directory {}" + FileUtils.resolveFullPathName( potFile.getParentFile() ) );
 			}
 		}
-		executeXml2pot( masterFile, potFile );
-	}
 
-	private void executeXml2pot(File masterFile, File potFile) {
-		CommandLine commandLine = CommandLine.parse( "xml2pot" );
-		commandLine.addArgument( FileUtils.resolveFullPathName( masterFile ) );
-
-		DefaultExecutor executor = new DefaultExecutor();
+		log.trace( "updating POT file {0}", potFile );
 
-		try {
-			final FileOutputStream xmlStream = new FileOutputStream( potFile );
-			PumpStreamHandler streamDirector = new PumpStreamHandler( xmlStream, System.err );
-			executor.setStreamHandler( streamDirector );
-			try {
-				log.trace( "updating POT file {0}", potFile );
-				executor.execute( commandLine );
-			}
-			catch (IOException ioe) {
-				throw new JDocBookProcessException( "Unable to execute xml2pot command", ioe );
-			}
-			finally {
-				try {
-					xmlStream.flush();
-					xmlStream.close();
+		if ( componentRegistry.getPerformanceOptions().isInProcessTranslationEnabled() ) {
+			return new WorkerPool.Job() {
+				@Override
+				public String getDescription() {
+					return "xml2pot " + masterFile;
 				}
-				catch ( IOException ignore ) {
-					// intentionally empty...
+
+				@Override
+				public void perform() {
+					PoTools.extractTemplate( masterFile, potFile );
 				}
-			}
-		}
-		catch ( IOException e  ) {
-			throw new JDocBookProcessException( "unable to open output stream for POT file [" + potFile + "]" );
+			};
 		}
+
+		CommandLine commandLine = CommandLine.parse( "xml2pot" );
+		commandLine.addArgument( FileUtils.resolveFullPathName( masterFile ) );
+		return new ExternalCommandJob( commandLine, potFile, "Unable to execute xml2pot command" );
 	}
 }
@@ -23,7 +23,9 @@
  */
 package org.jboss.jdocbook.translate;
 
+import java.util.Collection;
 
+import org.jboss.jdocbook.FailurePolicy;
 import org.jboss.jdocbook.JDocBookProcessException;
 
 /**
@@ -41,4 +43,16 @@ public interface Translator {
 	 */
 	@SuppressWarnings({ "UnusedDeclaration" })
 	public void translate(TranslationSource translationSource);
+
+	/**
+	 * Performs the translations for all the given languages.  The individual document files (of all the languages)
+	 * are translated concurrently.
+	 *
+	 * @param translationSources Information regarding the translations
+	 * @param failurePolicy How to handle a failure translating one of the document files
+	 *
+	 * @throws JDocBookProcessException Indicates a problem performing the translations
+	 */
+	@SuppressWarnings({ "UnusedDeclaration" })
+	public void translate(Collection<? extends TranslationSource> translationSources, FailurePolicy failurePolicy);
 }
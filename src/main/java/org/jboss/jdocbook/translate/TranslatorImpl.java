@@ -24,19 +24,23 @@
 package org.jboss.jdocbook.translate;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Locale;
 
 import org.apache.commons.exec.CommandLine;
-import org.apache.commons.exec.DefaultExecutor;
-import org.apache.commons.exec.PumpStreamHandler;
 import org.jboss.jdocbook.Configuration;
+import org.jboss.jdocbook.FailurePolicy;
 import org.jboss.jdocbook.JDocBookComponentRegistry;
 import org.jboss.jdocbook.JDocBookProcessException;
 import org.jboss.jdocbook.MasterLanguageDescriptor;
+import org.jboss.jdocbook.translate.po.PoTools;
 import org.jboss.jdocbook.util.FileUtils;
 import org.jboss.jdocbook.util.TranslationUtils;
+import org.jboss.jdocbook.util.WorkerPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -64,8 +68,20 @@ public class TranslatorImpl implements Translator {
 
 	@Override
 	public void translate(TranslationSource translationSource) {
-		log.debug( "Starting translation {}", render( translationSource.getLanguage() ) );
+		translate( Collections.singleton( translationSource ), FailurePolicy.FAIL_FAST );
+	}
+
+	@Override
+	public void translate(Collection<? extends TranslationSource> translationSources, FailurePolicy failurePolicy) {
+		final List<WorkerPool.Job> jobs = new ArrayList<WorkerPool.Job>();
+		for ( TranslationSource translationSource : translationSources ) {
+			log.debug( "Starting translation {}", render( translationSource.getLanguage() ) );
+			collectJobs( translationSource, jobs );
+		}
+		ExternalCommandJob.executeAll( jobs, componentRegistry.buildWorkerPool( "translate" ), failurePolicy, log );
+	}
 
+	private void collectJobs(TranslationSource translationSource, List<WorkerPool.Job> jobs) {
 		for ( File file : master().getDocumentFiles() ) {
 			// determine the proper relative work directory for the translated XML
 			String relativity = FileUtils.determineRelativity( file, master().getBaseSourceDirectory() );
@@ -86,74 +102,93 @@ public class TranslatorImpl implements Translator {
 							"Unable to locate PO file for [" + file + "] in [" + translationSource.resolvePoDirectory() + "]"
 					);
 				}
-				generateTranslatedXML( file, poFile, translatedFile );
+				final WorkerPool.Job job = prepareTranslatedXMLGeneration( file, poFile, translatedFile );
+				if ( job != null ) {
+					jobs.add( job );
+				}
 			}
 			else {
-				try {
-					FileUtils.copyFileToDirectoryIfModified( file, translatedFile.getParentFile() );
-				}
-				catch ( IOException e) {
-					throw new JDocBookProcessException(
-							"unable to copy file [ " + file + " ] to directory [ "
-									+ translatedFile.getParentFile() + " ]"
-					);
-				}
+				jobs.add( new CopyJob( file, translatedFile.getParentFile() ) );
+			}
+		}
+	}
+
+	/**
+	 * Copies a non-XML document file into the translated XML directory.
+	 */
+	private static class CopyJob implements WorkerPool.Job {
+		private final File file;
+		private final File directory;
+
+		private CopyJob(File file, File directory) {
+			this.file = file;
+			this.directory = directory;
+		}
+
+		@Override
+		public String getDescription() {
+			return "copy " + file;
+		}
+
+		@Override
+		public void perform() {
+			try {
+				FileUtils.copyFileToDirectoryIfModified( file, directory );
+			}
+			catch ( IOException e) {
+				throw new JDocBookProcessException(
+						"unable to copy file [ " + file + " ] to directory [ " + directory + " ]"
+				);
 			}
 		}
 	}
 
-	private void generateTranslatedXML(File masterFile, File poFile, File translatedFile) {
+	private WorkerPool.Job prepareTranslatedXMLGeneration(
+			final File masterFile,
+			final File poFile,
+			final File translatedFile) {
 		if ( !masterFile.exists() ) {
 			log.trace( "skipping translation; source file did not exist : {}", masterFile );
-			return;
+			return null;
 		}
 		if ( !poFile.exists() ) {
 			log.trace( "skipping translation; PO file did not exist : {}", poFile );
-			return;
+			return null;
 		}
 
 		if ( translatedFile.exists()
 				&& translatedFile.lastModified() >= masterFile.lastModified()
 				&& translatedFile.lastModified() >= poFile.lastModified() ) {
 			log.trace( "skipping translation; up-to-date : {0}", translatedFile );
-			return;
+			return null;
 		}
 
 		if ( ! translatedFile.getParentFile().exists() ) {
 			boolean created = translatedFile.getParentFile().mkdirs();
-			if ( ! created ) {
+			if ( ! created && ! translatedFile.getParentFile().exists() ) {
 				log.info( "Unable to create directories for translation" );
 			}
 		}
 
+		if ( componentRegistry.getPerformanceOptions().isInProcessTranslationEnabled() ) {
+			return new WorkerPool.Job() {
+				@Override
+				public String getDescription() {
+					return "po2xml " + masterFile;
+				}
+
+				@Override
+				public void perform() {
+					PoTools.generateTranslatedXml( masterFile, poFile, translatedFile );
+				}
+			};
+		}
+
 		CommandLine commandLine = CommandLine.parse( "po2xml" );
 		commandLine.addArgument( FileUtils.resolveFullPathName( masterFile ) );
 		commandLine.addArgument( FileUtils.resolveFullPathName( poFile ) );
 
-		try {
-			final FileOutputStream xmlStream = new FileOutputStream( translatedFile );
-			DefaultExecutor executor = new DefaultExecutor();
-			try {
-				PumpStreamHandler streamDirector = new PumpStreamHandler( xmlStream, System.err );
-				executor.setStreamHandler( streamDirector );
-				executor.execute( commandLine );
-			}
-			catch ( IOException ioe ) {
-				throw new JDocBookProcessException( "unable to execute po2xml : " + ioe.getMessage() );
-			}
-			finally {
-				try {
-					xmlStream.flush();
-					xmlStream.close();
-				}
-				catch ( IOException ignore ) {
-					// intentionally empty...
-				}
-			}
-		}
-		catch ( IOException e  ) {
-			throw new JDocBookProcessException( "unable to open output stream for translated XML file [" + translatedFile + "]" );
-		}
+		return new ExternalCommandJob( commandLine, translatedFile, "unable to execute po2xml" );
 	}
 
 	private String render(Locale language) {
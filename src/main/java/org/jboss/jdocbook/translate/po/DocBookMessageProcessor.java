@@ -0,0 +1,821 @@
+/*
+ * jDocBook, processing of DocBook sources
+ *
+ * Copyright (c) 2010, Red Hat Inc. or third-party contributors as
+ * indicated by the @author tags or express copyright attribution
+ * statements applied by the authors.  All third-party contributions are
+ * distributed under license by Red Hat Inc.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.jboss.jdocbook.translate.po;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import net.socialchange.doctype.Doctype;
+import net.socialchange.doctype.DoctypeChangerStream;
+import net.socialchange.doctype.DoctypeGenerator;
+import org.jboss.jdocbook.JDocBookProcessException;
+import org.jboss.jdocbook.util.Constants;
+import org.jboss.jdocbook.util.XMLReaderPool;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.ext.LexicalHandler;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Splits a DocBook document into translatable messages, in (roughly) the manner of the <tt>xml2po</tt> DocBook
+ * mode, and regenerates the document with those messages translated.
+ * <p/>
+ * {@link #parse Parsing} makes a first, scanning SAX pass over the document which just records (in a bit set over
+ * the elements in document order) which elements form messages.  {@link #process Processing} then makes a second
+ * SAX pass, streaming the document to the output as it is read; only the content of message elements is collected
+ * into a node tree, which is written out (translated) as soon as the message element ends.  Neither external entities
+ * nor the external DTD are read; references to such entities are kept as references, and the DOCTYPE is kept
+ * verbatim, so that the generated document can be processed just like the original.  Only entities declared
+ * directly within the internal subset get expanded.
+ * <p/>
+ * A message is formed by every element which contains text, either directly or within inline elements.  Inline
+ * elements become part of the message as markup; any other child elements are represented in the message by
+ * placeholders (<tt>&lt;_:footnote-1/&gt;</tt>) and form messages of their own.  Comments and processing
+ * instructions within a message are represented by placeholders as well (<tt>&lt;_:pi-2/&gt;</tt>), and are written
+ * back verbatim wherever the (translated) message puts their placeholder.  Whitespace in messages is normalized,
+ * except within "verbatim" elements.
+ */
+public class DocBookMessageProcessor {
+	private static final Set<String> INLINE_ELEMENTS = new HashSet<String>(
+			Arrays.asList(
+					"abbrev", "accel", "acronym", "action", "application", "author", "citation", "citerefentry",
+					"citetitle", "classname", "code", "command", "computeroutput", "constant", "database", "email",
+					"emphasis", "envar", "errorcode", "errorname", "errortext", "errortype", "exceptionname",
+					"filename", "firstname", "firstterm", "footnoteref", "foreignphrase", "function", "glossterm",
+					"guibutton", "guiicon", "guilabel", "guimenu", "guimenuitem", "guisubmenu", "hardware",
+					"inlinegraphic", "interface", "interfacename", "keycap", "keycode", "keycombo", "keysym",
+					"link", "literal", "markup", "medialabel", "menuchoice", "methodname", "mousebutton",
+					"olink", "option", "optional", "orgname", "package", "parameter", "personname", "phrase",
+					"productname", "productnumber", "prompt", "property", "quote", "refentrytitle", "remark",
+					"replaceable", "returnvalue", "sgmltag", "shortcut", "structfield", "structname", "subscript",
+					"superscript", "surname", "symbol", "systemitem", "tag", "token", "trademark", "type", "ulink",
+					"uri", "userinput", "varname", "wordasword", "xref", "anchor", "co", "coref", "lineannotation",
+					"manvolnum", "indexterm", "primary", "secondary", "tertiary", "see", "seealso"
+			)
+	);
+
+	private static final Set<String> VERBATIM_ELEMENTS = new HashSet<String>(
+			Arrays.asList( "programlisting", "screen", "literallayout", "synopsis", "address", "funcsynopsisinfo" )
+	);
+
+	private static final Pattern PLACEHOLDER = Pattern.compile( "<_:[^>]*?-(\\d+)/>" );
+
+	/**
+	 * Callback for each message found while {@link #process processing} a document.
+	 */
+	public static interface MessageHandler {
+		/**
+		 * Handle a message.
+		 *
+		 * @param message The message
+		 * @param elementName The name of the element forming the message
+		 * @param lineNumber The line number at which that element starts
+		 *
+		 * @return The translation of the message, or null to keep the message as is.
+		 */
+		public String handleMessage(String message, String elementName, int lineNumber);
+	}
+
+	private final File file;
+	private final Doctype doctype;
+	private final BitSet messageElements;
+
+	private DocBookMessageProcessor(File file, Doctype doctype, BitSet messageElements) {
+		this.file = file;
+		this.doctype = doctype;
+		this.messageElements = messageElements;
+	}
+
+	/**
+	 * Parse the given document.
+	 *
+	 * @param file The document file
+	 *
+	 * @return The processor for the parsed document
+	 *
+	 * @throws JDocBookProcessException Indicates a problem reading or parsing the document
+	 */
+	public static DocBookMessageProcessor parse(File file) {
+		final MessageScanner scanner = new MessageScanner();
+		try {
+			final DoctypeChangerStream stream = new DoctypeChangerStream(
+					new BufferedInputStream( new FileInputStream( file ) )
+			);
+			stream.setGenerator(
+					new DoctypeGenerator() {
+						public Doctype generate(Doctype doctype) {
+							// just capture it...
+							scanner.doctype = doctype;
+							return doctype;
+						}
+					}
+			);
+			parse( file, stream, scanner );
+		}
+		catch ( SAXException e ) {
+			throw new JDocBookProcessException( "Unable to parse [" + file.getAbsolutePath() + "] : " + e.getMessage(), e );
+		}
+		catch ( IOException e ) {
+			throw new JDocBookProcessException( "Unable to read [" + file.getAbsolutePath() + "]", e );
+		}
+		return new DocBookMessageProcessor( file, scanner.doctype, scanner.messageElements );
+	}
+
+	private static void parse(File file, InputStream stream, DefaultHandler handler) throws SAXException, IOException {
+		try {
+			final InputSource source = new InputSource( stream );
+			source.setSystemId( file.toURI().toURL().toString() );
+			final XMLReader reader = buildXMLReader();
+			reader.setContentHandler( handler );
+			reader.setErrorHandler( handler );
+			if ( handler instanceof LexicalHandler ) {
+				reader.setProperty( "http://xml.org/sax/properties/lexical-handler", handler );
+			}
+			reader.parse( source );
+		}
+		finally {
+			stream.close();
+		}
+	}
+
+	private static XMLReader buildXMLReader() throws SAXException {
+		final XMLReader reader = XMLReaderPool.newReader( false, false );
+		reader.setFeature( Constants.DTD_LOADING_FEATURE, false );
+		reader.setFeature( Constants.DTD_VALIDATION_FEATURE, false );
+		reader.setFeature( "http://xml.org/sax/features/external-general-entities", false );
+		reader.setFeature( "http://xml.org/sax/features/external-parameter-entities", false );
+		return reader;
+	}
+
+	/**
+	 * Process the messages of the document, writing the (possibly translated) document to the given writer.
+	 *
+	 * @param handler The handler for the messages found
+	 * @param writer The writer for the resulting document; may be null if only the messages are of interest
+	 *
+	 * @throws IOException Indicates a problem reading the document or writing the resulting document
+	 * @throws JDocBookProcessException Indicates a problem parsing the document
+	 */
+	public void process(MessageHandler handler, Writer writer) throws IOException {
+		final Output output = new Output( writer );
+		output.write( "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" );
+		if ( doctype != null ) {
+			writeDoctype( doctype, output );
+		}
+		try {
+			parse(
+					file,
+					new BufferedInputStream( new FileInputStream( file ) ),
+					new MessageWriter( messageElements, handler, output )
+			);
+		}
+		catch ( SAXException e ) {
+			if ( e.getException() instanceof IOException ) {
+				throw (IOException) e.getException();
+			}
+			throw new JDocBookProcessException( "Unable to parse [" + file.getAbsolutePath() + "] : " + e.getMessage(), e );
+		}
+	}
+
+	private static void writeDoctype(Doctype doctype, Output output) throws IOException {
+		output.write( "<!DOCTYPE " ).write( doctype.getRootElement() );
+		if ( doctype.getPublicId() != null ) {
+			output.write( " PUBLIC \"" ).write( doctype.getPublicId() ).write( "\"" );
+			if ( doctype.getSystemId() != null ) {
+				output.write( " \"" ).write( doctype.getSystemId() ).write( "\"" );
+			}
+		}
+		else if ( doctype.getSystemId() != null ) {
+			output.write( " SYSTEM \"" ).write( doctype.getSystemId() ).write( "\"" );
+		}
+		if ( doctype.getInternalSubset() != null && doctype.getInternalSubset().trim().length() > 0 ) {
+			output.write( " [" ).write( doctype.getInternalSubset() ).write( "]" );
+		}
+		output.write( ">\n" );
+	}
+
+	private static void process(Node node, MessageHandler handler, Output output) throws IOException {
+		if ( !( node instanceof Element ) ) {
+			node.write( output );
+			return;
+		}
+
+		final Element element = (Element) node;
+		if ( element.children.isEmpty() ) {
+			element.write( output );
+			return;
+		}
+
+		if ( !element.containsText() ) {
+			element.writeStartTag( output );
+			for ( Node child : element.children ) {
+				process( child, handler, output );
+			}
+			element.writeEndTag( output );
+			return;
+		}
+
+		final List<Node> placeholders = new ArrayList<Node>();
+		final StringBuilder content = new StringBuilder();
+		element.buildMessageContent( content, placeholders );
+		final boolean verbatim = VERBATIM_ELEMENTS.contains( element.localName() );
+		final String message = verbatim ? content.toString() : normalize( content.toString() );
+
+		final String translation = handler.handleMessage( message, element.localName(), element.lineNumber );
+
+		element.writeStartTag( output );
+		final String resolvedContent = translation == null ? content.toString() : translation;
+		final Matcher matcher = PLACEHOLDER.matcher( resolvedContent );
+		int position = 0;
+		while ( matcher.find() ) {
+			output.write( resolvedContent.substring( position, matcher.start() ) );
+			final int index = Integer.parseInt( matcher.group( 1 ) ) - 1;
+			if ( index >= 0 && index < placeholders.size() ) {
+				process( placeholders.get( index ), handler, output );
+			}
+			position = matcher.end();
+		}
+		output.write( resolvedContent.substring( position ) );
+		element.writeEndTag( output );
+	}
+
+	private static String localName(String name) {
+		final int colon = name.indexOf( ':' );
+		return colon < 0 ? name : name.substring( colon + 1 );
+	}
+
+	private static boolean isInline(String name) {
+		return INLINE_ELEMENTS.contains( localName( name ) );
+	}
+
+	private static String[] collectAttributes(Attributes attributes) {
+		final String[] attributeValues = new String[ attributes.getLength() * 2 ];
+		for ( int i = 0; i < attributes.getLength(); i++ ) {
+			attributeValues[ i * 2 ] = attributes.getQName( i );
+			attributeValues[ i * 2 + 1 ] = attributes.getValue( i );
+		}
+		return attributeValues;
+	}
+
+	private static String normalize(String text) {
+		final StringBuilder buffer = new StringBuilder( text.length() );
+		boolean whitespace = false;
+		for ( int i = 0; i < text.length(); i++ ) {
+			final char c = text.charAt( i );
+			if ( Character.isWhitespace( c ) ) {
+				whitespace = true;
+				continue;
+			}
+			if ( whitespace && buffer.length() > 0 ) {
+				buffer.append( ' ' );
+			}
+			whitespace = false;
+			buffer.append( c );
+		}
+		return buffer.toString();
+	}
+
+	private static void escape(String text, boolean attribute, StringBuilder buffer) {
+		for ( int i = 0; i < text.length(); i++ ) {
+			final char c = text.charAt( i );
+			switch ( c ) {
+				case '&':
+					buffer.append( "&amp;" );
+					break;
+				case '<':
+					buffer.append( "&lt;" );
+					break;
+				case '>':
+					buffer.append( attribute ? ">" : "&gt;" );
+					break;
+				case '"':
+					buffer.append( attribute ? "&quot;" : "\"" );
+					break;
+				default:
+					buffer.append( c );
+			}
+		}
+	}
+
+
+	// the node tree ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+	private static class Output {
+		private final Writer writer;
+
+		private Output(Writer writer) {
+			this.writer = writer;
+		}
+
+		private Output write(String text) throws IOException {
+			if ( writer != null ) {
+				writer.write( text );
+			}
+			return this;
+		}
+	}
+
+	private static abstract class Node {
+		abstract void serialize(StringBuilder buffer);
+
+		void write(Output output) throws IOException {
+			final StringBuilder buffer = new StringBuilder();
+			serialize( buffer );
+			output.write( buffer.toString() );
+		}
+	}
+
+	/**
+	 * A node which, within a message, is represented by a placeholder : (non-inline) elements, comments and
+	 * processing instructions.
+	 */
+	private static abstract class PlaceholderNode extends Node {
+		/**
+		 * The name used for the placeholder representing this node within a message.
+		 */
+		abstract String placeholderName();
+	}
+
+	private static class Element extends PlaceholderNode {
+		private final String name;
+		private final String[] attributes;
+		private final int lineNumber;
+		private final List<Node> children = new ArrayList<Node>();
+
+		private Element(String name, String[] attributes, int lineNumber) {
+			this.name = name;
+			this.attributes = attributes;
+			this.lineNumber = lineNumber;
+		}
+
+		private String localName() {
+			return DocBookMessageProcessor.localName( name );
+		}
+
+		private boolean isInline() {
+			return DocBookMessageProcessor.isInline( name );
+		}
+
+		/**
+		 * Does this element contain text, either directly or within inline elements?
+		 */
+		private boolean containsText() {
+			for ( Node child : children ) {
+				if ( child instanceof Text && ( (Text) child ).text.toString().trim().length() > 0 ) {
+					return true;
+				}
+				if ( child instanceof Element && ( (Element) child ).isInline() && ( (Element) child ).containsText() ) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		private void buildMessageContent(StringBuilder buffer, List<Node> placeholders) {
+			for ( Node child : children ) {
+				if ( child instanceof Element && ( (Element) child ).isInline() ) {
+					final Element childElement = (Element) child;
+					childElement.serializeStartTag( buffer, childElement.children.isEmpty() );
+					if ( !childElement.children.isEmpty() ) {
+						childElement.buildMessageContent( buffer, placeholders );
+						childElement.serializeEndTag( buffer );
+					}
+				}
+				else if ( child instanceof Text || child instanceof EntityReference ) {
+					child.serialize( buffer );
+				}
+				else if ( child instanceof PlaceholderNode ) {
+					placeholders.add( child );
+					buffer.append( "<_:" ).append( ( (PlaceholderNode) child ).placeholderName() ).append( '-' )
+							.append( placeholders.size() ).append( "/>" );
+				}
+			}
+		}
+
+		@Override
+		String placeholderName() {
+			return localName();
+		}
+
+		@Override
+		void serialize(StringBuilder buffer) {
+			serializeStartTag( buffer, children.isEmpty() );
+			if ( !children.isEmpty() ) {
+				for ( Node child : children ) {
+					child.serialize( buffer );
+				}
+				serializeEndTag( buffer );
+			}
+		}
+
+		private void serializeStartTag(StringBuilder buffer, boolean empty) {
+			openStartTag( name, attributes, buffer );
+			buffer.append( empty ? "/>" : ">" );
+		}
+
+		private static void openStartTag(String name, String[] attributes, StringBuilder buffer) {
+			buffer.append( '<' ).append( name );
+			for ( int i = 0; i < attributes.length; i += 2 ) {
+				buffer.append( ' ' ).append( attributes[i] ).append( "=\"" );
+				escape( attributes[i + 1], true, buffer );
+				buffer.append( '"' );
+			}
+		}
+
+		private void serializeEndTag(StringBuilder buffer) {
+			buffer.append( "</" ).append( name ).append( '>' );
+		}
+
+		private void writeStartTag(Output output) throws IOException {
+			final StringBuilder buffer = new StringBuilder();
+			serializeStartTag( buffer, false );
+			output.write( buffer.toString() );
+		}
+
+		private void writeEndTag(Output output) throws IOException {
+			final StringBuilder buffer = new StringBuilder();
+			serializeEndTag( buffer );
+			output.write( buffer.toString() );
+		}
+	}
+
+	private static class Text extends Node {
+		private final StringBuilder text = new StringBuilder();
+		private final boolean cdata;
+
+		private Text(boolean cdata) {
+			this.cdata = cdata;
+		}
+
+		@Override
+		void serialize(StringBuilder buffer) {
+			if ( cdata ) {
+				buffer.append( "<![CDATA[" ).append( text ).append( "]]>" );
+			}
+			else {
+				escape( text.toString(), false, buffer );
+			}
+		}
+	}
+
+	private static class EntityReference extends Node {
+		private final String name;
+
+		private EntityReference(String name) {
+			this.name = name;
+		}
+
+		@Override
+		void serialize(StringBuilder buffer) {
+			buffer.append( '&' ).append( name ).append( ';' );
+		}
+	}
+
+	private static class Comment extends PlaceholderNode {
+		private final String text;
+
+		private Comment(String text) {
+			this.text = text;
+		}
+
+		@Override
+		String placeholderName() {
+			return "comment";
+		}
+
+		@Override
+		void serialize(StringBuilder buffer) {
+			buffer.append( "<!--" ).append( text ).append( "-->" );
+		}
+	}
+
+	private static class ProcessingInstruction extends PlaceholderNode {
+		private final String target;
+		private final String data;
+
+		private ProcessingInstruction(String target, String data) {
+			this.target = target;
+			this.data = data;
+		}
+
+		@Override
+		String placeholderName() {
+			return "pi";
+		}
+
+		@Override
+		void serialize(StringBuilder buffer) {
+			buffer.append( "<?" ).append( target );
+			if ( data != null && data.length() > 0 ) {
+				buffer.append( ' ' ).append( data );
+			}
+			buffer.append( "?>" );
+		}
+	}
+
+
+	// the SAX passes ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+	/**
+	 * Determines, for each element in document order, whether it forms a message : whether it contains text, either
+	 * directly or within inline elements.
+	 */
+	private static class MessageScanner extends DefaultHandler {
+		private final BitSet messageElements = new BitSet();
+		private final List<Integer> openElements = new ArrayList<Integer>();
+		// whether the open elements (by depth) contain text so far
+		private final BitSet textualElements = new BitSet();
+		private int elementCount;
+		private Doctype doctype;
+
+		@Override
+		public void startElement(String uri, String localName, String qName, Attributes attributes) {
+			textualElements.clear( openElements.size() );
+			openElements.add( elementCount++ );
+		}
+
+		@Override
+		public void endElement(String uri, String localName, String qName) {
+			final int depth = openElements.size() - 1;
+			final int index = openElements.remove( depth );
+			if ( textualElements.get( depth ) ) {
+				messageElements.set( index );
+				if ( depth > 0 && isInline( qName ) ) {
+					textualElements.set( depth - 1 );
+				}
+			}
+		}
+
+		@Override
+		public void characters(char[] ch, int start, int length) {
+			if ( openElements.isEmpty() ) {
+				return;
+			}
+			for ( int i = start; i < start + length; i++ ) {
+				// the same notion of whitespace as String#trim
+				if ( ch[i] > ' ' ) {
+					textualElements.set( openElements.size() - 1 );
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Streams the document to the output as the SAX events arrive.  The content of a message element is collected
+	 * into a node tree, which is processed (and thus written out) once the message element ends.  References to
+	 * entities which are not read are reported as skipped, and are kept as references.
+	 */
+	private static class MessageWriter extends DefaultHandler implements LexicalHandler {
+		private final BitSet messageElements;
+		private final MessageHandler handler;
+		private final Output output;
+		// the open elements of the message element being collected, if any
+		private final List<Element> stack = new ArrayList<Element>();
+		private Locator locator;
+		private int elementCount;
+		// the number of open elements streamed so far
+		private int depth;
+		// whether the start tag last written still needs closing, which depends on whether any content follows
+		private boolean startTagOpen;
+		private boolean inDtd;
+		private boolean inCdata;
+
+		private MessageWriter(BitSet messageElements, MessageHandler handler, Output output) {
+			this.messageElements = messageElements;
+			this.handler = handler;
+			this.output = output;
+		}
+
+		private boolean isCollecting() {
+			return !stack.isEmpty();
+		}
+
+		private Element current() {
+			return stack.get( stack.size() - 1 );
+		}
+
+		private void write(String text) throws SAXException {
+			try {
+				output.write( text );
+			}
+			catch ( IOException e ) {
+				throw new SAXException( e );
+			}
+		}
+
+		private void closeStartTag() throws SAXException {
+			if ( startTagOpen ) {
+				startTagOpen = false;
+				write( ">" );
+			}
+		}
+
+		private void endNode() throws SAXException {
+			if ( depth == 0 ) {
+				write( "\n" );
+			}
+		}
+
+		private void add(Node node) throws SAXException {
+			if ( isCollecting() ) {
+				current().children.add( node );
+				return;
+			}
+			closeStartTag();
+			final StringBuilder buffer = new StringBuilder();
+			node.serialize( buffer );
+			write( buffer.toString() );
+			endNode();
+		}
+
+		@Override
+		public void setDocumentLocator(Locator locator) {
+			this.locator = locator;
+		}
+
+		@Override
+		public void startElement(String uri, String localName, String qName, Attributes attributes)
+				throws SAXException {
+			final boolean message = messageElements.get( elementCount++ );
+			if ( isCollecting() || message ) {
+				final Element element = new Element(
+						qName,
+						collectAttributes( attributes ),
+						locator == null ? -1 : locator.getLineNumber()
+				);
+				if ( isCollecting() ) {
+					current().children.add( element );
+				}
+				else {
+					closeStartTag();
+				}
+				stack.add( element );
+				return;
+			}
+
+			closeStartTag();
+			final StringBuilder buffer = new StringBuilder();
+			Element.openStartTag( qName, collectAttributes( attributes ), buffer );
+			write( buffer.toString() );
+			startTagOpen = true;
+			depth++;
+		}
+
+		@Override
+		public void endElement(String uri, String localName, String qName) throws SAXException {
+			if ( isCollecting() ) {
+				final Element element = stack.remove( stack.size() - 1 );
+				if ( !isCollecting() ) {
+					try {
+						process( element, handler, output );
+					}
+					catch ( IOException e ) {
+						throw new SAXException( e );
+					}
+					endNode();
+				}
+				return;
+			}
+
+			depth--;
+			if ( startTagOpen ) {
+				startTagOpen = false;
+				write( "/>" );
+			}
+			else {
+				write( "</" + qName + ">" );
+			}
+			endNode();
+		}
+
+		@Override
+		public void characters(char[] ch, int start, int length) throws SAXException {
+			if ( isCollecting() ) {
+				final List<Node> siblings = current().children;
+				Text text = null;
+				if ( !siblings.isEmpty() && siblings.get( siblings.size() - 1 ) instanceof Text ) {
+					text = (Text) siblings.get( siblings.size() - 1 );
+					if ( text.cdata != inCdata ) {
+						text = null;
+					}
+				}
+				if ( text == null ) {
+					text = new Text( inCdata );
+					siblings.add( text );
+				}
+				text.text.append( ch, start, length );
+				return;
+			}
+			if ( depth == 0 ) {
+				return;
+			}
+			closeStartTag();
+			if ( inCdata ) {
+				write( new String( ch, start, length ) );
+			}
+			else {
+				final StringBuilder buffer = new StringBuilder( length );
+				escape( new String( ch, start, length ), false, buffer );
+				write( buffer.toString() );
+			}
+		}
+
+		@Override
+		public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException {
+			characters( ch, start, length );
+		}
+
+		@Override
+		public void processingInstruction(String target, String data) throws SAXException {
+			add( new ProcessingInstruction( target, data ) );
+		}
+
+		@Override
+		public void skippedEntity(String name) throws SAXException {
+			if ( name.startsWith( "%" ) ) {
+				return;
+			}
+			add( new EntityReference( name ) );
+		}
+
+		@Override
+		public void startDTD(String name, String publicId, String systemId) {
+			inDtd = true;
+		}
+
+		@Override
+		public void endDTD() {
+			inDtd = false;
+		}
+
+		@Override
+		public void startEntity(String name) {
+		}
+
+		@Override
+		public void endEntity(String name) {
+		}
+
+		@Override
+		public void startCDATA() throws SAXException {
+			inCdata = true;
+			if ( !isCollecting() && depth > 0 ) {
+				closeStartTag();
+				write( "<![CDATA[" );
+			}
+		}
+
+		@Override
+		public void endCDATA() throws SAXException {
+			inCdata = false;
+			if ( !isCollecting() && depth > 0 ) {
+				write( "]]>" );
+			}
+		}
+
+		@Override
+		public void comment(char[] ch, int start, int length) throws SAXException {
+			if ( inDtd ) {
+				return;
+			}
+			add( new Comment( new String( ch, start, length ) ) );
+		}
+	}
+}
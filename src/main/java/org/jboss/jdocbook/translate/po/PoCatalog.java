@@ -0,0 +1,669 @@
+/*
+ * jDocBook, processing of DocBook sources
+ *
+ * Copyright (c) 2010, Red Hat Inc. or third-party contributors as
+ * indicated by the @author tags or express copyright attribution
+ * statements applied by the authors.  All third-party contributions are
+ * distributed under license by Red Hat Inc.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.jboss.jdocbook.translate.po;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jboss.jdocbook.JDocBookProcessException;
+import org.jboss.jdocbook.util.FileUtils;
+
+/**
+ * An in-memory PO (or POT) catalog : the header entry plus the message entries, indexed by
+ * {@linkplain PoEntry#getKey() key}.
+ */
+public class PoCatalog {
+	private static final String ENCODING = "UTF-8";
+	// the line width gettext wraps strings at
+	private static final int PAGE_WIDTH = 79;
+
+	private PoEntry header;
+	private final Map<String, PoEntry> entries = new LinkedHashMap<String, PoEntry>();
+	private final List<PoEntry> obsoleteEntries = new ArrayList<PoEntry>();
+
+	public PoEntry getHeader() {
+		return header;
+	}
+
+	public void setHeader(PoEntry header) {
+		this.header = header;
+	}
+
+	public Collection<PoEntry> getEntries() {
+		return entries.values();
+	}
+
+	public List<PoEntry> getObsoleteEntries() {
+		return obsoleteEntries;
+	}
+
+	public PoEntry getEntry(String context, String id) {
+		return entries.get( PoEntry.buildKey( context, id ) );
+	}
+
+	/**
+	 * Add an entry.  Should the catalog already contain an entry with the same key, the references and comments of
+	 * the given entry are added to that existing entry instead.
+	 *
+	 * @param entry The entry to add
+	 */
+	public void addEntry(PoEntry entry) {
+		if ( entry.isHeader() ) {
+			header = entry;
+			return;
+		}
+		if ( entry.isObsolete() ) {
+			obsoleteEntries.add( entry );
+			return;
+		}
+		final PoEntry existing = entries.get( entry.getKey() );
+		if ( existing == null ) {
+			entries.put( entry.getKey(), entry );
+			return;
+		}
+		for ( String reference : entry.getReferences() ) {
+			if ( !existing.getReferences().contains( reference ) ) {
+				existing.getReferences().add( reference );
+			}
+		}
+		for ( String comment : entry.getExtractedComments() ) {
+			if ( !existing.getExtractedComments().contains( comment ) ) {
+				existing.getExtractedComments().add( comment );
+			}
+		}
+	}
+
+	/**
+	 * Retrieve the translation of the given message.
+	 *
+	 * @param id The message id
+	 *
+	 * @return The translation, or null if the message is not (or only fuzzily) translated
+	 */
+	public String translate(String id) {
+		final PoEntry entry = entries.get( id );
+		return entry == null || !entry.isTranslated() ? null : entry.getStr();
+	}
+
+	/**
+	 * Retrieve the value of a header field.
+	 *
+	 * @param name The header field name
+	 *
+	 * @return The value, or null
+	 */
+	public String getHeaderField(String name) {
+		if ( header == null || header.getStr() == null ) {
+			return null;
+		}
+		for ( String line : header.getStr().split( "\n" ) ) {
+			final int separator = line.indexOf( ':' );
+			if ( separator > 0 && line.substring( 0, separator ).trim().equals( name ) ) {
+				return line.substring( separator + 1 ).trim();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Set the value of a header field, adding the field if not yet present.
+	 *
+	 * @param name The header field name
+	 * @param value The value
+	 */
+	public void setHeaderField(String name, String value) {
+		if ( header == null ) {
+			header = new PoEntry( null, "" );
+			header.setStr( "" );
+		}
+		final StringBuilder buffer = new StringBuilder();
+		boolean found = false;
+		for ( String line : header.getStr().split( "\n" ) ) {
+			if ( line.length() == 0 ) {
+				continue;
+			}
+			final int separator = line.indexOf( ':' );
+			if ( separator > 0 && line.substring( 0, separator ).trim().equals( name ) ) {
+				buffer.append( name ).append( ": " ).append( value ).append( '\n' );
+				found = true;
+			}
+			else {
+				buffer.append( line ).append( '\n' );
+			}
+		}
+		if ( !found ) {
+			buffer.append( name ).append( ": " ).append( value ).append( '\n' );
+		}
+		header.setStr( buffer.toString() );
+	}
+
+	/**
+	 * Merge this (translated) catalog with the given template, in the manner of <tt>msgmerge</tt>.  The result
+	 * contains the messages of the template, in template order, carrying over the translations (and translator
+	 * comments and fuzzy flags) of this catalog.  Messages of this catalog no longer present in the template are kept
+	 * as obsolete entries.
+	 * <p/>
+	 * NOTE : unlike <tt>msgmerge</tt>, no fuzzy matching of changed messages is attempted.
+	 *
+	 * @param template The template catalog
+	 *
+	 * @return The merged catalog
+	 */
+	public PoCatalog merge(PoCatalog template) {
+		final PoCatalog merged = new PoCatalog();
+		merged.header = header;
+		final String creationDate = template.getHeaderField( "POT-Creation-Date" );
+		if ( creationDate != null ) {
+			merged.setHeaderField( "POT-Creation-Date", creationDate );
+		}
+
+		final Map<String, PoEntry> previousObsoleteEntries = new LinkedHashMap<String, PoEntry>();
+		for ( PoEntry obsoleteEntry : obsoleteEntries ) {
+			previousObsoleteEntries.put( obsoleteEntry.getKey(), obsoleteEntry );
+		}
+
+		for ( PoEntry templateEntry : template.getEntries() ) {
+			final PoEntry mergedEntry = copyTemplateEntry( templateEntry );
+			PoEntry existing = entries.get( templateEntry.getKey() );
+			if ( existing == null ) {
+				// messages which come back are revived from their obsolete entry
+				existing = previousObsoleteEntries.remove( templateEntry.getKey() );
+			}
+			if ( existing != null ) {
+				mergedEntry.getTranslatorComments().addAll( existing.getTranslatorComments() );
+				if ( existing.isFuzzy() ) {
+					mergedEntry.getFlags().add( PoEntry.FUZZY_FLAG );
+				}
+				mergedEntry.setStr( existing.getStr() );
+				mergedEntry.getPluralStrs().putAll( existing.getPluralStrs() );
+			}
+			merged.addEntry( mergedEntry );
+		}
+
+		for ( PoEntry entry : entries.values() ) {
+			if ( entry.isTranslated() && template.entries.get( entry.getKey() ) == null ) {
+				final PoEntry obsolete = new PoEntry( entry.getContext(), entry.getId() );
+				obsolete.getTranslatorComments().addAll( entry.getTranslatorComments() );
+				obsolete.setIdPlural( entry.getIdPlural() );
+				obsolete.setStr( entry.getStr() );
+				obsolete.getPluralStrs().putAll( entry.getPluralStrs() );
+				obsolete.setObsolete( true );
+				merged.addEntry( obsolete );
+			}
+		}
+		merged.obsoleteEntries.addAll( previousObsoleteEntries.values() );
+		return merged;
+	}
+
+	/**
+	 * Create a new (untranslated) catalog for the given language from the given template, in the manner of
+	 * <tt>msginit --no-translator</tt>.
+	 *
+	 * @param template The template catalog
+	 * @param language The language
+	 *
+	 * @return The new catalog
+	 */
+	public static PoCatalog initialize(PoCatalog template, String language) {
+		final PoCatalog catalog = new PoCatalog();
+		final PoEntry header = new PoEntry( null, "" );
+		header.setStr( template.getHeader() == null ? "" : template.getHeader().getStr() );
+		catalog.setHeader( header );
+		final String now = formatDate( new Date() );
+		catalog.setHeaderField( "PO-Revision-Date", now );
+		catalog.setHeaderField( "Last-Translator", "Automatically generated" );
+		catalog.setHeaderField( "Language-Team", "none" );
+		catalog.setHeaderField( "Language", language );
+		catalog.setHeaderField( "MIME-Version", "1.0" );
+		catalog.setHeaderField( "Content-Type", "text/plain; charset=UTF-8" );
+		catalog.setHeaderField( "Content-Transfer-Encoding", "8bit" );
+
+		for ( PoEntry templateEntry : template.getEntries() ) {
+			final PoEntry entry = copyTemplateEntry( templateEntry );
+			entry.setStr( "" );
+			catalog.addEntry( entry );
+		}
+		return catalog;
+	}
+
+	/**
+	 * Create a new, empty template catalog, in the manner of <tt>xml2pot</tt>.
+	 *
+	 * @return The new template catalog
+	 */
+	public static PoCatalog createTemplate() {
+		final PoCatalog catalog = new PoCatalog();
+		final String now = formatDate( new Date() );
+		catalog.setHeaderField( "Project-Id-Version", "0" );
+		catalog.setHeaderField( "POT-Creation-Date", now );
+		catalog.setHeaderField( "PO-Revision-Date", now );
+		catalog.setHeaderField( "Last-Translator", "Automatically generated" );
+		catalog.setHeaderField( "Language-Team", "None" );
+		catalog.setHeaderField( "MIME-Version", "1.0" );
+		catalog.setHeaderField( "Content-Type", "application/x-publican; charset=UTF-8" );
+		catalog.setHeaderField( "Content-Transfer-Encoding", "8bit" );
+		return catalog;
+	}
+
+	private static PoEntry copyTemplateEntry(PoEntry templateEntry) {
+		final PoEntry entry = new PoEntry( templateEntry.getContext(), templateEntry.getId() );
+		entry.setIdPlural( templateEntry.getIdPlural() );
+		entry.getExtractedComments().addAll( templateEntry.getExtractedComments() );
+		entry.getReferences().addAll( templateEntry.getReferences() );
+		for ( String flag : templateEntry.getFlags() ) {
+			if ( !PoEntry.FUZZY_FLAG.equals( flag ) ) {
+				entry.getFlags().add( flag );
+			}
+		}
+		return entry;
+	}
+
+	private static String formatDate(Date date) {
+		return new SimpleDateFormat( "yyyy-MM-dd HH:mmZ" ).format( date );
+	}
+
+
+	// reading ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+	/**
+	 * Read a PO (or POT) file.
+	 *
+	 * @param file The file to read
+	 *
+	 * @return The catalog
+	 *
+	 * @throws JDocBookProcessException Indicates a problem reading or parsing the file
+	 */
+	public static PoCatalog read(File file) {
+		try {
+			final Reader reader = new InputStreamReader( new FileInputStream( file ), ENCODING );
+			try {
+				return read( new BufferedReader( reader ), file.getName() );
+			}
+			finally {
+				reader.close();
+			}
+		}
+		catch ( IOException e ) {
+			throw new JDocBookProcessException( "Unable to read PO file [" + file.getAbsolutePath() + "]", e );
+		}
+	}
+
+	private static PoCatalog read(BufferedReader reader, String name) throws IOException {
+		final PoCatalog catalog = new PoCatalog();
+		PoEntry entry = new PoEntry();
+		// which string continuation lines belong to : 'c'ontext, 'i'd, 'p'lural id, 's'tr, or a plural str index
+		String current = null;
+		boolean seenId = false;
+		boolean seenStr = false;
+
+		String line;
+		int lineNumber = 0;
+		while ( ( line = reader.readLine() ) != null ) {
+			lineNumber++;
+			line = line.trim();
+			boolean obsolete = false;
+			if ( line.startsWith( "#~" ) ) {
+				obsolete = true;
+				line = line.substring( 2 ).trim();
+			}
+
+			if ( line.length() == 0 ) {
+				if ( seenId ) {
+					catalog.addEntry( entry );
+					entry = new PoEntry();
+					seenId = false;
+					seenStr = false;
+					current = null;
+				}
+				continue;
+			}
+
+			if ( line.startsWith( "\"" ) ) {
+				if ( current == null ) {
+					throw new JDocBookProcessException( "Unexpected string continuation at " + name + ":" + lineNumber );
+				}
+				appendString( entry, current, unquote( line, name, lineNumber ) );
+				continue;
+			}
+
+			// a comment or a new message following a msgstr starts the next entry
+			final boolean startsEntry = line.startsWith( "#" )
+					|| line.startsWith( "msgctxt" )
+					|| ( line.startsWith( "msgid" ) && !line.startsWith( "msgid_plural" ) );
+			if ( seenStr && startsEntry ) {
+				catalog.addEntry( entry );
+				entry = new PoEntry();
+				seenId = false;
+				seenStr = false;
+				current = null;
+			}
+			if ( obsolete ) {
+				entry.setObsolete( true );
+			}
+
+			if ( line.startsWith( "#," ) ) {
+				for ( String flag : line.substring( 2 ).split( "," ) ) {
+					if ( flag.trim().length() > 0 ) {
+						entry.getFlags().add( flag.trim() );
+					}
+				}
+			}
+			else if ( line.startsWith( "#." ) ) {
+				entry.getExtractedComments().add( line.substring( 2 ).trim() );
+			}
+			else if ( line.startsWith( "#:" ) ) {
+				for ( String reference : line.substring( 2 ).trim().split( "\\s+" ) ) {
+					if ( reference.length() > 0 ) {
+						entry.getReferences().add( reference );
+					}
+				}
+			}
+			else if ( line.startsWith( "#" ) ) {
+				entry.getTranslatorComments().add( line.substring( 1 ) );
+			}
+			else if ( line.startsWith( "msgctxt" ) ) {
+				current = "c";
+				entry.setContext( unquote( line.substring( "msgctxt".length() ).trim(), name, lineNumber ) );
+			}
+			else if ( line.startsWith( "msgid_plural" ) ) {
+				current = "p";
+				entry.setIdPlural( unquote( line.substring( "msgid_plural".length() ).trim(), name, lineNumber ) );
+			}
+			else if ( line.startsWith( "msgid" ) ) {
+				seenId = true;
+				current = "i";
+				entry.setId( unquote( line.substring( "msgid".length() ).trim(), name, lineNumber ) );
+			}
+			else if ( line.startsWith( "msgstr[" ) ) {
+				final int close = line.indexOf( ']' );
+				if ( close < 0 ) {
+					throw new JDocBookProcessException( "Malformed msgstr at " + name + ":" + lineNumber );
+				}
+				seenStr = true;
+				current = line.substring( "msgstr[".length(), close ).trim();
+				try {
+					entry.getPluralStrs().put(
+							Integer.valueOf( current ),
+							unquote( line.substring( close + 1 ).trim(), name, lineNumber )
+					);
+				}
+				catch ( NumberFormatException e ) {
+					throw new JDocBookProcessException( "Malformed msgstr index at " + name + ":" + lineNumber );
+				}
+			}
+			else if ( line.startsWith( "msgstr" ) ) {
+				seenStr = true;
+				current = "s";
+				entry.setStr( unquote( line.substring( "msgstr".length() ).trim(), name, lineNumber ) );
+			}
+			else {
+				throw new JDocBookProcessException( "Unrecognized PO content at " + name + ":" + lineNumber );
+			}
+		}
+
+		if ( seenId ) {
+			catalog.addEntry( entry );
+		}
+		return catalog;
+	}
+
+	private static void appendString(PoEntry entry, String current, String value) {
+		if ( "c".equals( current ) ) {
+			entry.setContext( entry.getContext() + value );
+		}
+		else if ( "i".equals( current ) ) {
+			entry.setId( entry.getId() + value );
+		}
+		else if ( "p".equals( current ) ) {
+			entry.setIdPlural( entry.getIdPlural() + value );
+		}
+		else if ( "s".equals( current ) ) {
+			entry.setStr( entry.getStr() + value );
+		}
+		else {
+			final Integer index = Integer.valueOf( current );
+			entry.getPluralStrs().put( index, entry.getPluralStrs().get( index ) + value );
+		}
+	}
+
+	private static String unquote(String quoted, String name, int lineNumber) {
+		if ( quoted.length() < 2 || quoted.charAt( 0 ) != '"' || quoted.charAt( quoted.length() - 1 ) != '"' ) {
+			throw new JDocBookProcessException( "Malformed PO string at " + name + ":" + lineNumber );
+		}
+		final StringBuilder buffer = new StringBuilder( quoted.length() );
+		for ( int i = 1; i < quoted.length() - 1; i++ ) {
+			final char c = quoted.charAt( i );
+			if ( c != '\\' || i == quoted.length() - 2 ) {
+				buffer.append( c );
+				continue;
+			}
+			final char escaped = quoted.charAt( ++i );
+			switch ( escaped ) {
+				case 'n':
+					buffer.append( '\n' );
+					break;
+				case 't':
+					buffer.append( '\t' );
+					break;
+				case 'r':
+					buffer.append( '\r' );
+					break;
+				case 'a':
+					buffer.append( '\u0007' );
+					break;
+				case 'b':
+					buffer.append( '\b' );
+					break;
+				case 'f':
+					buffer.append( '\f' );
+					break;
+				case 'v':
+					buffer.append( '\u000B' );
+					break;
+				default:
+					buffer.append( escaped );
+			}
+		}
+		return buffer.toString();
+	}
+
+
+	// writing ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+	/**
+	 * Write this catalog to the given file.  The catalog is first written to a temporary file which then replaces
+	 * the target.
+	 *
+	 * @param file The file to write
+	 *
+	 * @throws JDocBookProcessException Indicates a problem writing the file
+	 */
+	public void write(File file) {
+		try {
+			final File tempFile = File.createTempFile( file.getName(), ".tmp", file.getAbsoluteFile().getParentFile() );
+			final Writer writer = new BufferedWriter( new OutputStreamWriter( new FileOutputStream( tempFile ), ENCODING ) );
+			try {
+				write( writer );
+			}
+			finally {
+				writer.close();
+			}
+			FileUtils.replace( tempFile, file );
+		}
+		catch ( IOException e ) {
+			throw new JDocBookProcessException( "Unable to write PO file [" + file.getAbsolutePath() + "]", e );
+		}
+	}
+
+	private void write(Writer writer) throws IOException {
+		if ( header != null ) {
+			writeEntry( header, writer );
+		}
+		for ( PoEntry entry : entries.values() ) {
+			writer.write( '\n' );
+			writeEntry( entry, writer );
+		}
+		for ( PoEntry entry : obsoleteEntries ) {
+			writer.write( '\n' );
+			writeEntry( entry, writer );
+		}
+	}
+
+	private static void writeEntry(PoEntry entry, Writer writer) throws IOException {
+		for ( String comment : entry.getTranslatorComments() ) {
+			writer.write( '#' );
+			writer.write( comment );
+			writer.write( '\n' );
+		}
+		for ( String comment : entry.getExtractedComments() ) {
+			writer.write( "#. " );
+			writer.write( comment );
+			writer.write( '\n' );
+		}
+		for ( String reference : entry.getReferences() ) {
+			writer.write( "#: " );
+			writer.write( reference );
+			writer.write( '\n' );
+		}
+		if ( !entry.getFlags().isEmpty() ) {
+			writer.write( "#" );
+			for ( String flag : entry.getFlags() ) {
+				writer.write( ", " );
+				writer.write( flag );
+			}
+			writer.write( '\n' );
+		}
+
+		final String prefix = entry.isObsolete() ? "#~ " : "";
+		if ( entry.getContext() != null ) {
+			writeString( prefix, "msgctxt", entry.getContext(), writer );
+		}
+		writeString( prefix, "msgid", entry.getId(), writer );
+		if ( entry.getIdPlural() != null ) {
+			writeString( prefix, "msgid_plural", entry.getIdPlural(), writer );
+			for ( Map.Entry<Integer, String> pluralStr : entry.getPluralStrs().entrySet() ) {
+				writeString( prefix, "msgstr[" + pluralStr.getKey() + "]", pluralStr.getValue(), writer );
+			}
+		}
+		else {
+			writeString( prefix, "msgstr", entry.getStr() == null ? "" : entry.getStr(), writer );
+		}
+	}
+
+	private static void writeString(String prefix, String keyword, String value, Writer writer) throws IOException {
+		final int newline = value.indexOf( '\n' );
+		final boolean multiLine = newline >= 0 && newline < value.length() - 1;
+		final String escaped = escape( value );
+		if ( !multiLine && prefix.length() + keyword.length() + escaped.length() + 3 <= PAGE_WIDTH ) {
+			writer.write( prefix );
+			writer.write( keyword );
+			writer.write( " \"" );
+			writer.write( escaped );
+			writer.write( "\"\n" );
+			return;
+		}
+
+		// like gettext, values which span several lines or which do not fit on the page are started on the next line,
+		// with each line of the value on its own and too long lines wrapped after spaces
+		writer.write( prefix );
+		writer.write( keyword );
+		writer.write( " \"\"\n" );
+		final int width = PAGE_WIDTH - prefix.length() - 2;
+		int start = 0;
+		while ( start < value.length() ) {
+			int end = value.indexOf( '\n', start );
+			end = end < 0 ? value.length() : end + 1;
+			writeWrapped( prefix, escape( value.substring( start, end ) ), width, writer );
+			start = end;
+		}
+	}
+
+	private static void writeWrapped(String prefix, String escaped, int width, Writer writer) throws IOException {
+		int start = 0;
+		while ( start < escaped.length() ) {
+			int end = escaped.length();
+			if ( end - start > width ) {
+				// break after the last space which still fits, or else after the first space at all
+				final int lastSpace = escaped.lastIndexOf( ' ', start + width - 1 );
+				if ( lastSpace >= start ) {
+					end = lastSpace + 1;
+				}
+				else {
+					final int nextSpace = escaped.indexOf( ' ', start + width );
+					if ( nextSpace >= 0 && nextSpace < escaped.length() - 1 ) {
+						end = nextSpace + 1;
+					}
+				}
+			}
+			writer.write( prefix );
+			writer.write( '"' );
+			writer.write( escaped, start, end - start );
+			writer.write( "\"\n" );
+			start = end;
+		}
+	}
+
+	private static String escape(String value) {
+		final StringBuilder buffer = new StringBuilder( value.length() + 8 );
+		for ( int i = 0; i < value.length(); i++ ) {
+			final char c = value.charAt( i );
+			switch ( c ) {
+				case '"':
+					buffer.append( "\\\"" );
+					break;
+				case '\\':
+					buffer.append( "\\\\" );
+					break;
+				case '\n':
+					buffer.append( "\\n" );
+					break;
+				case '\t':
+					buffer.append( "\\t" );
+					break;
+				case '\r':
+					buffer.append( "\\r" );
+					break;
+				default:
+					buffer.append( c );
+			}
+		}
+		return buffer.toString();
+	}
+}
@@ -0,0 +1,158 @@
+/*
+ * jDocBook, processing of DocBook sources
+ *
+ * Copyright (c) 2010, Red Hat Inc. or third-party contributors as
+ * indicated by the @author tags or express copyright attribution
+ * statements applied by the authors.  All third-party contributions are
+ * distributed under license by Red Hat Inc.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.jboss.jdocbook.translate.po;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * A single entry (message) of a PO/POT catalog.
+ */
+public class PoEntry {
+	/**
+	 * The flag marking an entry whose translation needs review.
+	 */
+	public static final String FUZZY_FLAG = "fuzzy";
+
+	private final List<String> translatorComments = new ArrayList<String>();
+	private final List<String> extractedComments = new ArrayList<String>();
+	private final List<String> references = new ArrayList<String>();
+	private final Set<String> flags = new LinkedHashSet<String>();
+
+	private String context;
+	private String id;
+	private String idPlural;
+	private String str;
+	private final Map<Integer, String> pluralStrs = new TreeMap<Integer, String>();
+	private boolean obsolete;
+
+	public PoEntry() {
+	}
+
+	public PoEntry(String context, String id) {
+		this.context = context;
+		this.id = id;
+	}
+
+	/**
+	 * Build the key under which this entry is indexed in a catalog : the message id qualified by the message
+	 * context, if any.
+	 *
+	 * @return The entry key
+	 */
+	public String getKey() {
+		return buildKey( context, id );
+	}
+
+	public static String buildKey(String context, String id) {
+		return context == null ? id : context + '\u0004' + id;
+	}
+
+	public boolean isHeader() {
+		return context == null && "".equals( id );
+	}
+
+	public boolean isFuzzy() {
+		return flags.contains( FUZZY_FLAG );
+	}
+
+	/**
+	 * Is this entry translated?  Fuzzy translations are not considered to be translations.
+	 *
+	 * @return True if the entry has a (non-fuzzy) translation.
+	 */
+	public boolean isTranslated() {
+		if ( isFuzzy() ) {
+			return false;
+		}
+		if ( idPlural != null ) {
+			return !pluralStrs.isEmpty() && pluralStrs.get( 0 ) != null && pluralStrs.get( 0 ).length() > 0;
+		}
+		return str != null && str.length() > 0;
+	}
+
+	public List<String> getTranslatorComments() {
+		return translatorComments;
+	}
+
+	public List<String> getExtractedComments() {
+		return extractedComments;
+	}
+
+	public List<String> getReferences() {
+		return references;
+	}
+
+	public Set<String> getFlags() {
+		return flags;
+	}
+
+	public String getContext() {
+		return context;
+	}
+
+	public void setContext(String context) {
+		this.context = context;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public void setId(String id) {
+		this.id = id;
+	}
+
+	public String getIdPlural() {
+		return idPlural;
+	}
+
+	public void setIdPlural(String idPlural) {
+		this.idPlural = idPlural;
+	}
+
+	public String getStr() {
+		return str;
+	}
+
+	public void setStr(String str) {
+		this.str = str;
+	}
+
+	public Map<Integer, String> getPluralStrs() {
+		return pluralStrs;
+	}
+
+	public boolean isObsolete() {
+		return obsolete;
+	}
+
+	public void setObsolete(boolean obsolete) {
+		this.obsolete = obsolete;
+	}
+}
@@ -0,0 +1,145 @@
+/*
+ * jDocBook, processing of DocBook sources
+ *
+ * Copyright (c) 2010, Red Hat Inc. or third-party contributors as
+ * indicated by the @author tags or express copyright attribution
+ * statements applied by the authors.  All third-party contributions are
+ * distributed under license by Red Hat Inc.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.jboss.jdocbook.translate.po;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import org.jboss.jdocbook.JDocBookProcessException;
+import org.jboss.jdocbook.util.FileUtils;
+
+/**
+ * Pure-Java, in-process equivalents of the <tt>xml2pot</tt>, <tt>msginit</tt>, <tt>msgmerge</tt> and
+ * <tt>po2xml</tt> tools.
+ */
+public class PoTools {
+	private static final String NO_C_FORMAT_FLAG = "no-c-format";
+
+	private PoTools() {
+	}
+
+	/**
+	 * Extract the translatable messages of a DocBook document into a POT file (<tt>xml2pot</tt>).
+	 *
+	 * @param masterFile The DocBook document
+	 * @param potFile The POT file to (re)generate
+	 */
+	public static void extractTemplate(final File masterFile, File potFile) {
+		final PoCatalog template = PoCatalog.createTemplate();
+		try {
+			DocBookMessageProcessor.parse( masterFile ).process(
+					new DocBookMessageProcessor.MessageHandler() {
+						public String handleMessage(String message, String elementName, int lineNumber) {
+							final PoEntry entry = new PoEntry( null, message );
+							entry.getExtractedComments().add( "Tag: " + elementName );
+							entry.getReferences().add( masterFile.getName() + ':' + lineNumber );
+							entry.getFlags().add( NO_C_FORMAT_FLAG );
+							entry.setStr( "" );
+							template.addEntry( entry );
+							return null;
+						}
+					},
+					null
+			);
+		}
+		catch ( IOException e ) {
+			// should never happen as there is no output...
+			throw new JDocBookProcessException( "Unable to extract messages from [" + masterFile.getAbsolutePath() + "]", e );
+		}
+		template.write( potFile );
+	}
+
+	/**
+	 * Create a new PO file for the given language from a POT file (<tt>msginit</tt>).
+	 *
+	 * @param potFile The POT file
+	 * @param poFile The PO file to create
+	 * @param language The language
+	 */
+	public static void initializeTranslation(File potFile, File poFile, String language) {
+		PoCatalog.initialize( PoCatalog.read( potFile ), language ).write( poFile );
+	}
+
+	/**
+	 * Update a PO file with the messages of a POT file (<tt>msgmerge --update</tt>).
+	 *
+	 * @param poFile The PO file to update
+	 * @param potFile The POT file
+	 */
+	public static void mergeTranslation(File poFile, File potFile) {
+		PoCatalog.read( poFile ).merge( PoCatalog.read( potFile ) ).write( poFile );
+	}
+
+	/**
+	 * Generate the translated version of a DocBook document by applying the translations of a PO file
+	 * (<tt>po2xml</tt>).
+	 *
+	 * @param masterFile The DocBook document
+	 * @param poFile The PO file
+	 * @param translatedFile The translated document to generate
+	 */
+	public static void generateTranslatedXml(File masterFile, File poFile, File translatedFile) {
+		final PoCatalog catalog = PoCatalog.read( poFile );
+		final DocBookMessageProcessor processor = DocBookMessageProcessor.parse( masterFile );
+		try {
+			final File tempFile = File.createTempFile(
+					translatedFile.getName(),
+					".tmp",
+					translatedFile.getAbsoluteFile().getParentFile()
+			);
+			boolean completed = false;
+			try {
+				final Writer writer = new BufferedWriter( new OutputStreamWriter( new FileOutputStream( tempFile ), "UTF-8" ) );
+				try {
+					processor.process(
+							new DocBookMessageProcessor.MessageHandler() {
+								public String handleMessage(String message, String elementName, int lineNumber) {
+									return catalog.translate( message );
+								}
+							},
+							writer
+					);
+				}
+				finally {
+					writer.close();
+				}
+				FileUtils.replace( tempFile, translatedFile );
+				completed = true;
+			}
+			finally {
+				if ( !completed ) {
+					//noinspection ResultOfMethodCallIgnored
+					tempFile.delete();
+				}
+			}
+		}
+		catch ( IOException e ) {
+			throw new JDocBookProcessException( "Unable to write translated XML file [" + translatedFile + "]", e );
+		}
+	}
+}
@@ -0,0 +1,257 @@
+/*
+ * jDocBook, processing of DocBook sources
+ *
+ * Copyright (c) 2010, Red Hat Inc. or third-party contributors as
+ * indicated by the @author tags or express copyright attribution
+ * statements applied by the authors.  All third-party contributions are
+ * distributed under license by Red Hat Inc.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.jboss.jdocbook.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.channels.FileChannel;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.commons.exec.CommandLine;
+import org.apache.commons.exec.DefaultExecutor;
+import org.apache.commons.exec.ExecuteException;
+import org.apache.commons.exec.PumpStreamHandler;
+import org.jboss.jdocbook.AssetPlacementStrategy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Places (staged) files according to an {@link AssetPlacementStrategy}.  Links are created through
+ * <tt>java.nio.file.Files</tt> (looked up reflectively, as it is only available on Java 7 and later); reflinks through
+ * <tt>cp --reflink=always</tt>.  A file which cannot be placed according to the strategy (a hard link across
+ * devices, say) is copied instead.  Only when the strategy turns out not to be supported at all (no Java 7, a file
+ * system without links or reflinks, ...) a warning is logged and from then on all files are simply copied.
+ */
+public class AssetPlacement {
+	private static final Logger log = LoggerFactory.getLogger( AssetPlacement.class );
+
+	private static final Method TO_PATH;
+	private static final Method CREATE_LINK;
+	private static final Method CREATE_SYMBOLIC_LINK;
+	private static final Object NO_FILE_ATTRIBUTES;
+
+	static {
+		Method toPath = null;
+		Method createLink = null;
+		Method createSymbolicLink = null;
+		Object noFileAttributes = null;
+		try {
+			final Class<?> pathClass = Class.forName( "java.nio.file.Path" );
+			final Class<?> filesClass = Class.forName( "java.nio.file.Files" );
+			final Class<?> fileAttributeClass = Class.forName( "java.nio.file.attribute.FileAttribute" );
+			noFileAttributes = Array.newInstance( fileAttributeClass, 0 );
+			toPath = File.class.getMethod( "toPath" );
+			createLink = filesClass.getMethod( "createLink", pathClass, pathClass );
+			createSymbolicLink = filesClass.getMethod( "createSymbolicLink", pathClass, pathClass, noFileAttributes.getClass() );
+		}
+		catch ( ClassNotFoundException ignore ) {
+			// pre Java 7
+		}
+		catch ( NoSuchMethodException ignore ) {
+			// pre Java 7
+		}
+		TO_PATH = toPath;
+		CREATE_LINK = createLink;
+		CREATE_SYMBOLIC_LINK = createSymbolicLink;
+		NO_FILE_ATTRIBUTES = noFileAttributes;
+	}
+
+	private final AssetPlacementStrategy strategy;
+	private final AtomicBoolean fallenBack = new AtomicBoolean();
+
+	public AssetPlacement(AssetPlacementStrategy strategy) {
+		this.strategy = strategy == null ? AssetPlacementStrategy.COPY : strategy;
+	}
+
+	/**
+	 * The strategy in effect : the requested one, or {@link AssetPlacementStrategy#COPY} once that turned out to be
+	 * unsupported.
+	 *
+	 * @return The effective strategy
+	 */
+	public AssetPlacementStrategy getEffectiveStrategy() {
+		return fallenBack.get() ? AssetPlacementStrategy.COPY : strategy;
+	}
+
+	/**
+	 * Place the source file at the target location, replacing any existing target file.
+	 *
+	 * @param source The (staged) file
+	 * @param target The location at which to place it
+	 *
+	 * @throws IOException Indicates a problem placing the file
+	 */
+	public void place(File source, File target) throws IOException {
+		// never write through an existing (hard or symbolic) link into the staged file
+		if ( !target.delete() && target.exists() ) {
+			throw new IOException( "Unable to replace [" + target.getAbsolutePath() + "]" );
+		}
+		final File directory = target.getAbsoluteFile().getParentFile();
+		if ( !directory.exists() && !directory.mkdirs() && !directory.exists() ) {
+			throw new IOException( "Unable to create directory [" + directory.getAbsolutePath() + "]" );
+		}
+
+		final AssetPlacementStrategy effectiveStrategy = getEffectiveStrategy();
+		if ( effectiveStrategy != AssetPlacementStrategy.COPY ) {
+			try {
+				switch ( effectiveStrategy ) {
+					case HARD_LINK: {
+						link( CREATE_LINK, target, source );
+						return;
+					}
+					case SYMBOLIC_LINK: {
+						link( CREATE_SYMBOLIC_LINK, target, source.getAbsoluteFile(), NO_FILE_ATTRIBUTES );
+						return;
+					}
+					case REFLINK: {
+						reflink( source, target );
+						return;
+					}
+				}
+			}
+			catch ( PlacementException e ) {
+				if ( !e.unsupported ) {
+					log.debug( "Unable to place {} using {} ({}); copying it instead", new Object[] { target, strategy, e.getMessage() } );
+				}
+				else if ( fallenBack.compareAndSet( false, true ) ) {
+					log.warn( "Asset placement strategy {} not supported ({}); copying instead", strategy, e.getMessage() );
+				}
+				//noinspection ResultOfMethodCallIgnored
+				target.delete();
+			}
+		}
+
+		copy( source, target );
+	}
+
+	private static void link(Method method, File link, File existing, Object... extraArgs) throws PlacementException {
+		if ( method == null ) {
+			throw new PlacementException( "links require Java 7 or later", true );
+		}
+		try {
+			final Object[] args = new Object[ 2 + extraArgs.length ];
+			args[0] = TO_PATH.invoke( link );
+			args[1] = TO_PATH.invoke( existing );
+			System.arraycopy( extraArgs, 0, args, 2, extraArgs.length );
+			method.invoke( null, args );
+		}
+		catch ( InvocationTargetException e ) {
+			final Throwable cause = e.getCause();
+			throw new PlacementException(
+					String.valueOf( cause ),
+					cause instanceof UnsupportedOperationException
+							|| cause instanceof SecurityException
+							|| indicatesUnsupported( cause.getMessage() )
+			);
+		}
+		catch ( IllegalAccessException e ) {
+			throw new PlacementException( e.toString(), true );
+		}
+	}
+
+	private static void reflink(File source, File target) throws PlacementException {
+		final CommandLine commandLine = new CommandLine( "cp" );
+		commandLine.addArgument( "--reflink=always" );
+		commandLine.addArgument( "--preserve=timestamps" );
+		commandLine.addArgument( source.getAbsolutePath(), false );
+		commandLine.addArgument( target.getAbsolutePath(), false );
+
+		final ByteArrayOutputStream output = new ByteArrayOutputStream();
+		final DefaultExecutor executor = new DefaultExecutor();
+		executor.setStreamHandler( new PumpStreamHandler( output, output ) );
+		try {
+			executor.execute( commandLine );
+		}
+		catch ( ExecuteException e ) {
+			final String message = output.toString().trim();
+			throw new PlacementException(
+					message.length() == 0 ? e.getMessage() : message,
+					indicatesUnsupported( message ) || message.contains( "unrecognized option" )
+			);
+		}
+		catch ( IOException e ) {
+			// cp could not be run at all
+			throw new PlacementException( e.getMessage(), true );
+		}
+	}
+
+	/**
+	 * Does the given (file system) error message indicate the file system does not support the operation at all,
+	 * as opposed to the operation failing for the file at hand?
+	 */
+	private static boolean indicatesUnsupported(String message) {
+		if ( message == null ) {
+			return false;
+		}
+		final String lowerCaseMessage = message.toLowerCase( Locale.ENGLISH );
+		return lowerCaseMessage.contains( "not supported" ) || lowerCaseMessage.contains( "privilege" );
+	}
+
+	/**
+	 * Copy a file through NIO channels, preserving its last-modified timestamp.
+	 *
+	 * @param source The file to copy
+	 * @param target The file to copy to
+	 *
+	 * @throws IOException Indicates a problem copying the file
+	 */
+	public static void copy(File source, File target) throws IOException {
+		final FileChannel in = new FileInputStream( source ).getChannel();
+		try {
+			final FileChannel out = new FileOutputStream( target ).getChannel();
+			try {
+				final long size = in.size();
+				long position = 0;
+				while ( position < size ) {
+					position += in.transferTo( position, size - position, out );
+				}
+			}
+			finally {
+				out.close();
+			}
+		}
+		finally {
+			in.close();
+		}
+		target.setLastModified( source.lastModified() );
+	}
+
+	private static class PlacementException extends Exception {
+		private static final long serialVersionUID = 1L;
+
+		private final boolean unsupported;
+
+		private PlacementException(String message, boolean unsupported) {
+			super( message );
+			this.unsupported = unsupported;
+		}
+	}
+}
@@ -27,6 +27,7 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintStream;
 
 import org.jboss.jdocbook.JDocBookProcessException;
@@ -34,6 +35,11 @@ import org.jboss.jdocbook.JDocBookProcessException;
 /**
  * Handles redirection of <tt>sysout</tt> and <tt>syserr</tt>.  The initial
  * impl handles redirection specifically to a file.
+ * <p/>
+ * Redirection is scoped to the thread which {@linkplain #start() started} it, so that concurrent jobs each get
+ * their own console output.  While any redirection is active, <tt>sysout</tt> and <tt>syserr</tt> are replaced
+ * with streams routing output to the redirection of the writing thread (or to the original stream for threads
+ * without one).
  *
  * @author Steve Ebersole
  */
@@ -43,9 +49,13 @@ public class ConsoleRedirectionHandler {
 	private static ThreadLocal<ConsoleRedirectionHandler> currentRedirectionHandler
 			= new ThreadLocal<ConsoleRedirectionHandler>();
 
+	private static final Object ROUTING_LOCK = new Object();
+	private static int activeRedirections;
+	private static PrintStream sysout;
+	private static PrintStream syserr;
+
 	private PrintStream redirectionStream;
-	private PrintStream sysout;
-	private PrintStream syserr;
+	private ConsoleRedirectionHandler previousRedirectionHandler;
 
 	public ConsoleRedirectionHandler(File redirectionFile) {
 		this.redirectionFile = redirectionFile;
@@ -59,6 +69,26 @@ public class ConsoleRedirectionHandler {
 		return redirectionStream;
 	}
 
+	/**
+	 * Route the console output of the calling thread to this (started) redirection as well.  Intended for helper
+	 * threads doing work on behalf of the thread which started the redirection; must be paired with
+	 * {@link #detach()} before the redirection is stopped.
+	 */
+	public void attach() {
+		currentRedirectionHandler.set( this );
+	}
+
+	/**
+	 * Stop routing the console output of the calling thread to this redirection.
+	 *
+	 * @see #attach()
+	 */
+	public void detach() {
+		if ( currentRedirectionHandler.get() == this ) {
+			currentRedirectionHandler.remove();
+		}
+	}
+
 	public void start() {
 		System.out.println( "redirecting console output to file [" + redirectionFile.getAbsolutePath() + "]" );
 		if ( !redirectionFile.exists() ) {
@@ -83,22 +113,86 @@ public class ConsoleRedirectionHandler {
 			throw new JDocBookProcessException( "Unable to open console redirect file for output", e );
 		}
 
-		sysout = System.out;
-		syserr = System.err;
-		System.setOut( redirectionStream );
-		System.setErr( redirectionStream );
+		installRouting();
 
+		previousRedirectionHandler = currentRedirectionHandler.get();
 		currentRedirectionHandler.set( this );
 	}
 
 	public void stop() {
-		sysout.println( "Resetting console output" );
-		currentRedirectionHandler.remove();
+		originalSysout().println( "Resetting console output" );
+		if ( previousRedirectionHandler == null ) {
+			currentRedirectionHandler.remove();
+		}
+		else {
+			currentRedirectionHandler.set( previousRedirectionHandler );
+			previousRedirectionHandler = null;
+		}
 
-		System.setOut( sysout );
-		System.setErr( syserr );
+		uninstallRouting();
 
 		redirectionStream.flush();
 		redirectionStream.close();
 	}
+
+	private static PrintStream originalSysout() {
+		synchronized ( ROUTING_LOCK ) {
+			return sysout == null ? System.out : sysout;
+		}
+	}
+
+	private static void installRouting() {
+		synchronized ( ROUTING_LOCK ) {
+			if ( activeRedirections++ == 0 ) {
+				sysout = System.out;
+				syserr = System.err;
+				System.setOut( new PrintStream( new RoutingOutputStream( sysout ), true ) );
+				System.setErr( new PrintStream( new RoutingOutputStream( syserr ), true ) );
+			}
+		}
+	}
+
+	private static void uninstallRouting() {
+		synchronized ( ROUTING_LOCK ) {
+			if ( --activeRedirections == 0 ) {
+				System.out.flush();
+				System.err.flush();
+				System.setOut( sysout );
+				System.setErr( syserr );
+				sysout = null;
+				syserr = null;
+			}
+		}
+	}
+
+	/**
+	 * Routes output to the redirection stream of the current thread, if one; otherwise to the original stream.
+	 */
+	private static class RoutingOutputStream extends OutputStream {
+		private final PrintStream original;
+
+		private RoutingOutputStream(PrintStream original) {
+			this.original = original;
+		}
+
+		private PrintStream target() {
+			final ConsoleRedirectionHandler handler = currentRedirectionHandler.get();
+			return handler == null ? original : handler.redirectionStream;
+		}
+
+		@Override
+		public void write(int b) {
+			target().write( b );
+		}
+
+		@Override
+		public void write(byte[] bytes, int off, int len) {
+			target().write( bytes, off, len );
+		}
+
+		@Override
+		public void flush() {
+			target().flush();
+		}
+	}
 }
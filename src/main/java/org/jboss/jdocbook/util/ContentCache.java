@@ -0,0 +1,122 @@
+/*
+ * jDocBook, processing of DocBook sources
+ *
+ * Copyright (c) 2010, Red Hat Inc. or third-party contributors as
+ * indicated by the @author tags or express copyright attribution
+ * statements applied by the authors.  All third-party contributions are
+ * distributed under license by Red Hat Inc.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.jboss.jdocbook.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the content of resources in memory, keyed by name, up to a maximum total size; once that is reached,
+ * further resources are simply read each time.  The content is shared among all callers, so it must never be
+ * modified.  Resources which do not exist are remembered as well, but read failures are not, so that those resources
+ * are tried again next time.
+ */
+public class ContentCache {
+	private static final byte[] MISSING = new byte[0];
+
+	/**
+	 * Reads the content of a resource on a cache miss.
+	 */
+	public static interface ContentReader {
+		/**
+		 * Read the content.
+		 *
+		 * @return The content, or null if the resource does not exist.
+		 *
+		 * @throws IOException Indicates a problem reading the resource.
+		 */
+		public byte[] read() throws IOException;
+	}
+
+	private final long maxCachedBytes;
+	private final ConcurrentMap<String, byte[]> contents = new ConcurrentHashMap<String, byte[]>();
+	private final AtomicLong cachedBytes = new AtomicLong();
+
+	public ContentCache(long maxCachedBytes) {
+		this.maxCachedBytes = maxCachedBytes;
+	}
+
+	/**
+	 * Retrieve the content of the named resource, reading it only if not yet cached.
+	 *
+	 * @param name The resource name
+	 * @param reader The reader for cache misses
+	 *
+	 * @return The content, or null if the resource does not exist.
+	 *
+	 * @throws IOException Indicates a problem reading the resource; nothing is cached in that case.
+	 */
+	public byte[] getContent(String name, ContentReader reader) throws IOException {
+		byte[] content = contents.get( name );
+		if ( content == null ) {
+			content = reader.read();
+			if ( content == null ) {
+				content = MISSING;
+			}
+			if ( cachedBytes.addAndGet( content.length ) <= maxCachedBytes ) {
+				final byte[] existing = contents.putIfAbsent( name, content );
+				if ( existing != null ) {
+					cachedBytes.addAndGet( -content.length );
+					content = existing;
+				}
+			}
+			else {
+				cachedBytes.addAndGet( -content.length );
+			}
+		}
+		return content == MISSING ? null : content;
+	}
+
+	/**
+	 * Read the given stream fully, closing it afterwards.
+	 *
+	 * @param stream The stream to read
+	 *
+	 * @return The content read
+	 *
+	 * @throws IOException Indicates a problem reading the stream
+	 */
+	public static byte[] readFully(InputStream stream) throws IOException {
+		try {
+			final ByteArrayOutputStream buffer = new ByteArrayOutputStream( 16 * 1024 );
+			final byte[] bytes = new byte[8 * 1024];
+			int read;
+			while ( ( read = stream.read( bytes ) ) != -1 ) {
+				buffer.write( bytes, 0, read );
+			}
+			return buffer.toByteArray();
+		}
+		finally {
+			try {
+				stream.close();
+			}
+			catch ( IOException ignore ) {
+			}
+		}
+	}
+}
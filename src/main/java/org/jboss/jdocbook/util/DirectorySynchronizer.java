@@ -0,0 +1,243 @@
+/*
+ * jDocBook, processing of DocBook sources
+ *
+ * Copyright (c) 2010, Red Hat Inc. or third-party contributors as
+ * indicated by the @author tags or express copyright attribution
+ * statements applied by the authors.  All third-party contributions are
+ * distributed under license by Red Hat Inc.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.jboss.jdocbook.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.jdocbook.AssetPlacementStrategy;
+import org.jboss.jdocbook.JDocBookProcessException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Synchronizes the contents of one directory into another, as {@link FileUtils#copyDirectoryStructure} would, but
+ * only copying files which changed.  A file is considered unchanged when the target has the same size and
+ * last-modified timestamp as the source; when only the timestamps differ the contents are compared.  Copies preserve
+ * the source timestamp, so unchanged files are recognized without reading them on later synchronizations.  Changed
+ * files are placed (copied or linked) by an {@link AssetPlacement}, spread over a {@link WorkerPool}.
+ * <p/>
+ * Files found only in the target directory are left alone.
+ */
+public class DirectorySynchronizer {
+	private static final Logger log = LoggerFactory.getLogger( DirectorySynchronizer.class );
+
+	/**
+	 * Timestamps within this many milliseconds of each other are considered equal, allowing for file systems with
+	 * coarse timestamp granularity.
+	 */
+	public static final long TIMESTAMP_TOLERANCE = 1000;
+
+	/**
+	 * Changed files are copied in batches of (at most) this many files...
+	 */
+	public static final int MAX_BATCH_FILES = 64;
+
+	/**
+	 * ...or this many bytes, whichever limit is reached first.
+	 */
+	public static final long MAX_BATCH_BYTES = 16 * 1024 * 1024;
+
+	private final WorkerPool workerPool;
+	private final AssetPlacement placement;
+
+	public DirectorySynchronizer(WorkerPool workerPool) {
+		this( workerPool, AssetPlacementStrategy.COPY );
+	}
+
+	public DirectorySynchronizer(WorkerPool workerPool, AssetPlacementStrategy placementStrategy) {
+		this.workerPool = workerPool;
+		this.placement = new AssetPlacement( placementStrategy );
+	}
+
+	/**
+	 * Synchronize the contents of the source directory into the target directory.
+	 *
+	 * @param sourceDirectory The directory whose contents should be synchronized
+	 * @param targetDirectory The directory into which to synchronize them
+	 *
+	 * @return The number of files copied (or linked)
+	 *
+	 * @throws IOException Indicates a problem synchronizing the directories
+	 */
+	public int synchronize(File sourceDirectory, File targetDirectory) throws IOException {
+		final List<CopyBatch> batches = new ArrayList<CopyBatch>();
+		final AtomicInteger upToDateCount = new AtomicInteger();
+		collectChanges( sourceDirectory, targetDirectory, batches, upToDateCount );
+
+		int copyCount = 0;
+		long copyBytes = 0;
+		for ( CopyBatch batch : batches ) {
+			copyCount += batch.sources.size();
+			copyBytes += batch.byteCount;
+		}
+
+		if ( !batches.isEmpty() ) {
+			try {
+				workerPool.execute( batches );
+			}
+			catch ( JDocBookProcessException e ) {
+				final IOException ioe = new IOException( "Unable to synchronize [" + sourceDirectory.getAbsolutePath() + "] : " + e.getMessage() );
+				ioe.initCause( e );
+				throw ioe;
+			}
+		}
+
+		log.debug(
+				"Synchronized {} : {} file(s) up-to-date, {} file(s) placed ({})",
+				new Object[] { sourceDirectory.getAbsolutePath(), upToDateCount.get(), copyCount, placement.getEffectiveStrategy() }
+		);
+		log.trace( "Copied {} byte(s) from {}", copyBytes, sourceDirectory.getAbsolutePath() );
+		return copyCount;
+	}
+
+	private void collectChanges(
+			File sourceDirectory,
+			File targetDirectory,
+			List<CopyBatch> batches,
+			AtomicInteger upToDateCount) throws IOException {
+		final File[] files = sourceDirectory.listFiles();
+		if ( files == null ) {
+			return;
+		}
+		if ( !targetDirectory.exists() && !targetDirectory.mkdirs() && !targetDirectory.exists() ) {
+			throw new IOException( "Unable to create directory [" + targetDirectory.getAbsolutePath() + "]" );
+		}
+
+		for ( File source : files ) {
+			final File target = new File( targetDirectory, source.getName() );
+			if ( source.isDirectory() ) {
+				collectChanges( source, target, batches, upToDateCount );
+			}
+			else if ( isUpToDate( source, target ) ) {
+				upToDateCount.incrementAndGet();
+			}
+			else {
+				CopyBatch batch = batches.isEmpty() ? null : batches.get( batches.size() - 1 );
+				if ( batch == null || batch.isFull() ) {
+					batch = new CopyBatch( placement );
+					batches.add( batch );
+				}
+				batch.add( source, target );
+			}
+		}
+	}
+
+	private static boolean isUpToDate(File source, File target) throws IOException {
+		if ( !target.isFile() || target.length() != source.length() ) {
+			return false;
+		}
+		final long sourceLastModified = source.lastModified();
+		if ( Math.abs( target.lastModified() - sourceLastModified ) <= TIMESTAMP_TOLERANCE ) {
+			return true;
+		}
+		if ( hasSameContent( source, target ) ) {
+			// remember the match for next time
+			target.setLastModified( sourceLastModified );
+			return true;
+		}
+		return false;
+	}
+
+	private static boolean hasSameContent(File source, File target) throws IOException {
+		final InputStream sourceStream = new FileInputStream( source );
+		try {
+			final InputStream targetStream = new FileInputStream( target );
+			try {
+				final byte[] sourceBytes = new byte[64 * 1024];
+				final byte[] targetBytes = new byte[64 * 1024];
+				int read;
+				while ( ( read = fill( sourceStream, sourceBytes ) ) > 0 ) {
+					if ( fill( targetStream, targetBytes ) != read ) {
+						return false;
+					}
+					for ( int i = 0; i < read; i++ ) {
+						if ( sourceBytes[i] != targetBytes[i] ) {
+							return false;
+						}
+					}
+				}
+				return fill( targetStream, targetBytes ) == 0;
+			}
+			finally {
+				targetStream.close();
+			}
+		}
+		finally {
+			sourceStream.close();
+		}
+	}
+
+	private static int fill(InputStream stream, byte[] buffer) throws IOException {
+		int total = 0;
+		int read;
+		while ( total < buffer.length && ( read = stream.read( buffer, total, buffer.length - total ) ) != -1 ) {
+			total += read;
+		}
+		return total;
+	}
+
+	private static class CopyBatch implements WorkerPool.Job {
+		private final AssetPlacement placement;
+		private final List<File> sources = new ArrayList<File>();
+		private final List<File> targets = new ArrayList<File>();
+		private long byteCount;
+
+		private CopyBatch(AssetPlacement placement) {
+			this.placement = placement;
+		}
+
+		private void add(File source, File target) {
+			sources.add( source );
+			targets.add( target );
+			byteCount += source.length();
+		}
+
+		private boolean isFull() {
+			return sources.size() >= MAX_BATCH_FILES || byteCount >= MAX_BATCH_BYTES;
+		}
+
+		@Override
+		public String getDescription() {
+			return "copy " + sources.size() + " file(s) starting with " + sources.get( 0 ).getAbsolutePath();
+		}
+
+		@Override
+		public void perform() {
+			for ( int i = 0; i < sources.size(); i++ ) {
+				try {
+					placement.place( sources.get( i ), targets.get( i ) );
+				}
+				catch ( IOException e ) {
+					throw new JDocBookProcessException( "Unable to copy [" + sources.get( i ).getAbsolutePath() + "]", e );
+				}
+			}
+		}
+	}
+}
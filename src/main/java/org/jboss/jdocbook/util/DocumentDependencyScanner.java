@@ -0,0 +1,350 @@
+/*
+ * jDocBook, processing of DocBook sources
+ *
+ * Copyright (c) 2010, Red Hat Inc. or third-party contributors as
+ * indicated by the @author tags or express copyright attribution
+ * statements applied by the authors.  All third-party contributions are
+ * distributed under license by Red Hat Inc.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.jboss.jdocbook.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.jboss.jdocbook.DocBookSchemaResolutionStrategy;
+import org.jboss.jdocbook.JDocBookProcessException;
+import org.jboss.jdocbook.ValueInjection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.ext.DeclHandler;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Discovers the files an XML document depends upon : the files it references via XInclude and the files declared
+ * as external entities, transitively.
+ * <p/>
+ * Unlike {@link XIncludeHelper#locateInclusions}, which performs a full XInclude-processing transformation of the
+ * document (and thereby of every document it includes), this scanner parses each file exactly once using a plain
+ * streaming SAX pass which merely collects the <tt>xi:include</tt> hrefs and external entity system ids.  The
+ * direct dependencies of each file are remembered (for as long as the file's size and last-modified timestamp do not
+ * change), and the files making up each "level" of the dependency tree are scanned concurrently.
+ * <p/>
+ * Should a file not be parseable in this lightweight manner, the scanner falls back to
+ * {@link XIncludeHelper#locateInclusions} for that file.
+ */
+public class DocumentDependencyScanner {
+	private static final Logger log = LoggerFactory.getLogger( DocumentDependencyScanner.class );
+
+	private static final String XINCLUDE_NS = "http://www.w3.org/2001/XInclude";
+	private static final String XINCLUDE_NS_LEGACY = "http://www.w3.org/2003/XInclude";
+
+	private static final String EXTERNAL_GENERAL_ENTITIES_FEATURE = "http://xml.org/sax/features/external-general-entities";
+	private static final String EXTERNAL_PARAMETER_ENTITIES_FEATURE = "http://xml.org/sax/features/external-parameter-entities";
+	private static final String DECLARATION_HANDLER_PROPERTY = "http://xml.org/sax/properties/declaration-handler";
+
+	/**
+	 * Direct dependencies per file, shared by all scanners as they do not depend on any scanner settings.
+	 */
+	private static final ConcurrentMap<File, ScanResult> SCAN_RESULTS = new ConcurrentHashMap<File, ScanResult>();
+
+	private final DocBookSchemaResolutionStrategy schemaResolutionStrategy;
+	private final LinkedHashSet<ValueInjection> valueInjections;
+	private final WorkerPool workerPool;
+
+	/**
+	 * Creates a scanner which scans files one at a time, for callers which have no
+	 * {@linkplain org.jboss.jdocbook.JDocBookComponentRegistry#buildWorkerPool configured} worker pool at hand.
+	 *
+	 * @param schemaResolutionStrategy Which DocBook schema to use, should we need to fall back to
+	 * {@link XIncludeHelper#locateInclusions}
+	 */
+	public DocumentDependencyScanner(DocBookSchemaResolutionStrategy schemaResolutionStrategy) {
+		this( schemaResolutionStrategy, null, new WorkerPool( "dependency-scan", 1 ) );
+	}
+
+	/**
+	 * Creates a scanner.
+	 *
+	 * @param schemaResolutionStrategy Which DocBook schema to use, should we need to fall back to
+	 * {@link XIncludeHelper#locateInclusions}
+	 * @param valueInjections Any values to be injected as entities (so that documents referring to them parse).
+	 * @param workerPool The pool used to scan files concurrently
+	 */
+	public DocumentDependencyScanner(
+			DocBookSchemaResolutionStrategy schemaResolutionStrategy,
+			LinkedHashSet<ValueInjection> valueInjections,
+			WorkerPool workerPool) {
+		this.schemaResolutionStrategy = schemaResolutionStrategy;
+		this.valueInjections = valueInjections;
+		this.workerPool = workerPool;
+	}
+
+	/**
+	 * Find all the (existing) files the given document depends upon, directly or indirectly.  The document itself
+	 * is not part of the result.
+	 *
+	 * @param root The document from which to start looking
+	 *
+	 * @return The dependencies
+	 */
+	public Set<File> findDependencies(File root) {
+		return findDependencies( Collections.singleton( root ) );
+	}
+
+	/**
+	 * Find all the (existing) files the given documents depend upon, directly or indirectly.  The documents
+	 * themselves are only part of the result if one of them depends upon another.
+	 *
+	 * @param roots The documents from which to start looking
+	 *
+	 * @return The dependencies
+	 */
+	public Set<File> findDependencies(Collection<File> roots) {
+		final Set<File> dependencies = new TreeSet<File>();
+		final Set<File> visited = new LinkedHashSet<File>();
+
+		List<File> level = new ArrayList<File>();
+		for ( File root : roots ) {
+			final File file = root.getAbsoluteFile();
+			if ( visited.add( file ) && isScannable( file ) ) {
+				level.add( file );
+			}
+		}
+
+		while ( !level.isEmpty() ) {
+			final Map<File, Set<File>> levelResults = scan( level );
+			final List<File> nextLevel = new ArrayList<File>();
+			for ( Set<File> fileDependencies : levelResults.values() ) {
+				for ( File dependency : fileDependencies ) {
+					if ( !dependency.exists() ) {
+						continue;
+					}
+					dependencies.add( dependency );
+					if ( visited.add( dependency ) && isScannable( dependency ) ) {
+						nextLevel.add( dependency );
+					}
+				}
+			}
+			level = nextLevel;
+		}
+
+		return dependencies;
+	}
+
+	private static boolean isScannable(File file) {
+		return FileUtils.isXMLFile( file );
+	}
+
+	private Map<File, Set<File>> scan(List<File> files) {
+		final Map<File, Set<File>> results = Collections.synchronizedMap( new LinkedHashMap<File, Set<File>>() );
+		final List<ScanJob> jobs = new ArrayList<ScanJob>();
+		for ( File file : files ) {
+			final ScanResult cached = SCAN_RESULTS.get( file );
+			if ( cached != null && cached.isCurrent( file ) ) {
+				results.put( file, cached.dependencies );
+			}
+			else {
+				jobs.add( new ScanJob( file, results ) );
+			}
+		}
+		workerPool.execute( jobs );
+		return results;
+	}
+
+	/**
+	 * Determine the direct dependencies of the given file.
+	 *
+	 * @param file The file to scan
+	 *
+	 * @return The direct dependencies.
+	 */
+	public Set<File> scanDirectDependencies(File file) {
+		file = file.getAbsoluteFile();
+		final ScanResult cached = SCAN_RESULTS.get( file );
+		if ( cached != null && cached.isCurrent( file ) ) {
+			return cached.dependencies;
+		}
+
+		final long lastModified = file.lastModified();
+		final long length = file.length();
+		Set<File> dependencies;
+		try {
+			dependencies = parseDirectDependencies( file );
+		}
+		catch ( SAXException e ) {
+			log.debug( "Unable to scan {} for dependencies ({}); performing XInclude processing instead", file, e.getMessage() );
+			dependencies = XIncludeHelper.locateInclusions( file, schemaResolutionStrategy );
+		}
+		catch ( IOException e ) {
+			throw new JDocBookProcessException( "Unable to scan [" + file.getAbsolutePath() + "] for dependencies", e );
+		}
+
+		dependencies = Collections.unmodifiableSet( dependencies );
+		SCAN_RESULTS.put( file, new ScanResult( lastModified, length, dependencies ) );
+		return dependencies;
+	}
+
+	private Set<File> parseDirectDependencies(File file) throws SAXException, IOException {
+		final XMLReader reader = buildXMLReader();
+		final DependencyCollector collector = new DependencyCollector();
+		reader.setContentHandler( collector );
+		reader.setErrorHandler( collector );
+		reader.setProperty( DECLARATION_HANDLER_PROPERTY, collector );
+		reader.setEntityResolver( collector );
+		reader.parse( FileUtils.createInputSource( file, valueInjections ) );
+		return collector.dependencies;
+	}
+
+	private static XMLReader buildXMLReader() throws SAXException {
+		final XMLReader reader = XMLReaderPool.newReader( true, false );
+		reader.setFeature( Constants.DTD_LOADING_FEATURE, false );
+		reader.setFeature( Constants.DTD_VALIDATION_FEATURE, false );
+		reader.setFeature( EXTERNAL_GENERAL_ENTITIES_FEATURE, false );
+		reader.setFeature( EXTERNAL_PARAMETER_ENTITIES_FEATURE, true );
+		return reader;
+	}
+
+	private class ScanJob implements WorkerPool.Job {
+		private final File file;
+		private final Map<File, Set<File>> results;
+
+		private ScanJob(File file, Map<File, Set<File>> results) {
+			this.file = file;
+			this.results = results;
+		}
+
+		@Override
+		public String getDescription() {
+			return file.getAbsolutePath();
+		}
+
+		@Override
+		public void perform() {
+			results.put( file, scanDirectDependencies( file ) );
+		}
+	}
+
+	private static class ScanResult {
+		private final long lastModified;
+		private final long length;
+		private final Set<File> dependencies;
+
+		private ScanResult(long lastModified, long length, Set<File> dependencies) {
+			this.lastModified = lastModified;
+			this.length = length;
+			this.dependencies = dependencies;
+		}
+
+		private boolean isCurrent(File file) {
+			return lastModified == file.lastModified() && length == file.length();
+		}
+	}
+
+	/**
+	 * Collects <tt>xi:include</tt> hrefs (resolved against the base URI of the entity in which they occur) and
+	 * external entity system ids.  External parameter entities are read (they may declare further entities), but
+	 * only when they are local files; external general entities are never expanded, as they are scanned on their
+	 * own.
+	 */
+	private static class DependencyCollector extends DefaultHandler implements DeclHandler {
+		private final Set<File> dependencies = new TreeSet<File>();
+		private Locator locator;
+
+		@Override
+		public void setDocumentLocator(Locator locator) {
+			this.locator = locator;
+		}
+
+		@Override
+		public void startElement(String uri, String localName, String qName, Attributes attributes) {
+			if ( !XINCLUDE_NS.equals( uri ) && !XINCLUDE_NS_LEGACY.equals( uri ) ) {
+				return;
+			}
+			if ( !"include".equals( localName ) ) {
+				return;
+			}
+			final String href = attributes.getValue( "href" );
+			if ( href == null || href.length() == 0 ) {
+				// an include of (part of) the same document
+				return;
+			}
+			addDependency( locator == null ? null : locator.getSystemId(), href );
+		}
+
+		@Override
+		public void externalEntityDecl(String name, String publicId, String systemId) {
+			addDependency( locator == null ? null : locator.getSystemId(), systemId );
+		}
+
+		@Override
+		public void elementDecl(String name, String model) {
+		}
+
+		@Override
+		public void attributeDecl(String eName, String aName, String type, String mode, String value) {
+		}
+
+		@Override
+		public void internalEntityDecl(String name, String value) {
+		}
+
+		@Override
+		public InputSource resolveEntity(String publicId, String systemId) {
+			if ( systemId != null && systemId.startsWith( "file:" ) ) {
+				return null;
+			}
+			// never go out to the network just to discover dependencies
+			return new InputSource( new StringReader( "" ) );
+		}
+
+		private void addDependency(String base, String reference) {
+			if ( reference == null ) {
+				return;
+			}
+			try {
+				final URI uri = base == null ? new URI( reference ) : new URI( base ).resolve( new URI( reference ) );
+				if ( "file".equals( uri.getScheme() ) ) {
+					dependencies.add( new File( uri ) );
+				}
+			}
+			catch ( URISyntaxException ignore ) {
+			}
+			catch ( IllegalArgumentException ignore ) {
+			}
+		}
+	}
+}
@@ -0,0 +1,548 @@
+/*
+ * jDocBook, processing of DocBook sources
+ *
+ * Copyright (c) 2010, Red Hat Inc. or third-party contributors as
+ * indicated by the @author tags or express copyright attribution
+ * statements applied by the authors.  All third-party contributions are
+ * distributed under license by Red Hat Inc.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.jboss.jdocbook.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Field;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import org.apache.xerces.impl.XMLEntityManager;
+import org.apache.xerces.impl.dtd.DTDGrammar;
+import org.apache.xerces.impl.dtd.XMLEntityDecl;
+import org.apache.xerces.xinclude.XIncludeHandler;
+import org.apache.xerces.xni.XMLResourceIdentifier;
+import org.apache.xerces.xni.grammars.Grammar;
+import org.apache.xerces.xni.grammars.XMLGrammarDescription;
+import org.apache.xerces.xni.grammars.XMLGrammarPool;
+import org.apache.xerces.xni.parser.XMLConfigurationException;
+import org.apache.xerces.xni.parser.XMLParserConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+/**
+ * A cache of parsed DTD grammars for Xerces readers, so that a DTD (the DocBook DTD in particular) is parsed only
+ * once rather than for each parsed document.  DTDs are parsed (through the given entity resolver) either up front,
+ * see {@link #preload}, or the first time a document referencing them is parsed; grammars are never taken from the
+ * parsers themselves, so documents cannot "pollute" the cache.
+ * <p/>
+ * IMPL NOTE : When Xerces uses a cached DTD grammar it does not scan the DTD, and so does not know about the entities
+ * declared in it; references to them would silently be dropped.  Hence each parser configuration gets its own
+ * {@link XMLGrammarPool} view which, when it hands out a cached grammar, (re-)declares the entities of that DTD with
+ * the entity manager of that configuration.  For the same reason grammars are only served to documents without an
+ * internal DTD subset (whose declarations must take precedence over those of the DTD).
+ * <p/>
+ * IMPL NOTE : Xerces parses XIncluded documents with child parser configurations which it creates itself, the first
+ * time it meets an XInclude, without passing on the grammar pool.  The child configurations are kept by the (pooled)
+ * parser though, so we hand them a view of the cache as well before each parse; only the XIncluded documents of the
+ * very first parse of a pooled parser are thus parsed with their DTD.
+ */
+public class DtdGrammarPool {
+	private static final Logger log = LoggerFactory.getLogger( DtdGrammarPool.class );
+
+	private static final int PROLOG_PEEK_SIZE = 4 * 1024;
+
+	public static final String GRAMMAR_POOL_PROPERTY = "http://apache.org/xml/properties/internal/grammar-pool";
+	public static final String ENTITY_MANAGER_PROPERTY = "http://apache.org/xml/properties/internal/entity-manager";
+	public static final String XINCLUDE_HANDLER_PROPERTY = "http://apache.org/xml/properties/internal/xinclude-handler";
+
+	private static final Field[] XINCLUDE_CHILD_CONFIG_FIELDS = locateXIncludeChildConfigFields();
+
+	private final EntityResolver entityResolver;
+	private final ConcurrentMap<String, FutureTask<CachedDtd>> dtds = new ConcurrentHashMap<String, FutureTask<CachedDtd>>();
+
+	public DtdGrammarPool(EntityResolver entityResolver) {
+		this.entityResolver = entityResolver;
+	}
+
+	/**
+	 * Parse (and cache) up front the DTDs referenced by the given documents, so that parses do not have to wait for
+	 * them.  Documents without a DOCTYPE, with an internal DTD subset or referencing their DTD by a relative system
+	 * id are skipped.
+	 *
+	 * @param documents The documents whose DTDs are to be loaded
+	 */
+	public void preload(Collection<File> documents) {
+		for ( File document : documents ) {
+			final Doctype doctype = readDoctype( document );
+			if ( doctype == null || doctype.internalSubset || doctype.systemId == null ) {
+				continue;
+			}
+			// only absolute system ids are expanded by Xerces to themselves, and so match the cache keys
+			if ( doctype.systemId.indexOf( ':' ) < 2 ) {
+				continue;
+			}
+			getCachedDtd( doctype.publicId, doctype.systemId );
+		}
+	}
+
+	/**
+	 * Apply this cache to the given reader, and to the parser configurations it uses for XIncluded documents.  Readers
+	 * which are not Xerces readers are left untouched.
+	 *
+	 * @param reader The reader
+	 */
+	public void apply(XMLReader reader) {
+		try {
+			final Object entityManager = reader.getProperty( ENTITY_MANAGER_PROPERTY );
+			if ( !( entityManager instanceof XMLEntityManager ) ) {
+				log.debug( "Reader does not expose its entity manager; DTDs will not be cached : {}", reader );
+				return;
+			}
+			reader.setProperty( GRAMMAR_POOL_PROPERTY, new ReaderGrammarPool( (XMLEntityManager) entityManager ) );
+			applyToXIncludeChildren( reader.getProperty( XINCLUDE_HANDLER_PROPERTY ), true );
+		}
+		catch ( SAXException e ) {
+			log.debug( "Reader does not support grammar pools; DTDs will not be cached : {}", reader );
+		}
+	}
+
+	/**
+	 * Detach this cache from the parser configurations the given reader uses for XIncluded documents, which outlive
+	 * the parse; see {@link #apply}.
+	 *
+	 * @param reader The reader
+	 */
+	public void release(XMLReader reader) {
+		try {
+			applyToXIncludeChildren( reader.getProperty( XINCLUDE_HANDLER_PROPERTY ), false );
+		}
+		catch ( SAXException ignore ) {
+			// the reader does not process XIncludes
+		}
+	}
+
+	private void applyToXIncludeChildren(Object xincludeHandler, boolean attach) {
+		if ( !( xincludeHandler instanceof XIncludeHandler ) ) {
+			return;
+		}
+		for ( Field field : XINCLUDE_CHILD_CONFIG_FIELDS ) {
+			final XMLParserConfiguration childConfig;
+			try {
+				childConfig = (XMLParserConfiguration) field.get( xincludeHandler );
+			}
+			catch ( IllegalAccessException e ) {
+				continue;
+			}
+			if ( childConfig == null ) {
+				continue;
+			}
+			try {
+				if ( attach ) {
+					final Object entityManager = childConfig.getProperty( ENTITY_MANAGER_PROPERTY );
+					if ( entityManager instanceof XMLEntityManager ) {
+						childConfig.setProperty(
+								GRAMMAR_POOL_PROPERTY,
+								new ReaderGrammarPool( (XMLEntityManager) entityManager )
+						);
+					}
+				}
+				else {
+					childConfig.setProperty( GRAMMAR_POOL_PROPERTY, null );
+				}
+				applyToXIncludeChildren( childConfig.getProperty( XINCLUDE_HANDLER_PROPERTY ), attach );
+			}
+			catch ( XMLConfigurationException e ) {
+				log.debug( "XInclude parser configuration does not support grammar pools : {}", childConfig );
+			}
+		}
+	}
+
+	private static Field[] locateXIncludeChildConfigFields() {
+		final List<Field> fields = new ArrayList<Field>();
+		for ( String name : new String[] { "fXIncludeChildConfig", "fXPointerChildConfig" } ) {
+			try {
+				final Field field = XIncludeHandler.class.getDeclaredField( name );
+				field.setAccessible( true );
+				fields.add( field );
+			}
+			catch ( NoSuchFieldException e ) {
+				log.debug( "Unknown Xerces XInclude handler field [{}]; XIncluded documents will parse their DTD", name );
+			}
+			catch ( SecurityException e ) {
+				log.debug( "Unable to access Xerces XInclude handler field [{}]; XIncluded documents will parse their DTD", name );
+			}
+		}
+		return fields.toArray( new Field[fields.size()] );
+	}
+
+	/**
+	 * Read the DOCTYPE of the given document.  We only look at the start of the document, and answer null whenever
+	 * unsure.
+	 *
+	 * @param document The document
+	 *
+	 * @return The DOCTYPE, or null.
+	 */
+	private static Doctype readDoctype(File document) {
+		final byte[] head = new byte[PROLOG_PEEK_SIZE];
+		int length = 0;
+		try {
+			final InputStream stream = new FileInputStream( document );
+			try {
+				int read;
+				while ( length < head.length && ( read = stream.read( head, length, head.length - length ) ) != -1 ) {
+					length += read;
+				}
+			}
+			finally {
+				stream.close();
+			}
+		}
+		catch ( IOException e ) {
+			return null;
+		}
+
+		// ISO-8859-1 maps bytes to chars one-to-one, which is all we need for spotting ASCII markup
+		final String prolog;
+		try {
+			prolog = new String( head, 0, length, "ISO-8859-1" );
+		}
+		catch ( UnsupportedEncodingException e ) {
+			return null;
+		}
+		final int doctypeStart = prolog.indexOf( "<!DOCTYPE" );
+		if ( doctypeStart < 0 ) {
+			return null;
+		}
+		final List<String> literals = new ArrayList<String>();
+		char quote = 0;
+		int literalStart = -1;
+		for ( int i = doctypeStart; i < prolog.length(); i++ ) {
+			final char c = prolog.charAt( i );
+			if ( quote != 0 ) {
+				if ( c == quote ) {
+					literals.add( prolog.substring( literalStart, i ) );
+					quote = 0;
+				}
+			}
+			else if ( c == '"' || c == '\'' ) {
+				quote = c;
+				literalStart = i + 1;
+			}
+			else if ( c == '[' ) {
+				return new Doctype( null, null, true );
+			}
+			else if ( c == '>' ) {
+				final boolean isPublic = prolog.substring( doctypeStart, i ).contains( "PUBLIC" );
+				if ( isPublic ) {
+					return new Doctype(
+							literals.size() > 0 ? literals.get( 0 ) : null,
+							literals.size() > 1 ? literals.get( 1 ) : null,
+							false
+					);
+				}
+				return new Doctype( null, literals.size() > 0 ? literals.get( 0 ) : null, false );
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Does the given document have a DOCTYPE referencing an external DTD, without any internal subset?
+	 *
+	 * @param documentUri The URI of the document
+	 *
+	 * @return True if the document has a DOCTYPE without internal subset.
+	 */
+	private static boolean hasExternalSubsetOnly(String documentUri) {
+		if ( documentUri == null || !documentUri.startsWith( "file:" ) ) {
+			return false;
+		}
+		final File document;
+		try {
+			document = new File( new URI( documentUri ) );
+		}
+		catch ( URISyntaxException e ) {
+			return false;
+		}
+		catch ( IllegalArgumentException e ) {
+			return false;
+		}
+		final Doctype doctype = readDoctype( document );
+		return doctype != null && !doctype.internalSubset;
+	}
+
+	private static class Doctype {
+		private final String publicId;
+		private final String systemId;
+		private final boolean internalSubset;
+
+		private Doctype(String publicId, String systemId, boolean internalSubset) {
+			this.publicId = publicId;
+			this.systemId = systemId;
+			this.internalSubset = internalSubset;
+		}
+	}
+
+	/**
+	 * Remove all cached grammars.
+	 */
+	public void clear() {
+		dtds.clear();
+	}
+
+	private CachedDtd getCachedDtd(XMLGrammarDescription description) {
+		final String systemId = description.getExpandedSystemId() != null
+				? description.getExpandedSystemId()
+				: description.getLiteralSystemId();
+		if ( systemId == null ) {
+			return null;
+		}
+		return getCachedDtd( description.getPublicId(), systemId );
+	}
+
+	private CachedDtd getCachedDtd(final String publicId, final String systemId) {
+		final String key = publicId + '|' + systemId;
+
+		FutureTask<CachedDtd> entry = dtds.get( key );
+		if ( entry == null ) {
+			final FutureTask<CachedDtd> newEntry = new FutureTask<CachedDtd>(
+					new Callable<CachedDtd>() {
+						@Override
+						public CachedDtd call() {
+							return loadDtd( publicId, systemId );
+						}
+					}
+			);
+			entry = dtds.putIfAbsent( key, newEntry );
+			if ( entry == null ) {
+				entry = newEntry;
+				entry.run();
+			}
+		}
+
+		try {
+			return entry.get();
+		}
+		catch ( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+			return null;
+		}
+		catch ( ExecutionException e ) {
+			return null;
+		}
+	}
+
+	private CachedDtd loadDtd(String publicId, String systemId) {
+		// parse a minimal document referencing the DTD, capturing the grammar built by the parser
+		final StringBuilder document = new StringBuilder( "<!DOCTYPE dtd " );
+		if ( publicId != null ) {
+			document.append( "PUBLIC \"" ).append( publicId ).append( "\" " );
+		}
+		else {
+			document.append( "SYSTEM " );
+		}
+		document.append( '"' ).append( systemId ).append( "\"><dtd/>" );
+		final InputSource inputSource = new InputSource( new StringReader( document.toString() ) );
+		inputSource.setSystemId( systemId );
+
+		final CapturingGrammarPool capturingPool = new CapturingGrammarPool();
+		try {
+			final XMLReader reader = XMLReaderPool.newReader( false, false );
+			reader.setEntityResolver( entityResolver );
+			reader.setFeature( Constants.DTD_LOADING_FEATURE, true );
+			reader.setFeature( Constants.DTD_VALIDATION_FEATURE, false );
+			reader.setProperty( GRAMMAR_POOL_PROPERTY, capturingPool );
+			reader.parse( inputSource );
+		}
+		catch ( SAXException e ) {
+			log.debug( "Unable to parse DTD [{}]; it will not be cached : {}", systemId, e.getMessage() );
+			return null;
+		}
+		catch ( IOException e ) {
+			log.debug( "Unable to parse DTD [{}]; it will not be cached : {}", systemId, e.getMessage() );
+			return null;
+		}
+
+		if ( capturingPool.grammar == null ) {
+			log.debug( "No grammar built for DTD [{}]; it will not be cached", systemId );
+			return null;
+		}
+
+		final List<XMLEntityDecl> entityDecls = new ArrayList<XMLEntityDecl>();
+		XMLEntityDecl entityDecl = new XMLEntityDecl();
+		for ( int i = 0; capturingPool.grammar.getEntityDecl( i, entityDecl ); i++ ) {
+			if ( !entityDecl.isPE ) {
+				entityDecls.add( entityDecl );
+				entityDecl = new XMLEntityDecl();
+			}
+		}
+
+		log.debug( "Cached DTD grammar [{}]", systemId );
+		return new CachedDtd( capturingPool.grammar, entityDecls );
+	}
+
+	private static class CachedDtd {
+		private final Grammar grammar;
+		private final List<XMLEntityDecl> entityDecls;
+
+		private CachedDtd(Grammar grammar, List<XMLEntityDecl> entityDecls) {
+			this.grammar = grammar;
+			this.entityDecls = entityDecls;
+		}
+
+		private void declareEntities(XMLEntityManager entityManager) {
+			for ( XMLEntityDecl entityDecl : entityDecls ) {
+				if ( entityDecl.value != null ) {
+					entityManager.addInternalEntity( entityDecl.name, entityDecl.value );
+				}
+				else if ( entityDecl.notation != null ) {
+					entityManager.addUnparsedEntity(
+							entityDecl.name,
+							entityDecl.publicId,
+							entityDecl.systemId,
+							entityDecl.baseSystemId,
+							entityDecl.notation
+					);
+				}
+				else {
+					try {
+						entityManager.addExternalEntity(
+								entityDecl.name,
+								entityDecl.publicId,
+								entityDecl.systemId,
+								entityDecl.baseSystemId
+						);
+					}
+					catch ( IOException e ) {
+						log.debug( "Unable to declare external entity [{}] : {}", entityDecl.name, e.getMessage() );
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Captures the DTD grammar built by the parser, without handing out any grammars.
+	 */
+	private static class CapturingGrammarPool implements XMLGrammarPool {
+		private DTDGrammar grammar;
+
+		@Override
+		public Grammar retrieveGrammar(XMLGrammarDescription description) {
+			return null;
+		}
+
+		@Override
+		public Grammar[] retrieveInitialGrammarSet(String grammarType) {
+			return new Grammar[0];
+		}
+
+		@Override
+		public void cacheGrammars(String grammarType, Grammar[] grammars) {
+			if ( XMLGrammarDescription.XML_DTD.equals( grammarType ) ) {
+				for ( Grammar candidate : grammars ) {
+					if ( candidate instanceof DTDGrammar ) {
+						grammar = (DTDGrammar) candidate;
+					}
+				}
+			}
+		}
+
+		@Override
+		public void lockPool() {
+		}
+
+		@Override
+		public void unlockPool() {
+		}
+
+		@Override
+		public void clear() {
+		}
+	}
+
+	/**
+	 * The grammar pool as seen by a single parser configuration.  Grammars are served for the DOCTYPE of each document
+	 * parsed by the configuration which does not have an internal DTD subset.
+	 */
+	private class ReaderGrammarPool implements XMLGrammarPool {
+		private final XMLEntityManager entityManager;
+
+		private ReaderGrammarPool(XMLEntityManager entityManager) {
+			this.entityManager = entityManager;
+		}
+
+		@Override
+		public Grammar retrieveGrammar(XMLGrammarDescription description) {
+			if ( !XMLGrammarDescription.XML_DTD.equals( description.getGrammarType() ) ) {
+				return null;
+			}
+			// for DTDs, the base system id is that of the document declaring the DOCTYPE
+			final String documentUri = description instanceof XMLResourceIdentifier
+					? ( (XMLResourceIdentifier) description ).getBaseSystemId()
+					: null;
+			if ( !hasExternalSubsetOnly( documentUri ) ) {
+				log.trace( "Document may have an internal DTD subset; DTD will not be served from cache : {}", documentUri );
+				return null;
+			}
+			final CachedDtd cachedDtd = getCachedDtd( description );
+			if ( cachedDtd == null ) {
+				return null;
+			}
+			cachedDtd.declareEntities( entityManager );
+			return cachedDtd.grammar;
+		}
+
+		@Override
+		public Grammar[] retrieveInitialGrammarSet(String grammarType) {
+			return new Grammar[0];
+		}
+
+		@Override
+		public void cacheGrammars(String grammarType, Grammar[] grammars) {
+			// we decide what gets cached ourselves; see DtdGrammarPool#getCachedDtd
+		}
+
+		@Override
+		public void lockPool() {
+		}
+
+		@Override
+		public void unlockPool() {
+		}
+
+		@Override
+		public void clear() {
+		}
+	}
+}
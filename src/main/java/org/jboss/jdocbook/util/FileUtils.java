@@ -24,28 +24,32 @@
 package org.jboss.jdocbook.util;
 
 import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.net.MalformedURLException;
 import java.util.LinkedHashSet;
+import java.util.Properties;
 import java.util.Set;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.parsers.SAXParserFactory;
 import javax.xml.transform.sax.SAXSource;
 
 import net.socialchange.doctype.Doctype;
 import net.socialchange.doctype.DoctypeChangerStream;
 import net.socialchange.doctype.DoctypeGenerator;
 import net.socialchange.doctype.DoctypeImpl;
-import org.apache.xerces.jaxp.SAXParserFactoryImpl;
 import org.jboss.jdocbook.JDocBookProcessException;
 import org.jboss.jdocbook.ValueInjection;
 import org.xml.sax.EntityResolver;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
-import org.xml.sax.XMLReader;
 
 /**
  * Various {@link java.io.File file} and {@link java.io.File directory} related utilities.
@@ -53,6 +57,35 @@ import org.xml.sax.XMLReader;
  * @author Steve Ebersole
  */
 public class FileUtils extends org.codehaus.plexus.util.FileUtils {
+	private static final Method TO_PATH;
+	private static final Method ATOMIC_MOVE;
+	private static final Object ATOMIC_MOVE_OPTIONS;
+
+	static {
+		// java.nio.file is only available on Java 7 and later
+		Method toPath = null;
+		Method atomicMove = null;
+		Object atomicMoveOptions = null;
+		try {
+			final Class<?> pathClass = Class.forName( "java.nio.file.Path" );
+			final Class<?> copyOptionClass = Class.forName( "java.nio.file.CopyOption" );
+			final Class<?> standardCopyOptionClass = Class.forName( "java.nio.file.StandardCopyOption" );
+			atomicMoveOptions = Array.newInstance( copyOptionClass, 2 );
+			Array.set( atomicMoveOptions, 0, standardCopyOptionClass.getField( "ATOMIC_MOVE" ).get( null ) );
+			Array.set( atomicMoveOptions, 1, standardCopyOptionClass.getField( "REPLACE_EXISTING" ).get( null ) );
+			toPath = File.class.getMethod( "toPath" );
+			atomicMove = Class.forName( "java.nio.file.Files" )
+					.getMethod( "move", pathClass, pathClass, atomicMoveOptions.getClass() );
+		}
+		catch ( Exception ignore ) {
+			toPath = null;
+			atomicMove = null;
+		}
+		TO_PATH = toPath;
+		ATOMIC_MOVE = atomicMove;
+		ATOMIC_MOVE_OPTIONS = atomicMoveOptions;
+	}
+
 	/**
 	 * Create a SAXSource from a given <tt>file</tt>.
 	 * <p/>
@@ -68,22 +101,41 @@ public class FileUtils extends org.codehaus.plexus.util.FileUtils {
 			File file,
 			EntityResolver resolver,
 			final LinkedHashSet<ValueInjection> valueInjections) {
+		return createSAXSource( file, resolver, valueInjections, null );
+	}
+
+	/**
+	 * Create a SAXSource from a given <tt>file</tt>, using the given cache of DTD grammars.
+	 * <p/>
+	 * NOTE: the result <b>is</b> {@link java.io.BufferedInputStream buffered}.
+	 *
+	 * @param file The file from which to generate a SAXSource
+	 * @param resolver An entity resolver to apply to the file reader.
+	 * @param valueInjections The values to be injected
+	 * @param dtdGrammarPool The cache of DTD grammars to use; may be null
+	 *
+	 * @return An appropriate SAXSource
+	 */
+	public static SAXSource createSAXSource(
+			File file,
+			EntityResolver resolver,
+			final LinkedHashSet<ValueInjection> valueInjections,
+			DtdGrammarPool dtdGrammarPool) {
 		try {
 			final InputSource source = createInputSource( file, valueInjections );
 
-        	SAXParserFactory factory = new SAXParserFactoryImpl();
-        	factory.setXIncludeAware( true );
-
-			XMLReader reader = factory.newSAXParser().getXMLReader();
+			final XMLReaderPool.PooledXMLReader reader = XMLReaderPool.newPooledReader( false, true );
 			reader.setEntityResolver( resolver );
 			reader.setFeature( Constants.DTD_LOADING_FEATURE, true );
 			reader.setFeature( Constants.DTD_VALIDATION_FEATURE, false );
 
+			// value injections are added as an internal DTD subset, which rules out the use of cached DTDs
+			if ( dtdGrammarPool != null && ( valueInjections == null || valueInjections.isEmpty() ) ) {
+				reader.setDtdGrammarPool( dtdGrammarPool );
+			}
+
 			return new SAXSource( reader, source );
 		}
-		catch ( ParserConfigurationException e ) {
-			throw new JDocBookProcessException( "unable to build SAX Parser/Factory [" + e.getMessage() + "]", e );
-		}
 		catch ( SAXException e ) {
 			throw new JDocBookProcessException( "unable to build SAX Parser/Factory [" + e.getMessage() + "]", e );
 		}
@@ -192,4 +244,84 @@ public class FileUtils extends org.codehaus.plexus.util.FileUtils {
 		}
 		return buffer;
 	}
+
+	/**
+	 * Load a properties file.
+	 *
+	 * @param file The properties file
+	 *
+	 * @return The loaded properties
+	 *
+	 * @throws IOException Indicates a problem reading the file
+	 */
+	public static Properties loadProperties(File file) throws IOException {
+		final Properties properties = new Properties();
+		final InputStream stream = new BufferedInputStream( new FileInputStream( file ) );
+		try {
+			properties.load( stream );
+		}
+		finally {
+			stream.close();
+		}
+		return properties;
+	}
+
+	/**
+	 * Store properties to a file.  The properties are first written to a temporary file in the same directory which
+	 * then replaces the target, so that readers never see a partially written file.
+	 *
+	 * @param properties The properties to store
+	 * @param file The target file
+	 * @param comment A descriptive comment for the file header
+	 *
+	 * @throws IOException Indicates a problem writing the file
+	 */
+	public static void storeProperties(Properties properties, File file, String comment) throws IOException {
+		final File tempFile = File.createTempFile( file.getName(), ".tmp", file.getParentFile() );
+		final OutputStream stream = new BufferedOutputStream( new FileOutputStream( tempFile ) );
+		try {
+			properties.store( stream, comment );
+		}
+		finally {
+			stream.close();
+		}
+		replace( tempFile, file );
+	}
+
+	/**
+	 * Replace the target file with the source file by renaming.  On Java 7 and later this is an atomic move (readers
+	 * see either the old or the new target, never none or a partial one).  Otherwise a plain rename is used, which is
+	 * atomic on POSIX systems; only where that refuses to rename over an existing file (Windows) the target is
+	 * deleted first, leaving a short window in which no target exists.
+	 *
+	 * @param source The file to rename
+	 * @param target The file to replace
+	 *
+	 * @throws IOException Indicates the rename failed; the source file is removed in that case
+	 */
+	public static void replace(File source, File target) throws IOException {
+		if ( ATOMIC_MOVE != null ) {
+			try {
+				ATOMIC_MOVE.invoke( null, TO_PATH.invoke( source ), TO_PATH.invoke( target ), ATOMIC_MOVE_OPTIONS );
+				return;
+			}
+			catch ( InvocationTargetException e ) {
+				// e.g. AtomicMoveNotSupportedException; fall back to renaming
+			}
+			catch ( IllegalAccessException e ) {
+				// fall back to renaming
+			}
+		}
+		if ( source.renameTo( target ) ) {
+			return;
+		}
+		// some platforms will not rename over an existing file
+		//noinspection ResultOfMethodCallIgnored
+		target.delete();
+		if ( !source.renameTo( target ) ) {
+			//noinspection ResultOfMethodCallIgnored
+			source.delete();
+			throw new IOException( "Unable to rename " + source + " to " + target );
+		}
+	}
 }
@@ -0,0 +1,136 @@
+/*
+ * jDocBook, processing of DocBook sources
+ *
+ * Copyright (c) 2010, Red Hat Inc. or third-party contributors as
+ * indicated by the @author tags or express copyright attribution
+ * statements applied by the authors.  All third-party contributions are
+ * distributed under license by Red Hat Inc.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.jboss.jdocbook.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.CRC32;
+
+import org.jboss.jdocbook.JDocBookProcessException;
+
+/**
+ * Utilities for calculating cheap "fingerprints" of resources and values, used to detect changes between runs.
+ */
+public class Fingerprints {
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	/**
+	 * Determine a version indicator for the resource referenced by the given URL.  We use the last-modified
+	 * timestamp where one is available, falling back to a checksum of the content.
+	 *
+	 * @param url The resource URL
+	 *
+	 * @return The version indicator
+	 *
+	 * @throws JDocBookProcessException If the resource could not be read
+	 */
+	public static String version(URL url) {
+		try {
+			if ( "file".equals( url.getProtocol() ) ) {
+				return version( new File( url.toURI() ) );
+			}
+			final long lastModified = url.openConnection().getLastModified();
+			if ( lastModified > 0 ) {
+				return "lm:" + lastModified;
+			}
+		}
+		catch ( URISyntaxException ignore ) {
+		}
+		catch ( IllegalArgumentException ignore ) {
+		}
+		catch ( IOException ignore ) {
+		}
+
+		try {
+			final CRC32 checksum = new CRC32();
+			final InputStream stream = url.openStream();
+			try {
+				final byte[] buffer = new byte[8192];
+				int read;
+				while ( ( read = stream.read( buffer ) ) != -1 ) {
+					checksum.update( buffer, 0, read );
+				}
+			}
+			finally {
+				try {
+					stream.close();
+				}
+				catch ( IOException ignore ) {
+				}
+			}
+			return "crc:" + checksum.getValue();
+		}
+		catch ( IOException e ) {
+			throw new JDocBookProcessException( "problem reading resource [" + url.toExternalForm() + "]", e );
+		}
+	}
+
+	/**
+	 * Determine a version indicator for the given file, based on its size and last-modified timestamp.
+	 *
+	 * @param file The file
+	 *
+	 * @return The version indicator
+	 */
+	public static String version(File file) {
+		if ( !file.exists() ) {
+			return "missing";
+		}
+		return "lm:" + file.lastModified() + ";size:" + file.length();
+	}
+
+	/**
+	 * Calculate the (hex encoded) SHA-1 digest of the given string.
+	 *
+	 * @param value The value to digest
+	 *
+	 * @return The hex encoded digest
+	 */
+	public static String digest(String value) {
+		try {
+			return toHex( MessageDigest.getInstance( "SHA-1" ).digest( value.getBytes( "UTF-8" ) ) );
+		}
+		catch ( NoSuchAlgorithmException e ) {
+			throw new JDocBookProcessException( "SHA-1 digests not supported", e );
+		}
+		catch ( UnsupportedEncodingException e ) {
+			throw new JDocBookProcessException( "UTF-8 encoding not supported", e );
+		}
+	}
+
+	public static String toHex(byte[] bytes) {
+		final char[] chars = new char[ bytes.length * 2 ];
+		for ( int i = 0; i < bytes.length; i++ ) {
+			chars[ i * 2 ] = HEX[ ( bytes[i] >> 4 ) & 0xF ];
+			chars[ i * 2 + 1 ] = HEX[ bytes[i] & 0xF ];
+		}
+		return new String( chars );
+	}
+}
@@ -0,0 +1,457 @@
+/*
+ * jDocBook, processing of DocBook sources
+ *
+ * Copyright (c) 2010, Red Hat Inc. or third-party contributors as
+ * indicated by the @author tags or express copyright attribution
+ * statements applied by the authors.  All third-party contributions are
+ * distributed under license by Red Hat Inc.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.jboss.jdocbook.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.xml.transform.sax.SAXSource;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.DTDHandler;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXNotRecognizedException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.ext.LexicalHandler;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.LocatorImpl;
+
+/**
+ * Records the SAX events of a parsed document so that they can be replayed any number of times, without having to
+ * parse (and resolve inclusions, load DTDs, etc) again.  Element locations are retained, so that base URIs and error
+ * locations on replay are the same as when parsing; DTD events are not retained.
+ * <p/>
+ * Recording is not thread-safe; once recorded, a buffer can be replayed concurrently.
+ * <p/>
+ * The recorded event types are shared with {@link SAXEventPipe}.
+ */
+public class SAXEventBuffer implements ContentHandler, LexicalHandler {
+	public static final String LEXICAL_HANDLER_PROPERTY = "http://xml.org/sax/properties/lexical-handler";
+
+	private final List<Event> events = new ArrayList<Event>();
+	private final StringBuilder pendingCharacters = new StringBuilder();
+	private Locator locator;
+	private String systemId;
+	private int dtdDepth;
+
+	/**
+	 * Record the events of parsing the given source.
+	 *
+	 * @param source The source to parse
+	 *
+	 * @return The recorded events
+	 *
+	 * @throws SAXException Indicates a problem parsing the source
+	 * @throws IOException Indicates a problem reading the source
+	 */
+	public static SAXEventBuffer record(SAXSource source) throws SAXException, IOException {
+		final SAXEventBuffer buffer = new SAXEventBuffer();
+		final XMLReader reader = source.getXMLReader();
+		reader.setContentHandler( buffer );
+		reader.setProperty( LEXICAL_HANDLER_PROPERTY, buffer );
+		reader.parse( source.getInputSource() );
+		buffer.systemId = source.getSystemId();
+		return buffer;
+	}
+
+	/**
+	 * Build a source replaying the recorded events.
+	 *
+	 * @return The source
+	 */
+	public SAXSource toSource() {
+		final InputSource inputSource = new InputSource( systemId );
+		final SAXSource source = new SAXSource( new ReplayingReader(), inputSource );
+		source.setSystemId( systemId );
+		return source;
+	}
+
+	/**
+	 * The number of recorded events, as a rough indication of the size of the buffer.
+	 *
+	 * @return The number of events
+	 */
+	public int getEventCount() {
+		return events.size();
+	}
+
+	private void flushCharacters() {
+		if ( pendingCharacters.length() > 0 ) {
+			events.add( new Characters( pendingCharacters.toString(), false ) );
+			pendingCharacters.setLength( 0 );
+		}
+	}
+
+	private void add(Event event) {
+		flushCharacters();
+		events.add( event );
+	}
+
+	@Override
+	public void setDocumentLocator(Locator locator) {
+		this.locator = locator;
+	}
+
+	@Override
+	public void startDocument() {
+	}
+
+	@Override
+	public void endDocument() {
+		flushCharacters();
+	}
+
+	@Override
+	public void startPrefixMapping(String prefix, String uri) {
+		add( new StartPrefixMapping( prefix, uri ) );
+	}
+
+	@Override
+	public void endPrefixMapping(String prefix) {
+		add( new EndPrefixMapping( prefix ) );
+	}
+
+	@Override
+	public void startElement(String uri, String localName, String qName, Attributes atts) {
+		add(
+				new StartElement(
+						uri,
+						localName,
+						qName,
+						new AttributesImpl( atts ),
+						locator == null ? null : locator.getSystemId(),
+						locator == null ? -1 : locator.getLineNumber()
+				)
+		);
+	}
+
+	@Override
+	public void endElement(String uri, String localName, String qName) {
+		add( new EndElement( uri, localName, qName ) );
+	}
+
+	@Override
+	public void characters(char[] ch, int start, int length) {
+		pendingCharacters.append( ch, start, length );
+	}
+
+	@Override
+	public void ignorableWhitespace(char[] ch, int start, int length) {
+		add( new Characters( new String( ch, start, length ), true ) );
+	}
+
+	@Override
+	public void processingInstruction(String target, String data) {
+		add( new ProcessingInstruction( target, data ) );
+	}
+
+	@Override
+	public void skippedEntity(String name) {
+	}
+
+	@Override
+	public void startDTD(String name, String publicId, String systemId) {
+		dtdDepth++;
+	}
+
+	@Override
+	public void endDTD() {
+		dtdDepth--;
+	}
+
+	@Override
+	public void startEntity(String name) {
+	}
+
+	@Override
+	public void endEntity(String name) {
+	}
+
+	@Override
+	public void startCDATA() {
+		add( CDATA_START );
+	}
+
+	@Override
+	public void endCDATA() {
+		add( CDATA_END );
+	}
+
+	@Override
+	public void comment(char[] ch, int start, int length) {
+		if ( dtdDepth == 0 ) {
+			add( new Comment( new String( ch, start, length ) ) );
+		}
+	}
+
+	private void replay(ContentHandler contentHandler, LexicalHandler lexicalHandler) throws SAXException {
+		final LocatorImpl replayLocator = new LocatorImpl();
+		replayLocator.setSystemId( systemId );
+		contentHandler.setDocumentLocator( replayLocator );
+		contentHandler.startDocument();
+		for ( Event event : events ) {
+			event.replay( contentHandler, lexicalHandler, replayLocator );
+		}
+		contentHandler.endDocument();
+	}
+
+	static interface Event {
+		public void replay(ContentHandler contentHandler, LexicalHandler lexicalHandler, LocatorImpl locator)
+				throws SAXException;
+	}
+
+	static class StartPrefixMapping implements Event {
+		private final String prefix;
+		private final String uri;
+
+		StartPrefixMapping(String prefix, String uri) {
+			this.prefix = prefix;
+			this.uri = uri;
+		}
+
+		public void replay(ContentHandler contentHandler, LexicalHandler lexicalHandler, LocatorImpl locator)
+				throws SAXException {
+			contentHandler.startPrefixMapping( prefix, uri );
+		}
+	}
+
+	static class EndPrefixMapping implements Event {
+		private final String prefix;
+
+		EndPrefixMapping(String prefix) {
+			this.prefix = prefix;
+		}
+
+		public void replay(ContentHandler contentHandler, LexicalHandler lexicalHandler, LocatorImpl locator)
+				throws SAXException {
+			contentHandler.endPrefixMapping( prefix );
+		}
+	}
+
+	static class StartElement implements Event {
+		private final String uri;
+		private final String localName;
+		private final String qName;
+		private final Attributes attributes;
+		private final String systemId;
+		private final int lineNumber;
+
+		StartElement(
+				String uri,
+				String localName,
+				String qName,
+				Attributes attributes,
+				String systemId,
+				int lineNumber) {
+			this.uri = uri;
+			this.localName = localName;
+			this.qName = qName;
+			this.attributes = attributes;
+			this.systemId = systemId;
+			this.lineNumber = lineNumber;
+		}
+
+		public void replay(ContentHandler contentHandler, LexicalHandler lexicalHandler, LocatorImpl locator)
+				throws SAXException {
+			if ( systemId != null ) {
+				locator.setSystemId( systemId );
+			}
+			locator.setLineNumber( lineNumber );
+			contentHandler.startElement( uri, localName, qName, attributes );
+		}
+	}
+
+	static class EndElement implements Event {
+		private final String uri;
+		private final String localName;
+		private final String qName;
+
+		EndElement(String uri, String localName, String qName) {
+			this.uri = uri;
+			this.localName = localName;
+			this.qName = qName;
+		}
+
+		public void replay(ContentHandler contentHandler, LexicalHandler lexicalHandler, LocatorImpl locator)
+				throws SAXException {
+			contentHandler.endElement( uri, localName, qName );
+		}
+	}
+
+	static class Characters implements Event {
+		private final char[] characters;
+		private final boolean ignorable;
+
+		Characters(String characters, boolean ignorable) {
+			this.characters = characters.toCharArray();
+			this.ignorable = ignorable;
+		}
+
+		public void replay(ContentHandler contentHandler, LexicalHandler lexicalHandler, LocatorImpl locator)
+				throws SAXException {
+			if ( ignorable ) {
+				contentHandler.ignorableWhitespace( characters, 0, characters.length );
+			}
+			else {
+				contentHandler.characters( characters, 0, characters.length );
+			}
+		}
+	}
+
+	static class ProcessingInstruction implements Event {
+		private final String target;
+		private final String data;
+
+		ProcessingInstruction(String target, String data) {
+			this.target = target;
+			this.data = data;
+		}
+
+		public void replay(ContentHandler contentHandler, LexicalHandler lexicalHandler, LocatorImpl locator)
+				throws SAXException {
+			contentHandler.processingInstruction( target, data );
+		}
+	}
+
+	static class Comment implements Event {
+		private final char[] characters;
+
+		Comment(String characters) {
+			this.characters = characters.toCharArray();
+		}
+
+		public void replay(ContentHandler contentHandler, LexicalHandler lexicalHandler, LocatorImpl locator)
+				throws SAXException {
+			if ( lexicalHandler != null ) {
+				lexicalHandler.comment( characters, 0, characters.length );
+			}
+		}
+	}
+
+	static final Event CDATA_START = new Event() {
+		public void replay(ContentHandler contentHandler, LexicalHandler lexicalHandler, LocatorImpl locator)
+				throws SAXException {
+			if ( lexicalHandler != null ) {
+				lexicalHandler.startCDATA();
+			}
+		}
+	};
+
+	static final Event CDATA_END = new Event() {
+		public void replay(ContentHandler contentHandler, LexicalHandler lexicalHandler, LocatorImpl locator)
+				throws SAXException {
+			if ( lexicalHandler != null ) {
+				lexicalHandler.endCDATA();
+			}
+		}
+	};
+
+	/**
+	 * An {@link XMLReader} which, rather than parsing, replays the recorded events.
+	 */
+	private class ReplayingReader implements XMLReader {
+		private final Map<String, Boolean> features = new HashMap<String, Boolean>();
+		private final Map<String, Object> properties = new HashMap<String, Object>();
+		private ContentHandler contentHandler;
+		private DTDHandler dtdHandler;
+		private EntityResolver entityResolver;
+		private ErrorHandler errorHandler;
+
+		public boolean getFeature(String name) throws SAXNotRecognizedException {
+			final Boolean value = features.get( name );
+			if ( value != null ) {
+				return value;
+			}
+			if ( "http://xml.org/sax/features/namespaces".equals( name ) ) {
+				return true;
+			}
+			if ( "http://xml.org/sax/features/namespace-prefixes".equals( name ) ) {
+				return false;
+			}
+			throw new SAXNotRecognizedException( name );
+		}
+
+		public void setFeature(String name, boolean value) {
+			features.put( name, value );
+		}
+
+		public Object getProperty(String name) {
+			return properties.get( name );
+		}
+
+		public void setProperty(String name, Object value) {
+			properties.put( name, value );
+		}
+
+		public void setEntityResolver(EntityResolver resolver) {
+			this.entityResolver = resolver;
+		}
+
+		public EntityResolver getEntityResolver() {
+			return entityResolver;
+		}
+
+		public void setDTDHandler(DTDHandler handler) {
+			this.dtdHandler = handler;
+		}
+
+		public DTDHandler getDTDHandler() {
+			return dtdHandler;
+		}
+
+		public void setContentHandler(ContentHandler handler) {
+			this.contentHandler = handler;
+		}
+
+		public ContentHandler getContentHandler() {
+			return contentHandler;
+		}
+
+		public void setErrorHandler(ErrorHandler handler) {
+			this.errorHandler = handler;
+		}
+
+		public ErrorHandler getErrorHandler() {
+			return errorHandler;
+		}
+
+		public void parse(InputSource input) throws SAXException {
+			if ( contentHandler == null ) {
+				throw new SAXException( "no content handler set on reader" );
+			}
+			replay( contentHandler, (LexicalHandler) properties.get( LEXICAL_HANDLER_PROPERTY ) );
+		}
+
+		public void parse(String systemId) throws SAXException {
+			parse( new InputSource( systemId ) );
+		}
+	}
+}
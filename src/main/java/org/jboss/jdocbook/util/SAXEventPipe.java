@@ -0,0 +1,321 @@
+/*
+ * jDocBook, processing of DocBook sources
+ *
+ * Copyright (c) 2010, Red Hat Inc. or third-party contributors as
+ * indicated by the @author tags or express copyright attribution
+ * statements applied by the authors.  All third-party contributions are
+ * distributed under license by Red Hat Inc.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.jboss.jdocbook.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.ext.LexicalHandler;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.LocatorImpl;
+
+/**
+ * A {@link ContentHandler} passing the events it receives on to another handler which runs on a dedicated thread,
+ * so that producing the events (an XSLT transformation, say) and consuming them (FOP layout, say) overlap rather
+ * than serialize on one thread.
+ * <p/>
+ * Events are recorded in batches which are handed over through a bounded queue; the producer blocks once the
+ * consumer falls too far behind.  A failure of the consumer is reported back to the producer on its next hand-over
+ * (and at the latest from {@link #endDocument()}); the consumer keeps draining the queue after a failure so that the
+ * producer is never left blocked.  The consumer thread shares the {@linkplain ConsoleRedirectionHandler console
+ * redirection} of the producing thread.
+ * <p/>
+ * A pipe handles a single document.  Element locations are passed on; lexical events are not.
+ */
+public class SAXEventPipe implements ContentHandler {
+	public static final int DEFAULT_BATCH_SIZE = 512;
+	public static final int DEFAULT_QUEUE_CAPACITY = 64;
+
+	private static final long HAND_OVER_POLL_MILLIS = 100;
+
+	private static final List<SAXEventBuffer.Event> END = Collections.emptyList();
+
+	private static final SAXEventBuffer.Event START_DOCUMENT = new SAXEventBuffer.Event() {
+		public void replay(ContentHandler contentHandler, LexicalHandler lexicalHandler, LocatorImpl locator)
+				throws SAXException {
+			contentHandler.startDocument();
+		}
+	};
+
+	private static final SAXEventBuffer.Event END_DOCUMENT = new SAXEventBuffer.Event() {
+		public void replay(ContentHandler contentHandler, LexicalHandler lexicalHandler, LocatorImpl locator)
+				throws SAXException {
+			contentHandler.endDocument();
+		}
+	};
+
+	private final ContentHandler consumer;
+	private final String threadName;
+	private final int batchSize;
+	private final BlockingQueue<List<SAXEventBuffer.Event>> queue;
+
+	private final StringBuilder pendingCharacters = new StringBuilder();
+	private List<SAXEventBuffer.Event> batch;
+	private Locator locator;
+	private Thread consumerThread;
+	private boolean finished;
+	private volatile Throwable failure;
+
+	/**
+	 * Creates a pipe with the default batch size and queue capacity.
+	 *
+	 * @param consumer The handler to pass the events on to.
+	 * @param threadName The name for the consumer thread.
+	 */
+	public SAXEventPipe(ContentHandler consumer, String threadName) {
+		this( consumer, threadName, DEFAULT_BATCH_SIZE, DEFAULT_QUEUE_CAPACITY );
+	}
+
+	/**
+	 * Creates a pipe.
+	 *
+	 * @param consumer The handler to pass the events on to.
+	 * @param threadName The name for the consumer thread.
+	 * @param batchSize The number of events handed over to the consumer at a time.
+	 * @param queueCapacity The number of batches which may be waiting on the consumer before the producer blocks.
+	 */
+	public SAXEventPipe(ContentHandler consumer, String threadName, int batchSize, int queueCapacity) {
+		this.consumer = consumer;
+		this.threadName = threadName;
+		this.batchSize = batchSize;
+		this.queue = new ArrayBlockingQueue<List<SAXEventBuffer.Event>>( queueCapacity );
+		this.batch = new ArrayList<SAXEventBuffer.Event>( batchSize );
+	}
+
+	/**
+	 * Has the document been passed on completely?
+	 *
+	 * @return True once {@link #endDocument()} has completed normally.
+	 */
+	public boolean isFinished() {
+		return finished;
+	}
+
+	/**
+	 * Abandon the document, discarding the events not yet consumed and waiting on the consumer thread to stop.  Used
+	 * to clean up after the producer failed; a no-op if the pipe already finished.
+	 */
+	public void abort() {
+		if ( consumerThread == null || finished ) {
+			return;
+		}
+		finished = true;
+		queue.clear();
+		queue.offer( END );
+		try {
+			consumerThread.join();
+		}
+		catch ( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void flushCharacters() {
+		if ( pendingCharacters.length() > 0 ) {
+			batch.add( new SAXEventBuffer.Characters( pendingCharacters.toString(), false ) );
+			pendingCharacters.setLength( 0 );
+		}
+	}
+
+	private void add(SAXEventBuffer.Event event) throws SAXException {
+		flushCharacters();
+		batch.add( event );
+		if ( batch.size() >= batchSize ) {
+			handOver();
+		}
+	}
+
+	private void handOver() throws SAXException {
+		checkFailure();
+		if ( batch.isEmpty() ) {
+			return;
+		}
+		put( batch );
+		batch = new ArrayList<SAXEventBuffer.Event>( batchSize );
+	}
+
+	private void put(List<SAXEventBuffer.Event> events) throws SAXException {
+		try {
+			while ( !queue.offer( events, HAND_OVER_POLL_MILLIS, TimeUnit.MILLISECONDS ) ) {
+				if ( !consumerThread.isAlive() ) {
+					checkFailure();
+					throw new SAXException( "[" + threadName + "] stopped before consuming all events" );
+				}
+			}
+		}
+		catch ( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+			throw new SAXException( "Interrupted handing events over to [" + threadName + "]", e );
+		}
+	}
+
+	private void checkFailure() throws SAXException {
+		final Throwable t = failure;
+		if ( t == null ) {
+			return;
+		}
+		if ( t instanceof SAXException ) {
+			throw (SAXException) t;
+		}
+		if ( t instanceof RuntimeException ) {
+			throw (RuntimeException) t;
+		}
+		if ( t instanceof Error ) {
+			throw (Error) t;
+		}
+		throw new SAXException( (Exception) t );
+	}
+
+	@Override
+	public void setDocumentLocator(Locator locator) {
+		this.locator = locator;
+	}
+
+	@Override
+	public void startDocument() throws SAXException {
+		final ConsoleRedirectionHandler redirectionHandler = ConsoleRedirectionHandler.getCurrentRedirectionHandler();
+		consumerThread = new Thread( new Consumer( redirectionHandler ), threadName );
+		consumerThread.setDaemon( true );
+		consumerThread.setContextClassLoader( Thread.currentThread().getContextClassLoader() );
+		consumerThread.start();
+		add( START_DOCUMENT );
+	}
+
+	@Override
+	public void endDocument() throws SAXException {
+		add( END_DOCUMENT );
+		handOver();
+		put( END );
+		try {
+			consumerThread.join();
+		}
+		catch ( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+			throw new SAXException( "Interrupted waiting on [" + threadName + "] to complete", e );
+		}
+		checkFailure();
+		finished = true;
+	}
+
+	@Override
+	public void startPrefixMapping(String prefix, String uri) throws SAXException {
+		add( new SAXEventBuffer.StartPrefixMapping( prefix, uri ) );
+	}
+
+	@Override
+	public void endPrefixMapping(String prefix) throws SAXException {
+		add( new SAXEventBuffer.EndPrefixMapping( prefix ) );
+	}
+
+	@Override
+	public void startElement(String uri, String localName, String qName, Attributes atts) throws SAXException {
+		add(
+				new SAXEventBuffer.StartElement(
+						uri,
+						localName,
+						qName,
+						new AttributesImpl( atts ),
+						locator == null ? null : locator.getSystemId(),
+						locator == null ? -1 : locator.getLineNumber()
+				)
+		);
+	}
+
+	@Override
+	public void endElement(String uri, String localName, String qName) throws SAXException {
+		add( new SAXEventBuffer.EndElement( uri, localName, qName ) );
+	}
+
+	@Override
+	public void characters(char[] ch, int start, int length) {
+		pendingCharacters.append( ch, start, length );
+	}
+
+	@Override
+	public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException {
+		add( new SAXEventBuffer.Characters( new String( ch, start, length ), true ) );
+	}
+
+	@Override
+	public void processingInstruction(String target, String data) throws SAXException {
+		add( new SAXEventBuffer.ProcessingInstruction( target, data ) );
+	}
+
+	@Override
+	public void skippedEntity(String name) {
+	}
+
+	private class Consumer implements Runnable {
+		private final ConsoleRedirectionHandler redirectionHandler;
+
+		private Consumer(ConsoleRedirectionHandler redirectionHandler) {
+			this.redirectionHandler = redirectionHandler;
+		}
+
+		@Override
+		public void run() {
+			if ( redirectionHandler != null ) {
+				redirectionHandler.attach();
+			}
+			try {
+				final LocatorImpl replayLocator = new LocatorImpl();
+				consumer.setDocumentLocator( replayLocator );
+				while ( true ) {
+					final List<SAXEventBuffer.Event> events = queue.take();
+					if ( events == END ) {
+						break;
+					}
+					if ( failure != null ) {
+						// keep draining, so the producer does not block
+						continue;
+					}
+					try {
+						for ( SAXEventBuffer.Event event : events ) {
+							event.replay( consumer, null, replayLocator );
+						}
+					}
+					catch ( Throwable t ) {
+						failure = t;
+					}
+				}
+			}
+			catch ( InterruptedException e ) {
+				failure = e;
+			}
+			finally {
+				if ( redirectionHandler != null ) {
+					redirectionHandler.detach();
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,316 @@
+/*
+ * jDocBook, processing of DocBook sources
+ *
+ * Copyright (c) 2010, Red Hat Inc. or third-party contributors as
+ * indicated by the @author tags or express copyright attribution
+ * statements applied by the authors.  All third-party contributions are
+ * distributed under license by Red Hat Inc.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.jboss.jdocbook.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.jdocbook.FailurePolicy;
+import org.jboss.jdocbook.JDocBookProcessException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs a batch of independent {@link Job jobs} across a bounded number of worker threads, waiting for all of them
+ * to finish before returning.  Failures are handled according to the {@link FailurePolicy} requested; by default
+ * they are collected and reported once the whole batch has completed.
+ */
+public class WorkerPool {
+	private static final Logger log = LoggerFactory.getLogger( WorkerPool.class );
+
+	/**
+	 * How long to wait for jobs still in progress to stop, once a batch ends early.
+	 */
+	private static final long TERMINATION_TIMEOUT_SECONDS = 60;
+
+	/**
+	 * A unit of work to be executed by the pool.
+	 */
+	public static interface Job {
+		/**
+		 * A short description of the job, used in logging and failure reporting.
+		 *
+		 * @return The job description.
+		 */
+		public String getDescription();
+
+		/**
+		 * Perform the work.
+		 */
+		public void perform();
+	}
+
+	private final String name;
+	private final int maxThreads;
+
+	/**
+	 * Creates a pool sized to the number of available processors.
+	 *
+	 * @param name The pool name, used in naming the worker threads.
+	 */
+	public WorkerPool(String name) {
+		this( name, availableProcessors() );
+	}
+
+	/**
+	 * Creates a pool with the given maximum number of worker threads.
+	 *
+	 * @param name The pool name, used in naming the worker threads.
+	 * @param maxThreads The maximum number of worker threads; values less than 1 indicate to use the number of
+	 * available processors.
+	 */
+	public WorkerPool(String name, int maxThreads) {
+		this.name = name;
+		this.maxThreads = maxThreads < 1 ? availableProcessors() : maxThreads;
+	}
+
+	public static int availableProcessors() {
+		return Runtime.getRuntime().availableProcessors();
+	}
+
+	public int getMaxThreads() {
+		return maxThreads;
+	}
+
+	/**
+	 * Execute all the given jobs, blocking until they have all completed.  Failures are reported once all jobs
+	 * completed.
+	 *
+	 * @param jobs The jobs to execute.
+	 *
+	 * @throws JDocBookProcessException Indicates one or more of the jobs failed.
+	 */
+	public void execute(List<? extends Job> jobs) throws JDocBookProcessException {
+		execute( jobs, FailurePolicy.COLLECT_ALL );
+	}
+
+	/**
+	 * Execute the given jobs, blocking until they have all completed or, in the case of
+	 * {@link FailurePolicy#FAIL_FAST}, until the first one fails.
+	 *
+	 * @param jobs The jobs to execute.
+	 * @param failurePolicy How to handle job failures.
+	 *
+	 * @throws JDocBookProcessException Indicates one or more of the jobs failed.
+	 */
+	public void execute(List<? extends Job> jobs, FailurePolicy failurePolicy) throws JDocBookProcessException {
+		if ( jobs.isEmpty() ) {
+			return;
+		}
+
+		final int threadCount = Math.min( maxThreads, jobs.size() );
+		if ( threadCount <= 1 ) {
+			executeSerially( jobs, failurePolicy );
+			return;
+		}
+
+		log.debug( "Executing {} job(s) on {} [{}] worker thread(s)", new Object[] { jobs.size(), threadCount, name } );
+		final ExecutorService executor = Executors.newFixedThreadPool( threadCount, new WorkerThreadFactory( name ) );
+		final Set<Job> runningJobs = Collections.newSetFromMap( new ConcurrentHashMap<Job, Boolean>() );
+		try {
+			final CompletionService<Object> completionService = new ExecutorCompletionService<Object>( executor );
+			final Map<Future<?>, Job> jobsByFuture = new HashMap<Future<?>, Job>();
+			for ( final Job job : jobs ) {
+				jobsByFuture.put(
+						completionService.submit(
+								new Runnable() {
+									@Override
+									public void run() {
+										runningJobs.add( job );
+										try {
+											job.perform();
+										}
+										finally {
+											runningJobs.remove( job );
+										}
+									}
+								},
+								null
+						),
+						job
+				);
+			}
+
+			final List<JobFailure> failures = new ArrayList<JobFailure>();
+			for ( int i = 0; i < jobs.size(); i++ ) {
+				final Future<?> future;
+				try {
+					future = completionService.take();
+				}
+				catch ( InterruptedException e ) {
+					Thread.currentThread().interrupt();
+					throw new JDocBookProcessException( "Interrupted waiting on [" + name + "] jobs to complete", e );
+				}
+
+				try {
+					future.get();
+				}
+				catch ( ExecutionException e ) {
+					failures.add( new JobFailure( jobsByFuture.get( future ), e.getCause() ) );
+					if ( failurePolicy == FailurePolicy.FAIL_FAST ) {
+						log.debug( "Cancelling remaining [{}] jobs", name );
+						break;
+					}
+				}
+				catch ( InterruptedException e ) {
+					Thread.currentThread().interrupt();
+					throw new JDocBookProcessException( "Interrupted waiting on [" + name + "] jobs to complete", e );
+				}
+			}
+			reportFailures( sort( failures, jobs ), jobs.size() );
+		}
+		finally {
+			executor.shutdownNow();
+			awaitTermination( executor, runningJobs );
+		}
+	}
+
+	/**
+	 * Wait for the jobs still in progress to stop.  Interrupting them is not enough, as jobs generally do not respond
+	 * to interrupts and would otherwise keep writing their output after the batch has been reported as failed.
+	 */
+	private void awaitTermination(ExecutorService executor, Set<Job> runningJobs) {
+		try {
+			if ( executor.awaitTermination( TERMINATION_TIMEOUT_SECONDS, TimeUnit.SECONDS ) ) {
+				return;
+			}
+		}
+		catch ( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+		}
+		for ( Job job : runningJobs ) {
+			log.warn( "[{}] job [{}] did not stop", name, job.getDescription() );
+		}
+	}
+
+	/**
+	 * Order the failures as their jobs were given, to keep failure reporting deterministic.
+	 */
+	private static List<JobFailure> sort(List<JobFailure> failures, List<? extends Job> jobs) {
+		if ( failures.size() <= 1 ) {
+			return failures;
+		}
+		final List<JobFailure> sorted = new ArrayList<JobFailure>( failures.size() );
+		for ( Job job : jobs ) {
+			for ( JobFailure failure : failures ) {
+				if ( failure.job == job ) {
+					sorted.add( failure );
+				}
+			}
+		}
+		return sorted;
+	}
+
+	private void executeSerially(List<? extends Job> jobs, FailurePolicy failurePolicy) {
+		final List<JobFailure> failures = new ArrayList<JobFailure>();
+		for ( Job job : jobs ) {
+			try {
+				job.perform();
+			}
+			catch ( RuntimeException e ) {
+				failures.add( new JobFailure( job, e ) );
+				if ( failurePolicy == FailurePolicy.FAIL_FAST ) {
+					break;
+				}
+			}
+		}
+		reportFailures( failures, jobs.size() );
+	}
+
+	private void reportFailures(List<JobFailure> failures, int jobCount) {
+		if ( failures.isEmpty() ) {
+			return;
+		}
+
+		for ( JobFailure failure : failures ) {
+			log.error( "Job [" + failure.job.getDescription() + "] failed", failure.cause );
+		}
+
+		if ( failures.size() == 1 && failures.get( 0 ).cause instanceof RuntimeException ) {
+			throw (RuntimeException) failures.get( 0 ).cause;
+		}
+
+		final StringBuilder message = new StringBuilder()
+				.append( failures.size() ).append( " of " ).append( jobCount )
+				.append( " [" ).append( name ).append( "] job(s) failed : " );
+		boolean first = true;
+		for ( JobFailure failure : failures ) {
+			if ( first ) {
+				first = false;
+			}
+			else {
+				message.append( "; " );
+			}
+			message.append( failure.job.getDescription() ).append( " (" ).append( failure.cause.getMessage() ).append( ')' );
+		}
+		throw new JDocBookProcessException( message.toString(), failures.get( 0 ).cause );
+	}
+
+	private static class JobFailure {
+		private final Job job;
+		private final Throwable cause;
+
+		private JobFailure(Job job, Throwable cause) {
+			this.job = job;
+			this.cause = cause;
+		}
+	}
+
+	/**
+	 * Names the worker threads after the pool and propagates the context class loader of the thread creating the
+	 * pool, which is what our resource and catalog lookups rely on.
+	 */
+	private static class WorkerThreadFactory implements ThreadFactory {
+		private final String poolName;
+		private final ClassLoader contextClassLoader;
+		private final AtomicInteger counter = new AtomicInteger();
+
+		private WorkerThreadFactory(String poolName) {
+			this.poolName = poolName;
+			this.contextClassLoader = Thread.currentThread().getContextClassLoader();
+		}
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			final Thread thread = new Thread( runnable, "jdocbook-" + poolName + "-" + counter.incrementAndGet() );
+			thread.setDaemon( true );
+			thread.setContextClassLoader( contextClassLoader );
+			return thread;
+		}
+	}
+}
@@ -29,13 +29,11 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.Set;
 import java.util.TreeSet;
-import javax.xml.parsers.SAXParserFactory;
 import javax.xml.transform.Result;
 import javax.xml.transform.Source;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.stream.StreamResult;
 
-import org.apache.xerces.jaxp.SAXParserFactoryImpl;
 import org.jboss.jdocbook.DocBookSchemaResolutionStrategy;
 import org.jboss.jdocbook.JDocBookProcessException;
 import org.jboss.jdocbook.xslt.EntityResolverChain;
@@ -86,9 +84,6 @@ public class XIncludeHelper {
 		entityResolverChain.addEntityResolver( new LocalDocBookSchemaResolver( schemaResolutionStrategy ) );
 
 		try {
-			SAXParserFactory parserFactory = new SAXParserFactoryImpl();
-    	    parserFactory.setXIncludeAware( true  );
-
 			Source transformationSource = FileUtils.createSAXSource( root, entityResolverChain, null );
 			Result transformationResult = new StreamResult( new NoOpWriter() );
 
@@ -127,6 +122,8 @@ public class XIncludeHelper {
 	 * &lt;xi:include xmlns:xi="http://www.w3.org/2001/XInclude" href="Common_Content/Legal_Notice.xml"&gt;
 	 * </pre></blockquote>
 	 * This Legal_Notice.xml file actually do not exist in the current source directory, but in the predefined publican brand.
+	 * <p/>
+	 * The files are discovered using a {@link DocumentDependencyScanner}, which parses each file only once.
 	 *
 	 * @param masterFile The source file from which to start looking
 	 * @param files The collected, matching files.
@@ -140,15 +137,6 @@ public class XIncludeHelper {
 			return;
 		}
 
-		Set<File> inclusions = locateInclusions( masterFile, schemaResolutionStrategy );
-		if ( inclusions == null || inclusions.isEmpty() ) {
-			return;
-		}
-		for ( File inclusion : inclusions ) {
-			if ( inclusion.exists() ) {
-				files.add( inclusion );
-				findAllInclusionFiles( inclusion, files, schemaResolutionStrategy );
-			}
-		}
+		files.addAll( new DocumentDependencyScanner( schemaResolutionStrategy ).findDependencies( masterFile ) );
 	}
 }
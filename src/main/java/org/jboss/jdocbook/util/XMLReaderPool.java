@@ -0,0 +1,318 @@
+/*
+ * jDocBook, processing of DocBook sources
+ *
+ * Copyright (c) 2010, Red Hat Inc. or third-party contributors as
+ * indicated by the @author tags or express copyright attribution
+ * statements applied by the authors.  All third-party contributions are
+ * distributed under license by Red Hat Inc.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.jboss.jdocbook.util;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.apache.xerces.jaxp.SAXParserFactoryImpl;
+import org.jboss.jdocbook.JDocBookProcessException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.DTDHandler;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXNotRecognizedException;
+import org.xml.sax.SAXNotSupportedException;
+import org.xml.sax.XMLReader;
+
+/**
+ * A pool of Xerces {@link SAXParser parsers}, keyed on the parser factory settings (namespace and XInclude
+ * awareness) with which they were built.
+ * <p/>
+ * Callers get a lightweight {@link XMLReader} from {@link #newReader}; it only records the features, properties and
+ * handlers applied to it.  Each {@link XMLReader#parse parse} borrows a pooled parser, applies the recorded
+ * settings, parses and then {@link SAXParser#reset() resets} the parser before returning it to the pool.  Xerces'
+ * reset restores the features, properties and handlers to the state the factory left them in, so nothing leaks from
+ * one parse to the next.  Reader-level features such as DTD loading or validation are therefore simply re-applied per
+ * parse rather than being part of the pool key.
+ */
+public class XMLReaderPool {
+	private static final Logger log = LoggerFactory.getLogger( XMLReaderPool.class );
+
+	/**
+	 * The maximum number of idle parsers kept per key; parsers released beyond that are simply discarded.
+	 */
+	public static final int MAX_IDLE_PER_KEY = 16;
+
+	private static final ConcurrentMap<Key, BlockingQueue<SAXParser>> IDLE_PARSERS
+			= new ConcurrentHashMap<Key, BlockingQueue<SAXParser>>();
+
+	private XMLReaderPool() {
+	}
+
+	/**
+	 * Build a reader backed by pooled parsers.
+	 *
+	 * @param namespaceAware Whether the parsers should be namespace aware
+	 * @param xincludeAware Whether the parsers should process XIncludes
+	 *
+	 * @return The reader
+	 */
+	public static XMLReader newReader(boolean namespaceAware, boolean xincludeAware) {
+		return newPooledReader( namespaceAware, xincludeAware );
+	}
+
+	static PooledXMLReader newPooledReader(boolean namespaceAware, boolean xincludeAware) {
+		return new PooledXMLReader( new Key( namespaceAware, xincludeAware ) );
+	}
+
+	private static SAXParser borrow(Key key) {
+		final SAXParser parser = idleParsers( key ).poll();
+		if ( parser != null ) {
+			return parser;
+		}
+		try {
+			final SAXParserFactory factory = new SAXParserFactoryImpl();
+			factory.setNamespaceAware( key.namespaceAware );
+			factory.setXIncludeAware( key.xincludeAware );
+			return factory.newSAXParser();
+		}
+		catch ( ParserConfigurationException e ) {
+			throw new JDocBookProcessException( "unable to build SAX Parser/Factory [" + e.getMessage() + "]", e );
+		}
+		catch ( SAXException e ) {
+			throw new JDocBookProcessException( "unable to build SAX Parser/Factory [" + e.getMessage() + "]", e );
+		}
+	}
+
+	private static void release(Key key, SAXParser parser) {
+		try {
+			parser.reset();
+		}
+		catch ( RuntimeException e ) {
+			log.debug( "Unable to reset SAX parser; discarding it : {}", e.getMessage() );
+			return;
+		}
+		idleParsers( key ).offer( parser );
+	}
+
+	private static BlockingQueue<SAXParser> idleParsers(Key key) {
+		BlockingQueue<SAXParser> parsers = IDLE_PARSERS.get( key );
+		if ( parsers == null ) {
+			parsers = new LinkedBlockingQueue<SAXParser>( MAX_IDLE_PER_KEY );
+			final BlockingQueue<SAXParser> existing = IDLE_PARSERS.putIfAbsent( key, parsers );
+			if ( existing != null ) {
+				parsers = existing;
+			}
+		}
+		return parsers;
+	}
+
+	private static class Key {
+		private final boolean namespaceAware;
+		private final boolean xincludeAware;
+
+		private Key(boolean namespaceAware, boolean xincludeAware) {
+			this.namespaceAware = namespaceAware;
+			this.xincludeAware = xincludeAware;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if ( this == o ) {
+				return true;
+			}
+			if ( o == null || getClass() != o.getClass() ) {
+				return false;
+			}
+			final Key key = (Key) o;
+			return namespaceAware == key.namespaceAware && xincludeAware == key.xincludeAware;
+		}
+
+		@Override
+		public int hashCode() {
+			return ( namespaceAware ? 2 : 0 ) + ( xincludeAware ? 1 : 0 );
+		}
+	}
+
+	/**
+	 * The reader handed out by the pool.  Not thread-safe, as no {@link XMLReader} is; a pooled parser is only held
+	 * for the duration of a single parse.
+	 */
+	static class PooledXMLReader implements XMLReader {
+		private final Key key;
+		private final Map<String, Boolean> features = new LinkedHashMap<String, Boolean>();
+		private final Map<String, Object> properties = new LinkedHashMap<String, Object>();
+
+		private ContentHandler contentHandler;
+		private DTDHandler dtdHandler;
+		private EntityResolver entityResolver;
+		private ErrorHandler errorHandler;
+
+		private DtdGrammarPool dtdGrammarPool;
+
+		private PooledXMLReader(Key key) {
+			this.key = key;
+		}
+
+		/**
+		 * Serve DTDs from the given grammar pool on each parse.
+		 *
+		 * @param dtdGrammarPool The cache of DTD grammars
+		 */
+		void setDtdGrammarPool(DtdGrammarPool dtdGrammarPool) {
+			this.dtdGrammarPool = dtdGrammarPool;
+		}
+
+		public boolean getFeature(String name) throws SAXNotRecognizedException, SAXNotSupportedException {
+			final Boolean value = features.get( name );
+			if ( value != null ) {
+				return value;
+			}
+			final SAXParser parser = borrow( key );
+			try {
+				return parser.getXMLReader().getFeature( name );
+			}
+			catch ( SAXNotRecognizedException e ) {
+				throw e;
+			}
+			catch ( SAXNotSupportedException e ) {
+				throw e;
+			}
+			catch ( SAXException e ) {
+				throw new SAXNotSupportedException( e.getMessage() );
+			}
+			finally {
+				release( key, parser );
+			}
+		}
+
+		public void setFeature(String name, boolean value) throws SAXNotRecognizedException, SAXNotSupportedException {
+			features.put( name, value );
+		}
+
+		public Object getProperty(String name) throws SAXNotRecognizedException, SAXNotSupportedException {
+			if ( properties.containsKey( name ) ) {
+				return properties.get( name );
+			}
+			final SAXParser parser = borrow( key );
+			try {
+				return parser.getXMLReader().getProperty( name );
+			}
+			catch ( SAXNotRecognizedException e ) {
+				throw e;
+			}
+			catch ( SAXNotSupportedException e ) {
+				throw e;
+			}
+			catch ( SAXException e ) {
+				throw new SAXNotSupportedException( e.getMessage() );
+			}
+			finally {
+				release( key, parser );
+			}
+		}
+
+		public void setProperty(String name, Object value) throws SAXNotRecognizedException, SAXNotSupportedException {
+			properties.put( name, value );
+		}
+
+		public void setEntityResolver(EntityResolver resolver) {
+			this.entityResolver = resolver;
+		}
+
+		public EntityResolver getEntityResolver() {
+			return entityResolver;
+		}
+
+		public void setDTDHandler(DTDHandler handler) {
+			this.dtdHandler = handler;
+		}
+
+		public DTDHandler getDTDHandler() {
+			return dtdHandler;
+		}
+
+		public void setContentHandler(ContentHandler handler) {
+			this.contentHandler = handler;
+		}
+
+		public ContentHandler getContentHandler() {
+			return contentHandler;
+		}
+
+		public void setErrorHandler(ErrorHandler handler) {
+			this.errorHandler = handler;
+		}
+
+		public ErrorHandler getErrorHandler() {
+			return errorHandler;
+		}
+
+		public void parse(InputSource input) throws IOException, SAXException {
+			final SAXParser parser = borrow( key );
+			try {
+				final XMLReader reader = parser.getXMLReader();
+				for ( Map.Entry<String, Boolean> feature : features.entrySet() ) {
+					reader.setFeature( feature.getKey(), feature.getValue() );
+				}
+				for ( Map.Entry<String, Object> property : properties.entrySet() ) {
+					reader.setProperty( property.getKey(), property.getValue() );
+				}
+				if ( entityResolver != null ) {
+					reader.setEntityResolver( entityResolver );
+				}
+				if ( dtdHandler != null ) {
+					reader.setDTDHandler( dtdHandler );
+				}
+				if ( contentHandler != null ) {
+					reader.setContentHandler( contentHandler );
+				}
+				if ( errorHandler != null ) {
+					reader.setErrorHandler( errorHandler );
+				}
+				if ( dtdGrammarPool != null ) {
+					dtdGrammarPool.apply( reader );
+				}
+				try {
+					reader.parse( input );
+				}
+				finally {
+					if ( dtdGrammarPool != null ) {
+						dtdGrammarPool.release( reader );
+					}
+				}
+			}
+			finally {
+				release( key, parser );
+			}
+		}
+
+		public void parse(String systemId) throws IOException, SAXException {
+			parse( new InputSource( systemId ) );
+		}
+	}
+}
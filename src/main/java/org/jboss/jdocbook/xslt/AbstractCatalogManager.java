@@ -23,16 +23,23 @@
  */
 package org.jboss.jdocbook.xslt;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 
+import org.apache.xml.resolver.Catalog;
 import org.apache.xml.resolver.CatalogManager;
 
 /**
  * Basic support for our notion of CatalogManagers.
+ * <p/>
+ * The catalogs are looked up through a shared {@link CatalogIndex} whenever the index covers them.
  *
  * @author Steve Ebersole
  */
 public abstract class AbstractCatalogManager extends CatalogManager {
+	private final List<String> catalogNameList = new ArrayList<String>();
+
 	public AbstractCatalogManager(Set<String> catalogNames) {
 		super();
 		setIgnoreMissingProperties( true );
@@ -41,6 +48,7 @@ public abstract class AbstractCatalogManager extends CatalogManager {
 			boolean first = true;
 			for ( String catalogName : catalogNames ) {
 				if ( catalogName != null ) {
+					catalogNameList.add( catalogName );
 					if ( first ) {
 						first = false;
 					}
@@ -53,4 +61,14 @@ public abstract class AbstractCatalogManager extends CatalogManager {
 			setCatalogFiles( buffer.toString() );
 		}
 	}
+
+	@Override
+	public Catalog getCatalog() {
+		if ( catalogNameList.isEmpty() ) {
+			// xml-resolver falls back to its own configuration (properties, system properties)
+			return super.getCatalog();
+		}
+		final CatalogIndex index = CatalogIndex.forCatalogs( catalogNameList, getPreferPublic() );
+		return index.isComplete() ? new IndexedCatalog( this, index ) : super.getCatalog();
+	}
 }
@@ -0,0 +1,588 @@
+/*
+ * jDocBook, processing of DocBook sources
+ *
+ * Copyright (c) 2010, Red Hat Inc. or third-party contributors as
+ * indicated by the @author tags or express copyright attribution
+ * statements applied by the authors.  All third-party contributions are
+ * distributed under license by Red Hat Inc.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.jboss.jdocbook.xslt;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.jboss.jdocbook.util.Constants;
+import org.jboss.jdocbook.util.XMLReaderPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * A pre-built index of a set of OASIS XML catalogs.  Exact <tt>public</tt>, <tt>system</tt> and <tt>uri</tt>
+ * entries are kept in hash maps; <tt>rewrite*</tt> entries are kept in sorted maps so that the matching ones are
+ * found without scanning all of them.  The matching rules are those of the xml-resolver (1.1)
+ * {@link org.apache.xml.resolver.Catalog}, quirks included: catalogs are consulted in order (a catalog's
+ * <tt>nextCatalog</tt>s right after the catalog itself), within a catalog exact matches win over rewrites, the first
+ * matching rewrite applies rather than the longest, the <tt>*Suffix</tt> entries of XML Catalogs 1.1 are ignored and
+ * the <tt>prefer</tt> setting of a group may outlive the group.
+ * <p/>
+ * Indexes are built once per set of catalogs and shared (statically) by all registries.  Catalogs using constructs
+ * the index does not cover (<tt>delegate*</tt> entries, non-XML catalogs) leave the index
+ * {@link #isComplete() incomplete}, in which case xml-resolver is used as before.
+ */
+public class CatalogIndex {
+	private static final Logger log = LoggerFactory.getLogger( CatalogIndex.class );
+
+	public static final String CATALOG_NAMESPACE = "urn:oasis:names:tc:entity:xmlns:xml:catalog";
+	public static final String XML_NAMESPACE = "http://www.w3.org/XML/1998/namespace";
+
+	private static final boolean WINDOWS = System.getProperty( "os.name", "" ).indexOf( "Windows" ) >= 0;
+
+	private static final ConcurrentMap<String, CatalogIndex> INDEXES = new ConcurrentHashMap<String, CatalogIndex>();
+
+	/**
+	 * Retrieve the index of the given catalogs, building it if it was not built yet (or one of the catalog files
+	 * changed since).
+	 *
+	 * @param catalogNames The catalog names (URLs), in order
+	 * @param preferPublic The default <tt>prefer</tt> setting
+	 *
+	 * @return The index
+	 */
+	public static CatalogIndex forCatalogs(List<String> catalogNames, boolean preferPublic) {
+		final String key = preferPublic + "|" + catalogNames;
+		CatalogIndex index = INDEXES.get( key );
+		if ( index == null || !index.isCurrent() ) {
+			index = new CatalogIndex( catalogNames, preferPublic );
+			INDEXES.put( key, index );
+		}
+		return index;
+	}
+
+	private final List<Entries> catalogs = new ArrayList<Entries>();
+	private final Map<File, Long> catalogFileTimestamps = new HashMap<File, Long>();
+	private String incompleteReason;
+
+	private CatalogIndex(List<String> catalogNames, boolean preferPublic) {
+		final Set<String> visited = new HashSet<String>();
+		for ( String catalogName : catalogNames ) {
+			if ( incompleteReason != null ) {
+				break;
+			}
+			indexCatalog( catalogName, preferPublic, visited );
+		}
+		if ( incompleteReason != null ) {
+			log.debug( "Catalogs {} not indexed; {}", catalogNames, incompleteReason );
+		}
+	}
+
+	private void indexCatalog(String catalogName, boolean preferPublic, Set<String> visited) {
+		if ( !visited.add( catalogName ) ) {
+			return;
+		}
+
+		final URL catalogUrl;
+		try {
+			catalogUrl = new URL( catalogName );
+		}
+		catch ( MalformedURLException e ) {
+			incompleteReason = "catalog name [" + catalogName + "] is not a URL";
+			return;
+		}
+		if ( "file".equals( catalogUrl.getProtocol() ) ) {
+			try {
+				final File catalogFile = new File( catalogUrl.toURI() );
+				catalogFileTimestamps.put( catalogFile, catalogFile.lastModified() );
+			}
+			catch ( URISyntaxException ignore ) {
+			}
+			catch ( IllegalArgumentException ignore ) {
+			}
+		}
+
+		final CatalogHandler handler = new CatalogHandler( catalogUrl, preferPublic );
+		try {
+			final XMLReader reader = XMLReaderPool.newReader( true, false );
+			reader.setFeature( Constants.DTD_LOADING_FEATURE, false );
+			reader.setFeature( Constants.DTD_VALIDATION_FEATURE, false );
+			reader.setContentHandler( handler );
+			reader.parse( new InputSource( catalogName ) );
+		}
+		catch ( SAXException e ) {
+			incompleteReason = "unable to parse catalog [" + catalogName + "] : " + e.getMessage();
+			return;
+		}
+		catch ( IOException e ) {
+			incompleteReason = "unable to read catalog [" + catalogName + "] : " + e.getMessage();
+			return;
+		}
+		if ( handler.incompleteReason != null ) {
+			incompleteReason = handler.incompleteReason + " in catalog [" + catalogName + "]";
+			return;
+		}
+
+		catalogs.add( handler.entries );
+		for ( String nextCatalog : handler.nextCatalogs ) {
+			if ( incompleteReason != null ) {
+				return;
+			}
+			indexCatalog( nextCatalog, preferPublic, visited );
+		}
+	}
+
+	private boolean isCurrent() {
+		for ( Map.Entry<File, Long> entry : catalogFileTimestamps.entrySet() ) {
+			if ( entry.getKey().lastModified() != entry.getValue() ) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Can this index answer all lookups?  If not, the catalogs must be consulted through xml-resolver.
+	 *
+	 * @return True if the index is complete; false otherwise.
+	 */
+	public boolean isComplete() {
+		return incompleteReason == null;
+	}
+
+	/**
+	 * Resolve a system identifier.
+	 *
+	 * @param systemId The system identifier
+	 *
+	 * @return The resolved URI, or null
+	 */
+	public String resolveSystem(String systemId) {
+		final String normalized = normalizeURI( systemId );
+		if ( normalized == null ) {
+			return null;
+		}
+		for ( Entries entries : catalogs ) {
+			final String resolved = entries.resolveSystem( normalized );
+			if ( resolved != null ) {
+				return resolved;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Resolve a public identifier (and system identifier, if one is given).
+	 *
+	 * @param publicId The public identifier
+	 * @param systemId The system identifier; may be null
+	 *
+	 * @return The resolved URI, or null
+	 */
+	public String resolvePublic(String publicId, String systemId) {
+		final String normalizedPublicId = publicId == null ? null : normalizePublicId( publicId );
+		final String normalizedSystemId = normalizeURI( systemId );
+		for ( Entries entries : catalogs ) {
+			if ( normalizedSystemId != null ) {
+				final String resolved = entries.resolveSystem( normalizedSystemId );
+				if ( resolved != null ) {
+					return resolved;
+				}
+			}
+			if ( normalizedPublicId != null ) {
+				final PublicEntry entry = entries.publicEntries.get( normalizedPublicId );
+				if ( entry != null ) {
+					final String resolved = normalizedSystemId == null ? entry.uri : entry.preferringPublicUri;
+					if ( resolved != null ) {
+						return resolved;
+					}
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Resolve a URI.
+	 *
+	 * @param uri The URI
+	 *
+	 * @return The resolved URI, or null
+	 */
+	public String resolveURI(String uri) {
+		final String normalized = normalizeURI( uri );
+		if ( normalized == null ) {
+			return null;
+		}
+		for ( Entries entries : catalogs ) {
+			String resolved = entries.uriEntries.get( normalized );
+			if ( resolved == null ) {
+				resolved = rewrite( entries.rewriteUriEntries, normalized );
+			}
+			if ( resolved != null ) {
+				return resolved;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Apply the rewrite entry matching the given id.  Like xml-resolver (1.1), which stops at the first match, the
+	 * matching entry which comes first in the catalog applies, not the one with the longest start string; the
+	 * matching entries are visited from the longest start string down.
+	 */
+	private static String rewrite(TreeMap<String, RewriteEntry> rewrites, String id) {
+		Map.Entry<String, RewriteEntry> first = null;
+		String probe = id;
+		while ( true ) {
+			final Map.Entry<String, RewriteEntry> entry = longestPrefix( rewrites, probe );
+			if ( entry == null ) {
+				break;
+			}
+			if ( first == null || entry.getValue().position < first.getValue().position ) {
+				first = entry;
+			}
+			if ( entry.getKey().length() == 0 ) {
+				break;
+			}
+			probe = entry.getKey().substring( 0, entry.getKey().length() - 1 );
+		}
+		return first == null ? null : first.getValue().rewritePrefix + id.substring( first.getKey().length() );
+	}
+
+	/**
+	 * Find the entry with the longest key which is a prefix of the given id.  The longest such key sorts before (or
+	 * equal to) both the id and its common prefix with any key sorting between the two, so each probe narrows the
+	 * search to a strictly shorter prefix of the id.
+	 */
+	private static <V> Map.Entry<String, V> longestPrefix(TreeMap<String, V> map, String id) {
+		String probe = id;
+		while ( true ) {
+			final Map.Entry<String, V> entry = map.floorEntry( probe );
+			if ( entry == null ) {
+				return null;
+			}
+			final String key = entry.getKey();
+			if ( id.startsWith( key ) ) {
+				return entry;
+			}
+			int common = 0;
+			final int max = Math.min( key.length(), probe.length() );
+			while ( common < max && key.charAt( common ) == id.charAt( common ) ) {
+				common++;
+			}
+			probe = id.substring( 0, common );
+		}
+	}
+
+	/**
+	 * Normalize a URI reference the way xml-resolver does : characters which are not allowed in URIs are
+	 * %-encoded (as UTF-8 bytes).
+	 *
+	 * @param uriref The URI reference
+	 *
+	 * @return The normalized URI reference
+	 */
+	static String normalizeURI(String uriref) {
+		if ( uriref == null ) {
+			return null;
+		}
+		final byte[] bytes;
+		try {
+			bytes = uriref.getBytes( "UTF-8" );
+		}
+		catch ( UnsupportedEncodingException e ) {
+			return uriref;
+		}
+		final StringBuilder buffer = new StringBuilder( bytes.length );
+		for ( byte b : bytes ) {
+			final int ch = b & 0xFF;
+			if ( ch <= 0x20 || ch >= 0x7F || ch == '"' || ch == '<' || ch == '>' || ch == '\\' || ch == '^'
+					|| ch == '`' || ch == '{' || ch == '|' || ch == '}' ) {
+				buffer.append( '%' );
+				final String hex = Integer.toHexString( ch ).toUpperCase();
+				if ( hex.length() < 2 ) {
+					buffer.append( '0' );
+				}
+				buffer.append( hex );
+			}
+			else {
+				buffer.append( (char) ch );
+			}
+		}
+		return buffer.toString();
+	}
+
+	/**
+	 * Normalize a public identifier the way xml-resolver does : whitespace is collapsed and trimmed.
+	 *
+	 * @param publicId The public identifier
+	 *
+	 * @return The normalized public identifier
+	 */
+	static String normalizePublicId(String publicId) {
+		final StringBuilder buffer = new StringBuilder( publicId.length() );
+		boolean pendingSpace = false;
+		for ( int i = 0; i < publicId.length(); i++ ) {
+			final char c = publicId.charAt( i );
+			if ( c == ' ' || c == '\t' || c == '\r' || c == '\n' ) {
+				pendingSpace = buffer.length() > 0;
+			}
+			else {
+				if ( pendingSpace ) {
+					buffer.append( ' ' );
+					pendingSpace = false;
+				}
+				buffer.append( c );
+			}
+		}
+		return buffer.toString();
+	}
+
+	/**
+	 * The <tt>public</tt> entries of a catalog for one public identifier : the first of them, used when no system
+	 * identifier is given, and the first of them preferring public identifiers, used otherwise.
+	 */
+	private static class PublicEntry {
+		private final String uri;
+		private String preferringPublicUri;
+
+		private PublicEntry(String uri) {
+			this.uri = uri;
+		}
+	}
+
+	private static class RewriteEntry {
+		private final String rewritePrefix;
+		// the position of the entry within its catalog
+		private final int position;
+
+		private RewriteEntry(String rewritePrefix, int position) {
+			this.rewritePrefix = rewritePrefix;
+			this.position = position;
+		}
+	}
+
+	/**
+	 * The entries of a single catalog file.  As with xml-resolver, the first of several identical entries wins.
+	 */
+	private static class Entries {
+		private final Map<String, PublicEntry> publicEntries = new HashMap<String, PublicEntry>();
+		private final Map<String, String> systemEntries = new HashMap<String, String>();
+		private final Map<String, String> caseInsensitiveSystemEntries = new HashMap<String, String>();
+		private final Map<String, String> uriEntries = new HashMap<String, String>();
+		private final TreeMap<String, RewriteEntry> rewriteSystemEntries = new TreeMap<String, RewriteEntry>();
+		private final TreeMap<String, RewriteEntry> rewriteUriEntries = new TreeMap<String, RewriteEntry>();
+		private int rewriteEntryCount;
+
+		private String resolveSystem(String systemId) {
+			String resolved = systemEntries.get( systemId );
+			if ( resolved == null && WINDOWS ) {
+				resolved = caseInsensitiveSystemEntries.get( systemId.toLowerCase() );
+			}
+			if ( resolved == null ) {
+				resolved = rewrite( rewriteSystemEntries, systemId );
+			}
+			return resolved;
+		}
+
+		private static <V> void add(Map<String, V> map, String key, V value) {
+			if ( !map.containsKey( key ) ) {
+				map.put( key, value );
+			}
+		}
+	}
+
+	private static class CatalogHandler extends DefaultHandler {
+		private final Entries entries = new Entries();
+		private final List<String> nextCatalogs = new ArrayList<String>();
+		private String incompleteReason;
+
+		private final LinkedList<URL> baseStack = new LinkedList<URL>();
+		private final boolean defaultPreferPublic;
+		// mirrors the prefer stack of xml-resolver's OASISXMLCatalogReader; its top is the prefer setting in effect
+		private final LinkedList<Boolean> preferStack = new LinkedList<Boolean>();
+		private int extensionDepth;
+
+		private CatalogHandler(URL catalogUrl, boolean preferPublic) {
+			baseStack.addFirst( catalogUrl );
+			defaultPreferPublic = preferPublic;
+			preferStack.addFirst( preferPublic );
+		}
+
+		@Override
+		public void startElement(String uri, String localName, String qName, Attributes attributes) {
+			final boolean root = baseStack.size() == 1;
+
+			URL base = baseStack.getFirst();
+			final String xmlBase = attributes.getValue( XML_NAMESPACE, "base" );
+			if ( xmlBase != null ) {
+				try {
+					base = new URL( base, xmlBase );
+				}
+				catch ( MalformedURLException e ) {
+					incomplete( "invalid xml:base [" + xmlBase + "]" );
+				}
+			}
+			baseStack.addFirst( base );
+
+			if ( extensionDepth > 0 || !CATALOG_NAMESPACE.equals( uri ) ) {
+				// extension elements, and anything within them, are ignored, as by xml-resolver
+				extensionDepth++;
+				if ( root ) {
+					incomplete( "root element is not an OASIS catalog" );
+				}
+				else if ( uri == null || uri.length() == 0 ) {
+					incomplete( "element <" + qName + "> is not in a namespace" );
+				}
+				return;
+			}
+
+			// xml-resolver pushes the prefer setting for every element, but pops it only at the end of a catalog or
+			// group; hence the setting of a group which has entries remains in effect after the group
+			final String prefer = "catalog".equals( localName ) || "group".equals( localName )
+					? attributes.getValue( "prefer" )
+					: null;
+			if ( prefer == null ) {
+				preferStack.addFirst( preferStack.getFirst() );
+			}
+			else if ( "public".equals( prefer ) ) {
+				preferStack.addFirst( Boolean.TRUE );
+			}
+			else if ( "system".equals( prefer ) ) {
+				preferStack.addFirst( Boolean.FALSE );
+			}
+			else {
+				preferStack.addFirst( defaultPreferPublic );
+			}
+			final boolean preferPublic = preferStack.getFirst();
+
+			if ( root ) {
+				if ( !"catalog".equals( localName ) ) {
+					incomplete( "root element is not an OASIS catalog" );
+				}
+			}
+			else if ( "group".equals( localName ) ) {
+				// nothing else to do
+			}
+			else if ( "public".equals( localName ) ) {
+				final String publicId = attributes.getValue( "publicId" );
+				final String entryUri = attributes.getValue( "uri" );
+				if ( publicId != null && entryUri != null ) {
+					final String absolute = makeAbsolute( base, entryUri );
+					Entries.add( entries.publicEntries, normalizePublicId( publicId ), new PublicEntry( absolute ) );
+					final PublicEntry entry = entries.publicEntries.get( normalizePublicId( publicId ) );
+					if ( preferPublic && entry.preferringPublicUri == null ) {
+						entry.preferringPublicUri = absolute;
+					}
+				}
+			}
+			else if ( "system".equals( localName ) ) {
+				final String systemId = attributes.getValue( "systemId" );
+				final String entryUri = attributes.getValue( "uri" );
+				if ( systemId != null && entryUri != null ) {
+					final String normalized = normalizeURI( systemId );
+					final String absolute = makeAbsolute( base, entryUri );
+					Entries.add( entries.systemEntries, normalized, absolute );
+					Entries.add( entries.caseInsensitiveSystemEntries, normalized.toLowerCase(), absolute );
+				}
+			}
+			else if ( "rewriteSystem".equals( localName ) ) {
+				addRewrite( entries.rewriteSystemEntries, attributes.getValue( "systemIdStartString" ), attributes.getValue( "rewritePrefix" ), base );
+			}
+			else if ( "systemSuffix".equals( localName ) || "uriSuffix".equals( localName ) ) {
+				// XML Catalogs 1.1 entries, which xml-resolver (1.1) does not know about and ignores
+			}
+			else if ( "uri".equals( localName ) ) {
+				final String name = attributes.getValue( "name" );
+				final String entryUri = attributes.getValue( "uri" );
+				if ( name != null && entryUri != null ) {
+					Entries.add( entries.uriEntries, normalizeURI( name ), makeAbsolute( base, entryUri ) );
+				}
+			}
+			else if ( "rewriteURI".equals( localName ) ) {
+				addRewrite( entries.rewriteUriEntries, attributes.getValue( "uriStartString" ), attributes.getValue( "rewritePrefix" ), base );
+			}
+			else if ( "nextCatalog".equals( localName ) ) {
+				final String catalog = attributes.getValue( "catalog" );
+				if ( catalog != null ) {
+					nextCatalogs.add( makeAbsolute( base, catalog ) );
+				}
+			}
+			else {
+				incomplete( "unsupported catalog entry <" + localName + ">" );
+			}
+		}
+
+		@Override
+		public void endElement(String uri, String localName, String qName) {
+			baseStack.removeFirst();
+			if ( extensionDepth > 0 ) {
+				extensionDepth--;
+			}
+			else if ( "catalog".equals( localName ) || "group".equals( localName ) ) {
+				final Boolean preferPublic = preferStack.removeFirst();
+				if ( !preferPublic.equals( preferStack.getFirst() ) ) {
+					preferStack.addFirst( preferStack.getFirst() );
+				}
+			}
+		}
+
+		private void addRewrite(TreeMap<String, RewriteEntry> rewrites, String startString, String rewritePrefix, URL base) {
+			if ( startString != null && rewritePrefix != null ) {
+				Entries.add(
+						rewrites,
+						normalizeURI( startString ),
+						new RewriteEntry( makeAbsolute( base, rewritePrefix ), entries.rewriteEntryCount++ )
+				);
+			}
+		}
+
+		private void incomplete(String reason) {
+			if ( incompleteReason == null ) {
+				incompleteReason = reason;
+			}
+		}
+
+		private static String makeAbsolute(URL base, String uri) {
+			final String normalized = normalizeURI( uri );
+			try {
+				return new URL( base, normalized ).toString();
+			}
+			catch ( MalformedURLException e ) {
+				return normalized;
+			}
+		}
+	}
+}
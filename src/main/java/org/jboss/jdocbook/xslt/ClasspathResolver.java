@@ -28,7 +28,6 @@ import java.net.URL;
 import javax.xml.transform.Source;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.URIResolver;
-import javax.xml.transform.stream.StreamSource;
 
 import org.jboss.jdocbook.JDocBookComponentRegistry;
 
@@ -39,26 +38,48 @@ import org.jboss.jdocbook.JDocBookComponentRegistry;
  * @author Pete Muir
  * @author Steve Ebersole
  */
-public class ClasspathResolver implements URIResolver {
+public class ClasspathResolver implements URIResolver, ScopedResolver {
 	public static final String SCHEME = "classpath:";
 
 	private final JDocBookComponentRegistry componentRegistry;
+	private final ResolvedResourceCache resourceCache;
 
 	public ClasspathResolver(JDocBookComponentRegistry componentRegistry) {
+		this( componentRegistry, new ResolvedResourceCache( false ) );
+	}
+
+	public ClasspathResolver(JDocBookComponentRegistry componentRegistry, ResolvedResourceCache resourceCache) {
 		this.componentRegistry = componentRegistry;
+		this.resourceCache = resourceCache;
+	}
+
+	@Override
+	public String[] getResolvablePrefixes() {
+		return new String[] { SCHEME };
 	}
 
 	@Override
-	public Source resolve(String href, String base) throws TransformerException {
+	public Source resolve(final String href, String base) throws TransformerException {
 		// href would need to start with classpath:
 		if ( !href.startsWith( SCHEME ) ) {
 			return null;
 		}
 
 		try {
-			URL url = componentRegistry.getEnvironment().getResourceDelegate().locateResource( href );
+			// the base plays no part in classpath lookups
+			URL url = resourceCache.locate(
+					ClasspathResolver.class,
+					href,
+					null,
+					new ResolvedResourceCache.Locator() {
+						@Override
+						public URL locate() {
+							return componentRegistry.getEnvironment().getResourceDelegate().locateResource( href );
+						}
+					}
+			);
 			if ( url != null ) {
-				return new StreamSource( url.openStream(), url.toExternalForm() );
+				return resourceCache.openSource( url );
 			}
 		}
 		catch ( Throwable ignore ) {
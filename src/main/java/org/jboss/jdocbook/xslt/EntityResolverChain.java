@@ -41,6 +41,9 @@ import org.xml.sax.ext.EntityResolver2;
  * <p/>
  * "Precedence" of the resolvers is determined by the order in which they are {@linkplain #addEntityResolver added},
  * following a FILO strategy.
+ * <p/>
+ * Lookups are dispatched through a {@link ResolutionTable}, so {@link ScopedResolver scoped} resolvers are only
+ * consulted for identifiers within their scope and repeated misses are answered without walking the chain.
  *
  * @author Steve Ebersole
  */
@@ -48,24 +51,48 @@ public class EntityResolverChain implements EntityResolver2 {
 	private static final Logger log = LoggerFactory.getLogger( EntityResolverChain.class );
 
 	private LinkedList<EntityResolver> entityResolvers = new LinkedList<EntityResolver>();
+	private volatile ResolutionTable<EntityResolver> resolutionTable;
 
 	public EntityResolverChain(EntityResolver rootResolver) {
 		entityResolvers.addLast( rootResolver );
 	}
 
 	public void addEntityResolver(EntityResolver entityResolver) {
-		entityResolvers.addFirst( entityResolver );
+		synchronized ( this ) {
+			entityResolvers.addFirst( entityResolver );
+			resolutionTable = null;
+		}
+	}
+
+	private ResolutionTable<EntityResolver> resolutionTable() {
+		ResolutionTable<EntityResolver> table = resolutionTable;
+		if ( table == null ) {
+			synchronized ( this ) {
+				table = resolutionTable;
+				if ( table == null ) {
+					table = new ResolutionTable<EntityResolver>( entityResolvers );
+					resolutionTable = table;
+				}
+			}
+		}
+		return table;
 	}
 
 	@Override
 	public InputSource resolveEntity(String publicId, String systemId) throws SAXException, IOException {
-		log.trace( "EntityResolver#resolveEntity: publicId=[" + publicId + "]; systemId=[" + systemId + "]" );
-		for ( EntityResolver entityResolver : entityResolvers ) {
+		log.trace( "EntityResolver#resolveEntity: publicId=[{}]; systemId=[{}]", publicId, systemId );
+		final ResolutionTable<EntityResolver> table = resolutionTable();
+		final String lookupKey = ResolutionTable.lookupKey( publicId, systemId );
+		if ( table.isKnownMiss( lookupKey ) ) {
+			return null;
+		}
+		for ( EntityResolver entityResolver : table.getCandidates( systemId, null ) ) {
 			InputSource source = entityResolver.resolveEntity( publicId, systemId );
 			if ( source != null ) {
 				return source;
 			}
 		}
+		table.recordMiss( lookupKey );
 		return null;
 	}
 
@@ -86,12 +113,19 @@ public class EntityResolverChain implements EntityResolver2 {
 	@Override
 	public InputSource resolveEntity(String name, String publicId, String baseURI, String systemId)
 			throws SAXException, IOException {
-		log.trace(
-				"EntityResolver2#resolveEntity: name=[" + name + "]; publicId=["
-						+ publicId + "]; baseURI=[" + baseURI + "]; systemId=[" + systemId + "]"
-		);
+		if ( log.isTraceEnabled() ) {
+			log.trace(
+					"EntityResolver2#resolveEntity: name=[{}]; publicId=[{}]; baseURI=[{}]; systemId=[{}]",
+					new Object[] { name, publicId, baseURI, systemId }
+			);
+		}
+		final ResolutionTable<EntityResolver> table = resolutionTable();
+		final String lookupKey = ResolutionTable.lookupKey( name, publicId, baseURI, systemId );
+		if ( table.isKnownMiss( lookupKey ) ) {
+			return null;
+		}
 		String expandedSystemId = null;
-		for ( EntityResolver entityResolver : entityResolvers ) {
+		for ( EntityResolver entityResolver : table.getCandidates( systemId, baseURI ) ) {
 			if ( entityResolver instanceof EntityResolver2 ) {
 				InputSource source = ( (EntityResolver2) entityResolver ).resolveEntity( name, publicId, baseURI, systemId );
 				if ( source != null ) {
@@ -111,6 +145,7 @@ public class EntityResolverChain implements EntityResolver2 {
 				}
 			}
 		}
+		table.recordMiss( lookupKey );
 		return null;
 	}
 
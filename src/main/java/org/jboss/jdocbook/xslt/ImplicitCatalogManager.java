@@ -25,17 +25,24 @@ package org.jboss.jdocbook.xslt;
 
 import java.io.IOException;
 import java.net.URL;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 /**
  * CatalogManager which resolves its catalogs internally via  classpath
  * resource lookups.  Its looks for resources named 'catalog.xml' on the
- * classpath.
+ * classpath.  The lookup is done once per classloader.
  *
  * @author Steve Ebersole
  */
 public class ImplicitCatalogManager extends AbstractCatalogManager {
+	private static final Map<ClassLoader, LinkedHashSet<String>> CATALOG_NAMES_BY_CLASSLOADER = Collections.synchronizedMap(
+			new WeakHashMap<ClassLoader, LinkedHashSet<String>>()
+	);
+
 	public ImplicitCatalogManager() {
 		super( resolveCatalogNames() );
 	}
@@ -45,6 +52,15 @@ public class ImplicitCatalogManager extends AbstractCatalogManager {
 		if ( classLoader == null ) {
 			classLoader = ImplicitCatalogManager.class.getClassLoader();
 		}
+		LinkedHashSet<String> names = CATALOG_NAMES_BY_CLASSLOADER.get( classLoader );
+		if ( names == null ) {
+			names = locateCatalogNames( classLoader );
+			CATALOG_NAMES_BY_CLASSLOADER.put( classLoader, names );
+		}
+		return names;
+	}
+
+	private static LinkedHashSet<String> locateCatalogNames(ClassLoader classLoader) {
 		LinkedHashSet<String> names = new LinkedHashSet<String>();
         try {
             Enumeration enumeration = classLoader.getResources( "catalog.xml" );
@@ -0,0 +1,113 @@
+/*
+ * jDocBook, processing of DocBook sources
+ *
+ * Copyright (c) 2010, Red Hat Inc. or third-party contributors as
+ * indicated by the @author tags or express copyright attribution
+ * statements applied by the authors.  All third-party contributions are
+ * distributed under license by Red Hat Inc.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.jboss.jdocbook.xslt;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+
+import org.apache.xml.resolver.Catalog;
+import org.apache.xml.resolver.CatalogManager;
+
+/**
+ * A {@link Catalog} answering system, public and URI lookups from a {@link CatalogIndex}.  The catalog files
+ * themselves are only loaded (by xml-resolver) if a lookup the index does not cover (<tt>urn:publicid:</tt>
+ * identifiers, doctype/entity/notation lookups) is ever made.
+ */
+public class IndexedCatalog extends Catalog {
+	private static final String PUBLIC_ID_URN_PREFIX = "urn:publicid:";
+
+	private final CatalogIndex index;
+	private boolean catalogsLoaded;
+
+	public IndexedCatalog(CatalogManager catalogManager, CatalogIndex index) {
+		super( catalogManager );
+		this.index = index;
+	}
+
+	private synchronized void ensureCatalogsLoaded() throws MalformedURLException, IOException {
+		if ( !catalogsLoaded ) {
+			setupReaders();
+			loadSystemCatalogs();
+			catalogsLoaded = true;
+		}
+	}
+
+	private static boolean isPublicIdUrn(String id) {
+		return id != null && id.startsWith( PUBLIC_ID_URN_PREFIX );
+	}
+
+	@Override
+	public String resolveSystem(String systemId) throws MalformedURLException, IOException {
+		if ( isPublicIdUrn( systemId ) ) {
+			ensureCatalogsLoaded();
+			return super.resolveSystem( systemId );
+		}
+		return index.resolveSystem( systemId );
+	}
+
+	@Override
+	public String resolvePublic(String publicId, String systemId) throws MalformedURLException, IOException {
+		if ( isPublicIdUrn( publicId ) || isPublicIdUrn( systemId ) ) {
+			ensureCatalogsLoaded();
+			return super.resolvePublic( publicId, systemId );
+		}
+		return index.resolvePublic( publicId, systemId );
+	}
+
+	@Override
+	public String resolveURI(String uri) throws MalformedURLException, IOException {
+		if ( isPublicIdUrn( uri ) ) {
+			ensureCatalogsLoaded();
+			return super.resolveURI( uri );
+		}
+		return index.resolveURI( uri );
+	}
+
+	@Override
+	public String resolveDoctype(String entityName, String publicId, String systemId)
+			throws MalformedURLException, IOException {
+		ensureCatalogsLoaded();
+		return super.resolveDoctype( entityName, publicId, systemId );
+	}
+
+	@Override
+	public String resolveDocument() throws MalformedURLException, IOException {
+		ensureCatalogsLoaded();
+		return super.resolveDocument();
+	}
+
+	@Override
+	public String resolveEntity(String entityName, String publicId, String systemId)
+			throws MalformedURLException, IOException {
+		ensureCatalogsLoaded();
+		return super.resolveEntity( entityName, publicId, systemId );
+	}
+
+	@Override
+	public String resolveNotation(String notationName, String publicId, String systemId)
+			throws MalformedURLException, IOException {
+		ensureCatalogsLoaded();
+		return super.resolveNotation( notationName, publicId, systemId );
+	}
+}
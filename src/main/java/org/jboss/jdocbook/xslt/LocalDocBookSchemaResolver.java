@@ -23,10 +23,14 @@
  */
 package org.jboss.jdocbook.xslt;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
 import org.jboss.jdocbook.DocBookSchemaResolutionStrategy;
+import org.jboss.jdocbook.util.ContentCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.xml.sax.EntityResolver;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
@@ -44,6 +48,8 @@ import org.xml.sax.SAXException;
  * @author Steve Ebersole
  */
 public class LocalDocBookSchemaResolver extends EntityResolverChain {
+	private static final Logger log = LoggerFactory.getLogger( LocalDocBookSchemaResolver.class );
+
 	public static final String BASE_PUBLIC_ID = "http://docbook.org/ns/docbook";
 
 	public static final String SYSTEM_ID_PREFIX = "http://docbook.org/xml/";
@@ -66,6 +72,13 @@ public class LocalDocBookSchemaResolver extends EntityResolverChain {
 
 	private static final LegacyDocBookDtdResolver LEGACY_DTD_RESOLVER = new LegacyDocBookDtdResolver();
 
+	/**
+	 * Keeps the content of the (classpath) schema resources in memory, so that each is read and inflated from its
+	 * jar only once rather than each time a document is parsed; a DocBook DTD for example is made up of dozens of
+	 * modules.  A fresh stream over the shared content is handed out each time.
+	 */
+	private static final ContentCache RESOURCE_CACHE = new ContentCache( 16 * 1024 * 1024 );
+
 	public LocalDocBookSchemaResolver(DocBookSchemaResolutionStrategy schemaResolutionStrategy) {
 		super( new BasePublicIdSchemaResolver( schemaResolutionStrategy ) );
 		addEntityResolver( DTD_RESOLVER );
@@ -147,9 +160,14 @@ public class LocalDocBookSchemaResolver extends EntityResolverChain {
 	 * Template implementation of the {@link InternalEntityResolver} contract.  The actual impls are all systemId based
 	 * resolvers, however this contract allows easy reuse of their
 	 */
-	public static abstract class AbstractInternalResolver implements InternalEntityResolver {
+	public static abstract class AbstractInternalResolver implements InternalEntityResolver, ScopedResolver {
 		public abstract String getType();
 
+		@Override
+		public String[] getResolvablePrefixes() {
+			return new String[] { SYSTEM_ID_PREFIX };
+		}
+
 		@Override
 		public InputSource resolveEntity(String publicId, String systemId) {
 			if ( systemId == null ) {
@@ -176,12 +194,28 @@ public class LocalDocBookSchemaResolver extends EntityResolverChain {
 		@Override
 		public InputStream resolveStream(String resource) {
 			final String resourceName = "docbook/" + getType() + "/" + resource;
-			InputStream stream = getClass().getClassLoader().getResourceAsStream( resourceName );
-			if ( stream == null ) {
-				stream = getClass().getClassLoader().getResourceAsStream( '/' + resourceName );
+			final ClassLoader classLoader = getClass().getClassLoader();
+			final byte[] content;
+			try {
+				content = RESOURCE_CACHE.getContent(
+						resourceName,
+						new ContentCache.ContentReader() {
+							@Override
+							public byte[] read() throws IOException {
+								InputStream stream = classLoader.getResourceAsStream( resourceName );
+								if ( stream == null ) {
+									stream = classLoader.getResourceAsStream( '/' + resourceName );
+								}
+								return stream == null ? null : ContentCache.readFully( stream );
+							}
+						}
+				);
 			}
-
-			return stream;
+			catch ( IOException e ) {
+				log.warn( "Unable to read schema resource {} : {}", resourceName, e.getMessage() );
+				return null;
+			}
+			return content == null ? null : new ByteArrayInputStream( content );
 		}
 
 		@Override
@@ -247,6 +281,11 @@ public class LocalDocBookSchemaResolver extends EntityResolverChain {
 		public static final String SYSTEM_ID_PREFIX = "http://www.oasis-open.org/docbook/xml/";
 		public static final int SYSTEM_ID_PREFIX_LEN = SYSTEM_ID_PREFIX.length();
 
+		@Override
+		public String[] getResolvablePrefixes() {
+			return new String[] { SYSTEM_ID_PREFIX };
+		}
+
 		@Override
 		public InputSource resolveEntity(String publicId, String systemId) {
 			if ( systemId == null ) {
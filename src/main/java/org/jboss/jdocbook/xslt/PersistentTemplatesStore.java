@@ -0,0 +1,507 @@
+/*
+ * jDocBook, processing of DocBook sources
+ *
+ * Copyright (c) 2010, Red Hat Inc. or third-party contributors as
+ * indicated by the @author tags or express copyright attribution
+ * statements applied by the authors.  All third-party contributions are
+ * distributed under license by Red Hat Inc.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.jboss.jdocbook.xslt;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.security.CodeSource;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import javax.xml.transform.Source;
+import javax.xml.transform.Templates;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.URIResolver;
+import javax.xml.transform.sax.SAXSource;
+import javax.xml.transform.stream.StreamSource;
+
+import org.jboss.jdocbook.util.FileUtils;
+import org.jboss.jdocbook.util.Fingerprints;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.InputSource;
+
+/**
+ * Persists pre-resolved stylesheets into the jDocBook work directory so that later runs can skip resolving (and
+ * reading from their jars) the stylesheet and all of its imports/includes.
+ * <p/>
+ * Saxon 6 compiled stylesheets are not serializable, so instead of the compiled {@link Templates} we store a
+ * snapshot of the resolved stylesheet tree : the content of every stylesheet module along with how each import or
+ * include was resolved.  Later runs compile straight from that snapshot.  Modules keep their original system ids,
+ * so relative references and error locations are unaffected.
+ * <p/>
+ * Each stored stylesheet is accompanied by a record of its resource closure (the stylesheet plus everything it
+ * imported or included) along with a version indicator for each resource.  A stored stylesheet is only reused
+ * when none of the resources in its closure changed.  Any problem reading or writing the store simply results in
+ * the stylesheet being resolved and compiled as usual.
+ */
+public class PersistentTemplatesStore {
+	private static final Logger log = LoggerFactory.getLogger( PersistentTemplatesStore.class );
+
+	/**
+	 * Persistent stylesheet store directory path, relative to jDocBook work directory.
+	 */
+	public static final String STORE_DIRECTORY = "xslt-cache";
+
+	private static final String ENGINE_KEY = "#engine";
+	private static final int SNAPSHOT_FORMAT = 1;
+
+	private final File directory;
+
+	public PersistentTemplatesStore(File directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 * Compile the stored stylesheet for the given key, provided none of the resources it was resolved from
+	 * changed since.
+	 *
+	 * @param key The templates key
+	 * @param transformerFactory The factory to compile the stylesheet with; its {@link URIResolver} is only used for
+	 * resources missing from the stored snapshot
+	 *
+	 * @return The compiled templates, or null if there is no stored stylesheet or it is stale
+	 */
+	public Templates load(TemplatesCache.Key key, TransformerFactory transformerFactory) {
+		final String name = determineName( key );
+		final File closureFile = new File( directory, name + ".closure" );
+		final File snapshotFile = new File( directory, name + ".snapshot" );
+		if ( !closureFile.exists() || !snapshotFile.exists() ) {
+			return null;
+		}
+
+		try {
+			final Properties closure = FileUtils.loadProperties( closureFile );
+			if ( !engineVersion().equals( closure.getProperty( ENGINE_KEY ) ) ) {
+				log.debug( "XSLT engine changed since stylesheet {} was stored", key.getStylesheetUrl() );
+				return null;
+			}
+			for ( Map.Entry<Object, Object> entry : closure.entrySet() ) {
+				final String resource = (String) entry.getKey();
+				if ( ENGINE_KEY.equals( resource ) ) {
+					continue;
+				}
+				if ( !entry.getValue().equals( Fingerprints.version( new URL( resource ) ) ) ) {
+					log.debug( "Stored stylesheet {} is stale; {} changed", key.getStylesheetUrl(), resource );
+					return null;
+				}
+			}
+
+			final StylesheetSnapshot snapshot = StylesheetSnapshot.read( snapshotFile );
+			final Source stylesheet = snapshot.getModule( key.getStylesheetUrl() );
+			if ( stylesheet == null ) {
+				log.debug( "Stored stylesheet {} is incomplete", key.getStylesheetUrl() );
+				return null;
+			}
+			transformerFactory.setURIResolver( new SnapshotResolver( snapshot, transformerFactory.getURIResolver() ) );
+			final Templates templates = transformerFactory.newTemplates( stylesheet );
+			log.debug( "Compiled stylesheet {} from stored snapshot", key.getStylesheetUrl() );
+			return templates;
+		}
+		catch ( TransformerConfigurationException e ) {
+			log.info( "Unable to compile stored stylesheet [" + key.getStylesheetUrl() + "]; recompiling", e );
+			return null;
+		}
+		catch ( Exception e ) {
+			log.info( "Unable to load stored stylesheet [" + key.getStylesheetUrl() + "]; recompiling", e );
+			return null;
+		}
+	}
+
+	/**
+	 * Read the recorded resource closure of the stored stylesheet for the given key.
+	 *
+	 * @param key The templates key
+	 *
+	 * @return The URLs of all resources which went into compiling the stored stylesheet, or null if not known
+	 */
+	public Set<String> loadClosure(TemplatesCache.Key key) {
+		final File closureFile = new File( directory, determineName( key ) + ".closure" );
+		if ( !closureFile.exists() ) {
+			return null;
+		}
+		try {
+			final Set<String> closure = new LinkedHashSet<String>( FileUtils.loadProperties( closureFile ).stringPropertyNames() );
+			closure.remove( ENGINE_KEY );
+			return closure;
+		}
+		catch ( IOException e ) {
+			log.debug( "Unable to read stored stylesheet closure for {}", key.getStylesheetUrl() );
+			return null;
+		}
+	}
+
+	/**
+	 * Store the stylesheet resolved by the given recording resolver.
+	 *
+	 * @param key The templates key
+	 * @param recordingResolver The resolver used (and {@link ClosureRecordingResolver#isCapturing() capturing}) while
+	 * compiling the stylesheet
+	 */
+	public void store(TemplatesCache.Key key, ClosureRecordingResolver recordingResolver) {
+		final String stylesheetUrl = key.getStylesheetUrl();
+		final StylesheetSnapshot snapshot = recordingResolver.getSnapshot();
+		if ( snapshot == null ) {
+			log.debug( "Stylesheet [{}] could not be captured completely; it will not be stored", stylesheetUrl );
+			return;
+		}
+
+		if ( !directory.exists() ) {
+			boolean created = directory.mkdirs();
+			if ( !created && !directory.exists() ) {
+				log.info( "Unable to create stylesheet store directory {}", directory );
+				return;
+			}
+		}
+
+		final String name = determineName( key );
+		final Collection<String> closure = recordingResolver.getClosure();
+		try {
+			final Properties closureVersions = new Properties();
+			closureVersions.setProperty( ENGINE_KEY, engineVersion() );
+			for ( String resource : closure ) {
+				closureVersions.setProperty( resource, Fingerprints.version( new URL( resource ) ) );
+			}
+
+			final File snapshotTempFile = File.createTempFile( name, ".tmp", directory );
+			try {
+				snapshot.write( snapshotTempFile );
+				FileUtils.replace( snapshotTempFile, new File( directory, name + ".snapshot" ) );
+			}
+			finally {
+				if ( snapshotTempFile.exists() ) {
+					//noinspection ResultOfMethodCallIgnored
+					snapshotTempFile.delete();
+				}
+			}
+
+			FileUtils.storeProperties( closureVersions, new File( directory, name + ".closure" ), stylesheetUrl );
+
+			log.debug( "Stored stylesheet {} ({} resources)", stylesheetUrl, closure.size() );
+		}
+		catch ( Exception e ) {
+			log.info( "Unable to store stylesheet [" + stylesheetUrl + "]", e );
+		}
+	}
+
+	private static String determineName(TemplatesCache.Key key) {
+		return Fingerprints.digest( key.getStylesheetUrl() + '|' + key.getResolverConfiguration() );
+	}
+
+	private static String engineVersion() {
+		final CodeSource codeSource = com.icl.saxon.Controller.class.getProtectionDomain().getCodeSource();
+		if ( codeSource == null || codeSource.getLocation() == null ) {
+			return "unknown";
+		}
+		return codeSource.getLocation().toExternalForm() + '@' + Fingerprints.version( codeSource.getLocation() );
+	}
+
+	private static byte[] readFully(InputStream stream) throws IOException {
+		try {
+			final ByteArrayOutputStream content = new ByteArrayOutputStream();
+			final byte[] buffer = new byte[8192];
+			int read;
+			while ( ( read = stream.read( buffer ) ) != -1 ) {
+				content.write( buffer, 0, read );
+			}
+			return content.toByteArray();
+		}
+		finally {
+			try {
+				stream.close();
+			}
+			catch ( IOException ignore ) {
+			}
+		}
+	}
+
+	/**
+	 * The resolved stylesheet tree : the content of each stylesheet module keyed by its system id, plus the system id
+	 * each import/include (href and base) resolved to.
+	 */
+	public static class StylesheetSnapshot {
+		private final Map<String, byte[]> modules = new LinkedHashMap<String, byte[]>();
+		private final Map<String, String> resolutions = new LinkedHashMap<String, String>();
+
+		private static String resolutionKey(String href, String base) {
+			return href + '|' + base;
+		}
+
+		private synchronized void addModule(String systemId, byte[] content) {
+			modules.put( systemId, content );
+		}
+
+		private synchronized void addResolution(String href, String base, String systemId) {
+			resolutions.put( resolutionKey( href, base ), systemId );
+		}
+
+		/**
+		 * Build a source for the stored module with the given system id.
+		 *
+		 * @param systemId The module system id
+		 *
+		 * @return The module source, or null if no such module was stored
+		 */
+		public synchronized Source getModule(String systemId) {
+			final byte[] content = modules.get( systemId );
+			return content == null ? null : new StreamSource( new ByteArrayInputStream( content ), systemId );
+		}
+
+		/**
+		 * Build a source for the stored module the given import/include resolved to.
+		 *
+		 * @param href The referenced URI
+		 * @param base The base URI of the referencing module
+		 *
+		 * @return The module source, or null if that reference was not stored
+		 */
+		public synchronized Source resolve(String href, String base) {
+			final String systemId = resolutions.get( resolutionKey( href, base ) );
+			return systemId == null ? null : getModule( systemId );
+		}
+
+		private synchronized void write(File file) throws IOException {
+			final DataOutputStream stream = new DataOutputStream(
+					new BufferedOutputStream( new FileOutputStream( file ) )
+			);
+			try {
+				stream.writeInt( SNAPSHOT_FORMAT );
+				stream.writeInt( modules.size() );
+				for ( Map.Entry<String, byte[]> module : modules.entrySet() ) {
+					stream.writeUTF( module.getKey() );
+					stream.writeInt( module.getValue().length );
+					stream.write( module.getValue() );
+				}
+				stream.writeInt( resolutions.size() );
+				for ( Map.Entry<String, String> resolution : resolutions.entrySet() ) {
+					stream.writeUTF( resolution.getKey() );
+					stream.writeUTF( resolution.getValue() );
+				}
+			}
+			finally {
+				stream.close();
+			}
+		}
+
+		private static StylesheetSnapshot read(File file) throws IOException {
+			final DataInputStream stream = new DataInputStream(
+					new BufferedInputStream( new FileInputStream( file ) )
+			);
+			try {
+				if ( stream.readInt() != SNAPSHOT_FORMAT ) {
+					throw new IOException( "unknown stylesheet snapshot format" );
+				}
+				final StylesheetSnapshot snapshot = new StylesheetSnapshot();
+				final int moduleCount = stream.readInt();
+				for ( int i = 0; i < moduleCount; i++ ) {
+					final String systemId = stream.readUTF();
+					final byte[] content = new byte[ stream.readInt() ];
+					stream.readFully( content );
+					snapshot.modules.put( systemId, content );
+				}
+				final int resolutionCount = stream.readInt();
+				for ( int i = 0; i < resolutionCount; i++ ) {
+					snapshot.resolutions.put( stream.readUTF(), stream.readUTF() );
+				}
+				return snapshot;
+			}
+			finally {
+				stream.close();
+			}
+		}
+	}
+
+	/**
+	 * {@link URIResolver} serving imports/includes from a stored snapshot, falling back to the given resolver for
+	 * anything not stored.
+	 */
+	private static class SnapshotResolver implements URIResolver {
+		private final StylesheetSnapshot snapshot;
+		private final URIResolver delegate;
+
+		private SnapshotResolver(StylesheetSnapshot snapshot, URIResolver delegate) {
+			this.snapshot = snapshot;
+			this.delegate = delegate;
+		}
+
+		@Override
+		public Source resolve(String href, String base) throws TransformerException {
+			final Source source = snapshot.resolve( href, base );
+			if ( source != null ) {
+				return source;
+			}
+			log.debug( "Stylesheet resource [{}] (from [{}]) not in stored snapshot", href, base );
+			return delegate == null ? null : delegate.resolve( href, base );
+		}
+	}
+
+	/**
+	 * {@link URIResolver} wrapper recording the resources resolved while compiling a stylesheet.  When capturing, the
+	 * content of those resources is recorded as well, as a {@link StylesheetSnapshot}.
+	 */
+	public static class ClosureRecordingResolver implements URIResolver {
+		private final URIResolver delegate;
+		private final Set<String> closure = Collections.synchronizedSet( new LinkedHashSet<String>() );
+		private final StylesheetSnapshot snapshot;
+		private volatile boolean snapshotComplete = true;
+
+		public ClosureRecordingResolver(URIResolver delegate, boolean capturing) {
+			this.delegate = delegate;
+			this.snapshot = capturing ? new StylesheetSnapshot() : null;
+		}
+
+		public Set<String> getClosure() {
+			return closure;
+		}
+
+		public boolean isCapturing() {
+			return snapshot != null;
+		}
+
+		/**
+		 * Retrieve the captured snapshot.
+		 *
+		 * @return The snapshot, or null if not capturing or some resource could not be captured.
+		 */
+		public StylesheetSnapshot getSnapshot() {
+			return snapshotComplete ? snapshot : null;
+		}
+
+		/**
+		 * Build the source for (compiling) the main stylesheet, recording it.
+		 *
+		 * @param xslt The stylesheet URL
+		 *
+		 * @return The stylesheet source
+		 *
+		 * @throws IOException Indicates a problem reading the stylesheet
+		 */
+		public StreamSource resolveStylesheet(URL xslt) throws IOException {
+			final String systemId = xslt.toExternalForm();
+			closure.add( systemId );
+			if ( snapshot == null ) {
+				return new StreamSource( xslt.openStream(), systemId );
+			}
+			final byte[] content = readFully( xslt.openStream() );
+			snapshot.addModule( systemId, content );
+			return new StreamSource( new ByteArrayInputStream( content ), systemId );
+		}
+
+		@Override
+		public Source resolve(String href, String base) throws TransformerException {
+			final Source source = delegate.resolve( href, base );
+			if ( snapshot == null ) {
+				if ( source != null && source.getSystemId() != null ) {
+					closure.add( source.getSystemId() );
+				}
+				else if ( source == null ) {
+					// the XSLT engine will resolve it itself relative to the base
+					final URL url = resolveUrl( href, base );
+					if ( url != null ) {
+						closure.add( url.toExternalForm() );
+					}
+				}
+				return source;
+			}
+			return capture( href, base, source );
+		}
+
+		private Source capture(String href, String base, Source source) throws TransformerException {
+			InputStream stream = null;
+			String systemId = null;
+			try {
+				if ( source == null ) {
+					// the XSLT engine would resolve it itself relative to the base; we do so on its behalf
+					final URL url = resolveUrl( href, base );
+					if ( url != null ) {
+						systemId = url.toExternalForm();
+						stream = url.openStream();
+					}
+				}
+				else {
+					systemId = source.getSystemId();
+					if ( source instanceof StreamSource && ( (StreamSource) source ).getReader() == null ) {
+						stream = ( (StreamSource) source ).getInputStream();
+					}
+					else if ( source instanceof SAXSource && ( (SAXSource) source ).getXMLReader() == null ) {
+						final InputSource inputSource = ( (SAXSource) source ).getInputSource();
+						if ( inputSource != null && inputSource.getCharacterStream() == null ) {
+							stream = inputSource.getByteStream();
+							systemId = inputSource.getSystemId() != null ? inputSource.getSystemId() : systemId;
+						}
+					}
+					else {
+						// readers, DOM sources, custom parsers : not something we can store faithfully
+						systemId = null;
+					}
+					if ( stream == null && systemId != null ) {
+						stream = new URL( systemId ).openStream();
+					}
+				}
+				if ( stream == null || systemId == null ) {
+					snapshotComplete = false;
+					if ( systemId != null ) {
+						closure.add( systemId );
+					}
+					return source;
+				}
+				final byte[] content = readFully( stream );
+				closure.add( systemId );
+				snapshot.addModule( systemId, content );
+				snapshot.addResolution( href, base, systemId );
+				return new StreamSource( new ByteArrayInputStream( content ), systemId );
+			}
+			catch ( IOException e ) {
+				throw new TransformerException( "problem reading stylesheet resource [" + href + "]", e );
+			}
+		}
+
+		private static URL resolveUrl(String href, String base) {
+			try {
+				final URL baseUrl = base == null ? null : new URL( base );
+				return new URL( baseUrl, href );
+			}
+			catch ( MalformedURLException e ) {
+				return null;
+			}
+		}
+	}
+}
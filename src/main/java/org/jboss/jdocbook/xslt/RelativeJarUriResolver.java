@@ -34,7 +34,14 @@ import javax.xml.transform.stream.StreamSource;
  *
  * @author Steve Ebersole
  */
-public class RelativeJarUriResolver implements URIResolver {
+public class RelativeJarUriResolver implements URIResolver, ScopedResolver {
+	public static final String SCHEME = "jar:";
+
+	@Override
+	public String[] getResolvablePrefixes() {
+		return new String[] { SCHEME };
+	}
+
 	@Override
 	public Source resolve(String href, String base) throws TransformerException {
 		// href need to be relative
@@ -43,7 +50,7 @@ public class RelativeJarUriResolver implements URIResolver {
 		}
 
 		// base would need to start with jar:
-		if ( !base.startsWith( "jar:" ) ) {
+		if ( !base.startsWith( SCHEME ) ) {
 			return null;
 		}
 
@@ -0,0 +1,202 @@
+/*
+ * jDocBook, processing of DocBook sources
+ *
+ * Copyright (c) 2010, Red Hat Inc. or third-party contributors as
+ * indicated by the @author tags or express copyright attribution
+ * statements applied by the authors.  All third-party contributions are
+ * distributed under license by Red Hat Inc.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.jboss.jdocbook.xslt;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A compiled view of a resolver chain.  Resolvers are indexed on the dispatch key (scheme, plus host for
+ * hierarchical URIs) of their {@link ScopedResolver#getResolvablePrefixes() prefixes}, so a lookup only consults the
+ * resolvers which could possibly answer it.  Lookups which no resolver could answer are remembered, making
+ * repeated misses a single map lookup.
+ */
+class ResolutionTable<T> {
+	/**
+	 * The maximum number of remembered misses; the set is simply cleared once it grows beyond that.
+	 */
+	public static final int MAX_MISSES = 4096;
+
+	private static final String FILE_KEY = "file:";
+
+	private final List<T> resolvers;
+	private final List<Set<String>> resolverKeys;
+	private final ConcurrentMap<String, List<T>> candidatesByKey = new ConcurrentHashMap<String, List<T>>();
+	private final ConcurrentMap<String, Boolean> misses = new ConcurrentHashMap<String, Boolean>();
+
+	/**
+	 * Compile the table.
+	 *
+	 * @param resolvers The resolvers, in precedence order
+	 */
+	ResolutionTable(List<T> resolvers) {
+		this.resolvers = new ArrayList<T>( resolvers );
+		this.resolverKeys = new ArrayList<Set<String>>( resolvers.size() );
+		for ( T resolver : resolvers ) {
+			if ( resolver instanceof ScopedResolver ) {
+				final Set<String> keys = new HashSet<String>();
+				for ( String prefix : ( (ScopedResolver) resolver ).getResolvablePrefixes() ) {
+					keys.add( dispatchKey( prefix ) );
+				}
+				resolverKeys.add( keys );
+			}
+			else {
+				resolverKeys.add( null );
+			}
+		}
+	}
+
+	/**
+	 * Locate the resolvers which could resolve the given identifier, in precedence order.
+	 *
+	 * @param id The identifier (system id or href) to resolve; may be null
+	 * @param base The base against which a relative identifier is resolved; may be null
+	 *
+	 * @return The candidate resolvers
+	 */
+	List<T> getCandidates(String id, String base) {
+		final String baseKey = dispatchKey( base );
+		String idKey = dispatchKey( id );
+		if ( idKey.length() == 0 ) {
+			// relative identifiers are dispatched on their base
+			idKey = baseKey;
+		}
+		final String key = idKey + ' ' + baseKey;
+		List<T> candidates = candidatesByKey.get( key );
+		if ( candidates == null ) {
+			candidates = new ArrayList<T>();
+			for ( int i = 0; i < resolvers.size(); i++ ) {
+				final Set<String> keys = resolverKeys.get( i );
+				if ( keys == null || keys.contains( idKey ) || keys.contains( baseKey ) ) {
+					candidates.add( resolvers.get( i ) );
+				}
+			}
+			candidates = Collections.unmodifiableList( candidates );
+			candidatesByKey.put( key, candidates );
+		}
+		return candidates;
+	}
+
+	boolean isKnownMiss(String lookupKey) {
+		return misses.containsKey( lookupKey );
+	}
+
+	void recordMiss(String lookupKey) {
+		if ( misses.size() >= MAX_MISSES ) {
+			misses.clear();
+		}
+		misses.put( lookupKey, Boolean.TRUE );
+	}
+
+	/**
+	 * Build the key under which a lookup is remembered from its parts.  Each part is length-prefixed, so that
+	 * different parts (null ones in particular) never build the same key.
+	 *
+	 * @param parts The parts of the lookup
+	 *
+	 * @return The lookup key
+	 */
+	static String lookupKey(String... parts) {
+		final StringBuilder buffer = new StringBuilder();
+		for ( String part : parts ) {
+			if ( part == null ) {
+				buffer.append( '-' );
+			}
+			else {
+				buffer.append( part.length() ).append( ':' ).append( part );
+			}
+			buffer.append( '|' );
+		}
+		return buffer.toString();
+	}
+
+	private static boolean isWindowsPath(String id) {
+		return id != null
+				&& id.length() > 2
+				&& Character.isLetter( id.charAt( 0 ) )
+				&& id.charAt( 1 ) == ':'
+				&& ( id.charAt( 2 ) == '\\' || id.charAt( 2 ) == '/' );
+	}
+
+	private static boolean isAbsolute(String id) {
+		if ( id == null ) {
+			return false;
+		}
+		final int colon = id.indexOf( ':' );
+		if ( colon <= 1 ) {
+			// no scheme, or a windows drive letter
+			return false;
+		}
+		for ( int i = 0; i < colon; i++ ) {
+			final char c = id.charAt( i );
+			if ( !Character.isLetterOrDigit( c ) && c != '+' && c != '-' && c != '.' ) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * The dispatch key of an identifier : its scheme (including the colon), plus the host for hierarchical
+	 * identifiers (e.g. <tt>http://docbook.org</tt>, <tt>classpath:</tt>, <tt>jar:</tt>), all in lower case.  File
+	 * identifiers, whatever their form (<tt>file:/</tt>, <tt>file:///</tt>, <tt>file://localhost/</tt> or a windows
+	 * path such as <tt>C:\</tt>), share the <tt>file:</tt> key.  Relative identifiers all share the empty key.
+	 *
+	 * @param id The identifier
+	 *
+	 * @return The dispatch key
+	 */
+	static String dispatchKey(String id) {
+		if ( isWindowsPath( id ) ) {
+			return FILE_KEY;
+		}
+		if ( !isAbsolute( id ) ) {
+			return "";
+		}
+		final int colon = id.indexOf( ':' );
+		final String scheme = id.substring( 0, colon + 1 ).toLowerCase();
+		if ( FILE_KEY.equals( scheme ) || !id.startsWith( "//", colon + 1 ) ) {
+			return scheme;
+		}
+
+		final int authorityStart = colon + 3;
+		int authorityEnd = authorityStart;
+		while ( authorityEnd < id.length() && "/?#".indexOf( id.charAt( authorityEnd ) ) < 0 ) {
+			authorityEnd++;
+		}
+		String host = id.substring( authorityStart, authorityEnd );
+		// drop any user info and port
+		host = host.substring( host.lastIndexOf( '@' ) + 1 );
+		final int port = host.lastIndexOf( ':' );
+		if ( port >= 0 && host.indexOf( ']', port ) < 0 ) {
+			host = host.substring( 0, port );
+		}
+		return host.length() == 0 ? scheme : ( scheme + "//" + host.toLowerCase() );
+	}
+}
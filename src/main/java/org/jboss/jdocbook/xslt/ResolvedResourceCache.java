@@ -0,0 +1,134 @@
+/*
+ * jDocBook, processing of DocBook sources
+ *
+ * Copyright (c) 2010, Red Hat Inc. or third-party contributors as
+ * indicated by the @author tags or express copyright attribution
+ * statements applied by the authors.  All third-party contributions are
+ * distributed under license by Red Hat Inc.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.jboss.jdocbook.xslt;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.xml.transform.Source;
+import javax.xml.transform.stream.StreamSource;
+
+import org.jboss.jdocbook.util.ContentCache;
+
+/**
+ * Memoizes the stylesheet resources located by the classpath based {@link javax.xml.transform.URIResolver resolvers}
+ * ({@link VersionResolver}, {@link ClasspathResolver}), keyed on the resolver along with the <tt>href</tt> and
+ * <tt>base</tt> being resolved, as the resolvers locate the same <tt>href</tt> differently.  Misses are remembered as
+ * well.  Optionally the content of the located resources is kept in memory too, so that
+ * compiling the same stylesheet modules again (for another format, say) reads nothing from the classpath.
+ * <p/>
+ * One instance is owned by the {@link TransformerBuilderImpl} and shared by all the transformers it builds.
+ */
+public class ResolvedResourceCache {
+	/**
+	 * The maximum number of bytes of resource content kept in memory; resources beyond that are simply read again.
+	 */
+	public static final long DEFAULT_MAX_CACHED_BYTES = 32 * 1024 * 1024;
+
+	private static final Location MISSING = new Location( null );
+
+	/**
+	 * Performs the actual location of a resource on a cache miss.
+	 */
+	public static interface Locator {
+		/**
+		 * Locate the resource.
+		 *
+		 * @return The resource URL, or null if the resource could not be located.
+		 */
+		public URL locate();
+	}
+
+	private final ConcurrentMap<String, Location> locations = new ConcurrentHashMap<String, Location>();
+	private final ContentCache contents;
+
+	public ResolvedResourceCache(boolean contentCachingEnabled) {
+		this( contentCachingEnabled, DEFAULT_MAX_CACHED_BYTES );
+	}
+
+	public ResolvedResourceCache(boolean contentCachingEnabled, long maxCachedBytes) {
+		this.contents = contentCachingEnabled ? new ContentCache( maxCachedBytes ) : null;
+	}
+
+	/**
+	 * Locate the resource for the given <tt>href</tt> and <tt>base</tt>, consulting the locator only the first time.
+	 *
+	 * @param resolver The resolver locating the resource
+	 * @param href The href being resolved
+	 * @param base The base against which the href is being resolved
+	 * @param locator The locator for cache misses
+	 *
+	 * @return The resource URL, or null if the resource could not be located.
+	 */
+	public URL locate(Class<?> resolver, String href, String base, Locator locator) {
+		final String key = ResolutionTable.lookupKey( resolver.getName(), href, base );
+		Location location = locations.get( key );
+		if ( location == null ) {
+			final URL url = locator.locate();
+			location = url == null ? MISSING : new Location( url );
+			final Location existing = locations.putIfAbsent( key, location );
+			if ( existing != null ) {
+				location = existing;
+			}
+		}
+		return location.url;
+	}
+
+	/**
+	 * Open a source for the given (located) resource URL.
+	 *
+	 * @param url The resource URL
+	 *
+	 * @return The source
+	 *
+	 * @throws IOException Indicates a problem reading the resource
+	 */
+	public Source openSource(final URL url) throws IOException {
+		final String systemId = url.toExternalForm();
+		if ( contents == null ) {
+			return new StreamSource( url.openStream(), systemId );
+		}
+
+		final byte[] content = contents.getContent(
+				systemId,
+				new ContentCache.ContentReader() {
+					@Override
+					public byte[] read() throws IOException {
+						return ContentCache.readFully( url.openStream() );
+					}
+				}
+		);
+		return new StreamSource( new ByteArrayInputStream( content ), systemId );
+	}
+
+	private static class Location {
+		private final URL url;
+
+		private Location(URL url) {
+			this.url = url;
+		}
+	}
+}
@@ -29,16 +29,24 @@ import javax.xml.transform.Source;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.URIResolver;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 /**
  * Allows chaining a series of {@link javax.xml.transform.URIResolver resolvers} together.
  * <p/>
  * "Precedence" of the resolvers is determined by the order in which
  * they are {@link #addResolver added}.
+ * <p/>
+ * As with {@link EntityResolverChain}, lookups are dispatched through a {@link ResolutionTable}.
  *
  * @author Steve Ebersole
  */
 public class ResolverChain implements URIResolver {
+	private static final Logger log = LoggerFactory.getLogger( ResolverChain.class );
+
 	private final List<URIResolver> resolvers = new ArrayList<URIResolver>();
+	private volatile ResolutionTable<URIResolver> resolutionTable;
 
 	public ResolverChain() {
 	}
@@ -55,7 +63,24 @@ public class ResolverChain implements URIResolver {
 	 * @param resolver The resolver to add.
 	 */
 	public void addResolver(URIResolver resolver) {
-		resolvers.add( resolver );
+		synchronized ( this ) {
+			resolvers.add( resolver );
+			resolutionTable = null;
+		}
+	}
+
+	private ResolutionTable<URIResolver> resolutionTable() {
+		ResolutionTable<URIResolver> table = resolutionTable;
+		if ( table == null ) {
+			synchronized ( this ) {
+				table = resolutionTable;
+				if ( table == null ) {
+					table = new ResolutionTable<URIResolver>( resolvers );
+					resolutionTable = table;
+				}
+			}
+		}
+		return table;
 	}
 
 	/**
@@ -64,13 +89,19 @@ public class ResolverChain implements URIResolver {
 	 */
 	@Override
 	public Source resolve(String href, String base) throws TransformerException {
-		Source result = null;
-		for ( URIResolver resolver : resolvers ) {
-			result = resolver.resolve( href, base );
+		log.trace( "URIResolver#resolve: href=[{}]; base=[{}]", href, base );
+		final ResolutionTable<URIResolver> table = resolutionTable();
+		final String lookupKey = ResolutionTable.lookupKey( href, base );
+		if ( table.isKnownMiss( lookupKey ) ) {
+			return null;
+		}
+		for ( URIResolver resolver : table.getCandidates( href, base ) ) {
+			final Source result = resolver.resolve( href, base );
 			if ( result != null ) {
-				break;
+				return result;
 			}
 		}
-		return result;
+		table.recordMiss( lookupKey );
+		return null;
 	}
 }
@@ -0,0 +1,40 @@
+/*
+ * jDocBook, processing of DocBook sources
+ *
+ * Copyright (c) 2010, Red Hat Inc. or third-party contributors as
+ * indicated by the @author tags or express copyright attribution
+ * statements applied by the authors.  All third-party contributions are
+ * distributed under license by Red Hat Inc.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.jboss.jdocbook.xslt;
+
+/**
+ * Contract for resolvers which only ever resolve identifiers within a known set of prefixes, allowing the
+ * {@link EntityResolverChain} and {@link ResolverChain} to skip them for everything else.
+ * <p/>
+ * A scoped resolver must return null for any identifier which neither starts with one of its prefixes nor is
+ * relative to a base starting with one of them.
+ */
+public interface ScopedResolver {
+	/**
+	 * The prefixes (scheme, or scheme and host) of the identifiers this resolver can resolve.
+	 *
+	 * @return The prefixes
+	 */
+	public String[] getResolvablePrefixes();
+}
@@ -0,0 +1,275 @@
+/*
+ * jDocBook, processing of DocBook sources
+ *
+ * Copyright (c) 2010, Red Hat Inc. or third-party contributors as
+ * indicated by the @author tags or express copyright attribution
+ * statements applied by the authors.  All third-party contributions are
+ * distributed under license by Red Hat Inc.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.jboss.jdocbook.xslt;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.xml.transform.Templates;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A thread-safe, size bounded cache of compiled stylesheet {@link Templates}.  Each key is compiled only once, even
+ * when requested concurrently; other requesters wait on the compilation in progress.  Least recently used entries
+ * are evicted once the cache grows beyond its maximum size.
+ */
+public class TemplatesCache {
+	private static final Logger log = LoggerFactory.getLogger( TemplatesCache.class );
+
+	public static final int DEFAULT_MAX_SIZE = 16;
+
+	private final int maxSize;
+	private final LinkedHashMap<Key, FutureTask<Templates>> entries;
+
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+	private final AtomicLong evictionCount = new AtomicLong();
+	private final AtomicLong compileTimeNanos = new AtomicLong();
+
+	public TemplatesCache() {
+		this( DEFAULT_MAX_SIZE );
+	}
+
+	public TemplatesCache(int maxSize) {
+		this.maxSize = maxSize;
+		this.entries = new LinkedHashMap<Key, FutureTask<Templates>>( 16, 0.75f, true ) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, FutureTask<Templates>> eldest) {
+				if ( size() > TemplatesCache.this.maxSize ) {
+					log.debug( "Evicting compiled stylesheet {} from cache", eldest.getKey() );
+					evictionCount.incrementAndGet();
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Retrieve the templates cached under the given key, compiling (and caching) them if needed.
+	 *
+	 * @param key The cache key
+	 * @param compiler Callback used to compile the templates on a cache miss
+	 *
+	 * @return The compiled templates
+	 *
+	 * @throws XSLTException Indicates a problem compiling the templates
+	 */
+	public Templates getTemplates(final Key key, final Callable<Templates> compiler) throws XSLTException {
+		FutureTask<Templates> entry;
+		boolean compile = false;
+		synchronized ( entries ) {
+			entry = entries.get( key );
+			if ( entry == null ) {
+				entry = new FutureTask<Templates>(
+						new Callable<Templates>() {
+							@Override
+							public Templates call() throws Exception {
+								final long start = System.nanoTime();
+								final Templates templates = compiler.call();
+								final long elapsed = System.nanoTime() - start;
+								compileTimeNanos.addAndGet( elapsed );
+								log.debug( "Compiled stylesheet {} in {} ms", key, elapsed / 1000000 );
+								return templates;
+							}
+						}
+				);
+				entries.put( key, entry );
+				compile = true;
+			}
+		}
+
+		if ( compile ) {
+			missCount.incrementAndGet();
+			entry.run();
+		}
+		else {
+			hitCount.incrementAndGet();
+		}
+
+		try {
+			return entry.get();
+		}
+		catch ( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+			throw new XSLTException( "Interrupted waiting on compilation of stylesheet [" + key.getStylesheetUrl() + "]", e );
+		}
+		catch ( ExecutionException e ) {
+			// do not keep failures around; the next request should get to try again
+			synchronized ( entries ) {
+				if ( entries.get( key ) == entry ) {
+					entries.remove( key );
+				}
+			}
+			final Throwable cause = e.getCause();
+			if ( cause instanceof RuntimeException ) {
+				throw (RuntimeException) cause;
+			}
+			if ( cause instanceof Error ) {
+				throw (Error) cause;
+			}
+			throw new XSLTException( "unable to compile stylesheet [" + key.getStylesheetUrl() + "]", cause );
+		}
+	}
+
+	/**
+	 * Remove all cached templates.
+	 */
+	public void clear() {
+		synchronized ( entries ) {
+			entries.clear();
+		}
+	}
+
+	/**
+	 * Retrieve a snapshot of the statistics for this cache.
+	 *
+	 * @return The cache statistics
+	 */
+	public Statistics getStatistics() {
+		final int size;
+		synchronized ( entries ) {
+			size = entries.size();
+		}
+		return new Statistics(
+				size,
+				hitCount.get(),
+				missCount.get(),
+				evictionCount.get(),
+				compileTimeNanos.get() / 1000000
+		);
+	}
+
+	/**
+	 * Key for the cached templates.  Besides the stylesheet URL we take into account the configuration of the
+	 * {@link javax.xml.transform.URIResolver} used to compile the stylesheet (which determines how its imports are
+	 * resolved) and a version indicator for the stylesheet itself (last-modified timestamp or content hash).
+	 */
+	public static class Key {
+		private final String stylesheetUrl;
+		private final String resolverConfiguration;
+		private final String stylesheetVersion;
+
+		public Key(String stylesheetUrl, String resolverConfiguration, String stylesheetVersion) {
+			this.stylesheetUrl = stylesheetUrl;
+			this.resolverConfiguration = resolverConfiguration;
+			this.stylesheetVersion = stylesheetVersion;
+		}
+
+		public String getStylesheetUrl() {
+			return stylesheetUrl;
+		}
+
+		public String getResolverConfiguration() {
+			return resolverConfiguration;
+		}
+
+		public String getStylesheetVersion() {
+			return stylesheetVersion;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if ( this == o ) {
+				return true;
+			}
+			if ( o == null || getClass() != o.getClass() ) {
+				return false;
+			}
+
+			Key key = (Key) o;
+			return stylesheetUrl.equals( key.stylesheetUrl )
+					&& resolverConfiguration.equals( key.resolverConfiguration )
+					&& stylesheetVersion.equals( key.stylesheetVersion );
+		}
+
+		@Override
+		public int hashCode() {
+			int result = stylesheetUrl.hashCode();
+			result = 31 * result + resolverConfiguration.hashCode();
+			result = 31 * result + stylesheetVersion.hashCode();
+			return result;
+		}
+
+		@Override
+		public String toString() {
+			return "[" + stylesheetUrl + "; resolver=" + resolverConfiguration + "; version=" + stylesheetVersion + "]";
+		}
+	}
+
+	/**
+	 * Point-in-time statistics about the cache.
+	 */
+	public static class Statistics {
+		private final int size;
+		private final long hitCount;
+		private final long missCount;
+		private final long evictionCount;
+		private final long compileTime;
+
+		public Statistics(int size, long hitCount, long missCount, long evictionCount, long compileTime) {
+			this.size = size;
+			this.hitCount = hitCount;
+			this.missCount = missCount;
+			this.evictionCount = evictionCount;
+			this.compileTime = compileTime;
+		}
+
+		public int getSize() {
+			return size;
+		}
+
+		public long getHitCount() {
+			return hitCount;
+		}
+
+		public long getMissCount() {
+			return missCount;
+		}
+
+		public long getEvictionCount() {
+			return evictionCount;
+		}
+
+		/**
+		 * The total time spent compiling stylesheets, in milliseconds.
+		 *
+		 * @return The total compile time.
+		 */
+		public long getCompileTime() {
+			return compileTime;
+		}
+
+		@Override
+		public String toString() {
+			return "[size=" + size + "; hits=" + hitCount + "; misses=" + missCount
+					+ "; evictions=" + evictionCount + "; compileTime=" + compileTime + "ms]";
+		}
+	}
+}
@@ -24,7 +24,9 @@
 package org.jboss.jdocbook.xslt;
 
 import java.net.URL;
+import java.util.Set;
 import javax.xml.transform.Transformer;
+import javax.xml.transform.sax.TransformerHandler;
 
 import org.apache.xml.resolver.tools.CatalogResolver;
 
@@ -42,6 +44,23 @@ public interface TransformerBuilder {
 	 */
 	public CatalogResolver getCatalogResolver();
 
+	/**
+	 * Retrieve the current statistics of the cache of compiled stylesheets kept by this builder.
+	 *
+	 * @return The compiled stylesheet cache statistics
+	 */
+	public TemplatesCache.Statistics getTemplatesCacheStatistics();
+
+	/**
+	 * Retrieve the resources (the stylesheet itself plus everything it imported or included) which went into
+	 * compiling the given stylesheet.
+	 *
+	 * @param xslt A URL referencing an <tt>XSLT</tt>
+	 *
+	 * @return The URLs of the stylesheet resources; just the stylesheet itself if it was not yet compiled.
+	 */
+	public Set<String> getStylesheetClosure(URL xslt);
+
 	/**
 	 * Build a transformer from the <tt>XSLT</tt> referenced by the given URL.
 	 *
@@ -60,6 +79,18 @@ public interface TransformerBuilder {
 	 */
 	public Transformer buildStandardTransformer(String xsltResource);
 
+	/**
+	 * Build a SAX transformer handler from the <tt>XSLT</tt> referenced by the given resource name, allowing the
+	 * transformation to be used as a stage of a SAX pipeline.
+	 *
+	 * @param xsltResource The resource name referencing an <tt>XSLT</tt>
+	 *
+	 * @return The transformer handler.
+	 *
+	 * @throws XSLTException Indicates an error building the transformer handler
+	 */
+	public TransformerHandler buildStandardTransformerHandler(String xsltResource) throws XSLTException;
+
 	/**
 	 * Build a transformer from the format plan and <tt>XSLT</tt> referenced by the given resource name.
 	 *
@@ -23,17 +23,23 @@
  */
 package org.jboss.jdocbook.xslt;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.URL;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.Map;
-import javax.xml.transform.Source;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import javax.xml.transform.Templates;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.URIResolver;
 import javax.xml.transform.sax.SAXTransformerFactory;
+import javax.xml.transform.sax.TransformerHandler;
 import javax.xml.transform.stream.StreamSource;
 
 import com.icl.saxon.Controller;
@@ -43,6 +49,7 @@ import org.jboss.jdocbook.Configuration;
 import org.jboss.jdocbook.Environment;
 import org.jboss.jdocbook.JDocBookComponentRegistry;
 import org.jboss.jdocbook.ResourceDelegate;
+import org.jboss.jdocbook.util.Fingerprints;
 import org.jboss.jdocbook.util.NoOpWriter;
 
 /**
@@ -53,6 +60,11 @@ import org.jboss.jdocbook.util.NoOpWriter;
 public class TransformerBuilderImpl implements TransformerBuilder {
 	private final JDocBookComponentRegistry componentRegistry;
 	private final CatalogResolver catalogResolver;
+	private final String resolverConfiguration;
+	private final TemplatesCache templatesCache = new TemplatesCache();
+	private final ResolvedResourceCache resolvedResourceCache;
+	private final PersistentTemplatesStore persistentTemplatesStore;
+	private final ConcurrentMap<String, Set<String>> stylesheetClosures = new ConcurrentHashMap<String, Set<String>>();
 
 	public TransformerBuilderImpl(JDocBookComponentRegistry componentRegistry) {
 		this.componentRegistry = componentRegistry;
@@ -66,6 +78,31 @@ public class TransformerBuilderImpl implements TransformerBuilder {
 			catalogManager = new ExplicitCatalogManager( componentRegistry.getConfiguration().getCatalogs() );
 		}
 		catalogResolver = new CatalogResolver( catalogManager );
+		resolverConfiguration = describeResolverConfiguration();
+		resolvedResourceCache = new ResolvedResourceCache(
+				componentRegistry.getPerformanceOptions().isStylesheetResourceCachingEnabled()
+		);
+
+		persistentTemplatesStore = componentRegistry.getPerformanceOptions().isPersistentStylesheetCacheEnabled()
+				? new PersistentTemplatesStore( new File( environment().getWorkDirectory(), PersistentTemplatesStore.STORE_DIRECTORY ) )
+				: null;
+	}
+
+	/**
+	 * Describes the settings which influence how the standard resolvers resolve stylesheet imports, for use in
+	 * keying compiled stylesheets.
+	 *
+	 * @return The resolver configuration description.
+	 */
+	private String describeResolverConfiguration() {
+		final StringBuilder buffer = new StringBuilder();
+		final Environment.DocBookXsltResolutionStrategy strategy = environment().getDocBookXsltResolutionStrategy();
+		buffer.append( strategy );
+		if ( Environment.DocBookXsltResolutionStrategy.NAMED == strategy ) {
+			buffer.append( ':' ).append( configuration().getDocBookVersion() );
+		}
+		buffer.append( ";catalogs=" ).append( configuration().getCatalogs() );
+		return buffer.toString();
 	}
 
 	@Override
@@ -73,6 +110,17 @@ public class TransformerBuilderImpl implements TransformerBuilder {
 		return catalogResolver;
 	}
 
+	@Override
+	public TemplatesCache.Statistics getTemplatesCacheStatistics() {
+		return templatesCache.getStatistics();
+	}
+
+	@Override
+	public Set<String> getStylesheetClosure(URL xslt) {
+		final Set<String> closure = stylesheetClosures.get( xslt.toExternalForm() );
+		return closure == null ? Collections.singleton( xslt.toExternalForm() ) : closure;
+	}
+
 	protected Environment environment() {
 		return componentRegistry.getEnvironment();
 	}
@@ -105,9 +153,9 @@ public class TransformerBuilderImpl implements TransformerBuilder {
 
 	private void applyStandardResolvers(ResolverChain resolverChain) {
 		// See https://jira.jboss.org/jira/browse/MPJDOCBOOK-49
-		resolverChain.addResolver( new VersionResolver( componentRegistry ) );
+		resolverChain.addResolver( new VersionResolver( componentRegistry, resolvedResourceCache ) );
 		resolverChain.addResolver( new RelativeJarUriResolver() );
-		resolverChain.addResolver( new ClasspathResolver( componentRegistry ) );
+		resolverChain.addResolver( new ClasspathResolver( componentRegistry, resolvedResourceCache ) );
 		resolverChain.addResolver( catalogResolver );
 	}
 
@@ -120,25 +168,114 @@ public class TransformerBuilderImpl implements TransformerBuilder {
 		return buildTransformer( xsltStylesheet, uriResolver );
 	}
 
-	private HashMap<String, Templates> transformerTemplatesCache = new HashMap<String, Templates>();
+	protected Transformer buildTransformer(final URL xslt, URIResolver uriResolver) throws XSLTException {
+		final SAXTransformerFactory transformerFactory = buildSAXTransformerFactory();
+		transformerFactory.setURIResolver( uriResolver );
+		final Templates transformerTemplates = resolveTemplates( xslt, transformerFactory );
+
+		Transformer transformer;
+		try {
+			transformer = transformerTemplates.newTransformer();
+		}
+		catch ( TransformerConfigurationException e ) {
+			throw new XSLTException( "unable to build transformer [" + e.getLocationAsString() + "] : " + e.getMessage(), e );
+		}
+
+		configureTransformer( transformer, uriResolver, configuration().getTransformerParameters() );
+		return transformer;
+	}
 
-	protected Transformer buildTransformer(URL xslt, URIResolver uriResolver) throws XSLTException {
-		javax.xml.transform.TransformerFactory transformerFactory = buildSAXTransformerFactory();
+	@Override
+	public TransformerHandler buildStandardTransformerHandler(String xsltResource) throws XSLTException {
+		final URIResolver uriResolver = buildStandardUriResolver();
+		final SAXTransformerFactory transformerFactory = buildSAXTransformerFactory();
 		transformerFactory.setURIResolver( uriResolver );
+		final Templates transformerTemplates = resolveTemplates(
+				resourceDelegate().requireResource( xsltResource ),
+				transformerFactory
+		);
 
+		TransformerHandler transformerHandler;
+		try {
+			transformerHandler = transformerFactory.newTransformerHandler( transformerTemplates );
+		}
+		catch ( TransformerConfigurationException e ) {
+			throw new XSLTException( "unable to build transformer handler [" + e.getLocationAsString() + "] : " + e.getMessage(), e );
+		}
+
+		configureTransformer( transformerHandler.getTransformer(), uriResolver, configuration().getTransformerParameters() );
+		return transformerHandler;
+	}
+
+	private Templates resolveTemplates(
+			final URL xslt,
+			final javax.xml.transform.TransformerFactory transformerFactory) throws XSLTException {
 		final String xsltUrlStr = xslt.toExternalForm();
+		final TemplatesCache.Key key = new TemplatesCache.Key(
+				xsltUrlStr,
+				resolverConfiguration,
+				Fingerprints.version( xslt )
+		);
+		return templatesCache.getTemplates(
+				key,
+				new Callable<Templates>() {
+					@Override
+					public Templates call() {
+						return loadOrCompileTemplates( key, transformerFactory, xslt );
+					}
+				}
+		);
+	}
 
-		Transformer transformer;
+	private Templates loadOrCompileTemplates(
+			TemplatesCache.Key key,
+			javax.xml.transform.TransformerFactory transformerFactory,
+			URL xslt) {
+		final URIResolver uriResolver = transformerFactory.getURIResolver();
+		if ( persistentTemplatesStore != null ) {
+			final Templates templates = persistentTemplatesStore.load( key, transformerFactory );
+			transformerFactory.setURIResolver( uriResolver );
+			if ( templates != null ) {
+				final Set<String> closure = persistentTemplatesStore.loadClosure( key );
+				if ( closure != null ) {
+					stylesheetClosures.put( key.getStylesheetUrl(), Collections.unmodifiableSet( closure ) );
+				}
+				return templates;
+			}
+		}
+
+		final PersistentTemplatesStore.ClosureRecordingResolver recordingResolver =
+				new PersistentTemplatesStore.ClosureRecordingResolver( uriResolver, persistentTemplatesStore != null );
+		transformerFactory.setURIResolver( recordingResolver );
+		final Templates templates = compileTemplates( transformerFactory, recordingResolver, xslt );
+		stylesheetClosures.put(
+				key.getStylesheetUrl(),
+				Collections.unmodifiableSet( new LinkedHashSet<String>( recordingResolver.getClosure() ) )
+		);
+
+		if ( persistentTemplatesStore != null ) {
+			persistentTemplatesStore.store( key, recordingResolver );
+		}
+		return templates;
+	}
+
+	private static Templates compileTemplates(
+			javax.xml.transform.TransformerFactory transformerFactory,
+			PersistentTemplatesStore.ClosureRecordingResolver recordingResolver,
+			URL xslt) {
+		final String xsltUrlStr = xslt.toExternalForm();
 		try {
-			Templates transformerTemplates = transformerTemplatesCache.get( xsltUrlStr );
-			if ( transformerTemplates == null ) {
-				Source source = new StreamSource( xslt.openStream(), xsltUrlStr );
-				transformerTemplates = transformerFactory.newTemplates( source );
-				transformerTemplatesCache.put( xsltUrlStr, transformerTemplates );
+			final StreamSource source = recordingResolver.resolveStylesheet( xslt );
+			try {
+				return transformerFactory.newTemplates( source );
+			}
+			finally {
+				try {
+					source.getInputStream().close();
+				}
+				catch ( IOException ignore ) {
+				}
 			}
-			transformer = transformerTemplates.newTransformer();
-			//Source source = new StreamSource( xslt.openStream(), xsltUrlStr );
-			//transformer = transformerFactory.newTransformer( source );
 		}
 		catch ( IOException e ) {
 			throw new XSLTException( "problem opening stylesheet [" + xsltUrlStr + "]", e );
@@ -146,9 +283,6 @@ public class TransformerBuilderImpl implements TransformerBuilder {
 		catch ( TransformerConfigurationException e ) {
 			throw new XSLTException( "unable to build transformer [" + e.getLocationAsString() + "] : " + e.getMessage(), e );
 		}
-
-		configureTransformer( transformer, uriResolver, configuration().getTransformerParameters() );
-		return transformer;
 	}
 
 	private SAXTransformerFactory buildSAXTransformerFactory() {
@@ -0,0 +1,112 @@
+/*
+ * jDocBook, processing of DocBook sources
+ *
+ * Copyright (c) 2010, Red Hat Inc. or third-party contributors as
+ * indicated by the @author tags or express copyright attribution
+ * statements applied by the authors.  All third-party contributions are
+ * distributed under license by Red Hat Inc.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.jboss.jdocbook.xslt;
+
+import java.io.IOException;
+import javax.xml.transform.sax.SAXResult;
+import javax.xml.transform.sax.TransformerHandler;
+
+import org.xml.sax.ContentHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXNotRecognizedException;
+import org.xml.sax.SAXNotSupportedException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.ext.LexicalHandler;
+import org.xml.sax.helpers.XMLFilterImpl;
+
+/**
+ * An {@link org.xml.sax.XMLFilter} which runs the events of its parent reader through a transformation (as
+ * represented by a {@link TransformerHandler}) before handing the transformed events on to its own handlers.
+ * <p/>
+ * Used as the reader of a {@link javax.xml.transform.sax.SAXSource}, this allows chaining one transformation in front
+ * of another without the intermediate document ever being serialized.
+ */
+public class TransformerHandlerFilter extends XMLFilterImpl {
+	private static final String LEXICAL_HANDLER_PROPERTY = "http://xml.org/sax/properties/lexical-handler";
+
+	private final TransformerHandler transformerHandler;
+	private LexicalHandler lexicalHandler;
+
+	public TransformerHandlerFilter(XMLReader parent, TransformerHandler transformerHandler) {
+		super( parent );
+		this.transformerHandler = transformerHandler;
+	}
+
+	@Override
+	public void setProperty(String name, Object value) throws SAXNotRecognizedException, SAXNotSupportedException {
+		if ( LEXICAL_HANDLER_PROPERTY.equals( name ) ) {
+			lexicalHandler = (LexicalHandler) value;
+		}
+		else {
+			super.setProperty( name, value );
+		}
+	}
+
+	@Override
+	public Object getProperty(String name) throws SAXNotRecognizedException, SAXNotSupportedException {
+		if ( LEXICAL_HANDLER_PROPERTY.equals( name ) ) {
+			return lexicalHandler;
+		}
+		return super.getProperty( name );
+	}
+
+	@Override
+	public void parse(InputSource input) throws SAXException, IOException {
+		final ContentHandler contentHandler = getContentHandler();
+		if ( contentHandler == null ) {
+			throw new SAXException( "no content handler set on filter" );
+		}
+		final SAXResult result = new SAXResult( contentHandler );
+		if ( lexicalHandler != null ) {
+			result.setLexicalHandler( lexicalHandler );
+		}
+		else if ( contentHandler instanceof LexicalHandler ) {
+			result.setLexicalHandler( (LexicalHandler) contentHandler );
+		}
+		transformerHandler.setResult( result );
+
+		final XMLReader parent = getParent();
+		parent.setContentHandler( transformerHandler );
+		parent.setDTDHandler( transformerHandler );
+		try {
+			parent.setProperty( LEXICAL_HANDLER_PROPERTY, transformerHandler );
+		}
+		catch ( SAXNotRecognizedException ignore ) {
+			// comments will simply not be seen by the transformation
+		}
+		catch ( SAXNotSupportedException ignore ) {
+			// comments will simply not be seen by the transformation
+		}
+		if ( getErrorHandler() != null ) {
+			parent.setErrorHandler( getErrorHandler() );
+		}
+		parent.parse( input );
+	}
+
+	@Override
+	public void parse(String systemId) throws SAXException, IOException {
+		parse( new InputSource( systemId ) );
+	}
+}
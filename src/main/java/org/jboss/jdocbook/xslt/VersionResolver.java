@@ -28,7 +28,6 @@ import java.net.URL;
 import javax.xml.transform.Source;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.URIResolver;
-import javax.xml.transform.stream.StreamSource;
 
 import org.jboss.jdocbook.Environment;
 import org.jboss.jdocbook.JDocBookComponentRegistry;
@@ -39,11 +38,12 @@ import org.jboss.jdocbook.JDocBookComponentRegistry;
  *
  * @author Steve Ebersole
  */
-public class VersionResolver implements URIResolver {
+public class VersionResolver implements URIResolver, ScopedResolver {
 	public static final String BASE_HREF = "http://docbook.sourceforge.net/release/xsl/";
 	public static final int BASE_HREF_LEN = BASE_HREF.length();
 
 	private final JDocBookComponentRegistry componentRegistry;
+	private final ResolvedResourceCache resourceCache;
 	private final VersionMatcher versionMatcher;
 
 	/**
@@ -52,7 +52,19 @@ public class VersionResolver implements URIResolver {
 	 * @param componentRegistry The execution environment
 	 */
 	public VersionResolver(JDocBookComponentRegistry componentRegistry) {
+		this( componentRegistry, new ResolvedResourceCache( false ) );
+	}
+
+	/**
+	 * Constructs a VersionResolver instance using the given <tt>version</tt>, memoizing resolutions in the given
+	 * cache.
+	 *
+	 * @param componentRegistry The execution environment
+	 * @param resourceCache The cache of resolved resources
+	 */
+	public VersionResolver(JDocBookComponentRegistry componentRegistry, ResolvedResourceCache resourceCache) {
 		this.componentRegistry = componentRegistry;
+		this.resourceCache = resourceCache;
 		if ( Environment.DocBookXsltResolutionStrategy.INCLUSIVE == componentRegistry.getEnvironment().getDocBookXsltResolutionStrategy() ) {
 			versionMatcher = new VersionMatcher() {
 				@Override
@@ -85,13 +97,42 @@ public class VersionResolver implements URIResolver {
 	}
 
 	@Override
-	public Source resolve(String href, String base) throws TransformerException {
+	public String[] getResolvablePrefixes() {
+		return new String[] { BASE_HREF };
+	}
+
+	@Override
+	public Source resolve(final String href, final String base) throws TransformerException {
+		final URL resourceURL = resourceCache.locate(
+				VersionResolver.class,
+				href,
+				base,
+				new ResolvedResourceCache.Locator() {
+					@Override
+					public URL locate() {
+						final String resourceName = determineResourceName( href, base );
+						return resourceName == null ? null : locateLocally( resourceName );
+					}
+				}
+		);
+		if ( resourceURL == null ) {
+			return null;
+		}
+
+		try {
+			return resourceCache.openSource( resourceURL );
+		}
+		catch ( IOException e ) {
+			return null;
+		}
+	}
+
+	private String determineResourceName(String href, String base) {
 		if ( href.startsWith( BASE_HREF ) ) {
 			final int versionEndTokenPosition = href.indexOf( '/', BASE_HREF_LEN );
 			final String version = href.substring( BASE_HREF_LEN, versionEndTokenPosition );
 			if ( versionMatcher.matched( version ) ) {
-				final String name = href.substring( versionEndTokenPosition + 1 );
-				return resolveLocally( name );
+				return href.substring( versionEndTokenPosition + 1 );
 			}
 		}
 
@@ -100,29 +141,23 @@ public class VersionResolver implements URIResolver {
 			final String version = base.substring( BASE_HREF_LEN, versionEndTokenPosition );
 			if ( versionMatcher.matched( version ) ) {
 				final String remainingBase = base.substring( versionEndTokenPosition + 1 );
-				return resolveLocally( remainingBase + '/' + href );
+				return remainingBase + '/' + href;
 			}
 		}
 
 		return null;
 	}
 
-	private Source resolveLocally(String resourceName) {
+	private URL locateLocally(String resourceName) {
 		try {
-            URL probableURL1 = componentRegistry.getEnvironment().getResourceDelegate().locateResource( "docbook/" + resourceName );
-            URL probableURL2 = componentRegistry.getEnvironment().getResourceDelegate().locateResource( resourceName );
-            if( probableURL1 == null && probableURL2 == null ){
-                return null;
-            }
-            URL resourceURL = ( probableURL1 != null ? probableURL1 : probableURL2 );
-            return new StreamSource( resourceURL.openStream(), resourceURL.toExternalForm() );
+			final URL probableURL = componentRegistry.getEnvironment().getResourceDelegate().locateResource( "docbook/" + resourceName );
+			return probableURL != null
+					? probableURL
+					: componentRegistry.getEnvironment().getResourceDelegate().locateResource( resourceName );
 		}
 		catch ( IllegalArgumentException e ) {
 			return null;
 		}
-		catch ( IOException e ) {
-			return null;
-		}
 	}
 
 	@Override
@@ -81,7 +81,12 @@ public class XIncludeEntityResolver implements EntityResolver2 {
 		//		IMPORTANT : this form is actually called many times.  The scenario in which we are interested is where
 		//				systemId = "*.ent" which indicates attempt to resolve external entities; we need to prepend
 		//				any value injections
-		log.trace( "resolving entity; name=[" + name + "]; publicId=[" + publicId + "]; baseURI=[" + baseURI + "]; systemId=[" + systemId + "]" );
+		if ( log.isTraceEnabled() ) {
+			log.trace(
+					"resolving entity; name=[{}]; publicId=[{}]; baseURI=[{}]; systemId=[{}]",
+					new Object[] { name, publicId, baseURI, systemId }
+			);
+		}
 		LinkedHashSet<ValueInjection> injections = getValueInjections();
 		if ( injections == null || injections.isEmpty() ) {
 			log.trace( "No value injections defined; skipping" );
@@ -106,7 +111,7 @@ public class XIncludeEntityResolver implements EntityResolver2 {
 			buffer.append( contents );
 		}
 		else {
-			log.warn( "referenced ENT file not found: " + entFile.getAbsolutePath() );
+			log.warn( "referenced ENT file not found: {}", entFile.getAbsolutePath() );
 		}
 		return new InputSource( new StringReader( buffer.toString() ) );
 	}
@@ -27,6 +27,7 @@ import java.util.LinkedHashSet;
 import java.util.Map;
 
 import org.jboss.jdocbook.Configuration;
+import org.jboss.jdocbook.PerformanceOptions;
 import org.jboss.jdocbook.Profiling;
 import org.jboss.jdocbook.ValueInjection;
 
@@ -54,6 +55,10 @@ public class AbstractConfiguration implements Configuration{
 		return false;
 	}
 
+	public PerformanceOptions getPerformanceOptions() {
+		return null;
+	}
+
 	public LinkedHashSet<ValueInjection> getValueInjections() {
 		return null;
 	}
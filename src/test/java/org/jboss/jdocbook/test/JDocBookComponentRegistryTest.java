@@ -0,0 +1,88 @@
+/*
+ * jDocBook, processing of DocBook sources
+ *
+ * Copyright (c) 2010, Red Hat Inc. or third-party contributors as
+ * indicated by the @author tags or express copyright attribution
+ * statements applied by the authors.  All third-party contributions are
+ * distributed under license by Red Hat Inc.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.jboss.jdocbook.test;
+
+import org.jboss.jdocbook.AssetPlacementStrategy;
+import org.jboss.jdocbook.JDocBookComponentRegistry;
+import org.jboss.jdocbook.PerformanceOptions;
+import org.jboss.jdocbook.test.render.RenderConfiguration;
+import org.jboss.jdocbook.test.render.RenderEnvironment;
+import org.jboss.jdocbook.util.WorkerPool;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class JDocBookComponentRegistryTest {
+
+	@Test
+	public void testDefaultPerformanceOptions() {
+		JDocBookComponentRegistry registry = new JDocBookComponentRegistry( new RenderEnvironment(), new RenderConfiguration() );
+		PerformanceOptions options = registry.getPerformanceOptions();
+		assertNotNull( options );
+		assertFalse( options.isPersistentStylesheetCacheEnabled() );
+		assertFalse( options.isIncrementalRenderingEnabled() );
+		assertFalse( options.isXslFoReuseEnabled() );
+		assertFalse( options.isResolvedDocumentCacheEnabled() );
+		assertFalse( options.isDtdGrammarCachingEnabled() );
+		assertFalse( options.isStylesheetResourceCachingEnabled() );
+		assertFalse( options.isPipelinedPdfRenderingEnabled() );
+		assertFalse( options.isInProcessTranslationEnabled() );
+		assertEquals( AssetPlacementStrategy.COPY, options.getAssetPlacementStrategy() );
+
+		assertNull( registry.getDtdGrammarPool() );
+		assertEquals( 0, options.getMaxWorkerThreads() );
+		assertEquals( WorkerPool.availableProcessors(), registry.buildWorkerPool( "test" ).getMaxThreads() );
+	}
+
+	@Test
+	public void testConfiguredPerformanceOptions() {
+		final PerformanceOptions options = new PerformanceOptions();
+		options.setDtdGrammarCachingEnabled( true );
+		options.setMaxWorkerThreads( 3 );
+		options.setAssetPlacementStrategy( null );
+		JDocBookComponentRegistry registry = new JDocBookComponentRegistry(
+				new RenderEnvironment(),
+				new RenderConfiguration() {
+					@Override
+					public PerformanceOptions getPerformanceOptions() {
+						return options;
+					}
+				}
+		);
+		assertSame( options, registry.getPerformanceOptions() );
+		assertEquals( AssetPlacementStrategy.COPY, options.getAssetPlacementStrategy() );
+
+		// the master language descriptor of the test environment has no documents to preload
+		assertNotNull( registry.getDtdGrammarPool() );
+		assertSame( registry.getDtdGrammarPool(), registry.getDtdGrammarPool() );
+		assertEquals( 3, registry.buildWorkerPool( "test" ).getMaxThreads() );
+
+		options.setMaxWorkerThreads( 0 );
+		assertEquals( WorkerPool.availableProcessors(), registry.buildWorkerPool( "test" ).getMaxThreads() );
+	}
+}
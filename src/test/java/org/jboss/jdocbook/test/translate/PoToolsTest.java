@@ -0,0 +1,209 @@
+/*
+ * jDocBook, processing of DocBook sources
+ *
+ * Copyright (c) 2010, Red Hat Inc. or third-party contributors as
+ * indicated by the @author tags or express copyright attribution
+ * statements applied by the authors.  All third-party contributions are
+ * distributed under license by Red Hat Inc.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.jboss.jdocbook.test.translate;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+
+import org.jboss.jdocbook.test.util.ResourcesUtil;
+import org.jboss.jdocbook.translate.po.PoCatalog;
+import org.jboss.jdocbook.translate.po.PoEntry;
+import org.jboss.jdocbook.translate.po.PoTools;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class PoToolsTest {
+	private static final String LONG_TEXT = "This paragraph is long enough that its message does not fit on a single "
+			+ "line of the PO file, so that it needs to be wrapped the way gettext wraps it.";
+
+	private static final String SOURCE = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+			+ "<!DOCTYPE chapter PUBLIC \"-//OASIS//DTD DocBook XML V4.5//EN\" "
+			+ "\"http://www.oasis-open.org/docbook/xml/4.5/docbookx.dtd\">\n"
+			+ "<!-- top comment -->\n"
+			+ "<chapter id=\"ch\">\n"
+			+ "\t<title>Round &amp; trip</title>\n"
+			+ "\t<para><?dbfo keep-together=\"always\"?>Keep <emphasis>this</emphasis> together<!-- note --> with "
+			+ "&product;.</para>\n"
+			+ "\t<para>A footnote<footnote><para>Footnoted text.</para></footnote> here.</para>\n"
+			+ "\t<programlisting><![CDATA[a < b]]></programlisting>\n"
+			+ "\t<para>" + LONG_TEXT + "</para>\n"
+			+ "\t<itemizedlist><listitem><para>Item</para></listitem></itemizedlist>\n"
+			+ "\t<?hard-pagebreak?>\n"
+			+ "\t<anchor id=\"end\"/>\n"
+			+ "</chapter>\n";
+
+	private File dir;
+	private File master;
+	private File pot;
+	private File po;
+	private File translated;
+
+	@Before
+	public void setUp() throws IOException {
+		dir = new File( ResourcesUtil.getTestDir(), "po-tools" );
+		dir.mkdirs();
+		master = new File( dir, "master.xml" );
+		pot = new File( dir, "master.pot" );
+		po = new File( dir, "master.po" );
+		translated = new File( dir, "translated.xml" );
+		write( master, SOURCE );
+		PoTools.extractTemplate( master, pot );
+		PoTools.initializeTranslation( pot, po, "fr-FR" );
+	}
+
+	@Test
+	public void testMessages() {
+		PoCatalog template = PoCatalog.read( pot );
+		assertEquals( 7, template.getEntries().size() );
+		assertNotNull( template.getEntry( null, "Round &amp; trip" ) );
+		assertNotNull(
+				template.getEntry(
+						null,
+						"<_:pi-1/>Keep <emphasis>this</emphasis> together<_:comment-2/> with &product;."
+				)
+		);
+		assertNotNull( template.getEntry( null, "A footnote<_:footnote-1/> here." ) );
+		assertNotNull( template.getEntry( null, "Footnoted text." ) );
+		assertNotNull( template.getEntry( null, "<![CDATA[a < b]]>" ) );
+		assertNotNull( template.getEntry( null, LONG_TEXT ) );
+		assertNotNull( template.getEntry( null, "Item" ) );
+	}
+
+	@Test
+	public void testUntranslatedRoundTrip() throws IOException {
+		PoTools.generateTranslatedXml( master, po, translated );
+		assertEquals( SOURCE, read( translated ) );
+	}
+
+	@Test
+	public void testTranslatedRoundTrip() throws IOException {
+		PoCatalog catalog = PoCatalog.read( po );
+		catalog.getEntry( null, "<_:pi-1/>Keep <emphasis>this</emphasis> together<_:comment-2/> with &product;." )
+				.setStr( "Gardez<_:comment-2/> <emphasis>ceci</emphasis> ensemble avec &product;.<_:pi-1/>" );
+		catalog.getEntry( null, "A footnote<_:footnote-1/> here." ).setStr( "Une note<_:footnote-1/> ici." );
+		catalog.getEntry( null, "Footnoted text." ).setStr( "Texte en note." );
+		catalog.getEntry( null, LONG_TEXT ).setStr( LONG_TEXT.toUpperCase() );
+		PoEntry fuzzy = catalog.getEntry( null, "Item" );
+		fuzzy.setStr( "Article" );
+		fuzzy.getFlags().add( PoEntry.FUZZY_FLAG );
+		catalog.write( po );
+
+		PoTools.generateTranslatedXml( master, po, translated );
+		String expected = SOURCE
+				.replace(
+						"<?dbfo keep-together=\"always\"?>Keep <emphasis>this</emphasis> together<!-- note --> with "
+								+ "&product;.",
+						"Gardez<!-- note --> <emphasis>ceci</emphasis> ensemble avec &product;."
+								+ "<?dbfo keep-together=\"always\"?>"
+				)
+				.replace( "A footnote<footnote><para>Footnoted text.</para></footnote> here.",
+						"Une note<footnote><para>Texte en note.</para></footnote> ici." )
+				.replace( LONG_TEXT, LONG_TEXT.toUpperCase() );
+		assertEquals( expected, read( translated ) );
+	}
+
+	@Test
+	public void testTranslationsSurviveMerge() throws IOException {
+		PoCatalog catalog = PoCatalog.read( po );
+		catalog.getEntry( null, "Footnoted text." ).setStr( "Texte en note." );
+		catalog.getEntry( null, "Item" ).setStr( "Article" );
+		catalog.write( po );
+
+		write( master, SOURCE.replace( "<para>Item</para>", "<para>Changed item</para>" ) );
+		PoTools.extractTemplate( master, pot );
+		PoTools.mergeTranslation( po, pot );
+
+		PoCatalog merged = PoCatalog.read( po );
+		assertEquals( "Texte en note.", merged.getEntry( null, "Footnoted text." ).getStr() );
+		assertFalse( merged.getEntry( null, "Changed item" ).isTranslated() );
+		assertEquals( 1, merged.getObsoleteEntries().size() );
+		assertEquals( "Article", merged.getObsoleteEntries().get( 0 ).getStr() );
+	}
+
+	@Test
+	public void testWrapping() throws IOException {
+		boolean wrapped = false;
+		for ( String line : read( pot ).split( "\n" ) ) {
+			assertTrue( line, line.length() <= 79 );
+			if ( line.startsWith( "\"This paragraph is long enough " ) ) {
+				wrapped = true;
+			}
+		}
+		assertTrue( wrapped );
+
+		// a word which does not fit on a line is not broken, and obsolete entries are wrapped as well
+		String unbreakable = "See http://www.example.com/" + LONG_TEXT.replace( ' ', '_' ) + " for details\nand \"more\"";
+		PoCatalog catalog = PoCatalog.read( po );
+		PoEntry entry = new PoEntry( null, unbreakable );
+		entry.setStr( LONG_TEXT );
+		entry.setObsolete( true );
+		catalog.addEntry( entry );
+		catalog.write( po );
+
+		String content = read( po );
+		assertTrue( content, content.contains( "#~ msgid \"\"\n#~ \"See \"\n#~ \"http://www.example.com/" ) );
+		assertTrue( content, content.contains( "for details\\n\"\n#~ \"and \\\"more\\\"\"\n" ) );
+		assertTrue( content, content.contains( "#~ msgstr \"\"\n#~ \"This paragraph is long enough " ) );
+
+		PoEntry reread = PoCatalog.read( po ).getObsoleteEntries().get( 0 );
+		assertEquals( unbreakable, reread.getId() );
+		assertEquals( LONG_TEXT, reread.getStr() );
+	}
+
+	private static String read(File file) throws IOException {
+		StringBuilder buffer = new StringBuilder();
+		Reader reader = new BufferedReader( new FileReader( file ) );
+		try {
+			char[] chars = new char[1024];
+			int count;
+			while ( ( count = reader.read( chars ) ) > 0 ) {
+				buffer.append( chars, 0, count );
+			}
+		}
+		finally {
+			reader.close();
+		}
+		return buffer.toString();
+	}
+
+	private static void write(File file, String content) throws IOException {
+		Writer writer = new FileWriter( file );
+		try {
+			writer.write( content );
+		}
+		finally {
+			writer.close();
+		}
+	}
+}
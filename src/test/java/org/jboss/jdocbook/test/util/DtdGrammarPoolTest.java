@@ -0,0 +1,146 @@
+/*
+ * jDocBook, processing of DocBook sources
+ *
+ * Copyright (c) 2010, Red Hat Inc. or third-party contributors as
+ * indicated by the @author tags or express copyright attribution
+ * statements applied by the authors.  All third-party contributions are
+ * distributed under license by Red Hat Inc.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.jboss.jdocbook.test.util;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Collections;
+
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.stream.StreamResult;
+
+import org.jboss.jdocbook.util.DtdGrammarPool;
+import org.jboss.jdocbook.util.FileUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.InputSource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DtdGrammarPoolTest {
+	private File dir;
+	private File dtd;
+	private int dtdLoads;
+	private EntityResolver countingResolver = new EntityResolver() {
+		public InputSource resolveEntity(String publicId, String systemId) {
+			if ( systemId != null && systemId.endsWith( ".dtd" ) ) {
+				dtdLoads++;
+			}
+			return null;
+		}
+	};
+
+	@Before
+	public void setUp() throws IOException {
+		dir = new File( ResourcesUtil.getTestDir(), "dtd-grammar-pool" );
+		dir.mkdirs();
+		dtd = new File( dir, "test.dtd" );
+		write(
+				dtd,
+				"<!ELEMENT book (chapter*)>\n" +
+						"<!ELEMENT chapter (#PCDATA)>\n" +
+						"<!ATTLIST chapter role CDATA \"defrole\">\n" +
+						"<!ENTITY prod \"ProductName\">\n"
+		);
+	}
+
+	@Test
+	public void testCachedDtdIsServedToXIncludedDocuments() throws Exception {
+		File master = new File( dir, "master.xml" );
+		write(
+				master,
+				doctype( "book", "" ) +
+						"<book xmlns:xi=\"http://www.w3.org/2001/XInclude\"><xi:include href=\"chapter.xml\"/></book>"
+		);
+		write( new File( dir, "chapter.xml" ), doctype( "chapter", "" ) + "<chapter>About &prod;</chapter>" );
+
+		DtdGrammarPool pool = new DtdGrammarPool( countingResolver );
+		pool.preload( Collections.singleton( master ) );
+		assertEquals( 1, dtdLoads );
+
+		String output = render( master, pool );
+		assertTrue( output, output.contains( "About ProductName" ) );
+		assertTrue( output, output.contains( "role=\"defrole\"" ) );
+
+		// the XIncluded document of the first parse of a pooled parser may still load the DTD itself; from then on
+		// the DTD must be served from the cache alone
+		render( master, pool );
+		int loads = dtdLoads;
+		for ( int i = 0; i < 3; i++ ) {
+			output = render( master, pool );
+			assertTrue( output, output.contains( "About ProductName" ) );
+			assertTrue( output, output.contains( "role=\"defrole\"" ) );
+		}
+		assertEquals( loads, dtdLoads );
+	}
+
+	@Test
+	public void testInternalSubsetTakesPrecedence() throws Exception {
+		File plain = new File( dir, "plain.xml" );
+		write( plain, doctype( "chapter", "" ) + "<chapter>About &prod;</chapter>" );
+		File overriding = new File( dir, "overriding.xml" );
+		write(
+				overriding,
+				doctype( "chapter", " [<!ENTITY prod \"Other\">]" ) + "<chapter>About &prod;</chapter>"
+		);
+
+		DtdGrammarPool pool = new DtdGrammarPool( countingResolver );
+		pool.preload( Collections.singleton( plain ) );
+		String output = render( plain, pool );
+		assertTrue( output, output.contains( "About ProductName" ) );
+
+		output = render( overriding, pool );
+		assertTrue( output, output.contains( "About Other" ) );
+		assertTrue( output, output.contains( "role=\"defrole\"" ) );
+	}
+
+	private String doctype(String root, String internalSubset) {
+		return "<?xml version=\"1.0\"?>\n<!DOCTYPE " + root + " PUBLIC \"-//jDocBook//DTD Test//EN\" \""
+				+ dtd.toURI().toString() + "\"" + internalSubset + ">\n";
+	}
+
+	private String render(File document, DtdGrammarPool pool) throws Exception {
+		StringWriter writer = new StringWriter();
+		TransformerFactory.newInstance().newTransformer().transform(
+				FileUtils.createSAXSource( document, countingResolver, null, pool ),
+				new StreamResult( writer )
+		);
+		return writer.toString();
+	}
+
+	private static void write(File file, String content) throws IOException {
+		Writer writer = new FileWriter( file );
+		try {
+			writer.write( content );
+		}
+		finally {
+			writer.close();
+		}
+	}
+}
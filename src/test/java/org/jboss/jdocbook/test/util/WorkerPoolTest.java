@@ -0,0 +1,201 @@
+/*
+ * jDocBook, processing of DocBook sources
+ *
+ * Copyright (c) 2010, Red Hat Inc. or third-party contributors as
+ * indicated by the @author tags or express copyright attribution
+ * statements applied by the authors.  All third-party contributions are
+ * distributed under license by Red Hat Inc.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.jboss.jdocbook.test.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.jdocbook.FailurePolicy;
+import org.jboss.jdocbook.JDocBookProcessException;
+import org.jboss.jdocbook.util.WorkerPool;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class WorkerPoolTest {
+
+	@Test
+	public void testCollectAllReportsAllFailuresInJobOrder() {
+		final AtomicInteger completed = new AtomicInteger();
+		List<WorkerPool.Job> jobs = new ArrayList<WorkerPool.Job>();
+		// the first job fails last
+		jobs.add( new TestJob( "job-0" ) {
+			@Override
+			public void perform() {
+				sleep( 200 );
+				throw new IllegalStateException( "first" );
+			}
+		} );
+		jobs.add( new CountingJob( "job-1", completed ) );
+		jobs.add( new TestJob( "job-2" ) {
+			@Override
+			public void perform() {
+				throw new IllegalStateException( "second" );
+			}
+		} );
+		jobs.add( new CountingJob( "job-3", completed ) );
+
+		try {
+			new WorkerPool( "test", 4 ).execute( jobs, FailurePolicy.COLLECT_ALL );
+			fail( "expecting failure" );
+		}
+		catch ( JDocBookProcessException e ) {
+			assertEquals( "2 of 4 [test] job(s) failed : job-0 (first); job-2 (second)", e.getMessage() );
+			assertEquals( "first", e.getCause().getMessage() );
+		}
+		assertEquals( 2, completed.get() );
+	}
+
+	@Test
+	public void testFailFastWaitsForRunningJobs() {
+		final CountDownLatch slowJobStarted = new CountDownLatch( 1 );
+		final AtomicBoolean slowJobFinished = new AtomicBoolean();
+		final AtomicInteger started = new AtomicInteger();
+		List<WorkerPool.Job> jobs = new ArrayList<WorkerPool.Job>();
+		jobs.add( new TestJob( "failing" ) {
+			@Override
+			public void perform() {
+				try {
+					slowJobStarted.await( 10, TimeUnit.SECONDS );
+				}
+				catch ( InterruptedException e ) {
+					Thread.currentThread().interrupt();
+				}
+				throw new IllegalStateException( "boom" );
+			}
+		} );
+		jobs.add( new TestJob( "slow" ) {
+			@Override
+			public void perform() {
+				slowJobStarted.countDown();
+				// ignores interrupts, like file copies do
+				final long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos( 300 );
+				while ( System.nanoTime() < end ) {
+					Thread.yield();
+				}
+				slowJobFinished.set( true );
+			}
+		} );
+		for ( int i = 0; i < 10; i++ ) {
+			jobs.add( new TestJob( "queued-" + i ) {
+				@Override
+				public void perform() {
+					started.incrementAndGet();
+					sleep( 100 );
+				}
+			} );
+		}
+
+		try {
+			new WorkerPool( "test", 2 ).execute( jobs, FailurePolicy.FAIL_FAST );
+			fail( "expecting failure" );
+		}
+		catch ( IllegalStateException e ) {
+			assertEquals( "boom", e.getMessage() );
+			// the job in progress has finished by the time the failure is reported...
+			assertTrue( slowJobFinished.get() );
+		}
+		// ... and the jobs still queued never ran
+		assertTrue( String.valueOf( started.get() ), started.get() < 10 );
+	}
+
+	@Test
+	public void testSerialExecution() {
+		final AtomicInteger completed = new AtomicInteger();
+		List<WorkerPool.Job> jobs = new ArrayList<WorkerPool.Job>();
+		jobs.add( new TestJob( "job-0" ) {
+			@Override
+			public void perform() {
+				throw new IllegalStateException( "first" );
+			}
+		} );
+		jobs.add( new CountingJob( "job-1", completed ) );
+		jobs.add( new TestJob( "job-2" ) {
+			@Override
+			public void perform() {
+				throw new IllegalStateException( "second" );
+			}
+		} );
+
+		try {
+			new WorkerPool( "test", 1 ).execute( jobs, FailurePolicy.FAIL_FAST );
+			fail( "expecting failure" );
+		}
+		catch ( IllegalStateException e ) {
+			assertEquals( "first", e.getMessage() );
+		}
+		assertEquals( 0, completed.get() );
+
+		try {
+			new WorkerPool( "test", 1 ).execute( jobs, FailurePolicy.COLLECT_ALL );
+			fail( "expecting failure" );
+		}
+		catch ( JDocBookProcessException e ) {
+			assertEquals( "2 of 3 [test] job(s) failed : job-0 (first); job-2 (second)", e.getMessage() );
+		}
+		assertEquals( 1, completed.get() );
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep( millis );
+		}
+		catch ( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static abstract class TestJob implements WorkerPool.Job {
+		private final String description;
+
+		private TestJob(String description) {
+			this.description = description;
+		}
+
+		@Override
+		public String getDescription() {
+			return description;
+		}
+	}
+
+	private static class CountingJob extends TestJob {
+		private final AtomicInteger counter;
+
+		private CountingJob(String description, AtomicInteger counter) {
+			super( description );
+			this.counter = counter;
+		}
+
+		@Override
+		public void perform() {
+			counter.incrementAndGet();
+		}
+	}
+}
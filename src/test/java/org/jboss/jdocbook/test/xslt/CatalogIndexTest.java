@@ -0,0 +1,181 @@
+/*
+ * jDocBook, processing of DocBook sources
+ *
+ * Copyright (c) 2010, Red Hat Inc. or third-party contributors as
+ * indicated by the @author tags or express copyright attribution
+ * statements applied by the authors.  All third-party contributions are
+ * distributed under license by Red Hat Inc.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.jboss.jdocbook.test.xslt;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+import javax.xml.transform.Source;
+
+import org.apache.xml.resolver.CatalogManager;
+import org.apache.xml.resolver.tools.CatalogResolver;
+import org.jboss.jdocbook.test.util.ResourcesUtil;
+import org.jboss.jdocbook.xslt.ExplicitCatalogManager;
+import org.jboss.jdocbook.xslt.IndexedCatalog;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that catalog lookups answered by the {@link org.jboss.jdocbook.xslt.CatalogIndex} match those of
+ * xml-resolver itself, for catalogs laid out like the ones bundled with the DocBook DTD and stylesheet artifacts.
+ */
+public class CatalogIndexTest {
+	private static final File CATALOG_DIR = ResourcesUtil.getFile( "catalogs" );
+
+	private static final List<String[]> ENTITIES = Arrays.asList(
+			new String[] { "-//OASIS//DTD DocBook XML V4.5//EN", "http://www.oasis-open.org/docbook/xml/4.5/docbookx.dtd" },
+			new String[] { "-//OASIS//DTD DocBook XML V4.5//EN", null },
+			new String[] { "  -//OASIS//DTD   DocBook XML V4.5//EN ", null },
+			new String[] { null, "http://www.oasis-open.org/docbook/xml/4.5/docbookx.dtd" },
+			new String[] { null, "http://www.oasis-open.org/docbook/xml/4.5/ent/isonum.ent" },
+			new String[] { "ISO 8879:1986//ENTITIES Added Latin 1//EN//XML", "isolat1.ent" },
+			new String[] { "-//OASIS//DTD DocBook XML V4.4//EN", "http://www.oasis-open.org/docbook/xml/4.4/docbookx.dtd" },
+			new String[] { "-//jDocBook//DTD Preferring System//EN", null },
+			new String[] { "-//jDocBook//DTD Preferring System//EN", "http://jdocbook.jboss.org/dtd/unknown.dtd" },
+			new String[] { "-//jDocBook//DTD Preferring Public//EN", "http://jdocbook.jboss.org/dtd/unknown.dtd" },
+			new String[] { "-//jDocBook//DTD Preferring Public//EN", "http://jdocbook.jboss.org/dtd/custom.dtd" },
+			new String[] { null, "http://jdocbook.jboss.org/dtd/custom.dtd" },
+			new String[] { "-//jDocBook//DTD Duplicate//EN", null },
+			new String[] { "-//jDocBook//DTD Duplicate//EN", "http://jdocbook.jboss.org/dtd/unknown.dtd" },
+			new String[] { "-//jDocBook//DTD Nested//EN", "http://jdocbook.jboss.org/dtd/unknown.dtd" },
+			new String[] { null, "http://jdocbook.jboss.org/dtd/extension.dtd" },
+			new String[] { null, "http://jdocbook.jboss.org/modules/docbook/extensions.mod" },
+			new String[] { null, "http://jdocbook.jboss.org/modules/other/extensions.mod" },
+			new String[] { null, "http://example.org/some/entities.ent" },
+			new String[] { null, "http://example.org/some/more/entities.ent" },
+			new String[] { null, "http://docbook.sourceforge.net/release/xsl/current/common/l10n.xml" },
+			new String[] { null, "http://example.org/unknown.dtd" }
+	);
+
+	private static final List<String> URIS = Arrays.asList(
+			"http://docbook.sourceforge.net/release/xsl/current/html/docbook.xsl",
+			"http://docbook.sourceforge.net/release/xsl/current/fo/docbook.xsl",
+			"http://docbook.sourceforge.net/release/xsl/1.72.0/xhtml/chunk.xsl",
+			"http://docbook.sourceforge.net/release/xsl/1.73.0/xhtml/chunk.xsl",
+			"http://www.oasis-open.org/docbook/xml/4.5/docbookx.dtd",
+			"http://jdocbook.jboss.org/xslt/custom.xsl",
+			"http://jdocbook.jboss.org/xslt/fo/pdf.xsl",
+			"http://jdocbook.jboss.org/xslt/html/titlepage.templates.xsl",
+			"http://example.org/titlepage.templates.xsl",
+			"http://example.org/unknown.xsl"
+	);
+
+	@Test
+	public void testFileCatalogs() throws Exception {
+		assertSameResolution( new File( CATALOG_DIR, "catalog.xml" ).toURI().toURL().toExternalForm() );
+	}
+
+	@Test
+	public void testJarCatalogs() throws Exception {
+		File jar = new File( ResourcesUtil.getTestDir(), "catalogs.jar" );
+		jar.getParentFile().mkdirs();
+		JarOutputStream jarStream = new JarOutputStream( new FileOutputStream( jar ) );
+		try {
+			addToJar( jarStream, CATALOG_DIR, "" );
+		}
+		finally {
+			jarStream.close();
+		}
+		assertSameResolution( "jar:" + jar.toURI().toURL().toExternalForm() + "!/catalog.xml" );
+	}
+
+	private void assertSameResolution(String catalogName) throws Exception {
+		ExplicitCatalogManager indexedCatalogManager = new ExplicitCatalogManager(
+				new LinkedHashSet<String>( Arrays.asList( catalogName ) )
+		);
+		assertTrue( indexedCatalogManager.getCatalog() instanceof IndexedCatalog );
+		CatalogResolver indexed = new CatalogResolver( indexedCatalogManager );
+
+		CatalogManager referenceCatalogManager = new CatalogManager();
+		referenceCatalogManager.setIgnoreMissingProperties( true );
+		referenceCatalogManager.setUseStaticCatalog( false );
+		referenceCatalogManager.setPreferPublic( indexedCatalogManager.getPreferPublic() );
+		referenceCatalogManager.setCatalogFiles( catalogName );
+		CatalogResolver reference = new CatalogResolver( referenceCatalogManager );
+
+		int resolved = 0;
+		for ( String[] entity : ENTITIES ) {
+			String expected = reference.getResolvedEntity( entity[0], entity[1] );
+			assertEquals(
+					"entity (" + entity[0] + ", " + entity[1] + ")",
+					expected,
+					indexed.getResolvedEntity( entity[0], entity[1] )
+			);
+			if ( expected != null ) {
+				resolved++;
+			}
+		}
+		for ( String uri : URIS ) {
+			String expected = systemId( reference.resolve( uri, null ) );
+			assertEquals( "uri " + uri, expected, systemId( indexed.resolve( uri, null ) ) );
+			if ( expected != null ) {
+				resolved++;
+			}
+		}
+		// make sure the comparison is not vacuous
+		assertTrue( resolved > ( ENTITIES.size() + URIS.size() ) / 2 );
+		assertNotNull( indexed.getCatalog().resolveURI( URIS.get( 0 ) ) );
+	}
+
+	private static String systemId(Source source) {
+		return source == null ? null : source.getSystemId();
+	}
+
+	private static void addToJar(JarOutputStream jarStream, File directory, String path) throws IOException {
+		File[] files = directory.listFiles();
+		if ( files == null ) {
+			return;
+		}
+		for ( File file : files ) {
+			if ( file.isDirectory() ) {
+				addToJar( jarStream, file, path + file.getName() + "/" );
+				continue;
+			}
+			jarStream.putNextEntry( new ZipEntry( path + file.getName() ) );
+			InputStream in = new FileInputStream( file );
+			try {
+				byte[] buffer = new byte[4096];
+				int read;
+				while ( ( read = in.read( buffer ) ) != -1 ) {
+					jarStream.write( buffer, 0, read );
+				}
+			}
+			finally {
+				in.close();
+			}
+			jarStream.closeEntry();
+		}
+	}
+}
@@ -0,0 +1,165 @@
+/*
+ * jDocBook, processing of DocBook sources
+ *
+ * Copyright (c) 2010, Red Hat Inc. or third-party contributors as
+ * indicated by the @author tags or express copyright attribution
+ * statements applied by the authors.  All third-party contributions are
+ * distributed under license by Red Hat Inc.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.jboss.jdocbook.test.xslt;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.net.URL;
+
+import javax.xml.transform.Source;
+import javax.xml.transform.Templates;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.URIResolver;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
+
+import org.jboss.jdocbook.test.util.ResourcesUtil;
+import org.jboss.jdocbook.xslt.PersistentTemplatesStore;
+import org.jboss.jdocbook.xslt.TemplatesCache;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PersistentTemplatesStoreTest {
+	private File dir;
+	private File included;
+	private URL stylesheet;
+	private TemplatesCache.Key key;
+	private PersistentTemplatesStore store;
+	private int resolutions;
+	private URIResolver countingResolver = new URIResolver() {
+		public Source resolve(String href, String base) {
+			resolutions++;
+			return null;
+		}
+	};
+
+	@Before
+	public void setUp() throws IOException {
+		dir = new File( ResourcesUtil.getTestDir(), "persistent-templates-store" );
+		new File( dir, "common" ).mkdirs();
+		File main = new File( dir, "main.xsl" );
+		write(
+				main,
+				"<xsl:stylesheet version=\"1.0\" xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\">" +
+						"<xsl:import href=\"common/base.xsl\"/>" +
+						"<xsl:template match=\"/\"><out><xsl:call-template name=\"base\"/></out></xsl:template>" +
+						"</xsl:stylesheet>"
+		);
+		write(
+				new File( dir, "common/base.xsl" ),
+				"<xsl:stylesheet version=\"1.0\" xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\">" +
+						"<xsl:include href=\"included.xsl\"/>" +
+						"<xsl:template name=\"base\">base-<xsl:call-template name=\"included\"/></xsl:template>" +
+						"</xsl:stylesheet>"
+		);
+		included = new File( dir, "common/included.xsl" );
+		writeIncluded( "included" );
+
+		stylesheet = main.toURI().toURL();
+		key = new TemplatesCache.Key( stylesheet.toExternalForm(), "test", "1" );
+		store = new PersistentTemplatesStore( new File( dir, PersistentTemplatesStore.STORE_DIRECTORY ) );
+		File[] stored = new File( dir, PersistentTemplatesStore.STORE_DIRECTORY ).listFiles();
+		if ( stored != null ) {
+			for ( File file : stored ) {
+				file.delete();
+			}
+		}
+	}
+
+	@Test
+	public void testStoredStylesheetIsCompiledWithoutResolution() throws Exception {
+		assertNull( store.load( key, newTransformerFactory() ) );
+		assertEquals( "base-included", transform( compileAndStore() ) );
+		assertEquals( 3, store.loadClosure( key ).size() );
+
+		resolutions = 0;
+		Templates templates = store.load( key, newTransformerFactory() );
+		assertNotNull( templates );
+		assertEquals( "base-included", transform( templates ) );
+		assertEquals( 0, resolutions );
+	}
+
+	@Test
+	public void testChangedModuleInvalidatesStoredStylesheet() throws Exception {
+		compileAndStore();
+		assertNotNull( store.load( key, newTransformerFactory() ) );
+
+		writeIncluded( "changed-include" );
+		assertNull( store.load( key, newTransformerFactory() ) );
+		assertEquals( "base-changed-include", transform( compileAndStore() ) );
+		assertEquals( "base-changed-include", transform( store.load( key, newTransformerFactory() ) ) );
+	}
+
+	private Templates compileAndStore() throws Exception {
+		TransformerFactory transformerFactory = newTransformerFactory();
+		PersistentTemplatesStore.ClosureRecordingResolver recordingResolver =
+				new PersistentTemplatesStore.ClosureRecordingResolver( countingResolver, true );
+		transformerFactory.setURIResolver( recordingResolver );
+		Templates templates = transformerFactory.newTemplates( recordingResolver.resolveStylesheet( stylesheet ) );
+		assertTrue( recordingResolver.getClosure().contains( included.toURI().toURL().toExternalForm() ) );
+		store.store( key, recordingResolver );
+		return templates;
+	}
+
+	private TransformerFactory newTransformerFactory() {
+		TransformerFactory transformerFactory = new com.icl.saxon.TransformerFactoryImpl();
+		transformerFactory.setURIResolver( countingResolver );
+		return transformerFactory;
+	}
+
+	private static String transform(Templates templates) throws Exception {
+		StringWriter writer = new StringWriter();
+		templates.newTransformer().transform( new StreamSource( new StringReader( "<in/>" ) ), new StreamResult( writer ) );
+		String output = writer.toString();
+		return output.substring( output.indexOf( "<out>" ) + 5, output.indexOf( "</out>" ) );
+	}
+
+	private void writeIncluded(String text) throws IOException {
+		write(
+				included,
+				"<xsl:stylesheet version=\"1.0\" xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\">" +
+						"<xsl:template name=\"included\">" + text + "</xsl:template>" +
+						"</xsl:stylesheet>"
+		);
+	}
+
+	private static void write(File file, String content) throws IOException {
+		Writer writer = new FileWriter( file );
+		try {
+			writer.write( content );
+		}
+		finally {
+			writer.close();
+		}
+	}
+}
@@ -0,0 +1,147 @@
+/*
+ * jDocBook, processing of DocBook sources
+ *
+ * Copyright (c) 2010, Red Hat Inc. or third-party contributors as
+ * indicated by the @author tags or express copyright attribution
+ * statements applied by the authors.  All third-party contributions are
+ * distributed under license by Red Hat Inc.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.jboss.jdocbook.xslt;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Lives in the package of {@link ResolutionTable} as the table is internal to the resolver chains.
+ */
+public class ResolutionTableTest {
+	private static final Object UNSCOPED_FIRST = "unscoped-first";
+	private static final Object DOCBOOK = new Scoped( "http://docbook.org/xml/", "http://www.oasis-open.org/docbook/" );
+	private static final Object CLASSPATH = new Scoped( "classpath:/" );
+	private static final Object UNSCOPED_LAST = "unscoped-last";
+	private static final Object FILES = new Scoped( "file:///" );
+
+	private final ResolutionTable<Object> table = new ResolutionTable<Object>(
+			Arrays.asList( UNSCOPED_FIRST, DOCBOOK, CLASSPATH, UNSCOPED_LAST, FILES )
+	);
+
+	@Test
+	public void testDispatchKey() {
+		assertEquals( "http://docbook.org", ResolutionTable.dispatchKey( "http://docbook.org/xml/5.0/dtd/docbook.dtd" ) );
+		assertEquals( "http://docbook.org", ResolutionTable.dispatchKey( "HTTP://DocBook.ORG/xml/5.0/dtd/docbook.dtd" ) );
+		assertEquals( "http://docbook.org", ResolutionTable.dispatchKey( "http://docbook.org" ) );
+		assertEquals( "http://docbook.org", ResolutionTable.dispatchKey( "http://docbook.org:80/xml/" ) );
+		assertEquals( "http://docbook.org", ResolutionTable.dispatchKey( "http://user@docbook.org/xml/" ) );
+		assertEquals( "http://docbook.org", ResolutionTable.dispatchKey( "http://docbook.org?query" ) );
+		assertEquals( "https://docbook.org", ResolutionTable.dispatchKey( "https://docbook.org/xml/" ) );
+
+		assertEquals( "file:", ResolutionTable.dispatchKey( "file:/tmp/book.xml" ) );
+		assertEquals( "file:", ResolutionTable.dispatchKey( "file:///tmp/book.xml" ) );
+		assertEquals( "file:", ResolutionTable.dispatchKey( "FILE:///tmp/book.xml" ) );
+		assertEquals( "file:", ResolutionTable.dispatchKey( "file://localhost/tmp/book.xml" ) );
+		assertEquals( "file:", ResolutionTable.dispatchKey( "file:///C:/docs/book.xml" ) );
+		assertEquals( "file:", ResolutionTable.dispatchKey( "C:\\docs\\book.xml" ) );
+		assertEquals( "file:", ResolutionTable.dispatchKey( "c:/docs/book.xml" ) );
+
+		assertEquals( "classpath:", ResolutionTable.dispatchKey( "classpath:/docbook/xsl/html.xsl" ) );
+		assertEquals( "classpath:", ResolutionTable.dispatchKey( "Classpath:docbook/xsl/html.xsl" ) );
+		assertEquals( "jar:", ResolutionTable.dispatchKey( "jar:file:/tmp/styles.jar!/xslt/html.xsl" ) );
+		assertEquals( "urn:", ResolutionTable.dispatchKey( "urn:x-docbook:css" ) );
+
+		assertEquals( "", ResolutionTable.dispatchKey( "chapter.xml" ) );
+		assertEquals( "", ResolutionTable.dispatchKey( "../common/legal.xml" ) );
+		assertEquals( "", ResolutionTable.dispatchKey( "/tmp/book.xml" ) );
+		assertEquals( "", ResolutionTable.dispatchKey( "" ) );
+		assertEquals( "", ResolutionTable.dispatchKey( null ) );
+	}
+
+	@Test
+	public void testCandidates() {
+		assertCandidates( table.getCandidates( "http://docbook.org/xml/5.0/dtd/docbook.dtd", null ), UNSCOPED_FIRST, DOCBOOK, UNSCOPED_LAST );
+		assertCandidates( table.getCandidates( "HTTP://DOCBOOK.ORG:80/xml/5.0/dtd/docbook.dtd", null ), UNSCOPED_FIRST, DOCBOOK, UNSCOPED_LAST );
+		assertCandidates( table.getCandidates( "http://example.com/other.dtd", null ), UNSCOPED_FIRST, UNSCOPED_LAST );
+
+		// relative ids are dispatched on their base
+		assertCandidates( table.getCandidates( "chapter.xml", "file:/tmp/book.xml" ), UNSCOPED_FIRST, UNSCOPED_LAST, FILES );
+		assertCandidates( table.getCandidates( "chapter.xml", "file://localhost/tmp/book.xml" ), UNSCOPED_FIRST, UNSCOPED_LAST, FILES );
+		assertCandidates( table.getCandidates( "common.xsl", "classpath:/docbook/xsl/html.xsl" ), UNSCOPED_FIRST, CLASSPATH, UNSCOPED_LAST );
+		assertCandidates( table.getCandidates( "common.xsl", "jar:file:/tmp/styles.jar!/xslt/html.xsl" ), UNSCOPED_FIRST, UNSCOPED_LAST );
+		assertCandidates( table.getCandidates( "chapter.xml", null ), UNSCOPED_FIRST, UNSCOPED_LAST );
+		assertCandidates( table.getCandidates( null, null ), UNSCOPED_FIRST, UNSCOPED_LAST );
+
+		// absolute ids consult the resolvers for the base as well
+		assertCandidates( table.getCandidates( "classpath:/docbook/xsl/html.xsl", "http://docbook.org/xsl/" ), UNSCOPED_FIRST, DOCBOOK, CLASSPATH, UNSCOPED_LAST );
+		assertCandidates( table.getCandidates( "C:\\docs\\chapter.xml", "http://docbook.org/xml/" ), UNSCOPED_FIRST, DOCBOOK, UNSCOPED_LAST, FILES );
+
+		assertSame( table.getCandidates( "http://docbook.org/a", null ), table.getCandidates( "http://docbook.org/b", null ) );
+	}
+
+	@Test
+	public void testMisses() {
+		String key = ResolutionTable.lookupKey( null, "http://example.com/missing.dtd" );
+		assertFalse( table.isKnownMiss( key ) );
+		table.recordMiss( key );
+		assertTrue( table.isKnownMiss( key ) );
+
+		// null parts do not collide with "null" nor with shifted separators
+		assertFalse( table.isKnownMiss( ResolutionTable.lookupKey( "null", "http://example.com/missing.dtd" ) ) );
+		assertFalse( ResolutionTable.lookupKey( "a|b", "c" ).equals( ResolutionTable.lookupKey( "a", "b|c" ) ) );
+
+		for ( int i = 1; i < ResolutionTable.MAX_MISSES; i++ ) {
+			table.recordMiss( ResolutionTable.lookupKey( "miss-" + i ) );
+		}
+		assertTrue( table.isKnownMiss( key ) );
+		assertTrue( table.isKnownMiss( ResolutionTable.lookupKey( "miss-" + ( ResolutionTable.MAX_MISSES - 1 ) ) ) );
+
+		// one more clears the remembered misses
+		String last = ResolutionTable.lookupKey( "one-too-many" );
+		table.recordMiss( last );
+		assertTrue( table.isKnownMiss( last ) );
+		assertFalse( table.isKnownMiss( key ) );
+		assertFalse( table.isKnownMiss( ResolutionTable.lookupKey( "miss-1" ) ) );
+	}
+
+	private static void assertCandidates(List<Object> candidates, Object... expected) {
+		assertEquals( Arrays.asList( expected ), candidates );
+	}
+
+	private static class Scoped implements ScopedResolver {
+		private final String[] prefixes;
+
+		private Scoped(String... prefixes) {
+			this.prefixes = prefixes;
+		}
+
+		@Override
+		public String[] getResolvablePrefixes() {
+			return prefixes;
+		}
+
+		@Override
+		public String toString() {
+			return Arrays.asList( prefixes ).toString();
+		}
+	}
+}
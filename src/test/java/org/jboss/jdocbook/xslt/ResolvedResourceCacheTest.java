@@ -0,0 +1,74 @@
+/*
+ * jDocBook, processing of DocBook sources
+ *
+ * Copyright (c) 2010, Red Hat Inc. or third-party contributors as
+ * indicated by the @author tags or express copyright attribution
+ * statements applied by the authors.  All third-party contributions are
+ * distributed under license by Red Hat Inc.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, write to:
+ * Free Software Foundation, Inc.
+ * 51 Franklin Street, Fifth Floor
+ * Boston, MA  02110-1301  USA
+ */
+package org.jboss.jdocbook.xslt;
+
+import java.io.File;
+import java.net.URL;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Lives in the package of {@link ResolvedResourceCache} to pass the resolver scopes directly.
+ */
+public class ResolvedResourceCacheTest {
+	@Test
+	public void testLocationsAreKeptPerResolver() throws Exception {
+		final ResolvedResourceCache cache = new ResolvedResourceCache( false );
+		final URL located = new File( "style.xsl" ).toURI().toURL();
+		final int[] lookups = new int[1];
+
+		assertNull( cache.locate( VersionResolver.class, "style.xsl", null, new FixedLocator( null, lookups ) ) );
+		assertEquals(
+				located,
+				cache.locate( ClasspathResolver.class, "style.xsl", null, new FixedLocator( located, lookups ) )
+		);
+		assertEquals( 2, lookups[0] );
+
+		assertNull( cache.locate( VersionResolver.class, "style.xsl", null, new FixedLocator( located, lookups ) ) );
+		assertEquals(
+				located,
+				cache.locate( ClasspathResolver.class, "style.xsl", null, new FixedLocator( null, lookups ) )
+		);
+		assertEquals( 2, lookups[0] );
+	}
+
+	private static class FixedLocator implements ResolvedResourceCache.Locator {
+		private final URL url;
+		private final int[] lookups;
+
+		private FixedLocator(URL url, int[] lookups) {
+			this.url = url;
+			this.lookups = lookups;
+		}
+
+		@Override
+		public URL locate() {
+			lookups[0]++;
+			return url;
+		}
+	}
+}